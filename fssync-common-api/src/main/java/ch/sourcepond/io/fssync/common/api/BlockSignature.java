@@ -0,0 +1,105 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.common.api;
+
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Objects;
+
+import static java.lang.String.format;
+import static java.security.MessageDigest.getInstance;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Signature of one block of a file which already exists on a target. The source uses the signatures of all targets
+ * to find data which does not need to be transferred again (delta transfer). The weak checksum is calculated
+ * with {@link RollingChecksum}, the strong checksum with the algorithm returned by {@link #newStrongDigest()}.
+ */
+public class BlockSignature implements Serializable {
+    private static final String STRONG_ALGORITHM = "SHA-256";
+    private final long offset;
+    private final int length;
+    private final int weak;
+    private final byte[] strong;
+
+    public BlockSignature(final long pOffset, final int pLength, final int pWeak, final byte[] pStrong) {
+        offset = pOffset;
+        length = pLength;
+        weak = pWeak;
+        strong = requireNonNull(pStrong, "strong checksum is null");
+    }
+
+    /**
+     * Creates a new digest which must be used to calculate the strong checksum of a block.
+     *
+     * @return New digest, never {@code null}
+     */
+    public static MessageDigest newStrongDigest() {
+        try {
+            return getInstance(STRONG_ALGORITHM);
+        } catch (final NoSuchAlgorithmException e) {
+            // This should never happen because every JRE must support SHA-256
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return Position of the block within the file, always {@code >= 0}
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return Length of the block; only the last block of a file can be shorter than the block-size.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public int getWeak() {
+        return weak;
+    }
+
+    public byte[] getStrong() {
+        return strong;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final BlockSignature that = (BlockSignature) o;
+        return offset == that.offset &&
+                length == that.length &&
+                weak == that.weak &&
+                Arrays.equals(strong, that.strong);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(offset, length, weak);
+    }
+
+    @Override
+    public String toString() {
+        return format("[offset: %d, length: %d, weak: %08x]", offset, length, weak);
+    }
+}
@@ -0,0 +1,80 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.common.api;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Identifies a content-defined chunk of a file by its length and its strong checksum (see
+ * {@link BlockSignature#newStrongDigest()}). Chunks are independent of the file and the position they occur at, so a
+ * target which has received a chunk once can re-use it for any other file.
+ */
+public class Chunk implements Serializable {
+    private final int length;
+    private final byte[] digest;
+
+    public Chunk(final int pLength, final byte[] pDigest) {
+        length = pLength;
+        digest = requireNonNull(pDigest, "digest is null");
+    }
+
+    /**
+     * @return Length of the chunk in bytes, always {@code > 0}
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public byte[] getDigest() {
+        return digest;
+    }
+
+    /**
+     * @return Digest of this chunk as lower-case hex string, never {@code null}
+     */
+    public String toHexString() {
+        final StringBuilder builder = new StringBuilder(digest.length * 2);
+        for (final byte b : digest) {
+            builder.append(format("%02x", b & 0xff));
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final Chunk that = (Chunk) o;
+        return length == that.length &&
+                Arrays.equals(digest, that.digest);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(digest);
+    }
+
+    @Override
+    public String toString() {
+        return format("[length: %d, digest: %s]", length, toHexString());
+    }
+}
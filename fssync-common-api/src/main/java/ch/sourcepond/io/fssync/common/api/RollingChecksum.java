@@ -0,0 +1,86 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.common.api;
+
+/**
+ * Weak checksum as used by rsync. The checksum of a window can be rolled forward by one byte in constant time,
+ * which allows the source to search the blocks of a target file (see {@link BlockSignature}) at every offset of
+ * the new file content. Instances of this class are not thread-safe.
+ */
+public class RollingChecksum {
+    private static final int MASK = 0xffff;
+    private int a;
+    private int b;
+    private int length;
+
+    /**
+     * Resets this checksum to an empty window.
+     */
+    public void reset() {
+        a = 0;
+        b = 0;
+        length = 0;
+    }
+
+    /**
+     * Appends the byte specified to the window.
+     *
+     * @param pIn Byte to append
+     */
+    public void update(final byte pIn) {
+        a = (a + (pIn & 0xff)) & MASK;
+        b = (b + a) & MASK;
+        length++;
+    }
+
+    /**
+     * Appends the bytes specified to the window.
+     *
+     * @param pData   Array containing the data, must not be {@code null}
+     * @param pOffset Start offset in the array
+     * @param pLength Number of bytes to append
+     */
+    public void update(final byte[] pData, final int pOffset, final int pLength) {
+        for (int i = pOffset; i < pOffset + pLength; i++) {
+            update(pData[i]);
+        }
+    }
+
+    /**
+     * Moves the window one byte forward: the first byte of the window is removed, and the byte specified is
+     * appended. The length of the window stays the same.
+     *
+     * @param pOut First byte of the current window
+     * @param pIn  Byte to append
+     */
+    public void roll(final byte pOut, final byte pIn) {
+        final int out = pOut & 0xff;
+        a = (a - out + (pIn & 0xff)) & MASK;
+        b = (b - length * out + a) & MASK;
+    }
+
+    /**
+     * @return Number of bytes in the current window
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return Checksum of the current window
+     */
+    public int getValue() {
+        return a | (b << 16);
+    }
+}
@@ -0,0 +1,58 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.common.api;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ChunkTest {
+    private static final byte[] EXPECTED_DIGEST = new byte[]{0x01, 0x2f, (byte) 0xa0};
+    private final Chunk chunk = new Chunk(3, EXPECTED_DIGEST);
+
+    @Test(expected = NullPointerException.class)
+    public void digestIsNull() {
+        new Chunk(3, null);
+    }
+
+    @Test
+    public void toHexString() {
+        assertEquals("012fa0", chunk.toHexString());
+    }
+
+    @Test
+    public void verifyEquals() {
+        assertEquals(chunk, new Chunk(3, EXPECTED_DIGEST.clone()));
+        assertEquals(chunk.hashCode(), new Chunk(3, EXPECTED_DIGEST.clone()).hashCode());
+        assertNotEquals(chunk, new Chunk(4, EXPECTED_DIGEST));
+        assertNotEquals(chunk, new Chunk(3, new byte[]{0x01}));
+    }
+
+    @Test
+    public void serialize() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final ObjectOutputStream oout = new ObjectOutputStream(out)) {
+            oout.writeObject(chunk);
+        }
+        try (final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(chunk, in.readObject());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.common.api;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class RollingChecksumTest {
+    private static final byte[] DATA = "The quick brown fox jumps over the lazy dog".getBytes();
+    private static final int WINDOW = 8;
+    private final RollingChecksum checksum = new RollingChecksum();
+
+    private static int checksumOf(final int pOffset) {
+        final RollingChecksum checksum = new RollingChecksum();
+        checksum.update(DATA, pOffset, WINDOW);
+        return checksum.getValue();
+    }
+
+    @Test
+    public void roll() {
+        checksum.update(DATA, 0, WINDOW);
+        assertEquals(WINDOW, checksum.getLength());
+        assertEquals(checksumOf(0), checksum.getValue());
+
+        for (int i = 1; i + WINDOW <= DATA.length; i++) {
+            checksum.roll(DATA[i - 1], DATA[i + WINDOW - 1]);
+            assertEquals(checksumOf(i), checksum.getValue());
+        }
+        assertEquals(WINDOW, checksum.getLength());
+    }
+
+    @Test
+    public void rollHighBytes() {
+        final byte[] data = new byte[]{(byte) 0xff, (byte) 0x80, (byte) 0xfe, 0x01, (byte) 0x90};
+        checksum.update(data, 0, 4);
+        checksum.roll(data[0], data[4]);
+
+        final RollingChecksum expected = new RollingChecksum();
+        expected.update(data, 1, 4);
+        assertEquals(expected.getValue(), checksum.getValue());
+    }
+
+    @Test
+    public void differentContent() {
+        assertNotEquals(checksumOf(0), checksumOf(1));
+    }
+
+    @Test
+    public void reset() {
+        checksum.update(DATA, 0, WINDOW);
+        checksum.reset();
+        assertEquals(0, checksum.getLength());
+        assertEquals(0, checksum.getValue());
+    }
+}
@@ -0,0 +1,208 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.api;
+
+import ch.sourcepond.io.fssync.common.api.BlockSignature;
+import ch.sourcepond.io.fssync.common.api.Chunk;
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Non-blocking variant of {@link Distributor}. Every method returns immediately; the outcome of the operation is
+ * reported through the {@link CompletionStage} returned. If an operation fails, the stage is completed exceptionally
+ * with the {@link IOException} the blocking counterpart would have thrown.
+ */
+public interface AsyncDistributor {
+
+    /**
+     * Tries to lock the path specified in the network (see {@link Distributor#tryLock(SyncPath)}).
+     *
+     * @param pSyncPath Path to be locked, must not be {@code null}
+     * @return Stage which is completed as soon as the path has been locked on all nodes, never {@code null}
+     * @throws NullPointerException Thrown, if the path specified is {@code null}.
+     */
+    CompletionStage<Boolean> tryLock(SyncPath pSyncPath);
+
+    /**
+     * Unlocks the path specified in the network (see {@link Distributor#unlock(SyncPath)}).
+     *
+     * @param pSyncPath Path to be unlocked, must not be {@code null}.
+     * @return Stage which is completed as soon as the path has been unlocked on all nodes, never {@code null}
+     * @throws NullPointerException Thrown, if the path specified is {@code null}.
+     */
+    CompletionStage<Void> unlock(SyncPath pSyncPath);
+
+    /**
+     * Tries to lock all paths specified in the network with a single request per node (see
+     * {@link Distributor#tryLockAll(Collection)}).
+     *
+     * @param pSyncPaths Paths to be locked, must not be {@code null} or empty
+     * @return Stage which is completed as soon as all paths have been locked on all nodes, never {@code null}
+     * @throws NullPointerException     Thrown, if the collection specified is {@code null}.
+     * @throws IllegalArgumentException Thrown, if the collection specified is empty.
+     */
+    CompletionStage<Boolean> tryLockAll(Collection<SyncPath> pSyncPaths);
+
+    /**
+     * Unlocks all paths specified in the network with a single request per node (see
+     * {@link Distributor#unlockAll(Collection)}).
+     *
+     * @param pSyncPaths Paths to be unlocked, must not be {@code null} or empty
+     * @return Stage which is completed as soon as all paths have been unlocked on all nodes, never {@code null}
+     * @throws NullPointerException     Thrown, if the collection specified is {@code null}.
+     * @throws IllegalArgumentException Thrown, if the collection specified is empty.
+     */
+    CompletionStage<Void> unlockAll(Collection<SyncPath> pSyncPaths);
+
+    /**
+     * Deletes the path specified from the network (see {@link Distributor#delete(SyncPath)}).
+     *
+     * @param pSyncPath Path to be deleted, must not be {@code null}.
+     * @return Stage which is completed as soon as the path has been deleted on all nodes, never {@code null}
+     * @throws NullPointerException Thrown, if the path specified is {@code null}.
+     */
+    CompletionStage<Void> delete(SyncPath pSyncPath);
+
+    /**
+     * Transfers the data specified for the path specified to the network (see
+     * {@link Distributor#transfer(SyncPath, ByteBuffer)}). The buffer specified can be re-used by the caller as soon
+     * as this method returns. The next chunk of the same path must not be transferred before the stage returned for
+     * the previous chunk has been completed, otherwise the chunks could arrive in wrong order.
+     *
+     * @param pSyncPath Path to which the data belongs to, must not be {@code null}.
+     * @param pData     ByteBuffer containing the data to be transferred, must not be {@code null}
+     * @return Stage which is completed as soon as the next chunk can be transferred, never {@code null}
+     * @throws NullPointerException Thrown, if the path or the buffer specified is {@code null}.
+     */
+    CompletionStage<Void> transfer(SyncPath pSyncPath, ByteBuffer pData);
+
+    /**
+     * Requests the block signatures of the file which currently exists on the clients (see
+     * {@link Distributor#getSignatures(SyncPath, int)}).
+     *
+     * @param pSyncPath  Path of the file, must not be {@code null}.
+     * @param pBlockSize Size of a block in bytes, must be greater than zero.
+     * @return Stage which is completed with the signatures common to all nodes, never {@code null}
+     * @throws NullPointerException Thrown, if the path specified is {@code null}.
+     */
+    CompletionStage<Collection<BlockSignature>> getSignatures(SyncPath pSyncPath, int pBlockSize);
+
+    /**
+     * Instructs the clients to append the block of the current file specified to the data transferred so far (see
+     * {@link Distributor#copy(SyncPath, long, int)}). The same ordering rules as for
+     * {@link #transfer(SyncPath, ByteBuffer)} apply.
+     *
+     * @param pSyncPath Path to which the data belongs to, must not be {@code null}.
+     * @param pOffset   Offset of the block in the current file
+     * @param pLength   Length of the block
+     * @return Stage which is completed as soon as the next chunk can be transferred, never {@code null}
+     * @throws NullPointerException Thrown, if the path specified is {@code null}.
+     */
+    CompletionStage<Void> copy(SyncPath pSyncPath, long pOffset, int pLength);
+
+    /**
+     * Tries to replicate the content with the checksum specified by copying a file with the same checksum which has
+     * already been stored at another path (see {@link Distributor#duplicate(SyncPath, byte[])}).
+     *
+     * @param pSyncPath Path of the file, must not be {@code null}.
+     * @param pChecksum Checksum of the content to replicate, must not be {@code null}.
+     * @return Stage which is completed with {@code true} as soon as the content has been copied on all nodes, or with
+     * {@code false} if no file with the same checksum is known, never {@code null}
+     * @throws NullPointerException Thrown, if the path or the checksum specified is {@code null}.
+     */
+    CompletionStage<Boolean> duplicate(SyncPath pSyncPath, byte[] pChecksum);
+
+    /**
+     * Determines which of the chunks specified are stored in the chunk store of every node (see
+     * {@link Distributor#getKnownChunks(SyncPath, Collection)}).
+     *
+     * @param pSyncPath Path of the file the chunks belong to, must not be {@code null}.
+     * @param pChunks   Chunks to look up, must not be {@code null}.
+     * @return Stage which is completed with the chunks known to all nodes, never {@code null}
+     * @throws NullPointerException Thrown, if the path or the chunks specified are {@code null}.
+     */
+    CompletionStage<Collection<Chunk>> getKnownChunks(SyncPath pSyncPath, Collection<Chunk> pChunks);
+
+    /**
+     * Transfers the data of the chunk specified and adds it to the chunk store of every node (see
+     * {@link Distributor#transferChunk(SyncPath, Chunk, ByteBuffer)}). The same rules as for
+     * {@link #transfer(SyncPath, ByteBuffer)} apply.
+     *
+     * @param pSyncPath Path to which the data belongs to, must not be {@code null}.
+     * @param pChunk    Chunk which identifies the data, must not be {@code null}.
+     * @param pData     Data of the chunk, must not be {@code null}.
+     * @return Stage which is completed as soon as the next chunk can be transferred, never {@code null}
+     * @throws NullPointerException Thrown, if any argument is {@code null}.
+     */
+    CompletionStage<Void> transferChunk(SyncPath pSyncPath, Chunk pChunk, ByteBuffer pData);
+
+    /**
+     * Instructs the nodes to append the chunk specified from their chunk store to the data transferred so far (see
+     * {@link Distributor#copyChunk(SyncPath, Chunk)}). The same rules as for {@link #transfer(SyncPath, ByteBuffer)}
+     * apply.
+     *
+     * @param pSyncPath Path to which the data belongs to, must not be {@code null}.
+     * @param pChunk    Chunk to append, must not be {@code null}.
+     * @return Stage which is completed as soon as the next chunk can be transferred, never {@code null}
+     * @throws NullPointerException Thrown, if the path or the chunk specified is {@code null}.
+     */
+    CompletionStage<Void> copyChunk(SyncPath pSyncPath, Chunk pChunk);
+
+    /**
+     * Discards the transferred data for the path specified which has not been stored yet (see
+     * {@link Distributor#discard(SyncPath, IOException)}).
+     *
+     * @param pSyncPath Path to which the data to be discarded belongs to, must not be {@code null}.
+     * @param pFailure  IOException thrown during reading the file to be synced, must not be {@code null}.
+     * @return Stage which is completed as soon as the data has been discarded on all nodes, never {@code null}
+     * @throws NullPointerException Thrown, if the path or the failure specified is {@code null}.
+     */
+    CompletionStage<Void> discard(SyncPath pSyncPath, IOException pFailure);
+
+    /**
+     * Stores the transferred data to the path specified (see {@link Distributor#store(SyncPath, byte[])}).
+     *
+     * @param pSyncPath Path to which the data belongs to, must not be {@code null}.
+     * @param pChecksum Updated checksum to set, must be not {@code null}.
+     * @return Stage which is completed as soon as the data has been stored on all nodes and the global checksum has
+     * been updated, never {@code null}
+     * @throws NullPointerException Thrown, if the path or the checksum specified is {@code null}.
+     */
+    CompletionStage<Void> store(SyncPath pSyncPath, byte[] pChecksum);
+
+    /**
+     * Replicates the complete content of the files specified with a single request to the network (see
+     * {@link Distributor#batch(Collection)}). The paths must not be locked by the caller.
+     *
+     * @param pFiles Files to be replicated, must not be {@code null} or empty.
+     * @return Stage which is completed as soon as all files have been stored on all nodes and their global checksums
+     * have been updated, never {@code null}
+     * @throws NullPointerException     Thrown, if the collection specified is {@code null}.
+     * @throws IllegalArgumentException Thrown, if the collection specified is empty.
+     */
+    CompletionStage<Void> batch(Collection<BatchFile> pFiles);
+
+    /**
+     * Returns the checksum of the path specified (see {@link Distributor#getChecksum(SyncPath)}).
+     *
+     * @param pSyncPath Path, must not be {@code null}.
+     * @return Stage which is completed with the checksum, never {@code null}
+     * @throws NullPointerException Thrown, if the path specified is {@code null}
+     */
+    CompletionStage<byte[]> getChecksum(SyncPath pSyncPath);
+}
@@ -0,0 +1,56 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.api;
+
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+
+import java.util.Collection;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Complete content of a small file which is replicated together with other small files in a single request (see
+ * {@link Distributor#batch(Collection)}).
+ */
+public final class BatchFile {
+    private final SyncPath path;
+    private final byte[] data;
+    private final byte[] checksum;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param pPath     Path of the file, must not be {@code null}
+     * @param pData     Complete content of the file, must not be {@code null}
+     * @param pChecksum Checksum of the content, must not be {@code null}
+     * @throws NullPointerException Thrown, if any argument is {@code null}
+     */
+    public BatchFile(final SyncPath pPath, final byte[] pData, final byte[] pChecksum) {
+        path = requireNonNull(pPath, "path is null");
+        data = requireNonNull(pData, "data is null");
+        checksum = requireNonNull(pChecksum, "checksum is null");
+    }
+
+    public SyncPath getPath() {
+        return path;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public byte[] getChecksum() {
+        return checksum;
+    }
+}
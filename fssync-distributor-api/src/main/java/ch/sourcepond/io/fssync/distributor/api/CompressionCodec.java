@@ -0,0 +1,53 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.api;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compresses the chunks of file data before they are sent into the network. Codecs are registered as OSGi services
+ * and are referenced by their name (see {@link #getName()}) from the distributor configuration. Every chunk carries
+ * the name of the codec it has been compressed with, so the codec must be available on every receiving node.
+ */
+public interface CompressionCodec {
+
+    /**
+     * Returns the unique name of this codec, for instance "lz4" or "deflate".
+     *
+     * @return Name, never {@code null}
+     */
+    String getName();
+
+    /**
+     * Compresses the remaining bytes of the buffer specified. The buffer is consumed, i.e. its position is equal
+     * to its limit after this method returns.
+     *
+     * @param pData Data to be compressed, must not be {@code null}
+     * @return New buffer ready to be read containing the compressed data, never {@code null}
+     * @throws IOException Thrown, if the data could not be compressed.
+     */
+    ByteBuffer compress(ByteBuffer pData) throws IOException;
+
+    /**
+     * Decompresses the remaining bytes of the buffer specified which have been compressed with
+     * {@link #compress(ByteBuffer)}. The buffer is consumed, i.e. its position is equal to its limit after this
+     * method returns.
+     *
+     * @param pData Data to be decompressed, must not be {@code null}
+     * @return New buffer ready to be read containing the original data, never {@code null}
+     * @throws IOException Thrown, if the data could not be decompressed.
+     */
+    ByteBuffer decompress(ByteBuffer pData) throws IOException;
+}
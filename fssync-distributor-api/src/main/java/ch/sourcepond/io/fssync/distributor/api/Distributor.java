@@ -13,10 +13,13 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.api;
 
+import ch.sourcepond.io.fssync.common.api.BlockSignature;
+import ch.sourcepond.io.fssync.common.api.Chunk;
 import ch.sourcepond.io.fssync.common.api.SyncPath;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Collection;
 
 /**
  * This interface provides access to the underlying distribution mechanism.
@@ -43,6 +46,31 @@ public interface Distributor {
      */
     void unlock(SyncPath pSyncPath) throws IOException;
 
+    /**
+     * Tries to lock all paths specified in the network with a single request per node. The paths are locked in the
+     * order of their absolute paths, so that callers which lock overlapping sets of paths cannot deadlock. Either all
+     * paths are locked, or none: if some path cannot be locked, the paths locked so far are released again. Afterwards,
+     * every path can be used as if it had been locked with {@link #tryLock(SyncPath)}.
+     *
+     * @param pSyncPaths Paths to be locked, must not be {@code null} or empty
+     * @throws IOException              Thrown, if some path could not be locked for some reason
+     *                                  (timeout, I/O failure etc.)
+     * @throws NullPointerException     Thrown, if the collection specified is {@code null}.
+     * @throws IllegalArgumentException Thrown, if the collection specified is empty.
+     */
+    boolean tryLockAll(Collection<SyncPath> pSyncPaths) throws IOException;
+
+    /**
+     * Unlocks all paths specified in the network with a single request per node (see {@link #unlock(SyncPath)}).
+     * A path which cannot be unlocked does not prevent the other paths from being unlocked.
+     *
+     * @param pSyncPaths Paths to be unlocked, must not be {@code null} or empty
+     * @throws IOException              Thrown, if exceptions occurred while unlocking.
+     * @throws NullPointerException     Thrown, if the collection specified is {@code null}.
+     * @throws IllegalArgumentException Thrown, if the collection specified is empty.
+     */
+    void unlockAll(Collection<SyncPath> pSyncPaths) throws IOException;
+
     /**
      * Deletes the path specified from the network. If successful, this method simply returns. Before calling this
      * method, {@link #tryLock(SyncPath)} should have been executed successfully.
@@ -58,6 +86,9 @@ public interface Distributor {
      * Transfers the data specified for the path specified to the network. If successful, this method simply returns.
      * Before calling this method, {@link #tryLock(SyncPath)} should have been executed successfully. The newly
      * transferred data is <em>not</em> visible on the clients until {@link #store(SyncPath, byte[])} has been called.
+     * Implementations may return before the data has been acknowledged by all clients; in this case, failures are
+     * reported by a subsequent call to this method or to {@link #store(SyncPath, byte[])}. The buffer specified can be
+     * re-used by the caller as soon as this method returns.
      *
      * @param pSyncPath Path to which the data belongs to, must not be {@code null}.
      * @param pData     ByteBuffer containing the data to be transferred, must not be {@code null}
@@ -67,6 +98,96 @@ public interface Distributor {
      */
     void transfer(SyncPath pSyncPath, ByteBuffer pData) throws IOException;
 
+    /**
+     * Requests the block signatures of the file which currently exists on the clients at the path specified. Only
+     * blocks which are identical on all clients are returned; if the file does not exist on some client, the
+     * collection returned is empty. After this method has been called, the file is patched on the clients: the data
+     * transferred by {@link #transfer(SyncPath, ByteBuffer)} and {@link #copy(SyncPath, long, int)} replaces the
+     * current file when {@link #store(SyncPath, byte[])} is called. This method must be called before any data is
+     * transferred, and after {@link #tryLock(SyncPath)} has been executed successfully.
+     *
+     * @param pSyncPath  Path of the file, must not be {@code null}.
+     * @param pBlockSize Size of a block in bytes, must be greater than zero.
+     * @return Signatures common to all clients, never {@code null}
+     * @throws IOException          Thrown, if the signatures could not be requested for some reason
+     *                              (timeout, I/O failure etc.)
+     * @throws NullPointerException Thrown, if the path specified is {@code null}.
+     */
+    Collection<BlockSignature> getSignatures(SyncPath pSyncPath, int pBlockSize) throws IOException;
+
+    /**
+     * Instructs the clients to append the block of the current file specified to the data transferred so far,
+     * instead of transferring the block itself. Only blocks returned by {@link #getSignatures(SyncPath, int)} can be
+     * copied. Like {@link #transfer(SyncPath, ByteBuffer)}, implementations may return before the instruction has
+     * been acknowledged by all clients.
+     *
+     * @param pSyncPath Path to which the data belongs to, must not be {@code null}.
+     * @param pOffset   Offset of the block in the current file (see {@link BlockSignature#getOffset()})
+     * @param pLength   Length of the block (see {@link BlockSignature#getLength()})
+     * @throws IOException          Thrown, if the instruction could not be transferred for some reason
+     *                              (timeout, I/O failure etc.)
+     * @throws NullPointerException Thrown, if the path specified is {@code null}.
+     */
+    void copy(SyncPath pSyncPath, long pOffset, int pLength) throws IOException;
+
+    /**
+     * Tries to replicate the content with the checksum specified without transferring it: if a file with the same
+     * checksum has already been stored at another path, the clients copy this file to the path specified. The copy is
+     * verified against the checksum on every client. If {@code true} is returned, the content has been received by all
+     * clients and must be made visible with {@link #store(SyncPath, byte[])}. If {@code false} is returned, no file with
+     * the same checksum is known and the content must be transferred. This method must be called before any data is
+     * transferred, and after {@link #tryLock(SyncPath)} has been executed successfully.
+     *
+     * @param pSyncPath Path of the file, must not be {@code null}.
+     * @param pChecksum Checksum of the content to replicate, must not be {@code null}.
+     * @return {@code true} if the content has been copied on all clients, {@code false} otherwise
+     * @throws IOException          Thrown, if the file could not be copied on some client (for instance because it
+     *                              has been modified on the client). The caller should discard the data and replicate
+     *                              the file again by transferring its content.
+     * @throws NullPointerException Thrown, if the path or the checksum specified is {@code null}.
+     */
+    boolean duplicate(SyncPath pSyncPath, byte[] pChecksum) throws IOException;
+
+    /**
+     * Determines which of the chunks specified are stored in the chunk store of every client. Only chunks returned by
+     * this method can be copied with {@link #copyChunk(SyncPath, Chunk)}. This method must be called after
+     * {@link #tryLock(SyncPath)} has been executed successfully.
+     *
+     * @param pSyncPath Path of the file the chunks belong to, must not be {@code null}.
+     * @param pChunks   Chunks to look up, must not be {@code null}.
+     * @return Chunks known to all clients, never {@code null}
+     * @throws IOException          Thrown, if the chunks could not be looked up for some reason
+     *                              (timeout, I/O failure etc.)
+     * @throws NullPointerException Thrown, if the path or the chunks specified are {@code null}.
+     */
+    Collection<Chunk> getKnownChunks(SyncPath pSyncPath, Collection<Chunk> pChunks) throws IOException;
+
+    /**
+     * Transfers the data of the chunk specified like {@link #transfer(SyncPath, ByteBuffer)}. Additionally, the
+     * clients add the chunk to their chunk store, so it can be copied into any file later on.
+     *
+     * @param pSyncPath Path to which the data belongs to, must not be {@code null}.
+     * @param pChunk    Chunk which identifies the data, must not be {@code null}.
+     * @param pData     Data of the chunk, must not be {@code null}.
+     * @throws IOException          Thrown, if the data could not be transferred for some reason
+     *                              (timeout, I/O failure etc.)
+     * @throws NullPointerException Thrown, if any argument is {@code null}.
+     */
+    void transferChunk(SyncPath pSyncPath, Chunk pChunk, ByteBuffer pData) throws IOException;
+
+    /**
+     * Instructs the clients to append the chunk specified from their chunk store to the data transferred so far,
+     * instead of transferring the chunk itself. Only chunks returned by
+     * {@link #getKnownChunks(SyncPath, Collection)} can be copied.
+     *
+     * @param pSyncPath Path to which the data belongs to, must not be {@code null}.
+     * @param pChunk    Chunk to append, must not be {@code null}.
+     * @throws IOException          Thrown, if the instruction could not be transferred for some reason
+     *                              (timeout, I/O failure etc.)
+     * @throws NullPointerException Thrown, if the path or the chunk specified is {@code null}.
+     */
+    void copyChunk(SyncPath pSyncPath, Chunk pChunk) throws IOException;
+
     /**
      * Discards the transferred data (see {@link #transfer(SyncPath, ByteBuffer)}) for the path specified which has not been
      * stored yet (see {@link #transfer(SyncPath, ByteBuffer)}). Before calling this method,
@@ -94,6 +215,21 @@ public interface Distributor {
      */
     void store(SyncPath pSyncPath, byte[] pChecksum) throws IOException;
 
+    /**
+     * Replicates the complete content of the files specified with a single request to the network. Unlike the other
+     * operations, the caller must <em>not</em> lock the paths; this method locks, stores and unlocks them itself.
+     * The checksums of the files are only updated when all files have been stored on all clients. If this method
+     * fails, some of the files may have been stored on some clients; the caller should replicate the files one by
+     * one in this case.
+     *
+     * @param pFiles Files to be replicated, must not be {@code null} or empty.
+     * @throws IOException              Thrown, if the files could not be replicated for some reason
+     *                                  (lock timeout, I/O failure etc.)
+     * @throws NullPointerException     Thrown, if the collection specified is {@code null}.
+     * @throws IllegalArgumentException Thrown, if the collection specified is empty.
+     */
+    void batch(Collection<BatchFile> pFiles) throws IOException;
+
     /**
      * Returns the checksum of the path specified which was set during the last {@link #store(SyncPath, byte[])}
      * operation. If the path has no checksum yet, an empty array will be returned. Before calling this method,
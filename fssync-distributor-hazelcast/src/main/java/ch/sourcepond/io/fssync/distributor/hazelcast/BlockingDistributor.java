@@ -0,0 +1,151 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast;
+
+import ch.sourcepond.io.fssync.common.api.BlockSignature;
+import ch.sourcepond.io.fssync.common.api.Chunk;
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.api.AsyncDistributor;
+import ch.sourcepond.io.fssync.distributor.api.BatchFile;
+import ch.sourcepond.io.fssync.distributor.api.Distributor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+import static ch.sourcepond.io.fssync.distributor.hazelcast.common.Futures.unwrap;
+import static java.lang.Thread.currentThread;
+
+/**
+ * Blocking {@link Distributor} which delegates to an {@link AsyncDistributor} and waits for the completion of every
+ * stage returned by the delegate. Failures are reported as the {@link IOException} the stage has been completed with.
+ */
+public class BlockingDistributor implements Distributor {
+    private final AsyncDistributor delegate;
+
+    public BlockingDistributor(final AsyncDistributor pDelegate) {
+        delegate = pDelegate;
+    }
+
+    private static <T> T await(final CompletionStage<T> pStage) throws IOException {
+        try {
+            return pStage.toCompletableFuture().get();
+        } catch (final InterruptedException e) {
+            currentThread().interrupt();
+            final InterruptedIOException ex = new InterruptedIOException("Wait for distribution interrupted!");
+            ex.initCause(e);
+            throw ex;
+        } catch (final ExecutionException e) {
+            final Throwable cause = unwrap(e);
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    @Override
+    public boolean tryLock(final SyncPath pSyncPath) throws IOException {
+        return await(delegate.tryLock(pSyncPath));
+    }
+
+    @Override
+    public void unlock(final SyncPath pSyncPath) throws IOException {
+        await(delegate.unlock(pSyncPath));
+    }
+
+    @Override
+    public boolean tryLockAll(final Collection<SyncPath> pSyncPaths) throws IOException {
+        return await(delegate.tryLockAll(pSyncPaths));
+    }
+
+    @Override
+    public void unlockAll(final Collection<SyncPath> pSyncPaths) throws IOException {
+        await(delegate.unlockAll(pSyncPaths));
+    }
+
+    @Override
+    public void delete(final SyncPath pSyncPath) throws IOException {
+        await(delegate.delete(pSyncPath));
+    }
+
+    @Override
+    public void transfer(final SyncPath pSyncPath, final ByteBuffer pData) throws IOException {
+        await(delegate.transfer(pSyncPath, pData));
+    }
+
+    @Override
+    public Collection<BlockSignature> getSignatures(final SyncPath pSyncPath, final int pBlockSize) throws IOException {
+        return await(delegate.getSignatures(pSyncPath, pBlockSize));
+    }
+
+    @Override
+    public void copy(final SyncPath pSyncPath, final long pOffset, final int pLength) throws IOException {
+        await(delegate.copy(pSyncPath, pOffset, pLength));
+    }
+
+    @Override
+    public boolean duplicate(final SyncPath pSyncPath, final byte[] pChecksum) throws IOException {
+        return await(delegate.duplicate(pSyncPath, pChecksum));
+    }
+
+    @Override
+    public Collection<Chunk> getKnownChunks(final SyncPath pSyncPath, final Collection<Chunk> pChunks) throws IOException {
+        return await(delegate.getKnownChunks(pSyncPath, pChunks));
+    }
+
+    @Override
+    public void transferChunk(final SyncPath pSyncPath, final Chunk pChunk, final ByteBuffer pData) throws IOException {
+        await(delegate.transferChunk(pSyncPath, pChunk, pData));
+    }
+
+    @Override
+    public void copyChunk(final SyncPath pSyncPath, final Chunk pChunk) throws IOException {
+        await(delegate.copyChunk(pSyncPath, pChunk));
+    }
+
+    @Override
+    public void discard(final SyncPath pSyncPath, final IOException pFailure) throws IOException {
+        await(delegate.discard(pSyncPath, pFailure));
+    }
+
+    @Override
+    public void store(final SyncPath pSyncPath, final byte[] pChecksum) throws IOException {
+        await(delegate.store(pSyncPath, pChecksum));
+    }
+
+    @Override
+    public void batch(final Collection<BatchFile> pFiles) throws IOException {
+        await(delegate.batch(pFiles));
+    }
+
+    @Override
+    public byte[] getChecksum(final SyncPath pSyncPath) {
+        try {
+            return await(delegate.getChecksum(pSyncPath));
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e.getMessage(), e);
+        }
+    }
+}
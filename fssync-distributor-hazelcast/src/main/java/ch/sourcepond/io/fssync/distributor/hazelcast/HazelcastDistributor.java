@@ -13,92 +13,236 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast;
 
+import ch.sourcepond.io.fssync.common.api.BlockSignature;
+import ch.sourcepond.io.fssync.common.api.Chunk;
 import ch.sourcepond.io.fssync.common.api.SyncPath;
 import ch.sourcepond.io.fssync.common.lib.Configurable;
+import ch.sourcepond.io.fssync.distributor.api.AsyncDistributor;
+import ch.sourcepond.io.fssync.distributor.api.BatchFile;
 import ch.sourcepond.io.fssync.distributor.api.Distributor;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.MessageListenerRegistration;
 import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
-import ch.sourcepond.io.fssync.distributor.hazelcast.exception.DeletionException;
-import ch.sourcepond.io.fssync.distributor.hazelcast.exception.DiscardException;
-import ch.sourcepond.io.fssync.distributor.hazelcast.exception.LockException;
-import ch.sourcepond.io.fssync.distributor.hazelcast.exception.StoreException;
-import ch.sourcepond.io.fssync.distributor.hazelcast.exception.TransferException;
-import ch.sourcepond.io.fssync.distributor.hazelcast.exception.UnlockException;
 import ch.sourcepond.io.fssync.distributor.hazelcast.lock.LockManager;
 import ch.sourcepond.io.fssync.distributor.hazelcast.request.RequestDistributor;
+import ch.sourcepond.io.fssync.distributor.hazelcast.response.ResponseDispatcher;
 import com.hazelcast.core.IMap;
+import org.osgi.framework.ServiceRegistration;
 
 import javax.inject.Inject;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
+import static ch.sourcepond.io.fssync.distributor.hazelcast.common.Futures.toCompletableFuture;
+import static ch.sourcepond.io.fssync.distributor.hazelcast.common.Futures.unwrap;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.CompletableFuture.allOf;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.stream.Collectors.toList;
 
-public class HazelcastDistributor extends Configurable<DistributorConfig> implements Distributor {
+public class HazelcastDistributor extends Configurable<DistributorConfig> implements AsyncDistributor {
     static final byte[] EMPTY_CHECKSUM = new byte[0];
     private final IMap<SyncPath, byte[]> checksums;
+    private final IMap<String, SyncPath> blobs;
     private final LockManager lockManager;
     private final RequestDistributor requestDistributor;
+    private final ResponseDispatcher responseDispatcher;
     private final Set<MessageListenerRegistration> listenerRegistrations;
+    private volatile ServiceRegistration<Distributor> blockingRegistration;
 
     @Inject
     HazelcastDistributor(final IMap<SyncPath, byte[]> pChecksums,
+                         final IMap<String, SyncPath> pBlobs,
                          final LockManager pLockManager,
                          final RequestDistributor pRequestDistributor,
+                         final ResponseDispatcher pResponseDispatcher,
                          final Set<MessageListenerRegistration> pListenerRegistrations) {
         checksums = pChecksums;
+        blobs = pBlobs;
         lockManager = pLockManager;
         requestDistributor = pRequestDistributor;
+        responseDispatcher = pResponseDispatcher;
         listenerRegistrations = pListenerRegistrations;
     }
 
+    /**
+     * Sets the registration of the blocking {@link Distributor} adapter (see {@link BlockingDistributor}) which
+     * delegates to this object. The registration will be unregistered when this distributor is closed.
+     *
+     * @param pBlockingRegistration Registration, must not be {@code null}
+     */
+    public void setBlockingRegistration(final ServiceRegistration<Distributor> pBlockingRegistration) {
+        blockingRegistration = pBlockingRegistration;
+    }
+
     @Override
-    public boolean tryLock(final SyncPath pPath) throws LockException {
+    public CompletableFuture<Boolean> tryLock(final SyncPath pPath) {
         return lockManager.tryLock(requireNonNull(pPath, "path is null"));
     }
 
     @Override
-    public void unlock(final SyncPath pPath) throws UnlockException {
-        lockManager.unlock(requireNonNull(pPath, "path is null"));
+    public CompletableFuture<Void> unlock(final SyncPath pPath) {
+        return lockManager.unlock(requireNonNull(pPath, "path is null"));
+    }
+
+    private static Collection<SyncPath> requireNonEmpty(final Collection<SyncPath> pPaths) {
+        if (requireNonNull(pPaths, "paths is null").isEmpty()) {
+            throw new IllegalArgumentException("At least one path must be specified");
+        }
+        return pPaths;
     }
 
     @Override
-    public void delete(final SyncPath pPath) throws DeletionException {
-        requestDistributor.delete(requireNonNull(pPath, "path is null"));
+    public CompletableFuture<Boolean> tryLockAll(final Collection<SyncPath> pPaths) {
+        return lockManager.tryLockAll(requireNonEmpty(pPaths));
     }
 
     @Override
-    public void transfer(final SyncPath pPath, final ByteBuffer pData) throws TransferException {
-        requestDistributor.transfer(requireNonNull(pPath, "path is null"),
+    public CompletableFuture<Void> unlockAll(final Collection<SyncPath> pPaths) {
+        return lockManager.unlockAll(requireNonEmpty(pPaths));
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(final SyncPath pPath) {
+        return requestDistributor.delete(requireNonNull(pPath, "path is null"));
+    }
+
+    @Override
+    public CompletableFuture<Void> transfer(final SyncPath pPath, final ByteBuffer pData) {
+        return requestDistributor.transfer(requireNonNull(pPath, "path is null"),
                 requireNonNull(pData, "buffer is null"));
     }
 
     @Override
-    public void discard(final SyncPath pPath, final IOException pFailure) throws DiscardException {
-        requestDistributor.discard(requireNonNull(pPath, "path is null"),
+    public CompletableFuture<Collection<BlockSignature>> getSignatures(final SyncPath pPath, final int pBlockSize) {
+        if (pBlockSize <= 0) {
+            throw new IllegalArgumentException("Block-size must be greater than zero");
+        }
+        return requestDistributor.getSignatures(requireNonNull(pPath, "path is null"), pBlockSize);
+    }
+
+    @Override
+    public CompletableFuture<Void> copy(final SyncPath pPath, final long pOffset, final int pLength) {
+        return requestDistributor.copy(requireNonNull(pPath, "path is null"), pOffset, pLength);
+    }
+
+    private static String blobKey(final byte[] pChecksum) {
+        return Base64.getEncoder().encodeToString(pChecksum);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> duplicate(final SyncPath pPath, final byte[] pChecksum) {
+        requireNonNull(pPath, "path is null");
+        requireNonNull(pChecksum, "checksum is null");
+
+        // The blob index is only a hint; the targets verify the content of the source before they use it
+        return toCompletableFuture(blobs.getAsync(blobKey(pChecksum))).thenCompose(source -> {
+            if (source == null || source.equals(pPath)) {
+                return completedFuture(false);
+            }
+            return requestDistributor.duplicate(pPath, source, pChecksum).thenApply(v -> true);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Collection<Chunk>> getKnownChunks(final SyncPath pPath, final Collection<Chunk> pChunks) {
+        return requestDistributor.getKnownChunks(requireNonNull(pPath, "path is null"),
+                requireNonNull(pChunks, "chunks is null"));
+    }
+
+    @Override
+    public CompletableFuture<Void> transferChunk(final SyncPath pPath, final Chunk pChunk, final ByteBuffer pData) {
+        return requestDistributor.transferChunk(requireNonNull(pPath, "path is null"),
+                requireNonNull(pChunk, "chunk is null"), requireNonNull(pData, "buffer is null"));
+    }
+
+    @Override
+    public CompletableFuture<Void> copyChunk(final SyncPath pPath, final Chunk pChunk) {
+        return requestDistributor.copyChunk(requireNonNull(pPath, "path is null"),
+                requireNonNull(pChunk, "chunk is null"));
+    }
+
+    @Override
+    public CompletableFuture<Void> discard(final SyncPath pPath, final IOException pFailure) {
+        return requestDistributor.discard(requireNonNull(pPath, "path is null"),
                 requireNonNull(pFailure, "failure is null"));
     }
 
     @Override
-    public void store(final SyncPath pPath, final byte[] pChecksum) throws StoreException {
+    public CompletableFuture<Void> store(final SyncPath pPath, final byte[] pChecksum) {
         requireNonNull(pChecksum, "checksum is null");
-        requestDistributor.store(requireNonNull(pPath, "path is null"));
 
         // Do only update the checksum when the store operation was successful
-        checksums.put(pPath, pChecksum);
+        return requestDistributor.store(requireNonNull(pPath, "path is null")).thenCompose(v ->
+                updateChecksum(pPath, pChecksum));
+    }
+
+    private CompletableFuture<Void> updateChecksum(final SyncPath pPath, final byte[] pChecksum) {
+        return allOf(toCompletableFuture(checksums.setAsync(pPath, pChecksum)),
+                toCompletableFuture(blobs.setAsync(blobKey(pChecksum), pPath)));
+    }
+
+    private CompletableFuture<Void> updateChecksums(final Collection<BatchFile> pFiles) {
+        return allOf(pFiles.stream().map(f -> updateChecksum(f.getPath(), f.getChecksum())).
+                toArray(CompletableFuture<?>[]::new));
+    }
+
+    @Override
+    public CompletableFuture<Void> batch(final Collection<BatchFile> pFiles) {
+        if (requireNonNull(pFiles, "files is null").isEmpty()) {
+            throw new IllegalArgumentException("Batch must contain at least one file");
+        }
+        final List<SyncPath> paths = pFiles.stream().map(BatchFile::getPath).collect(toList());
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        lockManager.acquireGlobalLocks(paths).whenComplete((v, e) -> {
+            if (e != null) {
+                result.completeExceptionally(unwrap(e));
+                return;
+            }
+
+            // Do only update the checksums when all files have been stored on all nodes
+            final CompletableFuture<Void> stored = requestDistributor.batch(pFiles).thenCompose(v2 ->
+                    updateChecksums(pFiles));
+            stored.whenComplete((v2, e2) -> releaseGlobalLocks(paths, result, e2));
+        });
+        return result;
+    }
+
+    private void releaseGlobalLocks(final List<SyncPath> pPaths,
+                                    final CompletableFuture<Void> pResult,
+                                    final Throwable pFailureOrNull) {
+        lockManager.releaseGlobalLocks(pPaths).whenComplete((v, e) -> {
+            if (pFailureOrNull != null) {
+                pResult.completeExceptionally(unwrap(pFailureOrNull));
+            } else if (e != null) {
+                pResult.completeExceptionally(unwrap(e));
+            } else {
+                pResult.complete(null);
+            }
+        });
     }
 
     @Override
-    public byte[] getChecksum(final SyncPath pPath) {
-        final byte[] checksum = checksums.get(requireNonNull(pPath, "path is null"));
-        return checksum == null ? EMPTY_CHECKSUM : checksum;
+    public CompletableFuture<byte[]> getChecksum(final SyncPath pPath) {
+        return toCompletableFuture(checksums.getAsync(requireNonNull(pPath, "path is null"))).thenApply(
+                checksum -> checksum == null ? EMPTY_CHECKSUM : checksum);
     }
 
     @Override
     public void close() {
-        super.close();
-        listenerRegistrations.forEach(r -> r.close());
-        lockManager.close();
+        try {
+            super.close();
+        } finally {
+            if (blockingRegistration != null) {
+                blockingRegistration.unregister();
+            }
+            listenerRegistrations.forEach(r -> r.close());
+            responseDispatcher.close();
+            lockManager.close();
+        }
     }
 }
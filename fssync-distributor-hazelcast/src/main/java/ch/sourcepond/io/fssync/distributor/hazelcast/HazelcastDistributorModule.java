@@ -15,6 +15,7 @@ package ch.sourcepond.io.fssync.distributor.hazelcast;
 
 import ch.sourcepond.io.fssync.common.api.SyncPath;
 import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Delete;
+import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.DirectTransfer;
 import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Discard;
 import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Lock;
 import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Response;
@@ -25,6 +26,7 @@ import ch.sourcepond.io.fssync.distributor.hazelcast.common.CommonModule;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.MessageListenerRegistration;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.StatusMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.compression.Codecs;
 import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
 import ch.sourcepond.io.fssync.distributor.hazelcast.lock.LockModule;
 import ch.sourcepond.io.fssync.distributor.hazelcast.request.RequestModule;
@@ -37,6 +39,7 @@ import com.google.inject.Provides;
 import com.google.inject.multibindings.Multibinder;
 import com.hazelcast.config.Config;
 import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IExecutorService;
 import com.hazelcast.core.IMap;
 import com.hazelcast.core.ITopic;
 
@@ -48,20 +51,25 @@ import static com.hazelcast.core.Hazelcast.newHazelcastInstance;
 
 public class HazelcastDistributorModule extends AbstractModule {
     static final String MAP_NAME = "checksum";
+    static final String BLOB_MAP_NAME = "blobs";
     private final DistributorConfig config;
     private final Config hazelcastConfig;
     private final SyncTarget compoundSyncTarget;
+    private final Codecs codecs;
 
-    public HazelcastDistributorModule(final DistributorConfig pConfig, final Config pHazelcastConfig, final SyncTarget pCompoundSyncTarget) {
+    public HazelcastDistributorModule(final DistributorConfig pConfig, final Config pHazelcastConfig,
+                                      final SyncTarget pCompoundSyncTarget, final Codecs pCodecs) {
         config = pConfig;
         hazelcastConfig = pHazelcastConfig;
         compoundSyncTarget = pCompoundSyncTarget;
+        codecs = pCodecs;
     }
 
     @Override
     protected void configure() {
         bind(DistributorConfig.class).toInstance(config);
         bind(SyncTarget.class).toInstance(compoundSyncTarget);
+        bind(Codecs.class).toInstance(codecs);
         install(new CommonModule());
         install(new LockModule());
         install(new RequestModule());
@@ -72,8 +80,10 @@ public class HazelcastDistributorModule extends AbstractModule {
         registrations.addBinding().to(get(MessageListenerRegistration.class, Unlock.class));
         registrations.addBinding().to(get(MessageListenerRegistration.class, Delete.class));
         registrations.addBinding().to(get(MessageListenerRegistration.class, Transfer.class));
+        registrations.addBinding().to(get(MessageListenerRegistration.class, DirectTransfer.class));
         registrations.addBinding().to(get(MessageListenerRegistration.class, Discard.class));
         registrations.addBinding().to(get(MessageListenerRegistration.class, Store.class));
+        registrations.addBinding().to(get(MessageListenerRegistration.class, Response.class));
 
         bind(HazelcastDistributor.class);
     }
@@ -102,7 +112,15 @@ public class HazelcastDistributorModule extends AbstractModule {
     @Singleton
     @Transfer
     ITopic<TransferRequest> transferRequestTopic(final HazelcastInstance pHci) {
-        return pHci.getTopic(Transfer.NAME);
+        // File content is buffered in a Ringbuffer which is bounded by TopicConfig#capacityBytes
+        return pHci.getReliableTopic(Transfer.NAME);
+    }
+
+    @Provides
+    @Singleton
+    @DirectTransfer
+    IExecutorService directTransferExecutor(final HazelcastInstance pHci) {
+        return pHci.getExecutorService(DirectTransfer.NAME);
     }
 
     @Provides
@@ -138,4 +156,10 @@ public class HazelcastDistributorModule extends AbstractModule {
     IMap<SyncPath, byte[]> checksumMap(final HazelcastInstance pHci) {
         return pHci.getMap(MAP_NAME);
     }
+
+    @Provides
+    @Singleton
+    IMap<String, SyncPath> blobMap(final HazelcastInstance pHci) {
+        return pHci.getMap(BLOB_MAP_NAME);
+    }
 }
@@ -18,25 +18,28 @@ import ch.sourcepond.io.fssync.target.api.NodeInfo;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.ITopic;
 import com.hazelcast.core.Message;
-import com.hazelcast.core.MessageListener;
+import com.hazelcast.topic.ReliableMessageListener;
 import org.slf4j.Logger;
 
 import java.io.IOException;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
-final class ClientMessageListener<T extends DistributionMessage> implements MessageListener<T> {
+final class ClientMessageListener<T extends DistributionMessage> implements ReliableMessageListener<T> {
     private static final Logger LOG = getLogger(ClientMessageListener.class);
     private final HazelcastInstance hci;
     private final ClientMessageProcessor<T> processor;
     private final ITopic<StatusMessage> sendResponseTopic;
+    private final TargetLocks targetLocksOrNull;
 
     public ClientMessageListener(final HazelcastInstance pHci,
                                  final ClientMessageProcessor<T> pProcessor,
-                                 final ITopic<StatusMessage> pSendResponseTopic) {
+                                 final ITopic<StatusMessage> pSendResponseTopic,
+                                 final TargetLocks pTargetLocksOrNull) {
         hci = pHci;
         processor = pProcessor;
         sendResponseTopic = pSendResponseTopic;
+        targetLocksOrNull = pTargetLocksOrNull;
     }
 
     @Override
@@ -46,11 +49,36 @@ final class ClientMessageListener<T extends DistributionMessage> implements Mess
         final SyncPath syncPath = payload.getPath();
 
         try {
-            processor.processMessage(nodeInfo, syncPath, payload);
-            sendResponseTopic.publish(new StatusMessage(syncPath));
+            if (targetLocksOrNull != null && processor.requiresLock(payload)) {
+                targetLocksOrNull.lock(nodeInfo, syncPath);
+            }
+            sendResponseTopic.publish(processor.process(nodeInfo, syncPath, payload));
         } catch (final IOException e) {
             LOG.error(e.getMessage(), e);
-            sendResponseTopic.publish(new StatusMessage(syncPath, e));
+            sendResponseTopic.publish(new StatusMessage(payload.getRequestId(), syncPath, e));
         }
     }
+
+    @Override
+    public long retrieveInitialSequence() {
+        // Start with the next message published
+        return -1;
+    }
+
+    @Override
+    public void storeSequence(final long sequence) {
+        // noop
+    }
+
+    @Override
+    public boolean isLossTolerant() {
+        // Messages overwritten before they could be read are not answered; their senders run into the response
+        // timeout instead of this listener being terminated.
+        return true;
+    }
+
+    @Override
+    public boolean isTerminal(final Throwable failure) {
+        return false;
+    }
 }
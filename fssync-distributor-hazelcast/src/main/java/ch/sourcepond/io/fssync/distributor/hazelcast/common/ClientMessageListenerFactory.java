@@ -14,6 +14,7 @@ limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast.common;
 
 import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Response;
+import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.ITopic;
 import com.hazelcast.core.MessageListener;
@@ -21,17 +22,47 @@ import com.hazelcast.core.MessageListener;
 import javax.inject.Inject;
 import java.io.Serializable;
 
+import static java.lang.Math.max;
+
 public class ClientMessageListenerFactory {
     private final HazelcastInstance hci;
     private final ITopic<StatusMessage> responseTopic;
+    private final DistributorConfig config;
+    private final TargetLocks targetLocks;
 
     @Inject
-    ClientMessageListenerFactory(final HazelcastInstance pHci, @Response final ITopic<StatusMessage> pResponseTopic) {
+    ClientMessageListenerFactory(final HazelcastInstance pHci,
+                                 @Response final ITopic<StatusMessage> pResponseTopic,
+                                 final DistributorConfig pConfig,
+                                 final TargetLocks pTargetLocks) {
         hci = pHci;
         responseTopic = pResponseTopic;
+        config = pConfig;
+        targetLocks = pTargetLocks;
     }
 
     public <T extends DistributionMessage> MessageListener<T> createListener(final ClientMessageProcessor<T> pProcessor) {
-        return new ClientMessageListener<>(hci, pProcessor, responseTopic);
+        return new ClientMessageListener<>(hci, pProcessor, responseTopic, null);
+    }
+
+    /**
+     * Creates a listener for requests which operate on a locked path. If paths are locked through leases (see
+     * {@link DistributorConfig#leaseLocks()}), the listener locks the path on the local target before the request
+     * is processed.
+     */
+    public <T extends DistributionMessage> MessageListener<T> createLockingListener(final ClientMessageProcessor<T> pProcessor) {
+        return new ClientMessageListener<>(hci, pProcessor, responseTopic, config.leaseLocks() ? targetLocks : null);
+    }
+
+    /**
+     * Creates a receiver for the direct messages of a stream (see {@link DistributorConfig#directTransfer()}). Like
+     * the listener created by {@link #createLockingListener(ClientMessageProcessor)}, the receiver locks the path on
+     * the local target if paths are locked through leases.
+     */
+    public <T extends DistributionMessage> DirectMessageReceiver<T> createReceiver(final ClientMessageProcessor<T> pProcessor) {
+        // Senders give up on their messages after the response timeout; lagging members are granted a longer one
+        final long expiryNanos = (long) (config.responseTimeoutUnit().toNanos(config.responseTimeout()) *
+                max(1, config.laggingFactor()));
+        return new DirectMessageReceiver<>(hci, pProcessor, responseTopic, config.leaseLocks() ? targetLocks : null, expiryNanos);
     }
 }
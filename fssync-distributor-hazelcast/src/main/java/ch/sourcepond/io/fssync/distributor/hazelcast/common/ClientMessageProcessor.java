@@ -26,5 +26,22 @@ public abstract class ClientMessageProcessor<T extends DistributionMessage> {
         syncTarget = pSyncTarget;
     }
 
+    /**
+     * Processes the message specified and creates the response which is sent back to the requesting node. Processors
+     * which need to answer with additional data override this method.
+     */
+    protected StatusMessage process(final NodeInfo pNodeInfo, final SyncPath pPath, final T pPayload) throws IOException {
+        processMessage(pNodeInfo, pPath, pPayload);
+        return new StatusMessage(pPayload.getRequestId(), pPath, null);
+    }
+
+    /**
+     * Returns whether the path of the payload specified must be locked before the payload is processed (see
+     * {@link TargetLocks}). Processors which lock the paths of a payload themselves override this method.
+     */
+    protected boolean requiresLock(final T pPayload) {
+        return true;
+    }
+
     protected abstract void processMessage(NodeInfo pNodeInfo, SyncPath pPath, T pPayload) throws IOException;
 }
@@ -15,10 +15,13 @@ package ch.sourcepond.io.fssync.distributor.hazelcast.common;
 
 import com.google.inject.AbstractModule;
 
+import javax.inject.Singleton;
+
 public class CommonModule extends AbstractModule {
 
     @Override
     protected void configure() {
         bind(ClientMessageListenerFactory.class);
+        bind(TargetLocks.class).in(Singleton.class);
     }
 }
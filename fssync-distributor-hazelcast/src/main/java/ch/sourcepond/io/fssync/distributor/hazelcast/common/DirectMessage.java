@@ -0,0 +1,89 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.common;
+
+import ch.sourcepond.io.fssync.distributor.hazelcast.exception.TransferException;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceAware;
+
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+
+import static java.lang.String.format;
+
+/**
+ * Task which carries a {@link DistributionMessage} point-to-point to a member. When executed on the member, the
+ * message is passed to the {@link DirectMessageReceiver} registered under the receiver name in the user context of
+ * the member (see {@link MessageListenerRegistration#register(HazelcastInstance, String, DirectMessageReceiver)}).
+ * The answer of the receiver is the result of the task, or {@code null} if the receiver publishes the answer on the
+ * response topic once the message has been applied.
+ */
+public class DirectMessage implements Callable<StatusMessage>, HazelcastInstanceAware, Serializable {
+    private final String receiverName;
+    private final String sender;
+    private final long stream;
+    private final long sequence;
+    private final DistributionMessage message;
+    private transient HazelcastInstance hci;
+
+    /**
+     * @param pReceiverName Name of the receiver in the user context of the members
+     * @param pSender Uuid of the sending member
+     * @param pStream Number of the stream this message belongs to; streams of a sender are numbered ascending
+     * @param pSequence Position of this message within its stream, starting at 0
+     * @param pMessage Message to be processed by the receivers
+     */
+    public DirectMessage(final String pReceiverName,
+                         final String pSender,
+                         final long pStream,
+                         final long pSequence,
+                         final DistributionMessage pMessage) {
+        receiverName = pReceiverName;
+        sender = pSender;
+        stream = pStream;
+        sequence = pSequence;
+        message = pMessage;
+    }
+
+    @Override
+    public void setHazelcastInstance(final HazelcastInstance pHci) {
+        hci = pHci;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public long getStream() {
+        return stream;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public DistributionMessage getMessage() {
+        return message;
+    }
+
+    @Override
+    public StatusMessage call() {
+        final Object receiver = hci.getUserContext().get(receiverName);
+        if (receiver instanceof DirectMessageReceiver) {
+            return ((DirectMessageReceiver<?>) receiver).receive(this);
+        }
+        return new StatusMessage(message.getRequestId(), message.getPath(), new TransferException(
+                format("No receiver %s registered for %s!", receiverName, message.getPath()), null));
+    }
+}
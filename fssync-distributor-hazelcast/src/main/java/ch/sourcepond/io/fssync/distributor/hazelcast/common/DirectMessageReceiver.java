@@ -0,0 +1,311 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.common;
+
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.hazelcast.exception.TransferException;
+import ch.sourcepond.io.fssync.target.api.NodeInfo;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.MemberAttributeEvent;
+import com.hazelcast.core.MembershipEvent;
+import com.hazelcast.core.MembershipListener;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.String.format;
+import static java.lang.System.nanoTime;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Receives the {@link DirectMessage} instances sent to this member and passes their payloads to a
+ * {@link ClientMessageProcessor}. Direct messages are executed concurrently, so they can arrive in any order. The
+ * receiver restores the order of every stream: a message which arrives before its predecessors is buffered and
+ * processed as soon as the gap has been closed. A buffered message is not answered by its task; its answer is
+ * published on the response topic as soon as it has been applied. If a message fails, all further messages of the
+ * stream are answered with the same failure. Once a path has been stored or discarded, late messages of its streams
+ * are rejected.
+ *
+ * <p>Senders give up on their messages after the response timeout. Streams which did not receive any message for
+ * that long, and the markers of finished streams, are dropped; the state kept for a sender is dropped as soon as it
+ * has left the cluster.
+ */
+public class DirectMessageReceiver<T extends DistributionMessage> implements MembershipListener {
+    private static final Logger LOG = getLogger(DirectMessageReceiver.class);
+    private final ConcurrentMap<SyncPath, Stream> streams = new ConcurrentHashMap<>();
+
+    // Highest stream number received from every sender; the streams of a sender are numbered ascending
+    private final ConcurrentMap<String, Long> latestStreams = new ConcurrentHashMap<>();
+    private final AtomicLong nextExpiry = new AtomicLong(nanoTime());
+    private final HazelcastInstance hci;
+    private final ClientMessageProcessor<T> processor;
+    private final ITopic<StatusMessage> responseTopic;
+    private final TargetLocks targetLocksOrNull;
+    private final long expiryNanos;
+
+    DirectMessageReceiver(final HazelcastInstance pHci,
+                          final ClientMessageProcessor<T> pProcessor,
+                          final ITopic<StatusMessage> pResponseTopic,
+                          final TargetLocks pTargetLocksOrNull,
+                          final long pExpiryNanos) {
+        hci = pHci;
+        processor = pProcessor;
+        responseTopic = pResponseTopic;
+        targetLocksOrNull = pTargetLocksOrNull;
+        expiryNanos = pExpiryNanos;
+    }
+
+    private static final class Stream {
+        private final SortedMap<Long, DirectMessage> pending = new TreeMap<>();
+        private final String sender;
+        private final long number;
+        private final boolean finished;
+        private volatile long lastActivity = nanoTime();
+        private long next;
+        private boolean processing;
+        private boolean superseded;
+        private IOException failureOrNull;
+
+        private Stream(final String pSender, final long pNumber, final boolean pFinished) {
+            sender = pSender;
+            number = pNumber;
+            finished = pFinished;
+        }
+
+        private boolean isOlderThan(final DirectMessage pMessage) {
+            // A new sender takes over the path when it has acquired the lock
+            return !sender.equals(pMessage.getSender()) || number < pMessage.getStream();
+        }
+
+        private boolean isExpired(final long pNow, final long pExpiryNanos) {
+            return pNow - lastActivity > pExpiryNanos;
+        }
+
+        /**
+         * Removes the next message in order from the pending messages. The caller becomes responsible for
+         * processing the stream if there is such a message, and must call this method again after the message
+         * has been processed. Must be called while holding the monitor of this stream.
+         */
+        private DirectMessage pollNext() {
+            final DirectMessage nextOrNull = superseded || pending.isEmpty() || pending.firstKey() != next ?
+                    null : pending.remove(next++);
+            processing = nextOrNull != null;
+            return nextOrNull;
+        }
+
+        /**
+         * Removes all pending messages. Must be called while holding the monitor of this stream.
+         */
+        private List<DirectMessage> drainPending() {
+            final List<DirectMessage> drained = new ArrayList<>(pending.values());
+            pending.clear();
+            return drained;
+        }
+    }
+
+    private static StatusMessage failure(final DirectMessage pMessage, final IOException pFailure) {
+        final DistributionMessage payload = pMessage.getMessage();
+        return new StatusMessage(payload.getRequestId(), payload.getPath(), pFailure);
+    }
+
+    private void supersede(final Stream pStream, final SyncPath pPath, final String pReason) {
+        final List<DirectMessage> rejected;
+        synchronized (pStream) {
+            pStream.superseded = true;
+            rejected = pStream.drainPending();
+        }
+        final IOException failure = new TransferException(format("Stream %d of %s has %s!", pStream.number, pPath, pReason), null);
+        rejected.forEach(m -> responseTopic.publish(failure(m, failure)));
+    }
+
+    private void expire() {
+        final long now = nanoTime();
+        final long due = nextExpiry.get();
+
+        // Streams are checked at most once per expiry period
+        if (now - due >= 0 && nextExpiry.compareAndSet(due, now + expiryNanos)) {
+            streams.forEach((path, stream) -> {
+                if (stream.isExpired(now, expiryNanos) && streams.remove(path, stream) && !stream.finished) {
+                    supersede(stream, path, "expired");
+                }
+            });
+        }
+    }
+
+    private Stream getStream(final SyncPath pPath, final DirectMessage pMessage) {
+        expire();
+        latestStreams.merge(pMessage.getSender(), pMessage.getStream(), Math::max);
+        final List<Stream> superseded = new ArrayList<>(1);
+        final Stream stream = streams.compute(pPath, (p, current) -> {
+            if (current == null || current.isOlderThan(pMessage)) {
+                if (current != null) {
+                    superseded.add(current);
+                }
+                return new Stream(pMessage.getSender(), pMessage.getStream(), false);
+            }
+            return current;
+        });
+        superseded.forEach(s -> supersede(s, pPath, "been superseded"));
+        return stream;
+    }
+
+    @SuppressWarnings("unchecked")
+    private StatusMessage process(final DirectMessage pMessage) {
+        final NodeInfo nodeInfo = new NodeInfo(pMessage.getSender(), hci.getLocalEndpoint().getUuid());
+        final T payload = (T) pMessage.getMessage();
+        final SyncPath syncPath = payload.getPath();
+
+        try {
+            if (targetLocksOrNull != null && processor.requiresLock(payload)) {
+                targetLocksOrNull.lock(nodeInfo, syncPath);
+            }
+            return processor.process(nodeInfo, syncPath, payload);
+        } catch (final IOException e) {
+            LOG.error(e.getMessage(), e);
+            return new StatusMessage(payload.getRequestId(), syncPath, e);
+        }
+    }
+
+    private static StatusMessage rejectOrNull(final Stream pStream, final DirectMessage pMessage, final SyncPath pPath) {
+        if (pStream.finished) {
+            return failure(pMessage, new TransferException(format("Stream %d of %s has already been finished!",
+                    pMessage.getStream(), pPath), null));
+        }
+        if (pStream.superseded || pStream.number != pMessage.getStream() || !pStream.sender.equals(pMessage.getSender())) {
+            return failure(pMessage, new TransferException(format("Stream %d of %s has been superseded!",
+                    pMessage.getStream(), pPath), null));
+        }
+        if (pStream.failureOrNull != null) {
+            return failure(pMessage, pStream.failureOrNull);
+        }
+        if (pMessage.getSequence() < pStream.next || pStream.pending.containsKey(pMessage.getSequence())) {
+            return failure(pMessage, new TransferException(format(
+                    "Message %d of stream %d of %s has already been received!",
+                    pMessage.getSequence(), pMessage.getStream(), pPath), null));
+        }
+        return null;
+    }
+
+    /**
+     * Receives the message specified. Returns the answer of the message, or {@code null} if the message has been
+     * buffered; in this case, the answer is published on the response topic later. Only one thread at a time
+     * processes the messages of a stream; messages are not processed and answers are not published while the
+     * monitor of the stream is held.
+     */
+    StatusMessage receive(final DirectMessage pMessage) {
+        final SyncPath syncPath = pMessage.getMessage().getPath();
+        final Stream stream = getStream(syncPath, pMessage);
+
+        DirectMessage next;
+        synchronized (stream) {
+            final StatusMessage rejected = rejectOrNull(stream, pMessage, syncPath);
+            if (rejected != null) {
+                return rejected;
+            }
+            stream.lastActivity = nanoTime();
+            stream.pending.put(pMessage.getSequence(), pMessage);
+            if (stream.processing) {
+                // The thread which currently processes the stream applies the message
+                return null;
+            }
+            next = stream.pollNext();
+        }
+
+        StatusMessage answer = null;
+        try {
+            while (next != null) {
+                final DirectMessage current = next;
+                final StatusMessage status = process(current);
+                final List<DirectMessage> failed;
+                synchronized (stream) {
+                    if (status.getFailureOrNull() == null) {
+                        failed = new ArrayList<>(0);
+                    } else {
+                        stream.failureOrNull = status.getFailureOrNull();
+                        failed = stream.drainPending();
+                    }
+                    stream.lastActivity = nanoTime();
+                    next = stream.pollNext();
+                }
+
+                if (current == pMessage) {
+                    answer = status;
+                } else {
+                    responseTopic.publish(status);
+                }
+                for (final DirectMessage message : failed) {
+                    if (message == pMessage) {
+                        answer = failure(message, status.getFailureOrNull());
+                    } else {
+                        responseTopic.publish(failure(message, status.getFailureOrNull()));
+                    }
+                }
+            }
+        } finally {
+            if (next != null) {
+                synchronized (stream) {
+                    stream.processing = false;
+                }
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Finishes the stream of the path specified. Must be called as soon as the path has been stored or discarded.
+     * Messages of the streams received so far from the sender specified are rejected afterwards; a later stream
+     * of the sender takes over the path again.
+     *
+     * @param pNodeInfo Node info of the storing or discarding request, must not be {@code null}
+     * @param pPath     Path, must not be {@code null}
+     */
+    public void finished(final NodeInfo pNodeInfo, final SyncPath pPath) {
+        expire();
+        final Long latest = latestStreams.get(pNodeInfo.getSender());
+        final Stream previous = latest == null ? streams.remove(pPath) :
+                streams.put(pPath, new Stream(pNodeInfo.getSender(), latest, true));
+        if (previous != null && !previous.finished) {
+            supersede(previous, pPath, "already been finished");
+        }
+    }
+
+    @Override
+    public void memberAdded(final MembershipEvent membershipEvent) {
+        // noop
+    }
+
+    @Override
+    public void memberRemoved(final MembershipEvent membershipEvent) {
+        final String sender = membershipEvent.getMember().getUuid();
+        latestStreams.remove(sender);
+        streams.forEach((path, stream) -> {
+            if (stream.sender.equals(sender) && streams.remove(path, stream) && !stream.finished) {
+                supersede(stream, path, "lost its sender");
+            }
+        });
+    }
+
+    @Override
+    public void memberAttributeChanged(final MemberAttributeEvent memberAttributeEvent) {
+        // noop
+    }
+}
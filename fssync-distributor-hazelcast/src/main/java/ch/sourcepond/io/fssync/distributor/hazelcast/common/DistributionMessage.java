@@ -16,14 +16,40 @@ package ch.sourcepond.io.fssync.distributor.hazelcast.common;
 import ch.sourcepond.io.fssync.common.api.SyncPath;
 
 import java.io.Serializable;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.util.concurrent.ThreadLocalRandom.current;
 
 public class DistributionMessage implements Serializable {
+    private final String requestId;
     private final SyncPath path;
 
     public DistributionMessage(final SyncPath pPath) {
+        this(newRequestId(), pPath);
+    }
+
+    public DistributionMessage(final String pRequestId, final SyncPath pPath) {
+        requestId = pRequestId;
         path = pPath;
     }
 
+    private static String newRequestId() {
+        final ThreadLocalRandom random = current();
+        return new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+
+    /**
+     * Returns the correlation id of this message. For a request, this is a unique id which has been generated when
+     * the request was created. For a response (see {@link StatusMessage}), this is the id of the request which is
+     * being answered.
+     *
+     * @return Request id, never {@code null}
+     */
+    public String getRequestId() {
+        return requestId;
+    }
+
     public SyncPath getPath() {
         return path;
     }
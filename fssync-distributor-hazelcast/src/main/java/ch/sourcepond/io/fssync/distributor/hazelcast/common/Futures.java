@@ -0,0 +1,106 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.common;
+
+import com.hazelcast.core.ExecutionCallback;
+import com.hazelcast.core.ICompletableFuture;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Helper methods to compose the {@link CompletableFuture} instances used by the distributor.
+ */
+public final class Futures {
+
+    private Futures() {
+        // No instances
+    }
+
+    /**
+     * Returns the original cause of the failure specified, i.e. strips off any {@link CompletionException} or
+     * {@link ExecutionException} which has been added while the failure passed through dependent stages.
+     *
+     * @param pFailure Failure, must not be {@code null}
+     * @return Original cause, never {@code null}
+     */
+    public static Throwable unwrap(final Throwable pFailure) {
+        Throwable failure = pFailure;
+        while ((failure instanceof CompletionException || failure instanceof ExecutionException) && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        return failure;
+    }
+
+    /**
+     * Returns a new future which has already been completed exceptionally with the failure specified.
+     *
+     * @param pFailure Failure, must not be {@code null}
+     * @param <T>      Type of the result
+     * @return New future, never {@code null}
+     */
+    public static <T> CompletableFuture<T> failed(final Throwable pFailure) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(pFailure);
+        return future;
+    }
+
+    /**
+     * Returns a new future which is completed with the result of the future specified. If the future specified
+     * completes exceptionally, the new future is completed with the failure created by the mapper specified. The
+     * mapper receives the unwrapped failure (see {@link #unwrap(Throwable)}).
+     *
+     * @param pFuture Future to be observed, must not be {@code null}
+     * @param pMapper Function which creates the failure to be reported, must not be {@code null}
+     * @param <T>     Type of the result
+     * @return New future, never {@code null}
+     */
+    public static <T> CompletableFuture<T> mapFailure(final CompletableFuture<T> pFuture,
+                                                      final Function<Throwable, ? extends Throwable> pMapper) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        pFuture.whenComplete((v, e) -> {
+            if (e == null) {
+                result.complete(v);
+            } else {
+                result.completeExceptionally(pMapper.apply(unwrap(e)));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Adapts the Hazelcast future specified to a {@link CompletableFuture}.
+     *
+     * @param pFuture Hazelcast future, must not be {@code null}
+     * @param <T>     Type of the result
+     * @return New future, never {@code null}
+     */
+    public static <T> CompletableFuture<T> toCompletableFuture(final ICompletableFuture<T> pFuture) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        pFuture.andThen(new ExecutionCallback<T>() {
+            @Override
+            public void onResponse(final T pResponse) {
+                result.complete(pResponse);
+            }
+
+            @Override
+            public void onFailure(final Throwable pFailure) {
+                result.completeExceptionally(pFailure);
+            }
+        });
+        return result;
+    }
+}
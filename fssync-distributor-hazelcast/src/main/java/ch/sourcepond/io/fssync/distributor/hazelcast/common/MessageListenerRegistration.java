@@ -13,23 +13,34 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast.common;
 
+import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.ITopic;
 import com.hazelcast.core.MessageListener;
 
 public class MessageListenerRegistration {
-    private final String registrationId;
-    private final ITopic<?> topic;
+    private final Runnable unregistration;
 
-    private MessageListenerRegistration(final String pRegistrationId, final ITopic<?> pTopic) {
-        registrationId = pRegistrationId;
-        topic = pTopic;
+    private MessageListenerRegistration(final Runnable pUnregistration) {
+        unregistration = pUnregistration;
     }
 
     public void close() {
-        topic.removeMessageListener(registrationId);
+        unregistration.run();
     }
 
     public static <T> MessageListenerRegistration register(final ITopic<T> pTopic, final MessageListener<T> pListener) {
-        return new MessageListenerRegistration(pTopic.addMessageListener(pListener), pTopic);
+        final String registrationId = pTopic.addMessageListener(pListener);
+        return new MessageListenerRegistration(() -> pTopic.removeMessageListener(registrationId));
+    }
+
+    /**
+     * Registers the receiver specified under the name specified in the user context of the Hazelcast instance, where
+     * it is looked up by the {@link DirectMessage} instances sent to this member.
+     */
+    public static MessageListenerRegistration register(final HazelcastInstance pHci,
+                                                       final String pName,
+                                                       final DirectMessageReceiver<?> pReceiver) {
+        pHci.getUserContext().put(pName, pReceiver);
+        return new MessageListenerRegistration(() -> pHci.getUserContext().remove(pName, pReceiver));
     }
 }
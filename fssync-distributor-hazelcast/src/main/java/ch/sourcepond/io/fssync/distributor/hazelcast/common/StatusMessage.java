@@ -35,6 +35,16 @@ public class StatusMessage extends DistributionMessage {
         failureOrNull = pFailureOrNull;
     }
 
+    /**
+     * @param pRequestId Id of the request which is answered by this message
+     * @param pPath
+     * @param pFailureOrNull
+     */
+    public StatusMessage(final String pRequestId, final SyncPath pPath, final IOException pFailureOrNull) {
+        super(pRequestId, pPath);
+        failureOrNull = pFailureOrNull;
+    }
+
     /**
      * If the acquisition of the {@link java.nio.channels.FileLock} failed on the node, this
      * method returns the thrown {@link IOException}. If the acquisition was successful, this method
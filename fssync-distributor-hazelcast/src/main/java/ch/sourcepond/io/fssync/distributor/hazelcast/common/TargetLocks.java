@@ -0,0 +1,77 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.common;
+
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.target.api.NodeInfo;
+import ch.sourcepond.io.fssync.target.api.SyncTarget;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Locks paths on the local target when the first request for them arrives. This is used when the sender acquired the
+ * global lock of a path through a lease and did not lock the path on the other nodes explicitly (see
+ * {@link ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig#leaseLocks()}). A path stays locked
+ * until the unlock request of its sender arrives. The local target stays the authority on which node holds a path, so
+ * a path which is still recorded for another node is locked again; this succeeds if the target has released the
+ * lock of the other node meanwhile (for instance, because it has been forcibly unlocked).
+ */
+public class TargetLocks {
+    private final ConcurrentMap<SyncPath, NodeInfo> locks = new ConcurrentHashMap<>();
+    private final SyncTarget syncTarget;
+
+    @Inject
+    TargetLocks(final SyncTarget pSyncTarget) {
+        syncTarget = pSyncTarget;
+    }
+
+    private NodeInfo lockTarget(final NodeInfo pNodeInfo, final SyncPath pPath) {
+        try {
+            syncTarget.lock(pNodeInfo, pPath);
+            return pNodeInfo;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Locks the path specified on the local target unless it has already been locked for the node specified.
+     *
+     * @param pNodeInfo Node which sent the request, must not be {@code null}
+     * @param pPath     Path to lock, must not be {@code null}
+     * @throws IOException Thrown, if the path could not be locked on the local target
+     */
+    public void lock(final NodeInfo pNodeInfo, final SyncPath pPath) throws IOException {
+        try {
+            // Requests for the same path may arrive concurrently through different topics
+            locks.compute(pPath, (p, owner) -> pNodeInfo.equals(owner) ? owner : lockTarget(pNodeInfo, p));
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Forgets the lock of the path specified after it has been unlocked on the local target.
+     *
+     * @param pNodeInfo Node which sent the unlock request, must not be {@code null}
+     * @param pPath     Unlocked path, must not be {@code null}
+     */
+    public void unlocked(final NodeInfo pNodeInfo, final SyncPath pPath) {
+        locks.remove(pPath, pNodeInfo);
+    }
+}
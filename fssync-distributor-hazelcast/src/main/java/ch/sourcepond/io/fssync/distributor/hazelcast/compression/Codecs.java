@@ -0,0 +1,57 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.compression;
+
+import ch.sourcepond.io.fssync.distributor.api.CompressionCodec;
+import ch.sourcepond.io.fssync.distributor.hazelcast.exception.TransferException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.lang.String.format;
+
+/**
+ * Registry of the {@link CompressionCodec} instances known to this bundle. The built-in deflate codec is always
+ * available; further codecs are added when they are registered as OSGi services.
+ */
+public class Codecs {
+    private final ConcurrentMap<String, CompressionCodec> codecs = new ConcurrentHashMap<>();
+
+    public Codecs() {
+        add(new DeflateCodec());
+    }
+
+    public void add(final CompressionCodec pCodec) {
+        codecs.put(pCodec.getName(), pCodec);
+    }
+
+    public void remove(final CompressionCodec pCodec) {
+        codecs.remove(pCodec.getName(), pCodec);
+    }
+
+    /**
+     * Returns the codec with the name specified.
+     *
+     * @param pName Name of the codec, must not be {@code null}
+     * @return Codec, never {@code null}
+     * @throws TransferException Thrown, if no such codec is installed on this node.
+     */
+    public CompressionCodec get(final String pName) throws TransferException {
+        final CompressionCodec codec = codecs.get(pName);
+        if (codec == null) {
+            throw new TransferException(format("No compression codec with name %s installed!", pName), null);
+        }
+        return codec;
+    }
+}
@@ -0,0 +1,114 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.compression;
+
+import ch.sourcepond.io.fssync.distributor.api.CompressionCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static java.lang.Math.min;
+import static java.lang.String.format;
+import static java.nio.ByteBuffer.allocate;
+import static java.nio.ByteBuffer.wrap;
+import static java.util.Arrays.copyOf;
+import static java.util.zip.Deflater.BEST_SPEED;
+
+/**
+ * Built-in codec based on {@link Deflater}. The compressed data is prefixed with the length of the original data,
+ * so the receiver can allocate the decompression buffer at once.
+ */
+final class DeflateCodec implements CompressionCodec {
+    static final String NAME = "deflate";
+    private static final int HEADER_SIZE = Integer.BYTES;
+    private static final int OVERHEAD = 64;
+
+    // Deflate cannot compress data by more than this factor, so a larger announced length is corrupt
+    private static final int MAX_RATIO = 1032;
+    private static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    private static byte[] toArray(final ByteBuffer pData) {
+        final byte[] data = new byte[pData.remaining()];
+        pData.get(data);
+        return data;
+    }
+
+    @Override
+    public ByteBuffer compress(final ByteBuffer pData) {
+        final int length = pData.remaining();
+        final byte[] input = toArray(pData);
+
+        // Deflate adds a few bytes per block for incompressible data, hence the overhead
+        byte[] output = new byte[HEADER_SIZE + length + OVERHEAD];
+        final Deflater deflater = new Deflater(BEST_SPEED);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            int compressed = HEADER_SIZE;
+            while (!deflater.finished()) {
+                if (compressed == output.length) {
+                    output = copyOf(output, output.length * 2);
+                }
+                compressed += deflater.deflate(output, compressed, output.length - compressed);
+            }
+            final ByteBuffer result = wrap(output, 0, compressed);
+            result.putInt(0, length);
+            return result;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public ByteBuffer decompress(final ByteBuffer pData) throws IOException {
+        if (pData.remaining() < HEADER_SIZE) {
+            throw new IOException("Compressed data has no header");
+        }
+        final int length = pData.getInt();
+        if (length < 0 || length > min(MAX_LENGTH, (long) pData.remaining() * MAX_RATIO)) {
+            throw new IOException(format("Announced length %d is invalid for %d bytes of compressed data",
+                    length, pData.remaining()));
+        }
+        final ByteBuffer result = allocate(length);
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(toArray(pData));
+            while (!inflater.finished()) {
+                final int inflated = inflater.inflate(result.array(), result.position(), result.remaining());
+                if (inflated == 0 && !inflater.finished()) {
+                    // Either more input is needed, or the data is longer than announced
+                    throw new IOException("Compressed data is corrupt");
+                }
+                result.position(result.position() + inflated);
+            }
+            if (result.hasRemaining()) {
+                throw new IOException("Compressed data is shorter than announced");
+            }
+        } catch (final DataFormatException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+        result.flip();
+        return result;
+    }
+}
@@ -15,9 +15,13 @@ package ch.sourcepond.io.fssync.distributor.hazelcast.config;
 
 import ch.sourcepond.io.fssync.common.lib.CompoundServiceFactory;
 import ch.sourcepond.io.fssync.common.lib.ServiceListenerRegistrar;
+import ch.sourcepond.io.fssync.distributor.api.AsyncDistributor;
+import ch.sourcepond.io.fssync.distributor.api.CompressionCodec;
 import ch.sourcepond.io.fssync.distributor.api.Distributor;
+import ch.sourcepond.io.fssync.distributor.hazelcast.BlockingDistributor;
 import ch.sourcepond.io.fssync.distributor.hazelcast.HazelcastDistributor;
 import ch.sourcepond.io.fssync.distributor.hazelcast.HazelcastDistributorModule;
+import ch.sourcepond.io.fssync.distributor.hazelcast.compression.Codecs;
 import ch.sourcepond.io.fssync.target.api.SyncTarget;
 import ch.sourcepond.osgi.cmpn.metatype.ConfigBuilderFactory;
 import com.hazelcast.config.Config;
@@ -25,9 +29,12 @@ import com.hazelcast.osgi.HazelcastOSGiService;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.cm.ConfigurationAdmin;
 import org.osgi.service.cm.ManagedServiceFactory;
+import org.osgi.util.tracker.ServiceTracker;
+import org.osgi.util.tracker.ServiceTrackerCustomizer;
 
 import java.util.Dictionary;
 import java.util.HashMap;
@@ -45,6 +52,8 @@ public class Activator implements BundleActivator {
     private final CompoundServiceFactory compoundServiceFactory;
     private final ExecutorService executor;
     private final ServiceListenerRegistrar registrar;
+    private final Codecs codecs;
+    private volatile ServiceTracker<CompressionCodec, CompressionCodec> codecTracker;
     private volatile ConfigurationAdmin configurationAdmin;
     private volatile HazelcastOSGiService hazelcastOSGiService;
     private volatile SyncTarget compoundSyncTarget;
@@ -59,27 +68,32 @@ public class Activator implements BundleActivator {
         compoundServiceFactory = new CompoundServiceFactory();
         executor = /* TODO: Implement more flexible solution here */ newSingleThreadExecutor();
         registrar = new ServiceListenerRegistrar();
+        codecs = new Codecs();
     }
 
     public Activator(final ConfigManager pConfigManager,
                      final TopicConfigManager pTopicConfigManager,
                      final CompoundServiceFactory pCompoundServiceFactory,
                      final ExecutorService pExecutor,
-                     final ServiceListenerRegistrar pRegistrar) {
+                     final ServiceListenerRegistrar pRegistrar,
+                     final Codecs pCodecs) {
         configManager = pConfigManager;
         topicConfigManager = pTopicConfigManager;
         compoundServiceFactory = pCompoundServiceFactory;
         executor = pExecutor;
         registrar = pRegistrar;
+        codecs = pCodecs;
     }
 
     public void configUpdated(final Config pHazelcastConfig, final DistributorConfig pDistributorConfig) {
         synchronized (distributors) {
             configDeleted(pDistributorConfig.instanceName());
             final HazelcastDistributor distributor = createInjector(
-                    new HazelcastDistributorModule(pDistributorConfig, pHazelcastConfig, compoundSyncTarget)).
+                    new HazelcastDistributorModule(pDistributorConfig, pHazelcastConfig, compoundSyncTarget, codecs)).
                     getInstance(HazelcastDistributor.class);
-            distributor.setRegistration(bundleContext.registerService(Distributor.class, distributor, null));
+            distributor.setRegistration(bundleContext.registerService(AsyncDistributor.class, distributor, null));
+            distributor.setBlockingRegistration(bundleContext.registerService(Distributor.class,
+                    new BlockingDistributor(distributor), null));
             distributors.put(pDistributorConfig.instanceName(), distributor);
         }
     }
@@ -99,6 +113,8 @@ public class Activator implements BundleActivator {
         compoundSyncTarget = compoundServiceFactory.create(pBundleContext, executor, SyncTarget.class);
         registrar.registerListener(pBundleContext, this::setConfigAdmin, this::unsetConfigAdmin, ConfigurationAdmin.class);
         registrar.registerListener(pBundleContext, this::setHazelcastOSGiService, this::unsetHazelcastOSGiService, HazelcastOSGiService.class);
+        codecTracker = new ServiceTracker<>(pBundleContext, CompressionCodec.class, new CodecTrackerCustomizer(pBundleContext));
+        codecTracker.open();
     }
 
     @Override
@@ -106,6 +122,7 @@ public class Activator implements BundleActivator {
         synchronized (distributors) {
             distributors.values().forEach(distributor -> distributor.close());
         }
+        codecTracker.close();
     }
 
     private void setConfigAdmin(final ConfigurationAdmin pConfigAdmin) {
@@ -149,4 +166,30 @@ public class Activator implements BundleActivator {
         props.put(Constants.SERVICE_PID, pPid);
         return bundleContext.registerService(ManagedServiceFactory.class, pFactory, props);
     }
+
+    private class CodecTrackerCustomizer implements ServiceTrackerCustomizer<CompressionCodec, CompressionCodec> {
+        private final BundleContext context;
+
+        CodecTrackerCustomizer(final BundleContext pContext) {
+            context = pContext;
+        }
+
+        @Override
+        public CompressionCodec addingService(final ServiceReference<CompressionCodec> pReference) {
+            final CompressionCodec codec = context.getService(pReference);
+            codecs.add(codec);
+            return codec;
+        }
+
+        @Override
+        public void modifiedService(final ServiceReference<CompressionCodec> pReference, final CompressionCodec pCodec) {
+            // noop
+        }
+
+        @Override
+        public void removedService(final ServiceReference<CompressionCodec> pReference, final CompressionCodec pCodec) {
+            codecs.remove(pCodec);
+            context.ungetService(pReference);
+        }
+    }
 }
@@ -0,0 +1,58 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.config;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Specifies how many members must have acknowledged a file chunk before the transfer window lets the next chunk
+ * pass (see {@link DistributorConfig#transferCompletionPolicy()}). The remaining members catch up asynchronously;
+ * the file is only stored when every member has acknowledged every chunk.
+ */
+public enum CompletionPolicy {
+    /**
+     * Every member must have acknowledged the chunk.
+     */
+    ALL,
+
+    /**
+     * More than half of the members must have acknowledged the chunk.
+     */
+    MAJORITY,
+
+    /**
+     * The number of members specified by {@link DistributorConfig#transferQuorum()} must have acknowledged the
+     * chunk.
+     */
+    QUORUM;
+
+    /**
+     * Returns the number of members which must have acknowledged a chunk.
+     *
+     * @param pMembers Number of members which are expected to acknowledge the chunk
+     * @param pQuorum Configured quorum, only used by {@link #QUORUM}
+     * @return Number of required acknowledges, never greater than the number of members
+     */
+    public int required(final int pMembers, final int pQuorum) {
+        switch (this) {
+            case MAJORITY:
+                return pMembers / 2 + 1;
+            case QUORUM:
+                return min(pMembers, max(1, pQuorum));
+            default:
+                return pMembers;
+        }
+    }
+}
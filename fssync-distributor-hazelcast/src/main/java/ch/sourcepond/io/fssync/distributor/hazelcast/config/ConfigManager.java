@@ -43,6 +43,9 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import static ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig.DEFAULT_CONFIG;
+import static ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig.TRANSFER_CREDITS_ATTRIBUTE;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static java.lang.String.format;
 import static java.lang.reflect.Proxy.newProxyInstance;
 import static java.util.Arrays.asList;
@@ -88,6 +91,19 @@ class ConfigManager implements ManagedServiceFactory {
         return format("%s%s", pPostfix, TOPIC_CONFIG_PID_POSTFIX);
     }
 
+    /**
+     * Derives the Ringbuffer capacity from {@link TopicConfig#capacityBytes()}. The result is only an estimate of
+     * the memory used: it assumes that no message is larger than {@link TopicConfig#messageSize()}, which is not
+     * checked when messages are published.
+     */
+    static int toCapacity(final TopicConfig pTopicConfig) {
+        final long capacityBytes = pTopicConfig.capacityBytes();
+        if (capacityBytes <= 0) {
+            return pTopicConfig.capacity();
+        }
+        return (int) max(1, min(pTopicConfig.capacity(), capacityBytes / max(1, pTopicConfig.messageSize())));
+    }
+
     private void addTopicConfig(final com.hazelcast.config.Config pConfig, final String pName, final String pPid)
             throws ConfigurationException {
         final TopicConfig topicConfig = DEFAULT_CONFIG.equals(pPid) ? DEFAULT_TOPIC_CONFIG :
@@ -95,9 +111,11 @@ class ConfigManager implements ManagedServiceFactory {
         final ReliableTopicConfig reliableTopicConfig = new ReliableTopicConfig(pName);
         reliableTopicConfig.setReadBatchSize(topicConfig.readBatchSize());
         reliableTopicConfig.setStatisticsEnabled(topicConfig.statisticsEnabled());
+        reliableTopicConfig.setTopicOverloadPolicy(topicConfig.topicOverloadPolicy());
 
+        // The Ringbuffer of a Reliable Topic is prefixed, but its configuration is resolved by the topic name
         final RingbufferConfig ringbufferConfig = new RingbufferConfig(pName);
-        ringbufferConfig.setCapacity(topicConfig.capacity());
+        ringbufferConfig.setCapacity(toCapacity(topicConfig));
         ringbufferConfig.setBackupCount(topicConfig.backupCount());
         ringbufferConfig.setAsyncBackupCount(topicConfig.asyncBackupCount());
         ringbufferConfig.setTimeToLiveSeconds(topicConfig.timeToLiveSeconds());
@@ -127,6 +145,7 @@ class ConfigManager implements ManagedServiceFactory {
         config.setClassLoader(getClass().getClassLoader());
         config.setInstanceName(pDistributorConfig.instanceName());
         config.setGroupConfig(new GroupConfig().setName(pDistributorConfig.instanceName()));
+        config.getMemberAttributeConfig().setIntAttribute(TRANSFER_CREDITS_ATTRIBUTE, pDistributorConfig.transferCredits());
 
         final NetworkConfig networkConfig = new NetworkConfig().setPort(pDistributorConfig.port()).setPortAutoIncrement(pDistributorConfig.portAutoIncrement());
         networkConfig.setOutboundPortDefinitions(asList(pDistributorConfig.outboundPorts()));
@@ -18,6 +18,7 @@ import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 
 import java.util.concurrent.TimeUnit;
 
+import static ch.sourcepond.io.fssync.distributor.hazelcast.config.CompletionPolicy.ALL;
 import static ch.sourcepond.io.fssync.distributor.hazelcast.config.ConfigManager.FACTORY_PID;
 import static java.util.concurrent.TimeUnit.MINUTES;
 
@@ -27,6 +28,7 @@ import static java.util.concurrent.TimeUnit.MINUTES;
         factoryPid = {FACTORY_PID})
 public @interface DistributorConfig {
     String DEFAULT_CONFIG = "default";
+    String TRANSFER_CREDITS_ATTRIBUTE = "fssync.transferCredits";
 
     @AttributeDefinition(description = "The name of the associated Hazelcast Instance (also used as Hazelcast group name).")
     String instanceName();
@@ -90,6 +92,23 @@ public @interface DistributorConfig {
     @AttributeDefinition(description = "Time to wait before a lock of a specific global path is forced to be released.")
     long leaseTime() default 3;
 
+    @AttributeDefinition(min = "1", description = "Number of threads which acquire global path locks concurrently. " +
+            "The lock of a path is always acquired and released by the same thread; a path which is locked by " +
+            "another member only delays the paths which are assigned to the same thread.")
+    int lockStripes() default 16;
+
+    @AttributeDefinition(description = "Acquire the lock of a global path by putting an entry into a partitioned " +
+            "lease map instead of using a Hazelcast lock. This takes a single round-trip to the partition owner; " +
+            "the files are locked on the other members by the first request which reaches them. All members must " +
+            "use the same setting.")
+    boolean leaseLocks() default false;
+
+    @AttributeDefinition(description = "Send the content of a file point-to-point to every member through a " +
+            "Hazelcast executor service instead of publishing it on the reliable transfer topic. The data is not " +
+            "copied into the ringbuffer of the topic; the receivers restore the order of the chunks. Control " +
+            "messages are still sent through the topics. All members must use the same setting.")
+    boolean directTransfer() default false;
+
     @AttributeDefinition(description = "Time unit of the responseTimeout configuration property.")
     TimeUnit responseTimeoutUnit() default MINUTES;
 
@@ -97,6 +116,43 @@ public @interface DistributorConfig {
             "other cluster members for their responses.")
     long responseTimeout() default 1;
 
+    @AttributeDefinition(min = "1", description = "Maximum number of file chunks which are sent into the cluster " +
+            "without having been acknowledged by all members. With a value of 1, every chunk is acknowledged before " +
+            "the next one is sent.")
+    int transferWindowSize() default 16;
+
+    @AttributeDefinition(min = "1", description = "Amount of file data in bytes this member is willing to buffer " +
+            "while writing it to its targets. Every member advertises this value to the cluster; a member which " +
+            "distributes files never has more data waiting for acknowledges than the smallest advertised value. " +
+            "Reading the files on the source is delayed until enough data has been acknowledged.")
+    int transferCredits() default 16777216;
+
+    @AttributeDefinition(description = "Number of members which must have acknowledged a file chunk before it " +
+            "stops counting against transferWindowSize: ALL, MAJORITY, or QUORUM (see transferQuorum). Slower " +
+            "members catch up asynchronously, limited by transferCredits; a file is only stored after every " +
+            "member has acknowledged all of its chunks.")
+    CompletionPolicy transferCompletionPolicy() default ALL;
+
+    @AttributeDefinition(min = "1", description = "Number of members which must have acknowledged a file chunk " +
+            "if transferCompletionPolicy is QUORUM.")
+    int transferQuorum() default 1;
+
+    @AttributeDefinition(description = "A member whose average response latency exceeds the average latency of " +
+            "the median member by this factor is lagging; transfer windows do not wait for lagging members, which " +
+            "catch up asynchronously like with transferCompletionPolicy. The response timeout of a lagging member is " +
+            "multiplied by this factor. A value of 0 disables the detection.")
+    double laggingFactor() default 0;
+
+    @AttributeDefinition(description = "Average response latency in milliseconds below which a member is never " +
+            "considered to be lagging.")
+    long laggingThresholdMillis() default 100;
+
+    @AttributeDefinition(description = "Name of the compression codec used to compress file chunks before they are " +
+            "sent into the cluster. The codec \"deflate\" is built-in; further codecs can be registered as services " +
+            "of type ch.sourcepond.io.fssync.distributor.api.CompressionCodec. The codec must be available on all " +
+            "members. If empty, chunks are sent uncompressed.")
+    String compressionCodec() default "";
+
     @AttributeDefinition(description = "Reference PID to the configuration of the response Reliable Topic. " +
             "If not set, a sensible default will be used.")
     String responseTopicConfigPID() default DEFAULT_CONFIG;
@@ -13,10 +13,12 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast.config;
 
+import com.hazelcast.topic.TopicOverloadPolicy;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 
 import static ch.sourcepond.io.fssync.distributor.hazelcast.config.TopicConfigManager.FACTORY_PID;
+import static com.hazelcast.topic.TopicOverloadPolicy.DISCARD_OLDEST;
 
 @ObjectClassDefinition(name = "fssync-distributor-hazelcast Reliable Topic configuration",
         description = "Configuration of a Reliable Topic (incl. Ringbuffer)",
@@ -34,6 +36,19 @@ public @interface TopicConfig {
             "If a time-to-live is configured, then an array of longs is also created that stores the expiration time for every item.")
     int capacity() default 2000;
 
+    @AttributeDefinition(description = "Approximate upper bound in bytes of the data kept in the Ringbuffer. If " +
+            "greater than 0, the capacity is reduced to the number of messages of messageSize bytes which fit into " +
+            "this bound. The bound is an estimate: the size of the published messages is not checked, so messages " +
+            "larger than messageSize exceed it. Must be large enough to hold the chunks of all concurrent transfers " +
+            "which are not yet acknowledged (see transferWindowSize), otherwise slow members lose messages.")
+    long capacityBytes() default 0;
+
+    @AttributeDefinition(min = "1", description = "Size in bytes of the largest message published on the topic, " +
+            "used to derive the capacity from capacityBytes. For the transfer topic, this should be at least the " +
+            "maximum read buffer size of the source (maxReadBufferSize); it is not validated against the messages " +
+            "actually published.")
+    int messageSize() default 262144;
+
     @AttributeDefinition(description = "You can control the Ringbuffer backup just like most of the other Hazelcast distributed data " +
             "structures by setting the synchronous backups")
     int backupCount() default 1;
@@ -45,4 +60,10 @@ public @interface TopicConfig {
     @AttributeDefinition(description = "You can configure Hazelcast Ringbuffer with a time to live in seconds. Using this setting, " +
             "you can control how long the items remain in the Ringbuffer before they are expired.")
     int timeToLiveSeconds() default 300;
+
+    @AttributeDefinition(description = "Specifies what happens when a message is published while the Ringbuffer is " +
+            "full and none of its messages has expired yet (see timeToLiveSeconds). BLOCK and ERROR throttle or fail " +
+            "the publisher; DISCARD_OLDEST overwrites the oldest message, which members that have not read it yet " +
+            "lose; DISCARD_NEWEST drops the published message.")
+    TopicOverloadPolicy topicOverloadPolicy() default DISCARD_OLDEST;
 }
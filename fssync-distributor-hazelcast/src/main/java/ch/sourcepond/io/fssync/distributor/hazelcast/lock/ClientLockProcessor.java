@@ -25,6 +25,7 @@ import com.hazelcast.core.MembershipListener;
 
 import javax.inject.Inject;
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Listener to acquire a local file-lock.
@@ -40,7 +41,29 @@ final class ClientLockProcessor extends ClientMessageProcessor<DistributionMessa
 
     @Override
     public void processMessage(final NodeInfo pNodeInfo, final SyncPath pPath, final DistributionMessage pMessage) throws IOException {
-        syncTarget.lock(pNodeInfo, pPath);
+        if (pMessage instanceof MultiPathRequest) {
+            lockAll(pNodeInfo, ((MultiPathRequest) pMessage).getPaths());
+        } else {
+            syncTarget.lock(pNodeInfo, pPath);
+        }
+    }
+
+    private void lockAll(final NodeInfo pNodeInfo, final List<SyncPath> pPaths) throws IOException {
+        for (int i = 0; i < pPaths.size(); i++) {
+            try {
+                syncTarget.lock(pNodeInfo, pPaths.get(i));
+            } catch (final IOException e) {
+                // Either all paths are locked, or none
+                for (int j = i - 1; j >= 0; j--) {
+                    try {
+                        syncTarget.unlock(pNodeInfo, pPaths.get(j));
+                    } catch (final IOException e2) {
+                        e.addSuppressed(e2);
+                    }
+                }
+                throw e;
+            }
+        }
     }
 
     @Override
@@ -15,25 +15,57 @@ package ch.sourcepond.io.fssync.distributor.hazelcast.lock;
 
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.ClientMessageProcessor;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.TargetLocks;
 import ch.sourcepond.io.fssync.target.api.NodeInfo;
 import ch.sourcepond.io.fssync.common.api.SyncPath;
 import ch.sourcepond.io.fssync.target.api.SyncTarget;
 
 import javax.inject.Inject;
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Listener to release a local file-lock.
  */
 final class ClientUnlockProcessor extends ClientMessageProcessor<DistributionMessage> {
+    private final TargetLocks targetLocks;
 
     @Inject
-    public ClientUnlockProcessor(final SyncTarget pSyncTarget) {
+    public ClientUnlockProcessor(final SyncTarget pSyncTarget, final TargetLocks pTargetLocks) {
         super(pSyncTarget);
+        targetLocks = pTargetLocks;
     }
 
     @Override
     protected void processMessage(final NodeInfo pNodeInfo, final SyncPath pPath, final DistributionMessage pMessage) throws IOException {
+        if (pMessage instanceof MultiPathRequest) {
+            unlockAll(pNodeInfo, ((MultiPathRequest) pMessage).getPaths());
+        } else {
+            unlock(pNodeInfo, pPath);
+        }
+    }
+
+    private void unlock(final NodeInfo pNodeInfo, final SyncPath pPath) throws IOException {
         syncTarget.unlock(pNodeInfo, pPath);
+        targetLocks.unlocked(pNodeInfo, pPath);
+    }
+
+    private void unlockAll(final NodeInfo pNodeInfo, final List<SyncPath> pPaths) throws IOException {
+        IOException failure = null;
+        for (final SyncPath path : pPaths) {
+            // A path which cannot be unlocked must not prevent the remaining paths from being unlocked
+            try {
+                unlock(pNodeInfo, path);
+            } catch (final IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
     }
 }
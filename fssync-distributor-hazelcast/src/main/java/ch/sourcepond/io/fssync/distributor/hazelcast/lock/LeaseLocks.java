@@ -0,0 +1,64 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.lock;
+
+import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+
+import static java.lang.Math.min;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * {@link Locks} which acquire the global lock of a key by atomically putting an entry into a partitioned lease map.
+ * Acquiring or releasing a lock takes a single round-trip to the owner of the partition, and the entry expires when
+ * the lease time has elapsed. Unlike a Hazelcast lock, a lease is owned by this member rather than by a thread. While
+ * the key is leased by another member, the acquisition is retried with an increasing delay.
+ */
+final class LeaseLocks extends Locks {
+    static final String LEASE_MAP_NAME = "leases";
+    static final long MIN_RETRY_DELAY_MILLIS = 10;
+    static final long MAX_RETRY_DELAY_MILLIS = 500;
+    private final IMap<String, String> leases;
+    private final String owner;
+
+    LeaseLocks(final HazelcastInstance pHci, final DistributorConfig pConfig) {
+        super(pHci, pConfig);
+        leases = pHci.getMap(LEASE_MAP_NAME);
+        owner = pHci.getLocalEndpoint().getUuid();
+    }
+
+    @Override
+    boolean acquire(final String pKey) throws InterruptedException {
+        final long deadline = nanoTime() + config.lockTimeoutUnit().toNanos(config.lockTimeout());
+        long delay = MIN_RETRY_DELAY_MILLIS;
+        while (leases.putIfAbsent(pKey, owner, config.leaseTime(), config.leaseTimeUnit()) != null) {
+            final long remaining = NANOSECONDS.toMillis(deadline - nanoTime());
+            if (remaining <= 0) {
+                return false;
+            }
+            MILLISECONDS.sleep(min(delay, remaining));
+            delay = min(delay * 2, MAX_RETRY_DELAY_MILLIS);
+        }
+        return true;
+    }
+
+    @Override
+    void release(final String pKey) {
+        // Only remove the lease if it has not expired and been taken over by another member meanwhile
+        leases.remove(pKey, owner);
+    }
+}
@@ -26,10 +26,25 @@ import com.hazelcast.core.ITopic;
 import org.slf4j.Logger;
 
 import javax.inject.Inject;
-import java.util.concurrent.TimeoutException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
+import static ch.sourcepond.io.fssync.distributor.hazelcast.common.Futures.unwrap;
+import static java.lang.Math.floorMod;
 import static java.lang.String.format;
-import static java.lang.Thread.currentThread;
+import static java.util.concurrent.CompletableFuture.allOf;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
 import static org.slf4j.LoggerFactory.getLogger;
 
 public class LockManager implements AutoCloseable {
@@ -40,31 +55,59 @@ public class LockManager implements AutoCloseable {
     private final ITopic<DistributionMessage> unlockRequestTopic;
     private final DistributorConfig config;
 
+    // A Hazelcast lock is owned by the thread which acquired it; all operations on a key are therefore
+    // confined to the single-threaded executor the key is assigned to, regardless of the thread which
+    // completes a cluster response. Keys are spread over several executors, so that a lock which is held
+    // by another member only delays the keys assigned to the same executor.
+    private final List<ExecutorService> lockExecutors;
+
     @Inject
     public LockManager(final ClusterResponseBarrierFactory pFactory,
                        final Locks pLocks,
                        final DistributorConfig pConfig,
                        @Lock final ITopic<DistributionMessage> pLockRequestTopic,
                        @Unlock final ITopic<DistributionMessage> pUnlockRequestTopic) {
+        this(pFactory, pLocks, pConfig, pLockRequestTopic, pUnlockRequestTopic, createLockExecutors(pConfig.lockStripes()));
+    }
+
+    LockManager(final ClusterResponseBarrierFactory pFactory,
+                final Locks pLocks,
+                final DistributorConfig pConfig,
+                final ITopic<DistributionMessage> pLockRequestTopic,
+                final ITopic<DistributionMessage> pUnlockRequestTopic,
+                final List<ExecutorService> pLockExecutors) {
         factory = pFactory;
         locks = pLocks;
         lockRequestTopic = pLockRequestTopic;
         unlockRequestTopic = pUnlockRequestTopic;
         config = pConfig;
+        lockExecutors = pLockExecutors;
+    }
+
+    private static List<ExecutorService> createLockExecutors(final int pStripes) {
+        final List<ExecutorService> executors = new ArrayList<>(pStripes);
+        for (int i = 0; i < pStripes; i++) {
+            executors.add(newSingleThreadExecutor());
+        }
+        return executors;
+    }
+
+    private ExecutorService lockExecutor(final String pKey) {
+        return lockExecutors.get(floorMod(pKey.hashCode(), lockExecutors.size()));
     }
 
     /**
-     * Acquires on all known cluster-nodes a {@link java.nio.channels.FileLock} for the path specified. This method
-     * blocks until all nodes have responded to the request. If the path does not exist on a node, it will be created
-     * and locked.
+     * Acquires on all known cluster-nodes a {@link java.nio.channels.FileLock} for the path specified. The future
+     * returned is completed when all nodes have responded to the request. If the path does not exist on a node, it
+     * will be created and locked.
      *
      * @param pPath Path to be locked on all nodes, must not be {@code null}.
-     * @throws ResponseException Thrown, if the lock acquisition failed on some node.
-     * @throws LockException     Thrown, if the lock acquisition timed out for a node.
+     * @return Future which fails with a {@link ResponseException} if the lock acquisition failed on some node, or
+     * with a {@link java.util.concurrent.TimeoutException} if the lock acquisition timed out for a node.
      */
-    private void acquireGlobalFileLock(final SyncPath pPath) throws ResponseException, TimeoutException {
+    private CompletableFuture<Void> acquireGlobalFileLock(final SyncPath pPath) {
         // In this case, the path is also the request-message
-        factory.create(pPath, lockRequestTopic).awaitResponse(new DistributionMessage(pPath));
+        return factory.create(lockRequestTopic).send(new DistributionMessage(pPath));
     }
 
     /**
@@ -73,57 +116,249 @@ public class LockManager implements AutoCloseable {
      *
      * @param pPath Path to be released on all nodes, must not be {@code null}
      */
-    private void releaseGlobalFileLock(final SyncPath pPath) throws ResponseException, TimeoutException {
+    private CompletableFuture<Void> releaseGlobalFileLock(final SyncPath pPath) {
         // In this case, the path is also the request-message
-        factory.create(pPath, unlockRequestTopic).awaitResponse(new DistributionMessage(pPath));
+        return factory.create(unlockRequestTopic).send(new DistributionMessage(pPath));
     }
 
-    private boolean lockAcquisitionFailed(final SyncPath pPath,
-                                          final String pMessage,
-                                          final Exception pCause)
-            throws LockException {
+    private CompletableFuture<Void> acquireGlobalFileLocks(final List<SyncPath> pPaths) {
+        return factory.create(lockRequestTopic).send(new MultiPathRequest(pPaths));
+    }
+
+    private CompletableFuture<Void> releaseGlobalFileLocks(final List<SyncPath> pPaths) {
+        return factory.create(unlockRequestTopic).send(new MultiPathRequest(pPaths));
+    }
+
+    private CompletableFuture<Boolean> acquireLocalLock(final String pKey) {
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
         try {
-            throw new LockException(pMessage, pCause);
-        } finally {
-            try {
-                releaseGlobalFileLock(pPath);
-            } catch (final ResponseException | TimeoutException e) {
-                LOG.warn(e.getMessage(), e);
-            } finally {
-                locks.unlock(pPath.toAbsolutePath());
-            }
+            lockExecutor(pKey).execute(() -> {
+                try {
+                    future.complete(locks.tryLock(pKey));
+                } catch (final LockException | InterruptedException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            future.completeExceptionally(new LockException(format(
+                    "Service is shutting down, lock for %s could not be acquired!", pKey), e));
         }
+        return future;
     }
 
-    public boolean tryLock(final SyncPath pPath) throws LockException {
+    private CompletableFuture<Void> releaseLocalLock(final String pKey) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
         try {
-            if (locks.tryLock(pPath.toAbsolutePath())) {
-                acquireGlobalFileLock(pPath);
-                return true;
-            } else {
-                return lockAcquisitionFailed(pPath, format("Lock acquisition timed out after %d %s",
+            lockExecutor(pKey).execute(() -> {
+                try {
+                    locks.unlock(pKey);
+                    future.complete(null);
+                } catch (final RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void lockAcquisitionFailed(final SyncPath pPath,
+                                       final CompletableFuture<Boolean> pResult,
+                                       final String pMessage,
+                                       final Throwable pCause) {
+        releaseGlobalFileLock(pPath).whenComplete((v, e) -> {
+            if (e != null) {
+                LOG.warn(e.getMessage(), e);
+            }
+            releaseLocalLock(pPath.toAbsolutePath()).whenComplete((v2, e2) ->
+                    pResult.completeExceptionally(new LockException(pMessage, pCause)));
+        });
+    }
+
+    public CompletableFuture<Boolean> tryLock(final SyncPath pPath) {
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        acquireLocalLock(pPath.toAbsolutePath()).whenComplete((locked, e) -> {
+            final Throwable cause = e == null ? null : unwrap(e);
+            if (cause instanceof LockException) {
+                result.completeExceptionally(cause);
+            } else if (cause instanceof InterruptedException) {
+                lockAcquisitionFailed(pPath, result, format("Lock acquisition interrupted for %s!", pPath), cause);
+            } else if (cause != null) {
+                lockAcquisitionFailed(pPath, result, format("Lock acquisition failed for %s!", pPath), cause);
+            } else if (!locked) {
+                lockAcquisitionFailed(pPath, result, format("Lock acquisition timed out after %d %s",
                         config.lockTimeout(), config.lockTimeoutUnit()), null);
+            } else if (config.leaseLocks()) {
+                // The files are locked on the nodes by the first request which reaches them
+                result.complete(true);
+            } else {
+                acquireGlobalFileLock(pPath).whenComplete((v, e2) -> {
+                    if (e2 == null) {
+                        result.complete(true);
+                    } else {
+                        lockAcquisitionFailed(pPath, result, format("Lock acquisition failed for %s!", pPath), unwrap(e2));
+                    }
+                });
             }
-        } catch (final InterruptedException e) {
-            currentThread().interrupt();
-            return lockAcquisitionFailed(pPath, format("Lock acquisition interrupted for %s!", pPath), e);
-        } catch (final ResponseException | TimeoutException e) {
-            return lockAcquisitionFailed(pPath, format("Lock acquisition failed for %s!", pPath), e);
-        }
+        });
+        return result;
     }
 
-    public void unlock(final SyncPath pPath) throws UnlockException {
-        try {
-            releaseGlobalFileLock(pPath);
-        } catch (final ResponseException | TimeoutException e) {
-            throw new UnlockException(format("Exception occurred while releasing file-lock for %s", pPath), e);
-        } finally {
-            locks.unlock(pPath.toAbsolutePath());
+    public CompletableFuture<Void> unlock(final SyncPath pPath) {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        releaseGlobalFileLock(pPath).whenComplete((v, e) ->
+                releaseLocalLock(pPath.toAbsolutePath()).whenComplete((v2, e2) -> {
+                    if (e != null) {
+                        result.completeExceptionally(new UnlockException(format(
+                                "Exception occurred while releasing file-lock for %s", pPath), unwrap(e)));
+                    } else if (e2 != null) {
+                        result.completeExceptionally(unwrap(e2));
+                    } else {
+                        result.complete(null);
+                    }
+                }));
+        return result;
+    }
+
+    /**
+     * Acquires the cluster-wide locks of all paths specified. Unlike {@link #tryLockAll(Collection)}, the files are
+     * <em>not</em> locked on the nodes; this is left to the request which uses the locks (see
+     * {@link ch.sourcepond.io.fssync.distributor.hazelcast.request.BatchRequest}). The locks are acquired in the
+     * order of the absolute paths, so that overlapping sets of paths cannot deadlock. If one of the locks cannot be
+     * acquired, all locks acquired so far are released again.
+     *
+     * @param pPaths Paths to be locked, must not be {@code null}
+     * @return Future which fails with a {@link LockException} if some lock could not be acquired, never {@code null}
+     */
+    public CompletableFuture<Void> acquireGlobalLocks(final Collection<SyncPath> pPaths) {
+        final Set<String> keys = new TreeSet<>();
+        pPaths.forEach(p -> keys.add(p.toAbsolutePath()));
+
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        final List<String> acquired = new ArrayList<>(keys.size());
+        lockAll(keys.iterator(), acquired).whenComplete((v, e) -> {
+            if (e == null) {
+                result.complete(null);
+            } else {
+                final Throwable cause = unwrap(e);
+                releaseAll(acquired).whenComplete((v2, e2) -> result.completeExceptionally(
+                        cause instanceof LockException ? cause : new LockException(format(
+                                "Lock acquisition failed for %s!", keys), cause)));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Acquires the remaining keys one after another, each on the executor it is assigned to. Every key which has
+     * been locked is added to the list specified.
+     */
+    private CompletableFuture<Void> lockAll(final Iterator<String> pKeys, final List<String> pAcquired) {
+        if (!pKeys.hasNext()) {
+            return completedFuture(null);
         }
+        final String key = pKeys.next();
+        return acquireLocalLock(key).thenCompose(locked -> {
+            if (!locked) {
+                throw new CompletionException(new LockException(format("Lock acquisition timed out after %d %s for %s",
+                        config.lockTimeout(), config.lockTimeoutUnit(), key)));
+            }
+            pAcquired.add(key);
+            return lockAll(pKeys, pAcquired);
+        });
+    }
+
+    private CompletableFuture<Void> releaseAll(final Collection<String> pKeys) {
+        final List<CompletableFuture<Void>> releases = new ArrayList<>(pKeys.size());
+        pKeys.forEach(k -> releases.add(releaseLocalLock(k)));
+        return allOf(releases.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Releases the cluster-wide locks which have been acquired by {@link #acquireGlobalLocks(Collection)}.
+     *
+     * @param pPaths Paths to be unlocked, must not be {@code null}
+     * @return Future which is completed when all locks have been released, never {@code null}
+     */
+    public CompletableFuture<Void> releaseGlobalLocks(final Collection<SyncPath> pPaths) {
+        final List<String> keys = new ArrayList<>(pPaths.size());
+        pPaths.forEach(p -> keys.add(p.toAbsolutePath()));
+        return releaseAll(keys);
+    }
+
+    private static List<SyncPath> sort(final Collection<SyncPath> pPaths) {
+        final Map<String, SyncPath> sorted = new TreeMap<>();
+        pPaths.forEach(p -> sorted.put(p.toAbsolutePath(), p));
+        return new ArrayList<>(sorted.values());
+    }
+
+    /**
+     * Locks all paths specified like {@link #tryLock(SyncPath)}, but with a single lock request per node. The
+     * cluster-wide locks are acquired first (see {@link #acquireGlobalLocks(Collection)}); afterwards, every node
+     * locks the files in the order of their absolute paths. If some path cannot be locked, all paths are released
+     * again.
+     *
+     * @param pPaths Paths to be locked, must not be {@code null} or empty
+     * @return Future which fails with a {@link LockException} if some path could not be locked, never {@code null}
+     */
+    public CompletableFuture<Boolean> tryLockAll(final Collection<SyncPath> pPaths) {
+        final List<SyncPath> paths = sort(pPaths);
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        acquireGlobalLocks(paths).whenComplete((v, e) -> {
+            if (e != null) {
+                result.completeExceptionally(unwrap(e));
+            } else if (config.leaseLocks()) {
+                // The files are locked on the nodes by the first request which reaches them
+                result.complete(true);
+            } else {
+                acquireGlobalFileLocks(paths).whenComplete((v2, e2) -> {
+                    if (e2 == null) {
+                        result.complete(true);
+                    } else {
+                        releaseGlobalFileLocks(paths).whenComplete((v3, e3) -> {
+                            if (e3 != null) {
+                                LOG.warn(e3.getMessage(), e3);
+                            }
+                            releaseGlobalLocks(paths).whenComplete((v4, e4) -> result.completeExceptionally(
+                                    new LockException(format("Lock acquisition failed for %s!", paths), unwrap(e2))));
+                        });
+                    }
+                });
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Unlocks all paths specified like {@link #unlock(SyncPath)}, but with a single unlock request per node.
+     *
+     * @param pPaths Paths to be unlocked, must not be {@code null} or empty
+     * @return Future which is completed when all paths have been unlocked, never {@code null}
+     */
+    public CompletableFuture<Void> unlockAll(final Collection<SyncPath> pPaths) {
+        final List<SyncPath> paths = sort(pPaths);
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        releaseGlobalFileLocks(paths).whenComplete((v, e) ->
+                releaseGlobalLocks(paths).whenComplete((v2, e2) -> {
+                    if (e != null) {
+                        result.completeExceptionally(new UnlockException(format(
+                                "Exception occurred while releasing file-locks for %s", paths), unwrap(e)));
+                    } else if (e2 != null) {
+                        result.completeExceptionally(unwrap(e2));
+                    } else {
+                        result.complete(null);
+                    }
+                }));
+        return result;
     }
 
     @Override
     public void close() {
-        locks.close();
+        try {
+            locks.close();
+        } finally {
+            lockExecutors.forEach(ExecutorService::shutdown);
+        }
     }
 }
@@ -18,8 +18,10 @@ import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Unlock;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.ClientMessageListenerFactory;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.MessageListenerRegistration;
+import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
+import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.ITopic;
 import com.hazelcast.core.MessageListener;
 
@@ -31,10 +33,14 @@ public class LockModule extends AbstractModule {
     protected void configure() {
         bind(ClientLockProcessor.class);
         bind(ClientUnlockProcessor.class);
-        bind(Locks.class);
         bind(LockManager.class);
     }
 
+    @Provides
+    Locks locks(final HazelcastInstance pHci, final DistributorConfig pConfig) {
+        return pConfig.leaseLocks() ? new LeaseLocks(pHci, pConfig) : new Locks(pHci, pConfig);
+    }
+
     @Provides
     @Singleton
     @Lock
@@ -17,14 +17,13 @@ import ch.sourcepond.io.fssync.common.api.SyncPath;
 import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
 import ch.sourcepond.io.fssync.distributor.hazelcast.exception.LockException;
 import com.hazelcast.core.HazelcastInstance;
-import com.hazelcast.core.ILock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.time.Instant;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -34,13 +33,23 @@ import static java.lang.String.format;
 import static java.lang.Thread.currentThread;
 import static java.time.Instant.now;
 
+/**
+ * Keeps track of the global path locks held by this node. The internal mutex only guards the bookkeeping; waiting for
+ * a global lock and releasing it happen outside of it, so a contended path does not delay the lock acquisition of any
+ * other path. Because a Hazelcast lock is owned by the thread which acquired it, {@link #unlock(String)} must be
+ * called by the thread which called {@link #tryLock(String)} (see {@link LockManager}). Sub-classes may acquire the
+ * global locks differently (see {@link LeaseLocks}).
+ */
 class Locks implements AutoCloseable {
     private static final Logger LOG = LoggerFactory.getLogger(Locks.class);
     private final Lock lock = new ReentrantLock();
-    private final Condition shutdownDone = lock.newCondition();
-    private final Map<String, ILock> locks = new HashMap<>();
+    private final Condition released = lock.newCondition();
+    private final Set<String> locks = new HashSet<>();
     private final HazelcastInstance hci;
-    private final DistributorConfig config;
+    final DistributorConfig config;
+
+    // Number of global locks which are currently being acquired or released
+    private int pending;
     private boolean shutdown;
 
     @Inject
@@ -49,38 +58,101 @@ class Locks implements AutoCloseable {
         config = pConfig;
     }
 
-    public boolean tryLock(final String pKey) throws LockException, InterruptedException {
+    private void begin(final String pKey) throws LockException {
         lock.lock();
         try {
             if (shutdown) {
                 throw new LockException(format("Service is shutting down, lock for %s could not be acquired!", pKey));
             }
+            pending++;
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            final ILock globalLock = hci.getLock(pKey);
-            if (globalLock.tryLock(config.lockTimeout(),
-                    config.lockTimeoutUnit(),
-                    config.leaseTime(),
-                    config.leaseTimeUnit())) {
-                locks.put(pKey, globalLock);
-                return true;
+    private void done() {
+        lock.lock();
+        try {
+            pending--;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean register(final String pKey) {
+        lock.lock();
+        try {
+            if (shutdown) {
+                return false;
             }
-            return false;
+            locks.add(pKey);
+            return true;
         } finally {
             lock.unlock();
         }
     }
 
+    public boolean tryLock(final String pKey) throws LockException, InterruptedException {
+        begin(pKey);
+        try {
+            if (!acquire(pKey)) {
+                return false;
+            }
+            if (!register(pKey)) {
+                // The service has been shut down while this thread was waiting for the lock
+                release(pKey);
+                throw new LockException(format("Service is shutting down, lock for %s could not be acquired!", pKey));
+            }
+            return true;
+        } finally {
+            done();
+        }
+    }
+
+    /**
+     * Waits at most for the lock timeout until the global lock of the key specified has been acquired. The lock is
+     * released automatically when the lease time has elapsed.
+     *
+     * @param pKey Key to lock, never {@code null}
+     * @return {@code true} if the lock has been acquired, {@code false} if the timeout elapsed
+     * @throws InterruptedException Thrown, if the waiting thread has been interrupted
+     */
+    boolean acquire(final String pKey) throws InterruptedException {
+        return hci.getLock(pKey).tryLock(config.lockTimeout(),
+                config.lockTimeoutUnit(),
+                config.leaseTime(),
+                config.leaseTimeUnit());
+    }
+
+    /**
+     * Releases the global lock of the key specified which has been acquired by {@link #acquire(String)}.
+     *
+     * @param pKey Key to unlock, never {@code null}
+     */
+    void release(final String pKey) {
+        hci.getLock(pKey).unlock();
+    }
+
     public void unlock(final String pKey) {
+        final boolean held;
         lock.lock();
         try {
-            final ILock globalLock = locks.remove(pKey);
-            if (globalLock != null) {
-                globalLock.unlock();
+            held = locks.remove(pKey);
+            if (held) {
+                pending++;
             }
         } finally {
-            shutdownDone.signalAll();
             lock.unlock();
         }
+
+        if (held) {
+            try {
+                release(pKey);
+            } finally {
+                done();
+            }
+        }
     }
 
     @Override
@@ -92,8 +164,8 @@ class Locks implements AutoCloseable {
             final TimeUnit leaseTimeUnit = config.leaseTimeUnit();
             final Instant limit = now().plusMillis(leaseTimeUnit.toMillis(leaseTime));
 
-            while (!locks.isEmpty() && limit.isAfter(now())) {
-                shutdownDone.await(leaseTime, leaseTimeUnit);
+            while ((!locks.isEmpty() || pending > 0) && limit.isAfter(now())) {
+                released.await(leaseTime, leaseTimeUnit);
             }
         } catch (final InterruptedException e) {
             currentThread().interrupt();
@@ -0,0 +1,39 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.lock;
+
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Carries several paths which are locked or unlocked on the receiving node with a single request. The paths are
+ * processed in the order they have been specified. The path of the request is the first path and is only used for
+ * logging and responses.
+ */
+public class MultiPathRequest extends DistributionMessage {
+    private final ArrayList<SyncPath> paths;
+
+    public MultiPathRequest(final Collection<SyncPath> pPaths) {
+        super(pPaths.iterator().next());
+        paths = new ArrayList<>(pPaths);
+    }
+
+    public List<SyncPath> getPaths() {
+        return paths;
+    }
+}
@@ -0,0 +1,48 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.request;
+
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.api.BatchFile;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Carries the complete content of several small files. The request is sent through the store topic; the receiving
+ * node locks, writes, stores and unlocks every file on its own. The path of the request is the path of the first
+ * file and is only used for logging and responses.
+ */
+public class BatchRequest extends DistributionMessage {
+    private final ArrayList<SyncPath> paths = new ArrayList<>();
+    private final ArrayList<byte[]> contents = new ArrayList<>();
+
+    public BatchRequest(final Collection<BatchFile> pFiles) {
+        super(pFiles.iterator().next().getPath());
+        for (final BatchFile file : pFiles) {
+            paths.add(file.getPath());
+            contents.add(file.getData());
+        }
+    }
+
+    public List<SyncPath> getPaths() {
+        return paths;
+    }
+
+    public List<byte[]> getContents() {
+        return contents;
+    }
+}
@@ -0,0 +1,40 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.request;
+
+import ch.sourcepond.io.fssync.common.api.Chunk;
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Asks the receiving nodes which of the chunks specified are stored in the chunk stores of their targets (see
+ * {@link ChunkQueryResponse}). Chunk queries are sent through the transfer topic, so they are processed in order with
+ * the data of the same path.
+ */
+public class ChunkQueryRequest extends TransferRequest {
+    private static final byte[] NO_DATA = new byte[0];
+    private final List<Chunk> chunks;
+
+    public ChunkQueryRequest(final SyncPath pPath, final Collection<Chunk> pChunks) {
+        super(pPath, NO_DATA);
+        chunks = new ArrayList<>(pChunks);
+    }
+
+    public List<Chunk> getChunks() {
+        return chunks;
+    }
+}
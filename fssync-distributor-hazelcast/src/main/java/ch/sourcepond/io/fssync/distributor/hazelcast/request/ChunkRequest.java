@@ -0,0 +1,49 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.request;
+
+import ch.sourcepond.io.fssync.common.api.Chunk;
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Carries the data of a content-defined chunk, which the receiving nodes add to their chunk stores. A request without
+ * data instructs the receiving nodes to copy the chunk from their chunk stores instead.
+ */
+public class ChunkRequest extends TransferRequest {
+    private static final byte[] NO_DATA = new byte[0];
+    private final Chunk chunk;
+
+    public ChunkRequest(final SyncPath pPath, final Chunk pChunk, final ByteBuffer pData) {
+        super(pPath, pData);
+        chunk = pChunk;
+    }
+
+    public ChunkRequest(final SyncPath pPath, final Chunk pChunk) {
+        super(pPath, NO_DATA);
+        chunk = pChunk;
+    }
+
+    public Chunk getChunk() {
+        return chunk;
+    }
+
+    /**
+     * @return {@code true} if the chunk must be copied from the chunk store, {@code false} if the data is attached
+     */
+    public boolean isCopy() {
+        return !getData().hasRemaining();
+    }
+}
@@ -0,0 +1,40 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.request;
+
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+
+/**
+ * Instructs the receiving nodes to append a block of their current file to the data received so far. Copy requests
+ * are sent through the transfer topic, so they are processed in the same order as the literal data.
+ */
+public class CopyRequest extends TransferRequest {
+    private static final byte[] NO_DATA = new byte[0];
+    private final long offset;
+    private final int length;
+
+    public CopyRequest(final SyncPath pPath, final long pOffset, final int pLength) {
+        super(pPath, NO_DATA);
+        offset = pOffset;
+        length = pLength;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+}
@@ -13,7 +13,9 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast.request;
 
+import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.DirectTransfer;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.ClientMessageProcessor;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.DirectMessageReceiver;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.StatusMessage;
 import ch.sourcepond.io.fssync.target.api.NodeInfo;
 import ch.sourcepond.io.fssync.common.api.SyncPath;
@@ -23,14 +25,18 @@ import javax.inject.Inject;
 import java.io.IOException;
 
 final class DiscardRequestProcessor extends ClientMessageProcessor<StatusMessage> {
+    private final DirectMessageReceiver<TransferRequest> directTransferReceiver;
 
     @Inject
-    DiscardRequestProcessor(final SyncTarget pSyncTarget) {
+    DiscardRequestProcessor(final SyncTarget pSyncTarget,
+                            @DirectTransfer final DirectMessageReceiver<TransferRequest> pDirectTransferReceiver) {
         super(pSyncTarget);
+        directTransferReceiver = pDirectTransferReceiver;
     }
 
     @Override
     protected void processMessage(final NodeInfo pNodeInfo, final SyncPath pPath, final StatusMessage pMessage) throws IOException {
+        directTransferReceiver.finished(pNodeInfo, pPath);
         syncTarget.discard(pNodeInfo, pPath, pMessage.getFailureOrNull());
     }
 }
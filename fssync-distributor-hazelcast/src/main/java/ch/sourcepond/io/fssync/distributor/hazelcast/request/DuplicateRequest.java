@@ -0,0 +1,41 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.request;
+
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+
+/**
+ * Instructs the receiving nodes to use the content of a file they already store at another path as the data of the
+ * requested path. Duplicate requests are sent through the transfer topic, so they are processed before any data of
+ * the same path.
+ */
+public class DuplicateRequest extends TransferRequest {
+    private static final byte[] NO_DATA = new byte[0];
+    private final SyncPath source;
+    private final byte[] checksum;
+
+    public DuplicateRequest(final SyncPath pPath, final SyncPath pSource, final byte[] pChecksum) {
+        super(pPath, NO_DATA);
+        source = pSource;
+        checksum = pChecksum;
+    }
+
+    public SyncPath getSource() {
+        return source;
+    }
+
+    public byte[] getChecksum() {
+        return checksum;
+    }
+}
@@ -0,0 +1,46 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.request;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Collects the block signatures or chunks of all targets of this node. Only elements which are known to every target
+ * are kept, because a copy instruction is applied by every target.
+ */
+final class IntersectionCollector<T> implements Consumer<Collection<T>> {
+    private Set<T> elements;
+
+    static <T> Set<T> retain(final Set<T> pElementsOrNull, final Collection<T> pElements) {
+        if (pElementsOrNull == null) {
+            return new LinkedHashSet<>(pElements);
+        }
+        pElementsOrNull.retainAll(pElements);
+        return pElementsOrNull;
+    }
+
+    @Override
+    public synchronized void accept(final Collection<T> pElements) {
+        elements = retain(elements, pElements);
+    }
+
+    synchronized List<T> getElementsOrNull() {
+        return elements == null ? null : new ArrayList<>(elements);
+    }
+}
@@ -13,86 +13,234 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast.request;
 
+import ch.sourcepond.io.fssync.common.api.BlockSignature;
+import ch.sourcepond.io.fssync.common.api.Chunk;
 import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.api.BatchFile;
+import ch.sourcepond.io.fssync.distributor.api.CompressionCodec;
 import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Delete;
+import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.DirectTransfer;
 import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Discard;
 import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Store;
 import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Transfer;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.StatusMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.compression.Codecs;
+import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
 import ch.sourcepond.io.fssync.distributor.hazelcast.exception.DeletionException;
 import ch.sourcepond.io.fssync.distributor.hazelcast.exception.DiscardException;
 import ch.sourcepond.io.fssync.distributor.hazelcast.exception.StoreException;
 import ch.sourcepond.io.fssync.distributor.hazelcast.exception.TransferException;
 import ch.sourcepond.io.fssync.distributor.hazelcast.response.ClusterResponseBarrierFactory;
-import ch.sourcepond.io.fssync.distributor.hazelcast.response.ResponseException;
+import ch.sourcepond.io.fssync.distributor.hazelcast.response.ClusterResponseWindow;
+import com.hazelcast.core.IExecutorService;
 import com.hazelcast.core.ITopic;
 
 import javax.inject.Inject;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.concurrent.TimeoutException;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import static ch.sourcepond.io.fssync.distributor.hazelcast.common.Futures.failed;
+import static ch.sourcepond.io.fssync.distributor.hazelcast.common.Futures.mapFailure;
+import static ch.sourcepond.io.fssync.distributor.hazelcast.request.IntersectionCollector.retain;
 import static java.lang.String.format;
+import static java.nio.ByteBuffer.allocate;
+import static java.util.Collections.emptySet;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 
 public class RequestDistributor {
+    private final ConcurrentMap<SyncPath, ClusterResponseWindow<TransferRequest>> transferWindows = new ConcurrentHashMap<>();
     private final ClusterResponseBarrierFactory clusterResponseBarrierFactory;
     private final ITopic<DistributionMessage> deleteRequestTopic;
     private final ITopic<TransferRequest> transferRequestTopic;
+    private final IExecutorService directTransferExecutor;
     private final ITopic<StatusMessage> discardRequestTopic;
     private final ITopic<DistributionMessage> storeRequestTopic;
+    private final DistributorConfig config;
+    private final Codecs codecs;
 
     @Inject
-    RequestDistributor(final ClusterResponseBarrierFactory pClusterResponseBarrierFactory,
+    RequestDistributor(final DistributorConfig pConfig,
+                       final Codecs pCodecs,
+                       final ClusterResponseBarrierFactory pClusterResponseBarrierFactory,
                        @Delete final ITopic<DistributionMessage> pDeleteRequestTopic,
                        @Transfer final ITopic<TransferRequest> pTransferRequestTopic,
+                       @DirectTransfer final IExecutorService pDirectTransferExecutor,
                        @Discard final ITopic<StatusMessage> pDiscardRequestTopic,
                        @Store final ITopic<DistributionMessage> pStoreRequestTopic) {
         clusterResponseBarrierFactory = pClusterResponseBarrierFactory;
         deleteRequestTopic = pDeleteRequestTopic;
         transferRequestTopic = pTransferRequestTopic;
+        directTransferExecutor = pDirectTransferExecutor;
         discardRequestTopic = pDiscardRequestTopic;
         storeRequestTopic = pStoreRequestTopic;
+        config = pConfig;
+        codecs = pCodecs;
     }
 
-    public void transfer(final SyncPath pPath, final ByteBuffer pData) throws TransferException {
-        // Transfer data into a byte array...
-        final byte[] data = new byte[pData.limit()];
-        pData.get(data);
+    private static Collection<BlockSignature> intersect(final Collection<StatusMessage> pResponses) {
+        Set<BlockSignature> signatures = null;
+        for (final StatusMessage response : pResponses) {
+            // Nodes which have no target for the path do not restrict the usable blocks
+            final Collection<BlockSignature> nodeSignatures = response instanceof SignatureResponse ?
+                    ((SignatureResponse) response).getSignaturesOrNull() : null;
+            if (nodeSignatures != null) {
+                signatures = retain(signatures, nodeSignatures);
+            }
+        }
+        return signatures == null ? emptySet() : signatures;
+    }
 
-        try {
-            // ...and distribute it
-            clusterResponseBarrierFactory.create(pPath, transferRequestTopic).awaitResponse(
-                    new TransferRequest(pPath, data));
-        } catch (final TimeoutException | ResponseException e) {
-            throw new TransferException(format("Modification of %s failed on some node!", pPath), e);
+    private static Collection<Chunk> intersectChunks(final Collection<StatusMessage> pResponses) {
+        Set<Chunk> chunks = null;
+        for (final StatusMessage response : pResponses) {
+            // Nodes which have no target for the path do not restrict the usable chunks
+            final Collection<Chunk> nodeChunks = response instanceof ChunkQueryResponse ?
+                    ((ChunkQueryResponse) response).getChunksOrNull() : null;
+            if (nodeChunks != null) {
+                chunks = retain(chunks, nodeChunks);
+            }
         }
+        return chunks == null ? emptySet() : chunks;
     }
 
-    public void discard(final SyncPath pPath, final IOException pFailureOrNull) throws DiscardException {
-        try {
-            clusterResponseBarrierFactory.create(pPath, discardRequestTopic).awaitResponse(
-                    new StatusMessage(pPath, pFailureOrNull));
-        } catch (final TimeoutException | ResponseException e) {
-            throw new DiscardException(format("Storing or reverting %s failed on some node!", pPath), e);
+    public CompletableFuture<Collection<BlockSignature>> getSignatures(final SyncPath pPath, final int pBlockSize) {
+        // Sent through the transfer topic, so all nodes are in patch mode before the first chunk arrives
+        return mapFailure(clusterResponseBarrierFactory.create(transferRequestTopic).collect(
+                new SignatureRequest(pPath, pBlockSize)).thenApply(RequestDistributor::intersect),
+                e -> new TransferException(format("Signatures of %s could not be calculated on some node!", pPath), e));
+    }
+
+    private ClusterResponseWindow<TransferRequest> createTransferWindow() {
+        // The content is sent point-to-point if configured; the preceding signature or chunk queries are always
+        // answered before the first chunk is sent, so they can still be published on the transfer topic.
+        return config.directTransfer() ?
+                clusterResponseBarrierFactory.createDirectWindow(directTransferExecutor, DirectTransfer.NAME) :
+                clusterResponseBarrierFactory.createWindow(transferRequestTopic);
+    }
+
+    private ClusterResponseWindow<TransferRequest> getTransferWindow(final SyncPath pPath) {
+        return transferWindows.computeIfAbsent(pPath, p -> createTransferWindow());
+    }
+
+    private CompletableFuture<Void> publish(final SyncPath pPath,
+                                            final ClusterResponseWindow<TransferRequest> pWindow,
+                                            final TransferRequest pRequest) {
+        // The window only defers the chunk when too many chunks or too much data are waiting for their acknowledges
+        return mapFailure(pWindow.publish(pRequest, pRequest.getSize()), e -> {
+            closeTransferWindow(pPath);
+            return new TransferException(format("Modification of %s failed on some node!", pPath), e);
+        });
+    }
+
+    public CompletableFuture<Void> transfer(final SyncPath pPath, final ByteBuffer pData) {
+        final ClusterResponseWindow<TransferRequest> window = getTransferWindow(pPath);
+        final String codecName = config.compressionCodec();
+        if (!codecName.isEmpty()) {
+            final CompressionCodec codec;
+            final ByteBuffer compressed;
+            try {
+                codec = codecs.get(codecName);
+                compressed = codec.compress(pData.duplicate());
+            } catch (final IOException e) {
+                return failed(new TransferException(format("Compression of %s failed!", pPath), e));
+            }
+
+            // Incompressible chunks are sent as they are, so the receivers save the decompression
+            if (compressed.remaining() < pData.remaining()) {
+                pData.position(pData.limit());
+                return publish(pPath, window, new TransferRequest(pPath, compressed, codec.getName()));
+            }
         }
+
+        return publish(pPath, window, new TransferRequest(pPath, slice(window, pData)));
     }
 
-    public void store(final SyncPath pPath) throws StoreException {
-        try {
-            clusterResponseBarrierFactory.create(pPath, storeRequestTopic).awaitResponse(
-                    new StatusMessage(pPath));
-        } catch (final TimeoutException | ResponseException e) {
-            throw new StoreException(format("Storing or reverting %s failed on some node!", pPath), e);
+    private static ByteBuffer slice(final ClusterResponseWindow<TransferRequest> pWindow, final ByteBuffer pData) {
+        // The request is serialized straight from the buffer while it is being published. The data only needs
+        // to be copied if the publication is deferred, because the caller re-uses the buffer as soon as this
+        // method returns.
+        final ByteBuffer data;
+        if (pWindow.hasCapacity(pData.remaining())) {
+            data = pData.slice();
+        } else {
+            data = allocate(pData.remaining());
+            data.put(pData.duplicate()).flip();
         }
+        pData.position(pData.limit());
+        return data;
+    }
+
+    public CompletableFuture<Void> copy(final SyncPath pPath, final long pOffset, final int pLength) {
+        return publish(pPath, getTransferWindow(pPath), new CopyRequest(pPath, pOffset, pLength));
+    }
+
+    public CompletableFuture<Collection<Chunk>> getKnownChunks(final SyncPath pPath, final Collection<Chunk> pChunks) {
+        return mapFailure(clusterResponseBarrierFactory.create(transferRequestTopic).collect(
+                new ChunkQueryRequest(pPath, pChunks)).thenApply(RequestDistributor::intersectChunks),
+                e -> new TransferException(format("Chunks of %s could not be looked up on some node!", pPath), e));
     }
 
-    public void delete(final SyncPath pPath) throws DeletionException {
-        try {
-            clusterResponseBarrierFactory.create(pPath, deleteRequestTopic).awaitResponse(
-                    new StatusMessage(pPath));
-        } catch (final TimeoutException | ResponseException e) {
-            throw new DeletionException(format("Deletion of %s failed on some node!", pPath), e);
+    public CompletableFuture<Void> transferChunk(final SyncPath pPath, final Chunk pChunk, final ByteBuffer pData) {
+        final ClusterResponseWindow<TransferRequest> window = getTransferWindow(pPath);
+        return publish(pPath, window, new ChunkRequest(pPath, pChunk, slice(window, pData)));
+    }
+
+    public CompletableFuture<Void> copyChunk(final SyncPath pPath, final Chunk pChunk) {
+        return publish(pPath, getTransferWindow(pPath), new ChunkRequest(pPath, pChunk));
+    }
+
+    public CompletableFuture<Void> duplicate(final SyncPath pPath, final SyncPath pSource, final byte[] pChecksum) {
+        // Sent through the transfer topic like the signature request; every node must have verified the copy before
+        // the file can be stored
+        return mapFailure(clusterResponseBarrierFactory.create(transferRequestTopic).send(
+                new DuplicateRequest(pPath, pSource, pChecksum)),
+                e -> new TransferException(format("Duplication of %s failed on some node!", pPath), e));
+    }
+
+    private void closeTransferWindow(final SyncPath pPath) {
+        final ClusterResponseWindow<TransferRequest> window = transferWindows.remove(pPath);
+        if (window != null) {
+            window.close();
+        }
+    }
+
+    private CompletableFuture<Void> awaitTransferCompletion(final SyncPath pPath) {
+        final ClusterResponseWindow<TransferRequest> window = transferWindows.remove(pPath);
+        if (window == null) {
+            return completedFuture(null);
         }
+        return window.awaitResponses().whenComplete((v, e) -> window.close());
+    }
+
+    public CompletableFuture<Void> discard(final SyncPath pPath, final IOException pFailureOrNull) {
+        closeTransferWindow(pPath);
+        return mapFailure(clusterResponseBarrierFactory.create(discardRequestTopic).send(
+                new StatusMessage(pPath, pFailureOrNull)),
+                e -> new DiscardException(format("Storing or reverting %s failed on some node!", pPath), e));
+    }
+
+    public CompletableFuture<Void> batch(final Collection<BatchFile> pFiles) {
+        // Sent through the store topic, because every file of the batch is stored when the request is processed
+        final BatchRequest request = new BatchRequest(pFiles);
+        return mapFailure(clusterResponseBarrierFactory.create(storeRequestTopic).send(request),
+                e -> new StoreException(format("Batch containing %s failed on some node!", request.getPath()), e));
+    }
+
+    public CompletableFuture<Void> store(final SyncPath pPath) {
+        // All transferred chunks must have been acknowledged before the data can be stored
+        return mapFailure(awaitTransferCompletion(pPath).thenCompose(v ->
+                        clusterResponseBarrierFactory.create(storeRequestTopic).send(new StatusMessage(pPath))),
+                e -> new StoreException(format("Storing or reverting %s failed on some node!", pPath), e));
+    }
+
+    public CompletableFuture<Void> delete(final SyncPath pPath) {
+        return mapFailure(clusterResponseBarrierFactory.create(deleteRequestTopic).send(new StatusMessage(pPath)),
+                e -> new DeletionException(format("Deletion of %s failed on some node!", pPath), e));
     }
 }
@@ -14,15 +14,18 @@ limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast.request;
 
 import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Delete;
+import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.DirectTransfer;
 import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Discard;
 import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Store;
 import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Transfer;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.ClientMessageListenerFactory;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.DirectMessageReceiver;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.MessageListenerRegistration;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.StatusMessage;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
+import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.ITopic;
 import com.hazelcast.core.MessageListener;
 
@@ -45,28 +48,37 @@ public class RequestModule extends AbstractModule {
     @Singleton
     @Delete
     MessageListener<DistributionMessage> deleteListener(final ClientMessageListenerFactory pFactory, final DeleteRequestProcessor pProcessor) {
-        return pFactory.createListener(pProcessor);
+        return pFactory.createLockingListener(pProcessor);
     }
 
     @Provides
     @Singleton
     @Transfer
     MessageListener<TransferRequest> transferListener(final ClientMessageListenerFactory pFactory, final TransferRequestProcessor pProcessor) {
-        return pFactory.createListener(pProcessor);
+        return pFactory.createLockingListener(pProcessor);
+    }
+
+    @Provides
+    @Singleton
+    @DirectTransfer
+    DirectMessageReceiver<TransferRequest> directTransferReceiver(final HazelcastInstance pHci, final ClientMessageListenerFactory pFactory, final TransferRequestProcessor pProcessor) {
+        final DirectMessageReceiver<TransferRequest> receiver = pFactory.createReceiver(pProcessor);
+        pHci.getCluster().addMembershipListener(receiver);
+        return receiver;
     }
 
     @Provides
     @Singleton
     @Store
     MessageListener<DistributionMessage> storeListener(final ClientMessageListenerFactory pFactory, final StoreRequestProcessor pProcessor) {
-        return pFactory.createListener(pProcessor);
+        return pFactory.createLockingListener(pProcessor);
     }
 
     @Provides
     @Singleton
     @Discard
     MessageListener<StatusMessage> discardListener(final ClientMessageListenerFactory pFactory, final DiscardRequestProcessor pProcessor) {
-        return pFactory.createListener(pProcessor);
+        return pFactory.createLockingListener(pProcessor);
     }
 
     @Provides
@@ -83,6 +95,13 @@ public class RequestModule extends AbstractModule {
         return register(pTransferTopic, pTransferListener);
     }
 
+    @Provides
+    @Singleton
+    @DirectTransfer
+    MessageListenerRegistration registerDirectTransferReceiver(final HazelcastInstance pHci, final @DirectTransfer DirectMessageReceiver<TransferRequest> pReceiver) {
+        return register(pHci, DirectTransfer.NAME, pReceiver);
+    }
+
     @Provides
     @Singleton
     @Discard
@@ -0,0 +1,35 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.request;
+
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+
+/**
+ * Requests the block signatures of the current file from the receiving nodes (see {@link SignatureResponse}).
+ * Signature requests are sent through the transfer topic, so the receiving nodes have switched into patch mode before
+ * the first chunk of data arrives.
+ */
+public class SignatureRequest extends TransferRequest {
+    private static final byte[] NO_DATA = new byte[0];
+    private final int blockSize;
+
+    public SignatureRequest(final SyncPath pPath, final int pBlockSize) {
+        super(pPath, NO_DATA);
+        blockSize = pBlockSize;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+}
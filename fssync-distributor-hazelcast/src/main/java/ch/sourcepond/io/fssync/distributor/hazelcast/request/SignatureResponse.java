@@ -0,0 +1,42 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.request;
+
+import ch.sourcepond.io.fssync.common.api.BlockSignature;
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.StatusMessage;
+
+import java.util.List;
+
+/**
+ * Answer of a node to a {@link SignatureRequest}.
+ */
+public class SignatureResponse extends StatusMessage {
+    private final List<BlockSignature> signaturesOrNull;
+
+    public SignatureResponse(final String pRequestId, final SyncPath pPath, final List<BlockSignature> pSignaturesOrNull) {
+        super(pRequestId, pPath, null);
+        signaturesOrNull = pSignaturesOrNull;
+    }
+
+    /**
+     * Returns the signatures of the blocks which are identical in all targets of the answering node. If no target
+     * of the node is interested in the path, {@code null} is returned.
+     *
+     * @return List of signatures or {@code null}
+     */
+    public List<BlockSignature> getSignaturesOrNull() {
+        return signaturesOrNull;
+    }
+}
@@ -13,24 +13,79 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast.request;
 
+import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.DirectTransfer;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.ClientMessageProcessor;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.DirectMessageReceiver;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.exception.TransferException;
 import ch.sourcepond.io.fssync.target.api.NodeInfo;
 import ch.sourcepond.io.fssync.common.api.SyncPath;
 import ch.sourcepond.io.fssync.target.api.SyncTarget;
 
 import javax.inject.Inject;
 import java.io.IOException;
+import java.util.List;
+
+import static java.lang.String.format;
+import static java.nio.ByteBuffer.wrap;
 
 final class StoreRequestProcessor extends ClientMessageProcessor<DistributionMessage> {
+    private final DirectMessageReceiver<TransferRequest> directTransferReceiver;
 
     @Inject
-    StoreRequestProcessor(final SyncTarget pSyncTarget) {
+    StoreRequestProcessor(final SyncTarget pSyncTarget,
+                          @DirectTransfer final DirectMessageReceiver<TransferRequest> pDirectTransferReceiver) {
         super(pSyncTarget);
+        directTransferReceiver = pDirectTransferReceiver;
+    }
+
+    private void processFile(final NodeInfo pNodeInfo, final SyncPath pPath, final byte[] pContent) throws IOException {
+        syncTarget.lock(pNodeInfo, pPath);
+        try {
+            syncTarget.transfer(pNodeInfo, pPath, wrap(pContent));
+            syncTarget.store(pNodeInfo, pPath);
+        } catch (final IOException e) {
+            syncTarget.discard(pNodeInfo, pPath, e);
+            throw e;
+        } finally {
+            syncTarget.unlock(pNodeInfo, pPath);
+        }
+    }
+
+    private void processBatch(final NodeInfo pNodeInfo, final BatchRequest pBatch) throws IOException {
+        TransferException failure = null;
+        final List<SyncPath> paths = pBatch.getPaths();
+        final List<byte[]> contents = pBatch.getContents();
+        for (int i = 0; i < paths.size(); i++) {
+            // A failed file must not prevent the remaining files from being stored
+            try {
+                processFile(pNodeInfo, paths.get(i), contents.get(i));
+            } catch (final IOException e) {
+                if (failure == null) {
+                    failure = new TransferException(format("Batch containing %s failed!", paths.get(i)), e);
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    protected boolean requiresLock(final DistributionMessage pMessage) {
+        // The files of a batch are locked one after another while the batch is being processed
+        return !(pMessage instanceof BatchRequest);
     }
 
     @Override
     protected void processMessage(final NodeInfo pNodeInfo, final SyncPath pPath, final DistributionMessage pMessage) throws IOException {
-        syncTarget.store(pNodeInfo, pPath);
+        if (pMessage instanceof BatchRequest) {
+            processBatch(pNodeInfo, (BatchRequest) pMessage);
+        } else {
+            syncTarget.store(pNodeInfo, pPath);
+            directTransferReceiver.finished(pNodeInfo, pPath);
+        }
     }
 }
@@ -16,15 +16,88 @@ package ch.sourcepond.io.fssync.distributor.hazelcast.request;
 import ch.sourcepond.io.fssync.common.api.SyncPath;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+import static java.lang.Math.min;
+import static java.nio.ByteBuffer.wrap;
+
+/**
+ * Carries a chunk of file data. The chunk is serialized straight from the buffer it has been created with, so no
+ * intermediate copy is necessary when the request is published immediately. Because Hazelcast serializes a message
+ * while it is being published, the buffer must not be changed until the publish call has returned.
+ */
 public class TransferRequest extends DistributionMessage {
-    private final byte[] data;
+    private static final int DIRECT_CHUNK_SIZE = 8192;
+    private final String codecOrNull;
+    private transient ByteBuffer data;
 
-    public TransferRequest(final SyncPath pPath, final byte[] pData) {
+    public TransferRequest(final SyncPath pPath, final ByteBuffer pData, final String pCodecOrNull) {
         super(pPath);
         data = pData;
+        codecOrNull = pCodecOrNull;
+    }
+
+    public TransferRequest(final SyncPath pPath, final ByteBuffer pData) {
+        this(pPath, pData, null);
+    }
+
+    public TransferRequest(final SyncPath pPath, final byte[] pData) {
+        this(pPath, wrap(pData));
+    }
+
+    /**
+     * Returns the data of this request. The buffer returned is independent of the buffer of this request, i.e. it
+     * can be consumed without affecting the request.
+     *
+     * @return Data, never {@code null}
+     */
+    public ByteBuffer getData() {
+        return data.duplicate();
+    }
+
+    /**
+     * Returns the number of bytes of data carried by this request.
+     *
+     * @return Number of bytes, zero or positive
+     */
+    public int getSize() {
+        return data.remaining();
+    }
+
+    /**
+     * Returns the name of the {@link ch.sourcepond.io.fssync.distributor.api.CompressionCodec} the data of this
+     * request has been compressed with.
+     *
+     * @return Name of the codec or {@code null} if the data is not compressed
+     */
+    public String getCodecOrNull() {
+        return codecOrNull;
+    }
+
+    private void writeObject(final ObjectOutputStream pOut) throws IOException {
+        pOut.defaultWriteObject();
+        final ByteBuffer source = data.duplicate();
+        pOut.writeInt(source.remaining());
+        if (source.hasArray()) {
+            pOut.write(source.array(), source.arrayOffset() + source.position(), source.remaining());
+        } else {
+            // Direct or mapped buffers need to be copied through a small chunk
+            final byte[] chunk = new byte[min(DIRECT_CHUNK_SIZE, source.remaining())];
+            while (source.hasRemaining()) {
+                final int length = min(chunk.length, source.remaining());
+                source.get(chunk, 0, length);
+                pOut.write(chunk, 0, length);
+            }
+        }
     }
 
-    public byte[] getData() {
-        return data;
+    private void readObject(final ObjectInputStream pIn) throws IOException, ClassNotFoundException {
+        pIn.defaultReadObject();
+        final byte[] received = new byte[pIn.readInt()];
+        pIn.readFully(received);
+        data = wrap(received);
     }
 }
@@ -13,7 +13,11 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast.request;
 
+import ch.sourcepond.io.fssync.common.api.BlockSignature;
+import ch.sourcepond.io.fssync.common.api.Chunk;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.ClientMessageProcessor;
+import ch.sourcepond.io.fssync.distributor.hazelcast.compression.Codecs;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.StatusMessage;
 import ch.sourcepond.io.fssync.target.api.NodeInfo;
 import ch.sourcepond.io.fssync.common.api.SyncPath;
 import ch.sourcepond.io.fssync.target.api.SyncTarget;
@@ -21,17 +25,50 @@ import ch.sourcepond.io.fssync.target.api.SyncTarget;
 import javax.inject.Inject;
 import java.io.IOException;
 
-import static java.nio.ByteBuffer.wrap;
-
 final class TransferRequestProcessor extends ClientMessageProcessor<TransferRequest> {
 
+    private final Codecs codecs;
+
     @Inject
-    TransferRequestProcessor(final SyncTarget pSyncTarget) {
+    TransferRequestProcessor(final SyncTarget pSyncTarget, final Codecs pCodecs) {
         super(pSyncTarget);
+        codecs = pCodecs;
+    }
+
+    @Override
+    protected StatusMessage process(final NodeInfo pNodeInfo, final SyncPath pPath, final TransferRequest pMessage) throws IOException {
+        if (pMessage instanceof SignatureRequest) {
+            final IntersectionCollector<BlockSignature> collector = new IntersectionCollector<>();
+            syncTarget.signatures(pNodeInfo, pPath, ((SignatureRequest) pMessage).getBlockSize(), collector);
+            return new SignatureResponse(pMessage.getRequestId(), pPath, collector.getElementsOrNull());
+        }
+        if (pMessage instanceof ChunkQueryRequest) {
+            final IntersectionCollector<Chunk> collector = new IntersectionCollector<>();
+            syncTarget.chunks(pNodeInfo, pPath, ((ChunkQueryRequest) pMessage).getChunks(), collector);
+            return new ChunkQueryResponse(pMessage.getRequestId(), pPath, collector.getElementsOrNull());
+        }
+        return super.process(pNodeInfo, pPath, pMessage);
     }
 
     @Override
     protected void processMessage(final NodeInfo pNodeInfo, final SyncPath pPath, final TransferRequest pMessage) throws IOException {
-        syncTarget.transfer(pNodeInfo, pPath, wrap(pMessage.getData()));
+        if (pMessage instanceof CopyRequest) {
+            final CopyRequest copy = (CopyRequest) pMessage;
+            syncTarget.copy(pNodeInfo, pPath, copy.getOffset(), copy.getLength());
+        } else if (pMessage instanceof ChunkRequest) {
+            final ChunkRequest chunk = (ChunkRequest) pMessage;
+            if (chunk.isCopy()) {
+                syncTarget.copyChunk(pNodeInfo, pPath, chunk.getChunk());
+            } else {
+                syncTarget.transferChunk(pNodeInfo, pPath, chunk.getChunk(), chunk.getData());
+            }
+        } else if (pMessage instanceof DuplicateRequest) {
+            final DuplicateRequest duplicate = (DuplicateRequest) pMessage;
+            syncTarget.duplicate(pNodeInfo, pPath, duplicate.getSource(), duplicate.getChecksum());
+        } else {
+            final String codec = pMessage.getCodecOrNull();
+            syncTarget.transfer(pNodeInfo, pPath, codec == null ?
+                    pMessage.getData() : codecs.get(codec).decompress(pMessage.getData()));
+        }
     }
 }
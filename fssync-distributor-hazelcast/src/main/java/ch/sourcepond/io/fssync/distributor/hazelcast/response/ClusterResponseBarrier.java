@@ -13,7 +13,11 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast.response;
 
-import java.io.Serializable;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.StatusMessage;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -21,20 +25,30 @@ import java.util.concurrent.TimeoutException;
  *
  * @param <T> Type of the message to be distributed
  */
-public interface ClusterResponseBarrier<T extends Serializable> {
+public interface ClusterResponseBarrier<T extends DistributionMessage> {
+
+    /**
+     * Broadcasts the message specified into the cluster and returns a future which is completed as soon as all
+     * members have sent an response to this barrier. Removing a cluster member while waiting is handled as a valid
+     * response. If one or more members produced a failure while processing the message, the future is completed
+     * exceptionally with a {@link ResponseException}. If one or more members did not send a response within the
+     * defined timeout (see {@link ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig#responseTimeout()}),
+     * the future is completed exceptionally with a {@link TimeoutException}.
+     *
+     * @param pMessage Message to be distributed to the cluster, must not be {@code null}
+     * @return Future which is completed when all members have answered, never {@code null}
+     * @throws NullPointerException Thrown, if the message specified is {@code null}.
+     */
+    CompletableFuture<Void> send(T pMessage);
 
     /**
-     * Broadcasts the message specified into the cluster and blocks until all
-     * members have sent an response to this barrier. Removing a cluster member while this method is blocking
-     * is handled as a valid response. If one or more members produced a failure while processing the message, a
-     * {@link ResponseException} is caused to be thrown. If one or more members did not send a response to this
-     * barrier object within the defined timeout (see {@link ch.sourcepond.io.distributor.spi.TimeoutConfig}), a
-     * {@link TimeoutException} is caused to be thrown.
+     * Same as {@link #send(DistributionMessage)}, but the future returned is completed with the responses of all
+     * members. This is useful if the members answer with a sub-class of {@link StatusMessage} which carries
+     * additional data.
      *
      * @param pMessage Message to be distributed to the cluster, must not be {@code null}
-     * @throws TimeoutException Thrown, if one or more cluster members did not answer withing the defined timeout.
-     * @throws ResponseException Thrown, if one or more cluster members produces failures while consuming the message.
+     * @return Future which is completed with the responses when all members have answered, never {@code null}
      * @throws NullPointerException Thrown, if the message specified is {@code null}.
      */
-    void awaitResponse(final T pMessage)  throws TimeoutException, ResponseException;
+    CompletableFuture<Collection<StatusMessage>> collect(T pMessage);
 }
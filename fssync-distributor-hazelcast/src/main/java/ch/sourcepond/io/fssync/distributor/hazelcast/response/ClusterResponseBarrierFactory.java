@@ -13,34 +13,56 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast.response;
 
-import ch.sourcepond.io.fssync.common.api.SyncPath;
-import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Response;
-import ch.sourcepond.io.fssync.distributor.hazelcast.common.StatusMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
 import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
 import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IExecutorService;
 import com.hazelcast.core.ITopic;
 
 import javax.inject.Inject;
-import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static ch.sourcepond.io.fssync.distributor.hazelcast.response.ClusterResponseBarrierImpl.send;
 
 /**
- * Factory to create {@link ClusterResponseBarrier} instances.
+ * Factory to create {@link ClusterResponseBarrier} and {@link ClusterResponseWindow} instances.
  */
 public class ClusterResponseBarrierFactory {
-    private final HazelcastInstance hci;
+    private final AtomicLong streams = new AtomicLong();
+    private final ResponseDispatcher dispatcher;
     private final DistributorConfig config;
-    private final ITopic<StatusMessage> responseTopic;
+    private final HazelcastInstance hci;
+    private final TransferCredits credits;
 
     @Inject
-    ClusterResponseBarrierFactory(final HazelcastInstance pHci,
+    ClusterResponseBarrierFactory(final ResponseDispatcher pDispatcher,
                                   final DistributorConfig pConfig,
-                                  @Response final ITopic<StatusMessage> pResponseTopic) {
-        hci = pHci;
+                                  final HazelcastInstance pHci,
+                                  final TransferCredits pCredits) {
+        dispatcher = pDispatcher;
         config = pConfig;
-        responseTopic = pResponseTopic;
+        hci = pHci;
+        credits = pCredits;
+    }
+
+    public <T extends DistributionMessage> ClusterResponseBarrier<T> create(final ITopic<T> pRequestTopic) {
+        return new ClusterResponseBarrierImpl<T>(dispatcher, pRequestTopic);
+    }
+
+    public <T extends DistributionMessage> ClusterResponseWindow<T> createWindow(final ITopic<T> pRequestTopic) {
+        return new ClusterResponseWindowImpl<T>(m -> send(dispatcher, pRequestTopic, m), credits,
+                config.transferCompletionPolicy(), config.transferQuorum(), config.transferWindowSize());
     }
 
-    public <T extends Serializable> ClusterResponseBarrier<T> create(final SyncPath pPath, final ITopic<T> pRequestTopic) {
-        return new ClusterResponseBarrierImpl<T>(pPath, hci, config, responseTopic, pRequestTopic);
+    /**
+     * Creates a window which sends its messages directly to the receiver registered under the name specified on
+     * every member (see {@link ch.sourcepond.io.fssync.distributor.hazelcast.common.DirectMessageReceiver}). The
+     * messages of a window form a stream which is processed in order by the receivers.
+     */
+    public <T extends DistributionMessage> ClusterResponseWindow<T> createDirectWindow(final IExecutorService pExecutor,
+                                                                                      final String pReceiverName) {
+        return new ClusterResponseWindowImpl<T>(new DirectSender<>(dispatcher, pExecutor, pReceiverName,
+                hci.getLocalEndpoint().getUuid(), streams.incrementAndGet()), credits,
+                config.transferCompletionPolicy(), config.transferQuorum(), config.transferWindowSize());
     }
 }
@@ -0,0 +1,83 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.response;
+
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A window which allows to broadcast several messages into the cluster before their responses have been
+ * received. Members acknowledge the messages by their request id; publishing a further message is only deferred
+ * when the number of messages which have not been acknowledged by enough members (see
+ * {@link ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig#transferCompletionPolicy()}) reaches
+ * the configured window size
+ * (see {@link ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig#transferWindowSize()}), or
+ * when the unacknowledged data of all windows of this member exceeds the smallest amount of data the members are
+ * willing to buffer (see
+ * {@link ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig#transferCredits()}).
+ *
+ * @param <T> Type of the messages to be distributed
+ */
+public interface ClusterResponseWindow<T extends DistributionMessage> extends AutoCloseable {
+
+    /**
+     * Broadcasts the message specified into the cluster. If the window is full, the message is broadcast as soon
+     * as all members have acknowledged the oldest message in the window. The future returned is completed when the
+     * message has been broadcast. If one or more members produced a failure while processing an earlier message, or
+     * did not acknowledge it in time, the future is completed exceptionally with a {@link ResponseException} or a
+     * {@link java.util.concurrent.TimeoutException}, respectively.
+     *
+     * @param pMessage Message to be distributed to the cluster, must not be {@code null}
+     * @return Future which is completed when the message has been broadcast, never {@code null}
+     * @throws NullPointerException Thrown, if the message specified is {@code null}.
+     */
+    CompletableFuture<Void> publish(T pMessage);
+
+    /**
+     * Broadcasts the message specified like {@link #publish(DistributionMessage)}, but additionally accounts the
+     * file data it carries against the credits of this member.
+     *
+     * @param pMessage Message to be distributed to the cluster, must not be {@code null}
+     * @param pSize Number of bytes of file data carried by the message
+     * @return Future which is completed when the message has been broadcast, never {@code null}
+     * @throws NullPointerException Thrown, if the message specified is {@code null}.
+     */
+    CompletableFuture<Void> publish(T pMessage, int pSize);
+
+    /**
+     * Returns whether the next message carrying the number of bytes specified would be broadcast immediately, i.e.
+     * while {@link #publish(DistributionMessage, int)} is being executed. This is the case when the window is not
+     * full and enough credits are available; the credits are then reserved for the next message. Callers use this
+     * to decide whether a message may refer to data which is changed after publishing.
+     *
+     * @param pSize Number of bytes of file data carried by the next message
+     * @return {@code true} if the next message is broadcast immediately, {@code false} otherwise
+     */
+    boolean hasCapacity(int pSize);
+
+    /**
+     * Returns a future which is completed when all messages published so far have been acknowledged by all members.
+     *
+     * @return Future, never {@code null}
+     */
+    CompletableFuture<Void> awaitResponses();
+
+    /**
+     * Cancels all pending messages of this window. Messages which have not been acknowledged yet are not
+     * awaited anymore.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,180 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.response;
+
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.config.CompletionPolicy;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import static java.lang.Math.max;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.CompletableFuture.allOf;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+final class ClusterResponseWindowImpl<T extends DistributionMessage> implements ClusterResponseWindow<T> {
+    private static final int NO_RESERVATION = -1;
+    private final Deque<ResponseFuture> outstandingResponses = new ArrayDeque<>();
+    private final Collection<ResponseFuture> catchingUp = new ArrayList<>();
+    private final Function<T, ResponseFuture> sender;
+    private final TransferCredits credits;
+    private final CompletionPolicy policy;
+    private final int quorum;
+    private final int windowSize;
+    private int reservedCredits = NO_RESERVATION;
+    private boolean closed;
+
+    /**
+     * @param pSender Function which sends a message and returns the future registered for its responses
+     * @param pCredits Credits which limit the amount of unacknowledged data of all windows
+     * @param pPolicy Policy which specifies when a request stops counting against the window size
+     * @param pQuorum Configured quorum, see {@link CompletionPolicy#required(int, int)}
+     * @param pWindowSize Maximum number of requests which may wait for their responses
+     */
+    ClusterResponseWindowImpl(final Function<T, ResponseFuture> pSender,
+                              final TransferCredits pCredits,
+                              final CompletionPolicy pPolicy,
+                              final int pQuorum,
+                              final int pWindowSize) {
+        sender = pSender;
+        credits = pCredits;
+        policy = pPolicy;
+        quorum = pQuorum;
+        windowSize = max(1, pWindowSize);
+    }
+
+    private CompletableFuture<Void> quorumOf(final ResponseFuture pFuture) {
+        return pFuture.quorum(policy, quorum);
+    }
+
+    private ResponseFuture releaseAnswered() {
+        // Release all leading requests which have been answered successfully by enough members meanwhile; the
+        // remaining members of a released request catch up asynchronously
+        while (!outstandingResponses.isEmpty() && quorumOf(outstandingResponses.peekFirst()).isDone()
+                && !quorumOf(outstandingResponses.peekFirst()).isCompletedExceptionally()) {
+            final ResponseFuture released = outstandingResponses.removeFirst();
+            if (!released.isDone()) {
+                catchingUp.add(released);
+            }
+        }
+        catchingUp.removeIf(f -> f.isDone() && !f.isCompletedExceptionally());
+
+        // Fail fast if any later request has already been answered with a failure
+        for (final ResponseFuture future : catchingUp) {
+            if (future.isCompletedExceptionally()) {
+                return future;
+            }
+        }
+        for (final ResponseFuture future : outstandingResponses) {
+            if (future.isCompletedExceptionally()) {
+                return future;
+            }
+        }
+        return null;
+    }
+
+    private void releaseReservation() {
+        if (reservedCredits != NO_RESERVATION) {
+            credits.release(reservedCredits);
+            reservedCredits = NO_RESERVATION;
+        }
+    }
+
+    private CompletableFuture<Void> send(final T pMessage, final int pSize) {
+        final ResponseFuture future = sender.apply(pMessage);
+        // Credits are released when every member has acknowledged, so slower members keep limiting the data
+        future.whenComplete((v, e) -> credits.release(pSize));
+        quorumOf(future);
+        outstandingResponses.addLast(future);
+        return completedFuture(null);
+    }
+
+    private synchronized CompletableFuture<Void> sendGranted(final T pMessage, final int pSize) {
+        if (closed) {
+            credits.release(pSize);
+            final CompletableFuture<Void> cancelled = new CompletableFuture<>();
+            cancelled.cancel(false);
+            return cancelled;
+        }
+        return send(pMessage, pSize);
+    }
+
+    @Override
+    public CompletableFuture<Void> publish(final T pMessage) {
+        return publish(pMessage, 0);
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> publish(final T pMessage, final int pSize) {
+        requireNonNull(pMessage, "message is null");
+        final ResponseFuture failed = releaseAnswered();
+        if (failed != null) {
+            releaseReservation();
+            return failed.thenRun(() -> {});
+        }
+        if (outstandingResponses.size() < windowSize) {
+            if (reservedCredits == pSize) {
+                reservedCredits = NO_RESERVATION;
+                return send(pMessage, pSize);
+            }
+            releaseReservation();
+            if (credits.tryAcquire(pSize)) {
+                return send(pMessage, pSize);
+            }
+
+            // Too much data of this member waits for acknowledges; send as soon as enough has been acknowledged
+            return credits.acquire(pSize).thenCompose(v -> sendGranted(pMessage, pSize));
+        }
+
+        // Window is full; try again as soon as the oldest request has been answered by enough members
+        return quorumOf(outstandingResponses.peekFirst()).thenCompose(v -> publish(pMessage, pSize));
+    }
+
+    @Override
+    public synchronized boolean hasCapacity(final int pSize) {
+        releaseAnswered();
+        if (outstandingResponses.size() >= windowSize) {
+            return false;
+        }
+        releaseReservation();
+        if (credits.tryAcquire(pSize)) {
+            reservedCredits = pSize;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> awaitResponses() {
+        final List<ResponseFuture> pending = new ArrayList<>(catchingUp);
+        pending.addAll(outstandingResponses);
+        return allOf(pending.toArray(new CompletableFuture<?>[0]));
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        releaseReservation();
+        catchingUp.forEach(f -> f.cancel(false));
+        catchingUp.clear();
+        outstandingResponses.forEach(f -> f.cancel(false));
+        outstandingResponses.clear();
+    }
+}
@@ -0,0 +1,99 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.response;
+
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.DirectMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.StatusMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.exception.TransferException;
+import com.hazelcast.core.IExecutorService;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.MemberLeftException;
+import com.hazelcast.core.MultiExecutionCallback;
+
+import java.util.Map;
+import java.util.function.Function;
+
+import static java.lang.String.format;
+
+/**
+ * Sends messages point-to-point to the {@link ch.sourcepond.io.fssync.distributor.hazelcast.common.DirectMessageReceiver}
+ * of every member through an {@link IExecutorService}. The results of the executed messages are the answers of the
+ * members; only messages which a receiver had to buffer are answered on the response topic. Every message gets the
+ * next sequence number of the stream represented by this sender, which allows the receivers to restore the sending
+ * order.
+ */
+final class DirectSender<T extends DistributionMessage> implements Function<T, ResponseFuture> {
+    private final ResponseDispatcher dispatcher;
+    private final IExecutorService executor;
+    private final String receiverName;
+    private final String sender;
+    private final long stream;
+    private long sequence;
+
+    DirectSender(final ResponseDispatcher pDispatcher,
+                 final IExecutorService pExecutor,
+                 final String pReceiverName,
+                 final String pSender,
+                 final long pStream) {
+        dispatcher = pDispatcher;
+        executor = pExecutor;
+        receiverName = pReceiverName;
+        sender = pSender;
+        stream = pStream;
+    }
+
+    @Override
+    public synchronized ResponseFuture apply(final T pMessage) {
+        final ResponseFuture future = dispatcher.register(pMessage.getRequestId());
+        try {
+            // The message is serialized before this method returns, so the caller may re-use its data afterwards
+            executor.submitToAllMembers(new DirectMessage(receiverName, sender, stream, sequence++, pMessage),
+                    new MultiExecutionCallback() {
+
+                        @Override
+                        public void onResponse(final Member pMember, final Object pValue) {
+                            answer(future, pMember, pMessage, pValue);
+                        }
+
+                        @Override
+                        public void onComplete(final Map<Member, Object> pValues) {
+                            // noop; every member has been handled by onResponse
+                        }
+                    });
+        } catch (final RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static void answer(final ResponseFuture pFuture,
+                               final Member pMember,
+                               final DistributionMessage pMessage,
+                               final Object pValue) {
+        if (pValue == null) {
+            // The message has been buffered by the receiver, the answer arrives through the response topic
+            return;
+        }
+        if (pValue instanceof StatusMessage) {
+            pFuture.answer(pMember, (StatusMessage) pValue);
+        } else if (pValue instanceof MemberLeftException) {
+            pFuture.memberRemoved(pMember);
+        } else {
+            final Throwable cause = pValue instanceof Throwable ? (Throwable) pValue : null;
+            pFuture.answer(pMember, new StatusMessage(pMessage.getRequestId(), pMessage.getPath(),
+                    new TransferException(format("%s could not be processed on %s", pMessage.getPath(), pMember), cause)));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.response;
+
+import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
+import com.hazelcast.core.Member;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Tracks the response latency of every member as exponentially weighted moving average. The averages are shared by
+ * all requests of a distributor. A member is lagging when its average exceeds the average of the median member by
+ * the configured factor (see {@link DistributorConfig#laggingFactor()}). Transfer windows do not wait for lagging
+ * members; they catch up asynchronously within their extended timeout (see {@link ResponseDispatcher}).
+ */
+final class MemberLatencies {
+    // Weight of the latest latency; older latencies decay with (1 - WEIGHT) per response
+    static final double WEIGHT = 0.2;
+    private final ConcurrentMap<Member, Double> averages = new ConcurrentHashMap<>();
+    private final DistributorConfig config;
+
+    MemberLatencies(final DistributorConfig pConfig) {
+        config = pConfig;
+    }
+
+    void record(final Member pMember, final long pLatencyNanos) {
+        averages.merge(pMember, (double) pLatencyNanos, (average, latest) -> average + WEIGHT * (latest - average));
+    }
+
+    void remove(final Member pMember) {
+        averages.remove(pMember);
+    }
+
+    private double median() {
+        final double[] values = averages.values().stream().mapToDouble(Double::doubleValue).sorted().toArray();
+        return values.length == 0 ? 0 : values[(values.length - 1) / 2];
+    }
+
+    boolean isLagging(final Member pMember) {
+        final double factor = config.laggingFactor();
+        final Double average = averages.get(pMember);
+        if (factor <= 0 || average == null || average < MILLISECONDS.toNanos(config.laggingThresholdMillis())) {
+            return false;
+        }
+        return average > factor * median();
+    }
+}
@@ -0,0 +1,167 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.response;
+
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.StatusMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.MemberAttributeEvent;
+import com.hazelcast.core.MembershipEvent;
+import com.hazelcast.core.MembershipListener;
+import com.hazelcast.core.Message;
+import com.hazelcast.core.MessageListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeoutException;
+
+import static java.lang.Math.max;
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Long-living listener which receives all responses sent to this member and completes the {@link ResponseFuture}
+ * which has been registered for the request id of the response (see
+ * {@link ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage#getRequestId()}). There is exactly
+ * one dispatcher per distributor instance. Futures which are not completed within the configured response timeout
+ * are completed exceptionally with a {@link TimeoutException}. The timeout applies per member: a member which is
+ * lagging when the request is registered (see {@link MemberLatencies}) gets the timeout multiplied by the lagging
+ * factor, so a known straggler does not fail the request as long as it answers within its own deadline.
+ */
+public class ResponseDispatcher implements MessageListener<StatusMessage>, MembershipListener, AutoCloseable {
+    private final ConcurrentMap<String, ResponseFuture> pendingResponses = new ConcurrentHashMap<>();
+    private final HazelcastInstance hci;
+    private final DistributorConfig config;
+    private final ScheduledExecutorService timeoutExecutor;
+    private final MemberLatencies latencies;
+
+    ResponseDispatcher(final HazelcastInstance pHci,
+                       final DistributorConfig pConfig,
+                       final ScheduledExecutorService pTimeoutExecutor) {
+        this(pHci, pConfig, pTimeoutExecutor, new MemberLatencies(pConfig));
+    }
+
+    ResponseDispatcher(final HazelcastInstance pHci,
+                       final DistributorConfig pConfig,
+                       final ScheduledExecutorService pTimeoutExecutor,
+                       final MemberLatencies pLatencies) {
+        hci = pHci;
+        config = pConfig;
+        timeoutExecutor = pTimeoutExecutor;
+        latencies = pLatencies;
+    }
+
+    private long timeoutNanos(final Member pMember) {
+        final long timeout = config.responseTimeoutUnit().toNanos(config.responseTimeout());
+        return latencies.isLagging(pMember) ? (long) (timeout * max(1, config.laggingFactor())) : timeout;
+    }
+
+    private void timeout(final ResponseFuture pFuture, final Collection<Member> pMembers, final long pTimeoutNanos) {
+        final List<Member> open = pFuture.getOpenMembers();
+        open.retainAll(pMembers);
+        if (!open.isEmpty()) {
+            // Members which did not answer in time are lagging for the following requests
+            open.forEach(m -> latencies.record(m, pTimeoutNanos));
+            pFuture.completeExceptionally(new TimeoutException(format("Waiting for node responses timed-out after %d %s; " +
+                    "no response from %s", config.responseTimeoutUnit().convert(pTimeoutNanos, NANOSECONDS),
+                    config.responseTimeoutUnit(), open)));
+        }
+    }
+
+    /**
+     * Registers a new future for the request id specified. The future expects an answer from every member which is
+     * currently part of the cluster. The registration must happen <em>before</em> the request is published.
+     *
+     * @param pRequestId Request id, must not be {@code null}
+     * @return New future, never {@code null}
+     */
+    ResponseFuture register(final String pRequestId) {
+        final Set<Member> members = hci.getCluster().getMembers();
+        final ResponseFuture future = new ResponseFuture(members, latencies);
+        pendingResponses.put(requireNonNull(pRequestId, "request-id is null"), future);
+
+        // Members with the same timeout share a deadline
+        final Map<Long, List<Member>> deadlines = new HashMap<>();
+        for (final Member member : members) {
+            deadlines.computeIfAbsent(timeoutNanos(member), t -> new ArrayList<>()).add(member);
+        }
+        final List<ScheduledFuture<?>> timeouts = new ArrayList<>(deadlines.size());
+        deadlines.forEach((timeout, deadlineMembers) -> timeouts.add(timeoutExecutor.schedule(
+                () -> timeout(future, deadlineMembers, timeout), timeout, NANOSECONDS)));
+
+        // Remove the registration as soon as the future is done, regardless of the outcome
+        future.whenComplete((v, e) -> {
+            timeouts.forEach(t -> t.cancel(false));
+            pendingResponses.remove(pRequestId, future);
+        });
+        return future;
+    }
+
+    /**
+     * Removes the future registered for the request id specified, if existing. Any answers arriving later for this
+     * request id are ignored.
+     *
+     * @param pRequestId Request id, must not be {@code null}
+     */
+    void unregister(final String pRequestId) {
+        pendingResponses.remove(pRequestId);
+    }
+
+    @Override
+    public void onMessage(final Message<StatusMessage> pMessage) {
+        final StatusMessage message = pMessage.getMessageObject();
+        final ResponseFuture future = pendingResponses.get(message.getRequestId());
+
+        // Responses to unknown requests (timed-out, or sent by another member) are ignored
+        if (future != null) {
+            future.answer(pMessage.getPublishingMember(), message);
+        }
+    }
+
+    @Override
+    public void memberAdded(final MembershipEvent membershipEvent) {
+        // noop
+    }
+
+    @Override
+    public void memberRemoved(final MembershipEvent membershipEvent) {
+        latencies.remove(membershipEvent.getMember());
+        pendingResponses.values().forEach(f -> f.memberRemoved(membershipEvent.getMember()));
+    }
+
+    @Override
+    public void memberAttributeChanged(final MemberAttributeEvent memberAttributeEvent) {
+        // noop
+    }
+
+    /**
+     * Completes all pending futures exceptionally and stops the timeout scheduler.
+     */
+    @Override
+    public void close() {
+        timeoutExecutor.shutdownNow();
+        pendingResponses.values().forEach(f -> f.completeExceptionally(
+                new ResponseException("Distributor has been closed before all members answered")));
+    }
+}
@@ -0,0 +1,180 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.response;
+
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.StatusMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.config.CompletionPolicy;
+import com.hazelcast.core.Member;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.System.nanoTime;
+
+/**
+ * Future which is completed as soon as all cluster members known when the request has been sent, have answered.
+ * Removing a member is handled as valid answer. If one or more members answered with a failure, the future is
+ * completed exceptionally with a {@link ResponseException}.
+ */
+final class ResponseFuture extends CompletableFuture<Void> {
+    private final Map<Member, StatusMessage> responses = new HashMap<>();
+    private final long sent = nanoTime();
+    private final MemberLatencies latencies;
+    private CompletableFuture<Void> quorum;
+    private int required;
+
+    ResponseFuture(final Collection<Member> pMembers, final MemberLatencies pLatencies) {
+        latencies = pLatencies;
+        for (final Member member : pMembers) {
+            responses.put(member, null);
+        }
+        completeIfDone();
+    }
+
+    private boolean hasOpenAnswers() {
+        for (final StatusMessage e : responses.values()) {
+            if (e == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ResponseException collectMemberExceptions() {
+        StringBuilder builder = null;
+        for (final Map.Entry<Member, StatusMessage> entry : responses.entrySet()) {
+            final IOException failure = entry.getValue().getFailureOrNull();
+            if (failure != null) {
+                if (builder == null) {
+                    builder = new StringBuilder("\nFailures:\n\t");
+                }
+                builder.append(entry.getKey()).append(": ").append(failure.getMessage()).append("\n\t");
+            }
+        }
+        return builder == null ? null : new ResponseException(builder.append(
+                "See logs on members for further information.").toString());
+    }
+
+    private void completeQuorumIfReached() {
+        if (quorum != null) {
+            int successful = 0;
+            for (final StatusMessage response : responses.values()) {
+                if (response != null && response.getFailureOrNull() == null) {
+                    successful++;
+                }
+            }
+            // Removed members do not count, so the quorum can never exceed the remaining members
+            if (successful >= min(required, responses.size())) {
+                quorum.complete(null);
+            }
+        }
+    }
+
+    private void completeIfDone() {
+        if (!hasOpenAnswers()) {
+            final ResponseException failure = collectMemberExceptions();
+            if (failure == null) {
+                complete(null);
+            } else {
+                completeExceptionally(failure);
+            }
+        }
+    }
+
+    synchronized void answer(final Member pMember, final StatusMessage pResponse) {
+        // Only the first answer of a member which is still expected counts
+        if (responses.containsKey(pMember) && responses.get(pMember) == null) {
+            responses.put(pMember, pResponse);
+            latencies.record(pMember, nanoTime() - sent);
+            completeQuorumIfReached();
+            completeIfDone();
+        }
+    }
+
+    /**
+     * Returns the responses received so far. Members which have been removed before they answered are not
+     * contained. Once this future is completed normally, the list contains the response of every member.
+     *
+     * @return List of responses, never {@code null}
+     */
+    synchronized List<StatusMessage> getResponses() {
+        final List<StatusMessage> answered = new ArrayList<>(responses.size());
+        for (final StatusMessage response : responses.values()) {
+            if (response != null) {
+                answered.add(response);
+            }
+        }
+        return answered;
+    }
+
+    /**
+     * Returns the members which have not answered yet.
+     *
+     * @return List of members, never {@code null}
+     */
+    synchronized List<Member> getOpenMembers() {
+        final List<Member> open = new ArrayList<>();
+        for (final Map.Entry<Member, StatusMessage> entry : responses.entrySet()) {
+            if (entry.getValue() == null) {
+                open.add(entry.getKey());
+            }
+        }
+        return open;
+    }
+
+    synchronized void memberRemoved(final Member pMember) {
+        responses.remove(pMember);
+        completeQuorumIfReached();
+        completeIfDone();
+    }
+
+    /**
+     * Returns a future which is completed as soon as the number of members required by the policy specified has
+     * answered successfully. Members which are lagging when this method is called first are not waited for (see
+     * {@link MemberLatencies}); they catch up asynchronously. If this future is completed before, the future
+     * returned is completed the same way. The policy of the first call applies to all further calls.
+     *
+     * @param pPolicy Completion policy, must not be {@code null}
+     * @param pQuorum Configured quorum, see {@link CompletionPolicy#required(int, int)}
+     * @return Future, never {@code null}
+     */
+    synchronized CompletableFuture<Void> quorum(final CompletionPolicy pPolicy, final int pQuorum) {
+        if (quorum == null) {
+            quorum = new CompletableFuture<>();
+            int lagging = 0;
+            for (final Member member : responses.keySet()) {
+                if (latencies.isLagging(member)) {
+                    lagging++;
+                }
+            }
+            required = max(1, min(pPolicy.required(responses.size(), pQuorum), responses.size() - lagging));
+            whenComplete((v, e) -> {
+                if (e == null) {
+                    quorum.complete(null);
+                } else {
+                    quorum.completeExceptionally(e);
+                }
+            });
+            completeQuorumIfReached();
+        }
+        return quorum;
+    }
+}
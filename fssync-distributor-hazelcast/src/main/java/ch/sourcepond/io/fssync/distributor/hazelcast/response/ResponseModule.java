@@ -13,12 +13,43 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast.response;
 
+import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Response;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.MessageListenerRegistration;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.StatusMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
 import com.google.inject.AbstractModule;
+import com.google.inject.Provides;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+
+import javax.inject.Singleton;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import static ch.sourcepond.io.fssync.distributor.hazelcast.common.MessageListenerRegistration.register;
 
 public class ResponseModule extends AbstractModule {
 
     @Override
     protected void configure() {
         bind(ClusterResponseBarrierFactory.class);
+        bind(TransferCredits.class).in(Singleton.class);
+    }
+
+    @Provides
+    @Singleton
+    ResponseDispatcher responseDispatcher(final HazelcastInstance pHci, final DistributorConfig pConfig) {
+        // Most requests are answered in time; drop their timeouts from the queue as soon as they are cancelled
+        final ScheduledThreadPoolExecutor timeoutExecutor = new ScheduledThreadPoolExecutor(1);
+        timeoutExecutor.setRemoveOnCancelPolicy(true);
+        final ResponseDispatcher dispatcher = new ResponseDispatcher(pHci, pConfig, timeoutExecutor);
+        pHci.getCluster().addMembershipListener(dispatcher);
+        return dispatcher;
+    }
+
+    @Provides
+    @Singleton
+    @Response
+    MessageListenerRegistration registerResponseDispatcher(final @Response ITopic<StatusMessage> pResponseTopic, final ResponseDispatcher pDispatcher) {
+        return register(pResponseTopic, pDispatcher);
     }
 }
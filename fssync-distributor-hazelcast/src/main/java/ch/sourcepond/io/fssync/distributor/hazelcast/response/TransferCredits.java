@@ -0,0 +1,128 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.response;
+
+import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.Member;
+
+import javax.inject.Inject;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig.TRANSFER_CREDITS_ATTRIBUTE;
+import static java.lang.Math.min;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.runAsync;
+
+/**
+ * Limits the amount of file data which this member has sent into the cluster, but which has not been acknowledged
+ * by all members yet. Every member advertises the amount of data it is willing to buffer through a member attribute
+ * (see {@link DistributorConfig#transferCredits()}); the smallest amount advertised by a current member is the
+ * limit. The credits are shared by all transfer windows of this member, so a slow member delays the reading of the
+ * files on the source instead of receiving more data than it can write before the responses time out.
+ */
+class TransferCredits {
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private final HazelcastInstance hci;
+    private final DistributorConfig config;
+    private long used;
+
+    private static final class Waiter {
+        private final CompletableFuture<Void> granted = new CompletableFuture<>();
+        private final int credits;
+
+        private Waiter(final int pCredits) {
+            credits = pCredits;
+        }
+    }
+
+    @Inject
+    TransferCredits(final HazelcastInstance pHci, final DistributorConfig pConfig) {
+        hci = pHci;
+        config = pConfig;
+    }
+
+    private long limit() {
+        long limit = config.transferCredits();
+        for (final Member member : hci.getCluster().getMembers()) {
+            final Integer advertised = member.getIntAttribute(TRANSFER_CREDITS_ATTRIBUTE);
+            if (advertised != null) {
+                limit = min(limit, advertised);
+            }
+        }
+        return limit;
+    }
+
+    private boolean isAvailable(final int pCredits) {
+        // A single message is always allowed, otherwise a message bigger than the limit would never be sent
+        return used == 0 || used + pCredits <= limit();
+    }
+
+    /**
+     * Acquires the credits specified if they are available immediately.
+     *
+     * @param pCredits Number of bytes to be sent
+     * @return {@code true} if the credits have been acquired, {@code false} otherwise
+     */
+    synchronized boolean tryAcquire(final int pCredits) {
+        if (waiters.isEmpty() && isAvailable(pCredits)) {
+            used += pCredits;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Acquires the credits specified. The future returned is completed as soon as the credits have been granted;
+     * waiting acquisitions are granted in order.
+     *
+     * @param pCredits Number of bytes to be sent
+     * @return Future, never {@code null}
+     */
+    synchronized CompletableFuture<Void> acquire(final int pCredits) {
+        if (tryAcquire(pCredits)) {
+            return completedFuture(null);
+        }
+        final Waiter waiter = new Waiter(pCredits);
+        waiters.addLast(waiter);
+        return waiter.granted;
+    }
+
+    /**
+     * Releases the credits specified, which must have been acquired before.
+     *
+     * @param pCredits Number of bytes which have been acknowledged
+     */
+    void release(final int pCredits) {
+        final List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            used -= pCredits;
+            while (!waiters.isEmpty() && isAvailable(waiters.peekFirst().credits)) {
+                final Waiter waiter = waiters.removeFirst();
+                used += waiter.credits;
+                granted.add(waiter);
+            }
+        }
+
+        // Granted windows send their next message; do not let them run while the caller may hold the lock of
+        // another window
+        for (final Waiter waiter : granted) {
+            runAsync(() -> waiter.granted.complete(null));
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast;
+
+import ch.sourcepond.io.fssync.common.api.BlockSignature;
+import ch.sourcepond.io.fssync.common.api.Chunk;
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.api.AsyncDistributor;
+import ch.sourcepond.io.fssync.distributor.api.BatchFile;
+import ch.sourcepond.io.fssync.distributor.hazelcast.exception.LockException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static ch.sourcepond.io.fssync.distributor.hazelcast.Constants.EXPECTED_DATA;
+import static ch.sourcepond.io.fssync.distributor.hazelcast.common.Futures.failed;
+import static java.lang.Thread.currentThread;
+import static java.lang.Thread.interrupted;
+import static java.nio.ByteBuffer.wrap;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BlockingDistributorTest {
+    private static final byte[] EXPECTED_CHECKSUM = new byte[0];
+    private static final IOException EXPECTED_FAILURE = new IOException();
+    private final AsyncDistributor delegate = mock(AsyncDistributor.class);
+    private final SyncPath path = mock(SyncPath.class);
+    private final BlockingDistributor distributor = new BlockingDistributor(delegate);
+
+    @After
+    public void tearDown() {
+        interrupted();
+    }
+
+    @Test
+    public void tryLock() throws Exception {
+        when(delegate.tryLock(path)).thenReturn(completedFuture(true));
+        assertTrue(distributor.tryLock(path));
+    }
+
+    @Test
+    public void tryLockFailed() throws Exception {
+        final LockException expected = new LockException("any");
+        when(delegate.tryLock(path)).thenReturn(failed(expected));
+        try {
+            distributor.tryLock(path);
+            fail("Exception expected");
+        } catch (final LockException e) {
+            assertSame(expected, e);
+        }
+    }
+
+    @Test
+    public void tryLockInterrupted() throws Exception {
+        when(delegate.tryLock(path)).thenReturn(new CompletableFuture<>());
+        currentThread().interrupt();
+        try {
+            distributor.tryLock(path);
+            fail("Exception expected");
+        } catch (final InterruptedIOException e) {
+            assertTrue(currentThread().isInterrupted());
+        }
+    }
+
+    @Test
+    public void unexpectedFailure() throws Exception {
+        final IllegalStateException expected = new IllegalStateException();
+        when(delegate.unlock(path)).thenReturn(failed(expected));
+        try {
+            distributor.unlock(path);
+            fail("Exception expected");
+        } catch (final IllegalStateException e) {
+            assertSame(expected, e);
+        }
+    }
+
+    @Test
+    public void checkedFailure() throws Exception {
+        final Exception expected = new Exception();
+        when(delegate.delete(path)).thenReturn(failed(expected));
+        try {
+            distributor.delete(path);
+            fail("Exception expected");
+        } catch (final IOException e) {
+            assertSame(expected, e.getCause());
+        }
+    }
+
+    @Test
+    public void tryLockAll() throws Exception {
+        when(delegate.tryLockAll(asList(path))).thenReturn(completedFuture(true));
+        assertTrue(distributor.tryLockAll(asList(path)));
+    }
+
+    @Test
+    public void unlockAll() throws Exception {
+        when(delegate.unlockAll(asList(path))).thenReturn(completedFuture(null));
+        distributor.unlockAll(asList(path));
+        verify(delegate).unlockAll(asList(path));
+    }
+
+    @Test
+    public void unlock() throws Exception {
+        when(delegate.unlock(path)).thenReturn(completedFuture(null));
+        distributor.unlock(path);
+        verify(delegate).unlock(path);
+    }
+
+    @Test
+    public void delete() throws Exception {
+        when(delegate.delete(path)).thenReturn(completedFuture(null));
+        distributor.delete(path);
+        verify(delegate).delete(path);
+    }
+
+    @Test
+    public void transfer() throws Exception {
+        final ByteBuffer buffer = wrap(EXPECTED_DATA);
+        when(delegate.transfer(path, buffer)).thenReturn(completedFuture(null));
+        distributor.transfer(path, buffer);
+        verify(delegate).transfer(path, buffer);
+    }
+
+    @Test
+    public void getSignatures() throws Exception {
+        final Collection<BlockSignature> expected = emptyList();
+        when(delegate.getSignatures(path, 4)).thenReturn(completedFuture(expected));
+        assertSame(expected, distributor.getSignatures(path, 4));
+    }
+
+    @Test
+    public void duplicate() throws Exception {
+        final byte[] checksum = new byte[]{1, 2, 3};
+        when(delegate.duplicate(path, checksum)).thenReturn(completedFuture(true));
+        assertTrue(distributor.duplicate(path, checksum));
+        verify(delegate).duplicate(path, checksum);
+    }
+
+    @Test
+    public void chunks() throws Exception {
+        final Chunk chunk = new Chunk(3, new byte[]{1});
+        final ByteBuffer data = wrap(new byte[]{1, 2, 3});
+        final Collection<Chunk> known = asList(chunk);
+        when(delegate.getKnownChunks(path, known)).thenReturn(completedFuture(known));
+        when(delegate.transferChunk(path, chunk, data)).thenReturn(completedFuture(null));
+        when(delegate.copyChunk(path, chunk)).thenReturn(completedFuture(null));
+        assertEquals(known, distributor.getKnownChunks(path, known));
+        distributor.transferChunk(path, chunk, data);
+        distributor.copyChunk(path, chunk);
+        verify(delegate).transferChunk(path, chunk, data);
+        verify(delegate).copyChunk(path, chunk);
+    }
+
+    @Test
+    public void copy() throws Exception {
+        when(delegate.copy(path, 10, 20)).thenReturn(completedFuture(null));
+        distributor.copy(path, 10, 20);
+        verify(delegate).copy(path, 10, 20);
+    }
+
+    @Test
+    public void batch() throws Exception {
+        final List<BatchFile> files = asList(new BatchFile(path, new byte[0], new byte[0]));
+        when(delegate.batch(files)).thenReturn(completedFuture(null));
+        distributor.batch(files);
+        verify(delegate).batch(files);
+    }
+
+    @Test
+    public void discard() throws Exception {
+        when(delegate.discard(path, EXPECTED_FAILURE)).thenReturn(completedFuture(null));
+        distributor.discard(path, EXPECTED_FAILURE);
+        verify(delegate).discard(path, EXPECTED_FAILURE);
+    }
+
+    @Test
+    public void store() throws Exception {
+        when(delegate.store(path, EXPECTED_CHECKSUM)).thenReturn(completedFuture(null));
+        distributor.store(path, EXPECTED_CHECKSUM);
+        verify(delegate).store(path, EXPECTED_CHECKSUM);
+    }
+
+    @Test
+    public void getChecksum() {
+        when(delegate.getChecksum(path)).thenReturn(completedFuture(EXPECTED_CHECKSUM));
+        assertSame(EXPECTED_CHECKSUM, distributor.getChecksum(path));
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void getChecksumFailed() {
+        when(delegate.getChecksum(path)).thenReturn(failed(EXPECTED_FAILURE));
+        distributor.getChecksum(path);
+    }
+}
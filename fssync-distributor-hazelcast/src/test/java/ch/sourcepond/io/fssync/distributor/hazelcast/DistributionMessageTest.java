@@ -18,6 +18,8 @@ import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.mockito.Mockito.mock;
 
 public abstract class DistributionMessageTest<T extends DistributionMessage> {
@@ -30,4 +32,10 @@ public abstract class DistributionMessageTest<T extends DistributionMessage> {
     public void getPath() {
         assertEquals(path, message.getPath());
     }
+
+    @Test
+    public void getRequestId() {
+        assertNotNull(message.getRequestId());
+        assertNotEquals(message.getRequestId(), createMessage().getRequestId());
+    }
 }
@@ -13,184 +13,410 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast;
 
+import ch.sourcepond.io.fssync.common.api.BlockSignature;
+import ch.sourcepond.io.fssync.common.api.Chunk;
 import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.api.AsyncDistributor;
+import ch.sourcepond.io.fssync.distributor.api.BatchFile;
 import ch.sourcepond.io.fssync.distributor.api.Distributor;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.MessageListenerRegistration;
-import ch.sourcepond.io.fssync.distributor.hazelcast.exception.DeletionException;
-import ch.sourcepond.io.fssync.distributor.hazelcast.exception.DiscardException;
 import ch.sourcepond.io.fssync.distributor.hazelcast.exception.LockException;
 import ch.sourcepond.io.fssync.distributor.hazelcast.exception.StoreException;
-import ch.sourcepond.io.fssync.distributor.hazelcast.exception.TransferException;
-import ch.sourcepond.io.fssync.distributor.hazelcast.exception.UnlockException;
 import ch.sourcepond.io.fssync.distributor.hazelcast.lock.LockManager;
 import ch.sourcepond.io.fssync.distributor.hazelcast.request.RequestDistributor;
-import com.hazelcast.core.Endpoint;
-import com.hazelcast.core.HazelcastInstance;
+import ch.sourcepond.io.fssync.distributor.hazelcast.response.ResponseDispatcher;
+import com.hazelcast.core.ExecutionCallback;
+import com.hazelcast.core.ICompletableFuture;
 import com.hazelcast.core.IMap;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.osgi.framework.ServiceRegistration;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import static ch.sourcepond.io.fssync.distributor.hazelcast.Constants.EXPECTED_DATA;
 import static ch.sourcepond.io.fssync.distributor.hazelcast.HazelcastDistributor.EMPTY_CHECKSUM;
+import static ch.sourcepond.io.fssync.distributor.hazelcast.common.Futures.failed;
 import static java.nio.ByteBuffer.wrap;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 public class HazelcastDistributorTest {
-    private static final String EXPECTED_ENDPOINT_UUID = "someUuid";
     private static final byte[] EXPECTED_CHECKSUM = new byte[0];
     private static final IOException EXPECTED_FAILURE = new IOException();
-    private final HazelcastInstance hci = mock(HazelcastInstance.class);
+    private static final byte[] BLOB_CHECKSUM = new byte[]{1, 2, 3};
+    private static final String BLOB_KEY = "AQID";
     private final IMap<SyncPath, byte[]> checksums = mock(IMap.class);
+    private final IMap<String, SyncPath> blobs = mock(IMap.class);
+    private final ICompletableFuture<SyncPath> blobFuture = mock(ICompletableFuture.class);
+    private final ICompletableFuture<byte[]> getFuture = mock(ICompletableFuture.class);
+    private final ICompletableFuture<Void> setFuture = mock(ICompletableFuture.class);
     private final LockManager lockManager = mock(LockManager.class);
     private final RequestDistributor requestDistributor = mock(RequestDistributor.class);
+    private final ResponseDispatcher responseDispatcher = mock(ResponseDispatcher.class);
     private final MessageListenerRegistration registration = mock(MessageListenerRegistration.class);
     private final Set<MessageListenerRegistration> registrations = new HashSet<>();
-    private final Endpoint endpoint = mock(Endpoint.class);
     private final SyncPath path = mock(SyncPath.class);
-    private final ServiceRegistration<Distributor> serviceRegistration = mock(ServiceRegistration.class);
-    private final HazelcastDistributor distributor = new HazelcastDistributor(checksums, lockManager, requestDistributor, registrations);
+    private final SyncPath source = mock(SyncPath.class);
+    private final ServiceRegistration<AsyncDistributor> serviceRegistration = mock(ServiceRegistration.class);
+    private final ServiceRegistration<Distributor> blockingServiceRegistration = mock(ServiceRegistration.class);
+    private final HazelcastDistributor distributor = new HazelcastDistributor(checksums, blobs, lockManager,
+            requestDistributor, responseDispatcher, registrations);
+    private volatile byte[] checksum = EXPECTED_CHECKSUM;
+    private volatile SyncPath blobSource = source;
 
     @Before
     public void setup() {
-        when(hci.getLocalEndpoint()).thenReturn(endpoint);
-        when(endpoint.getUuid()).thenReturn(EXPECTED_ENDPOINT_UUID);
-        when(checksums.get(path)).thenReturn(EXPECTED_CHECKSUM);
+        when(checksums.getAsync(path)).thenReturn(getFuture);
+        doAnswer(inv -> {
+            ((ExecutionCallback<byte[]>) inv.getArgument(0)).onResponse(checksum);
+            return null;
+        }).when(getFuture).andThen(any());
+        when(checksums.setAsync(path, EXPECTED_CHECKSUM)).thenReturn(setFuture);
+        doAnswer(inv -> {
+            ((ExecutionCallback<Void>) inv.getArgument(0)).onResponse(null);
+            return null;
+        }).when(setFuture).andThen(any());
+        when(blobs.setAsync("", path)).thenReturn(setFuture);
+        when(blobs.getAsync(BLOB_KEY)).thenReturn(blobFuture);
+        doAnswer(inv -> {
+            ((ExecutionCallback<SyncPath>) inv.getArgument(0)).onResponse(blobSource);
+            return null;
+        }).when(blobFuture).andThen(any());
+        when(requestDistributor.store(path)).thenReturn(completedFuture(null));
         registrations.add(registration);
         distributor.setRegistration(serviceRegistration);
+        distributor.setBlockingRegistration(blockingServiceRegistration);
     }
 
     @Test(expected = NullPointerException.class)
-    public void tryLockPathIsNull() throws LockException {
+    public void tryLockPathIsNull() {
         distributor.tryLock(null);
-        verifyNoMoreInteractions(lockManager, hci, checksums, requestDistributor, requestDistributor, registration);
     }
 
     @Test
-    public void tryLock() throws LockException {
-        when(lockManager.tryLock(path)).thenReturn(true);
-        assertTrue(distributor.tryLock(path));
+    public void tryLock() throws Exception {
+        final CompletableFuture<Boolean> expected = completedFuture(true);
+        when(lockManager.tryLock(path)).thenReturn(expected);
+        assertSame(expected, distributor.tryLock(path));
         verify(lockManager).tryLock(path);
-        verifyNoMoreInteractions(lockManager, hci, checksums, requestDistributor, requestDistributor, registration);
+        verifyNoMoreInteractions(lockManager, checksums, requestDistributor, registration);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tryLockAllEmpty() {
+        distributor.tryLockAll(emptyList());
+    }
+
+    @Test
+    public void tryLockAll() {
+        final CompletableFuture<Boolean> expected = completedFuture(true);
+        when(lockManager.tryLockAll(asList(path))).thenReturn(expected);
+        assertSame(expected, distributor.tryLockAll(asList(path)));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void unlockAllPathsAreNull() {
+        distributor.unlockAll(null);
+    }
+
+    @Test
+    public void unlockAll() {
+        final CompletableFuture<Void> expected = completedFuture(null);
+        when(lockManager.unlockAll(asList(path))).thenReturn(expected);
+        assertSame(expected, distributor.unlockAll(asList(path)));
     }
 
     @Test(expected = NullPointerException.class)
-    public void unlockPathIsNull() throws UnlockException {
+    public void unlockPathIsNull() {
         distributor.unlock(null);
-        verifyNoMoreInteractions(lockManager, hci, checksums, requestDistributor, requestDistributor, registration);
     }
 
     @Test
-    public void unlock() throws UnlockException {
-        distributor.unlock(path);
+    public void unlock() {
+        final CompletableFuture<Void> expected = completedFuture(null);
+        when(lockManager.unlock(path)).thenReturn(expected);
+        assertSame(expected, distributor.unlock(path));
         verify(lockManager).unlock(path);
-        verifyNoMoreInteractions(lockManager, hci, checksums, requestDistributor, requestDistributor, registration);
+        verifyNoMoreInteractions(lockManager, checksums, requestDistributor, registration);
     }
 
     @Test(expected = NullPointerException.class)
-    public void deletePathIsNull() throws DeletionException {
+    public void deletePathIsNull() {
         distributor.delete(null);
-        verifyNoMoreInteractions(lockManager, hci, checksums, requestDistributor, requestDistributor, registration);
     }
 
     @Test
-    public void delete() throws DeletionException {
-        distributor.delete(path);
+    public void delete() {
+        final CompletableFuture<Void> expected = completedFuture(null);
+        when(requestDistributor.delete(path)).thenReturn(expected);
+        assertSame(expected, distributor.delete(path));
         verify(requestDistributor).delete(path);
-        verifyNoMoreInteractions(lockManager, hci, checksums, requestDistributor, requestDistributor, registration);
+        verifyNoMoreInteractions(lockManager, checksums, requestDistributor, registration);
     }
 
     @Test(expected = NullPointerException.class)
-    public void transferPathIsNull() throws TransferException {
+    public void transferPathIsNull() {
         distributor.transfer(null, wrap(EXPECTED_DATA));
-        verifyNoMoreInteractions(lockManager, hci, checksums, requestDistributor, requestDistributor, registration);
     }
 
     @Test(expected = NullPointerException.class)
-    public void transferBufferIsNull() throws TransferException {
+    public void transferBufferIsNull() {
         distributor.transfer(path, null);
-        verifyNoMoreInteractions(lockManager, hci, checksums, requestDistributor, requestDistributor, registration);
     }
 
     @Test
-    public void transfer() throws TransferException {
+    public void transfer() {
         final ByteBuffer buffer = wrap(EXPECTED_DATA);
-        distributor.transfer(path, buffer);
+        final CompletableFuture<Void> expected = completedFuture(null);
+        when(requestDistributor.transfer(path, buffer)).thenReturn(expected);
+        assertSame(expected, distributor.transfer(path, buffer));
         verify(requestDistributor).transfer(path, buffer);
-        verifyNoMoreInteractions(lockManager, hci, checksums, requestDistributor, requestDistributor, registration);
+        verifyNoMoreInteractions(lockManager, checksums, requestDistributor, registration);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void getSignaturesPathIsNull() {
+        distributor.getSignatures(null, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getSignaturesInvalidBlockSize() {
+        distributor.getSignatures(path, 0);
+    }
+
+    @Test
+    public void getSignatures() {
+        final CompletableFuture<Collection<BlockSignature>> expected = new CompletableFuture<>();
+        when(requestDistributor.getSignatures(path, 4)).thenReturn(expected);
+        assertSame(expected, distributor.getSignatures(path, 4));
+        verifyNoMoreInteractions(lockManager, checksums, registration);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void copyPathIsNull() {
+        distributor.copy(null, 0, 4);
+    }
+
+    @Test
+    public void copy() {
+        final CompletableFuture<Void> expected = completedFuture(null);
+        when(requestDistributor.copy(path, 10, 20)).thenReturn(expected);
+        assertSame(expected, distributor.copy(path, 10, 20));
+        verifyNoMoreInteractions(lockManager, checksums, registration);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void duplicatePathIsNull() {
+        distributor.duplicate(null, BLOB_CHECKSUM);
     }
 
     @Test(expected = NullPointerException.class)
-    public void discardPathIsNull() throws DiscardException {
+    public void duplicateChecksumIsNull() {
+        distributor.duplicate(path, null);
+    }
+
+    @Test
+    public void duplicate() throws Exception {
+        when(requestDistributor.duplicate(path, source, BLOB_CHECKSUM)).thenReturn(completedFuture(null));
+        assertTrue(distributor.duplicate(path, BLOB_CHECKSUM).get());
+        verify(requestDistributor).duplicate(path, source, BLOB_CHECKSUM);
+    }
+
+    @Test
+    public void duplicateUnknownContent() throws Exception {
+        blobSource = null;
+        assertFalse(distributor.duplicate(path, BLOB_CHECKSUM).get());
+        verify(requestDistributor, never()).duplicate(any(), any(), any());
+    }
+
+    @Test
+    public void duplicateSamePath() throws Exception {
+        blobSource = path;
+        assertFalse(distributor.duplicate(path, BLOB_CHECKSUM).get());
+        verify(requestDistributor, never()).duplicate(any(), any(), any());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void getKnownChunksChunksIsNull() {
+        distributor.getKnownChunks(path, null);
+    }
+
+    @Test
+    public void getKnownChunks() {
+        final CompletableFuture<Collection<Chunk>> expected = completedFuture(emptyList());
+        final List<Chunk> chunks = asList(new Chunk(1, new byte[]{1}));
+        when(requestDistributor.getKnownChunks(path, chunks)).thenReturn(expected);
+        assertSame(expected, distributor.getKnownChunks(path, chunks));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void transferChunkIsNull() {
+        distributor.transferChunk(path, null, wrap(EXPECTED_DATA));
+    }
+
+    @Test
+    public void transferChunk() {
+        final CompletableFuture<Void> expected = completedFuture(null);
+        final Chunk chunk = new Chunk(1, new byte[]{1});
+        final ByteBuffer data = wrap(EXPECTED_DATA);
+        when(requestDistributor.transferChunk(path, chunk, data)).thenReturn(expected);
+        assertSame(expected, distributor.transferChunk(path, chunk, data));
+    }
+
+    @Test
+    public void copyChunk() {
+        final CompletableFuture<Void> expected = completedFuture(null);
+        final Chunk chunk = new Chunk(1, new byte[]{1});
+        when(requestDistributor.copyChunk(path, chunk)).thenReturn(expected);
+        assertSame(expected, distributor.copyChunk(path, chunk));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void discardPathIsNull() {
         distributor.discard(null, EXPECTED_FAILURE);
-        verifyNoMoreInteractions(lockManager, hci, checksums, requestDistributor, requestDistributor, registration);
     }
 
     @Test(expected = NullPointerException.class)
-    public void discardFailureIsNull() throws DiscardException {
+    public void discardFailureIsNull() {
         distributor.discard(path, null);
-        verifyNoMoreInteractions(lockManager, hci, checksums, requestDistributor, requestDistributor, registration);
     }
 
     @Test
-    public void discard() throws StoreException {
-        distributor.store(path, EXPECTED_CHECKSUM);
-        verify(requestDistributor).store(path);
-        verify(checksums).put(path, EXPECTED_CHECKSUM);
-        verifyNoMoreInteractions(lockManager, hci, checksums, requestDistributor, requestDistributor, registration);
+    public void discard() {
+        final CompletableFuture<Void> expected = completedFuture(null);
+        when(requestDistributor.discard(path, EXPECTED_FAILURE)).thenReturn(expected);
+        assertSame(expected, distributor.discard(path, EXPECTED_FAILURE));
+        verify(requestDistributor).discard(path, EXPECTED_FAILURE);
+        verifyNoMoreInteractions(lockManager, checksums, requestDistributor, registration);
     }
 
     @Test(expected = NullPointerException.class)
-    public void storePathIsNull() throws StoreException {
+    public void storePathIsNull() {
         distributor.store(null, EXPECTED_CHECKSUM);
-        verifyNoMoreInteractions(lockManager, hci, checksums, requestDistributor, requestDistributor, registration);
     }
 
     @Test(expected = NullPointerException.class)
-    public void storeChecksumIsNull() throws StoreException {
+    public void storeChecksumIsNull() {
         distributor.store(path, null);
-        verifyNoMoreInteractions(lockManager, hci, checksums, requestDistributor, requestDistributor, registration);
     }
 
     @Test
-    public void store() throws StoreException {
-        distributor.store(path, EXPECTED_CHECKSUM);
+    public void store() throws Exception {
+        distributor.store(path, EXPECTED_CHECKSUM).get();
         verify(requestDistributor).store(path);
-        verify(checksums).put(path, EXPECTED_CHECKSUM);
-        verifyNoMoreInteractions(lockManager, hci, checksums, requestDistributor, requestDistributor, registration);
+        verify(checksums).setAsync(path, EXPECTED_CHECKSUM);
+        verify(blobs).setAsync("", path);
+    }
+
+    @Test
+    public void storeFailed() throws Exception {
+        final StoreException expected = new StoreException("any", null);
+        when(requestDistributor.store(path)).thenReturn(failed(expected));
+        try {
+            distributor.store(path, EXPECTED_CHECKSUM).get();
+            fail("Exception expected");
+        } catch (final ExecutionException e) {
+            assertSame(expected, e.getCause());
+        }
+
+        // Do only update the checksum when the store operation was successful
+        verify(checksums, never()).setAsync(path, EXPECTED_CHECKSUM);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchEmpty() {
+        distributor.batch(emptyList());
+    }
+
+    @Test
+    public void batch() throws Exception {
+        final List<BatchFile> files = asList(new BatchFile(path, EXPECTED_DATA, EXPECTED_CHECKSUM));
+        when(lockManager.acquireGlobalLocks(asList(path))).thenReturn(completedFuture(null));
+        when(lockManager.releaseGlobalLocks(asList(path))).thenReturn(completedFuture(null));
+        when(requestDistributor.batch(files)).thenReturn(completedFuture(null));
+        distributor.batch(files).get();
+        final InOrder order = inOrder(lockManager, requestDistributor, checksums);
+        order.verify(lockManager).acquireGlobalLocks(asList(path));
+        order.verify(requestDistributor).batch(files);
+        order.verify(checksums).setAsync(path, EXPECTED_CHECKSUM);
+        verify(blobs).setAsync("", path);
+        order.verify(lockManager).releaseGlobalLocks(asList(path));
+    }
+
+    @Test
+    public void batchLockFailed() throws Exception {
+        final LockException expected = new LockException("any");
+        when(lockManager.acquireGlobalLocks(asList(path))).thenReturn(failed(expected));
+        try {
+            distributor.batch(asList(new BatchFile(path, EXPECTED_DATA, EXPECTED_CHECKSUM))).get();
+            fail("Exception expected");
+        } catch (final ExecutionException e) {
+            assertSame(expected, e.getCause());
+        }
+        verify(requestDistributor, never()).batch(any());
+        verify(lockManager, never()).releaseGlobalLocks(any());
+    }
+
+    @Test
+    public void batchFailed() throws Exception {
+        final List<BatchFile> files = asList(new BatchFile(path, EXPECTED_DATA, EXPECTED_CHECKSUM));
+        final StoreException expected = new StoreException("any", null);
+        when(lockManager.acquireGlobalLocks(asList(path))).thenReturn(completedFuture(null));
+        when(lockManager.releaseGlobalLocks(asList(path))).thenReturn(completedFuture(null));
+        when(requestDistributor.batch(files)).thenReturn(failed(expected));
+        try {
+            distributor.batch(files).get();
+            fail("Exception expected");
+        } catch (final ExecutionException e) {
+            assertSame(expected, e.getCause());
+        }
+        verify(checksums, never()).setAsync(path, EXPECTED_CHECKSUM);
+        verify(lockManager).releaseGlobalLocks(asList(path));
     }
 
     @Test
-    public void getChecksumNoDefinedYet() {
-        when(checksums.get(path)).thenReturn(null);
-        assertSame(EMPTY_CHECKSUM, distributor.getChecksum(path));
-        verify(checksums).get(path);
-        verifyNoMoreInteractions(lockManager, hci, checksums, requestDistributor, requestDistributor, registration);
+    public void getChecksumNoDefinedYet() throws Exception {
+        checksum = null;
+        assertSame(EMPTY_CHECKSUM, distributor.getChecksum(path).get());
+        verify(checksums).getAsync(path);
     }
 
     @Test
-    public void getChecksum() {
-        assertSame(EXPECTED_CHECKSUM, distributor.getChecksum(path));
-        verify(checksums).get(path);
-        verifyNoMoreInteractions(lockManager, hci, checksums, requestDistributor, requestDistributor, registration);
+    public void getChecksum() throws Exception {
+        assertSame(EXPECTED_CHECKSUM, distributor.getChecksum(path).get());
+        verify(checksums).getAsync(path);
     }
 
     @Test
     public void close() {
         distributor.close();
         verify(registration).close();
+        verify(responseDispatcher).close();
         verify(lockManager).close();
         verify(serviceRegistration).unregister();
-        verifyNoMoreInteractions(lockManager, hci, checksums, requestDistributor, requestDistributor, registration);
+        verify(blockingServiceRegistration).unregister();
+        verifyNoMoreInteractions(lockManager, checksums, requestDistributor, registration);
     }
-}
\ No newline at end of file
+}
@@ -15,29 +15,42 @@ package ch.sourcepond.io.fssync.distributor.hazelcast.common;
 
 import ch.sourcepond.io.fssync.common.api.SyncPath;
 import ch.sourcepond.io.fssync.distributor.hazelcast.Constants;
+import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
 import com.hazelcast.core.Endpoint;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.ITopic;
 import com.hazelcast.core.Member;
 import com.hazelcast.core.Message;
 import com.hazelcast.core.MessageListener;
+import com.hazelcast.topic.ReliableMessageListener;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 
 import java.io.IOException;
 
 import static ch.sourcepond.io.fssync.distributor.hazelcast.Constants.EXPECTED_LOCAL_NODE;
 import static ch.sourcepond.io.fssync.distributor.hazelcast.Constants.EXPECTED_SENDER_NODE;
 import static ch.sourcepond.io.fssync.distributor.hazelcast.Constants.IS_EQUAL_TO_EXPECTED_NODE_INFO;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Answers.CALLS_REAL_METHODS;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 public class ClientMessageListenerTest {
-    private final ClientMessageProcessor<DistributionMessage> processor = mock(ClientMessageProcessor.class);
+    private static final String EXPECTED_REQUEST_ID = "anyRequestId";
+    private final ClientMessageProcessor<DistributionMessage> processor = mock(ClientMessageProcessor.class, withSettings().defaultAnswer(CALLS_REAL_METHODS));
     private final Message<DistributionMessage> message = mock(Message.class);
     private final DistributionMessage payload = mock(DistributionMessage.class);
     private final Member member = mock(Member.class);
@@ -45,7 +58,9 @@ public class ClientMessageListenerTest {
     private final HazelcastInstance hci = mock(HazelcastInstance.class);
     private final Endpoint endpoint = mock(Endpoint.class);
     private final SyncPath path = mock(SyncPath.class);
-    private final ClientMessageListenerFactory factory = new ClientMessageListenerFactory(hci, sendResponseTopic);
+    private final DistributorConfig config = mock(DistributorConfig.class);
+    private final TargetLocks targetLocks = mock(TargetLocks.class);
+    private final ClientMessageListenerFactory factory = new ClientMessageListenerFactory(hci, sendResponseTopic, config, targetLocks);
     private final MessageListener<DistributionMessage> listener = factory.createListener(processor);
 
     @Before
@@ -53,6 +68,7 @@ public class ClientMessageListenerTest {
         when(endpoint.getUuid()).thenReturn(EXPECTED_LOCAL_NODE);
         when(hci.getLocalEndpoint()).thenReturn(endpoint);
         when(payload.getPath()).thenReturn(path);
+        when(payload.getRequestId()).thenReturn(EXPECTED_REQUEST_ID);
         when(member.getUuid()).thenReturn(EXPECTED_SENDER_NODE);
         when(message.getMessageObject()).thenReturn(payload);
         when(message.getPublishingMember()).thenReturn(member);
@@ -64,7 +80,33 @@ public class ClientMessageListenerTest {
         verify(processor).processMessage(argThat(IS_EQUAL_TO_EXPECTED_NODE_INFO),
                 same(path),
                 same(payload));
-        verify(sendResponseTopic).publish(argThat(sm -> path.equals(sm.getPath()) && sm.getFailureOrNull() == null));
+        verify(sendResponseTopic).publish(argThat(sm -> path.equals(sm.getPath()) && EXPECTED_REQUEST_ID.equals(sm.getRequestId()) &&
+                sm.getFailureOrNull() == null));
+    }
+
+    @Test
+    public void onMessageLockLazily() throws IOException {
+        when(config.leaseLocks()).thenReturn(true);
+        factory.createLockingListener(processor).onMessage(message);
+        final InOrder order = inOrder(targetLocks, processor);
+        order.verify(targetLocks).lock(argThat(IS_EQUAL_TO_EXPECTED_NODE_INFO), same(path));
+        order.verify(processor).processMessage(argThat(IS_EQUAL_TO_EXPECTED_NODE_INFO), same(path), same(payload));
+    }
+
+    @Test
+    public void onMessageLockLazilyFailed() throws IOException {
+        when(config.leaseLocks()).thenReturn(true);
+        doThrow(Constants.EXPECTED_EXCEPTION).when(targetLocks).lock(argThat(IS_EQUAL_TO_EXPECTED_NODE_INFO), same(path));
+        factory.createLockingListener(processor).onMessage(message);
+        verify(processor, never()).processMessage(any(), any(), any());
+        verify(sendResponseTopic).publish(argThat(sm -> Constants.EXPECTED_EXCEPTION.equals(sm.getFailureOrNull())));
+    }
+
+    @Test
+    public void onMessageLockedExplicitly() throws IOException {
+        factory.createLockingListener(processor).onMessage(message);
+        listener.onMessage(message);
+        verifyZeroInteractions(targetLocks);
     }
 
     @Test
@@ -76,6 +118,15 @@ public class ClientMessageListenerTest {
         verify(processor).processMessage(argThat(IS_EQUAL_TO_EXPECTED_NODE_INFO),
                 same(path),
                 same(payload));
-        verify(sendResponseTopic).publish(argThat(sm -> path.equals(sm.getPath()) && Constants.EXPECTED_EXCEPTION.equals(sm.getFailureOrNull())));
+        verify(sendResponseTopic).publish(argThat(sm -> path.equals(sm.getPath()) && EXPECTED_REQUEST_ID.equals(sm.getRequestId()) &&
+                Constants.EXPECTED_EXCEPTION.equals(sm.getFailureOrNull())));
+    }
+
+    @Test
+    public void lossTolerant() {
+        final ReliableMessageListener<DistributionMessage> reliableListener = (ReliableMessageListener<DistributionMessage>) listener;
+        assertTrue(reliableListener.isLossTolerant());
+        assertFalse(reliableListener.isTerminal(new RuntimeException()));
+        assertEquals(-1, reliableListener.retrieveInitialSequence());
     }
 }
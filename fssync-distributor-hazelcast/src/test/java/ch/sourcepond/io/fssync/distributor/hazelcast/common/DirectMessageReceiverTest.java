@@ -0,0 +1,306 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.common;
+
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
+import ch.sourcepond.io.fssync.target.api.NodeInfo;
+import com.hazelcast.core.Cluster;
+import com.hazelcast.core.Endpoint;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.MembershipEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+import static ch.sourcepond.io.fssync.distributor.hazelcast.Constants.EXPECTED_LOCAL_NODE;
+import static ch.sourcepond.io.fssync.distributor.hazelcast.Constants.EXPECTED_SENDER_NODE;
+import static ch.sourcepond.io.fssync.distributor.hazelcast.Constants.IS_EQUAL_TO_EXPECTED_NODE_INFO;
+import static com.hazelcast.core.MembershipEvent.MEMBER_REMOVED;
+import static java.util.Collections.emptySet;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Answers.CALLS_REAL_METHODS;
+import static org.mockito.ArgumentCaptor.forClass;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class DirectMessageReceiverTest {
+    private static final String EXPECTED_RECEIVER_NAME = "anyReceiver";
+    private final ClientMessageProcessor<DistributionMessage> processor = mock(ClientMessageProcessor.class, withSettings().defaultAnswer(CALLS_REAL_METHODS));
+    private final HazelcastInstance hci = mock(HazelcastInstance.class);
+    private final Endpoint endpoint = mock(Endpoint.class);
+    private final SyncPath path = mock(SyncPath.class);
+    private final DistributorConfig config = mock(DistributorConfig.class);
+    private final TargetLocks targetLocks = mock(TargetLocks.class);
+    private final ConcurrentMap<String, Object> userContext = new ConcurrentHashMap<>();
+    private final ITopic<StatusMessage> responseTopic = mock(ITopic.class);
+    private final NodeInfo nodeInfo = new NodeInfo(EXPECTED_SENDER_NODE, EXPECTED_LOCAL_NODE);
+    private final ClientMessageListenerFactory factory = new ClientMessageListenerFactory(hci, responseTopic, config, targetLocks);
+    private final DistributionMessage first = new DistributionMessage(path);
+    private final DistributionMessage second = new DistributionMessage(path);
+    private final DistributionMessage third = new DistributionMessage(path);
+    private final DistributionMessage fourth = new DistributionMessage(path);
+    private DirectMessageReceiver<DistributionMessage> receiver;
+
+    @Before
+    public void setup() {
+        when(endpoint.getUuid()).thenReturn(EXPECTED_LOCAL_NODE);
+        when(hci.getLocalEndpoint()).thenReturn(endpoint);
+        when(hci.getUserContext()).thenReturn(userContext);
+        when(config.responseTimeoutUnit()).thenReturn(MINUTES);
+        when(config.responseTimeout()).thenReturn(1L);
+        receiver = factory.createReceiver(processor);
+    }
+
+    private StatusMessage receive(final long pStream, final long pSequence, final DistributionMessage pMessage) {
+        return receiver.receive(new DirectMessage(EXPECTED_RECEIVER_NAME, EXPECTED_SENDER_NODE, pStream, pSequence, pMessage));
+    }
+
+    private void verifyProcessed(final DistributionMessage pMessage) throws IOException {
+        verify(processor).processMessage(argThat(IS_EQUAL_TO_EXPECTED_NODE_INFO), same(path), same(pMessage));
+    }
+
+    @Test
+    public void receiveInOrder() throws IOException {
+        final StatusMessage status = receive(1, 0, first);
+        assertEquals(first.getRequestId(), status.getRequestId());
+        assertNull(status.getFailureOrNull());
+        receive(1, 1, second);
+        final InOrder order = inOrder(processor);
+        order.verify(processor).processMessage(argThat(IS_EQUAL_TO_EXPECTED_NODE_INFO), same(path), same(first));
+        order.verify(processor).processMessage(argThat(IS_EQUAL_TO_EXPECTED_NODE_INFO), same(path), same(second));
+    }
+
+    private StatusMessage published(final DistributionMessage pMessage) {
+        final ArgumentCaptor<StatusMessage> status = forClass(StatusMessage.class);
+        verify(responseTopic, atLeastOnce()).publish(status.capture());
+        for (final StatusMessage candidate : status.getAllValues()) {
+            if (pMessage.getRequestId().equals(candidate.getRequestId())) {
+                return candidate;
+            }
+        }
+        throw new AssertionError("No answer published for " + pMessage.getRequestId());
+    }
+
+    @Test
+    public void restoreOrder() throws IOException {
+        // Buffered messages are answered as soon as they have been applied
+        assertNull(receive(1, 2, third));
+        assertNull(receive(1, 1, second));
+        verify(processor, never()).processMessage(any(), any(), any());
+        verifyZeroInteractions(responseTopic);
+
+        final StatusMessage status = receive(1, 0, first);
+        assertEquals(first.getRequestId(), status.getRequestId());
+        assertNull(status.getFailureOrNull());
+        final InOrder order = inOrder(processor);
+        order.verify(processor).processMessage(argThat(IS_EQUAL_TO_EXPECTED_NODE_INFO), same(path), same(first));
+        order.verify(processor).processMessage(argThat(IS_EQUAL_TO_EXPECTED_NODE_INFO), same(path), same(second));
+        order.verify(processor).processMessage(argThat(IS_EQUAL_TO_EXPECTED_NODE_INFO), same(path), same(third));
+        assertNull(published(second).getFailureOrNull());
+        assertNull(published(third).getFailureOrNull());
+    }
+
+    @Test
+    public void duplicateMessage() throws IOException {
+        receive(1, 0, first);
+        assertNotNull(receive(1, 0, first).getFailureOrNull());
+        assertNull(receive(1, 2, third));
+        assertNotNull(receive(1, 2, third).getFailureOrNull());
+        verify(processor).processMessage(argThat(IS_EQUAL_TO_EXPECTED_NODE_INFO), same(path), same(first));
+    }
+
+    @Test
+    public void failureOfBufferedMessage() throws IOException {
+        final IOException expected = new IOException();
+        doThrow(expected).when(processor).processMessage(any(), any(), same(second));
+        assertNull(receive(1, 1, second));
+        assertNull(receive(1, 3, fourth));
+        final StatusMessage status = receive(1, 0, first);
+        assertEquals(first.getRequestId(), status.getRequestId());
+        assertNull(status.getFailureOrNull());
+        assertSame(expected, published(second).getFailureOrNull());
+        assertSame(expected, published(fourth).getFailureOrNull());
+        verify(processor, never()).processMessage(any(), any(), same(fourth));
+
+        // All further messages of the stream fail without being processed
+        final StatusMessage next = receive(1, 2, third);
+        assertEquals(third.getRequestId(), next.getRequestId());
+        assertSame(expected, next.getFailureOrNull());
+        verify(processor, never()).processMessage(any(), any(), same(third));
+    }
+
+    @Test
+    public void newStreamSupersedesOldStream() throws IOException {
+        receive(1, 0, first);
+        receive(2, 0, second);
+        verifyProcessed(second);
+
+        final StatusMessage status = receive(1, 1, third);
+        assertNotNull(status.getFailureOrNull());
+        verify(processor, never()).processMessage(any(), any(), same(third));
+    }
+
+    @Test
+    public void newStreamRejectsBufferedMessagesOfOldStream() throws IOException {
+        assertNull(receive(1, 1, second));
+        receive(2, 0, first);
+        assertNotNull(published(second).getFailureOrNull());
+        verify(processor, never()).processMessage(any(), any(), same(second));
+    }
+
+    @Test
+    public void finished() throws IOException {
+        receive(1, 0, first);
+        receiver.finished(nodeInfo, path);
+
+        // Late messages of the finished stream are rejected instead of starting a new stream
+        final StatusMessage late = receive(1, 1, second);
+        assertEquals(second.getRequestId(), late.getRequestId());
+        assertNotNull(late.getFailureOrNull());
+        verify(processor, never()).processMessage(any(), any(), same(second));
+
+        receive(2, 0, third);
+        verifyProcessed(third);
+    }
+
+    @Test
+    public void finishedRejectsBufferedMessages() throws IOException {
+        receive(1, 0, first);
+        assertNull(receive(1, 2, third));
+        receiver.finished(nodeInfo, path);
+        assertNotNull(published(third).getFailureOrNull());
+        assertNotNull(receive(1, 1, second).getFailureOrNull());
+        verify(processor, never()).processMessage(any(), any(), same(third));
+    }
+
+    @Test
+    public void finishedWithoutStream() throws IOException {
+        receive(2, 0, first);
+        receiver.finished(nodeInfo, mock(SyncPath.class));
+        receive(2, 1, second);
+        verifyProcessed(second);
+    }
+
+    @Test
+    public void finishedMarkerExpires() throws IOException {
+        when(config.responseTimeout()).thenReturn(0L);
+        receiver = factory.createReceiver(processor);
+        receive(1, 0, first);
+        receiver.finished(nodeInfo, path);
+
+        // The sender gave up on the stream after the response timeout, so the marker has been dropped
+        assertNull(receive(1, 1, second));
+        verify(processor, never()).processMessage(any(), any(), same(second));
+    }
+
+    @Test
+    public void idleStreamExpires() throws IOException {
+        when(config.responseTimeout()).thenReturn(0L);
+        receiver = factory.createReceiver(processor);
+        assertNull(receive(1, 1, second));
+        receiver.finished(nodeInfo, mock(SyncPath.class));
+        assertNotNull(published(second).getFailureOrNull());
+        verify(processor, never()).processMessage(any(), any(), same(second));
+    }
+
+    @Test
+    public void memberRemoved() throws IOException {
+        final Member member = mock(Member.class);
+        when(member.getUuid()).thenReturn(EXPECTED_SENDER_NODE);
+        assertNull(receive(1, 1, second));
+        receiver.memberRemoved(new MembershipEvent(mock(Cluster.class), member, MEMBER_REMOVED, emptySet()));
+        assertNotNull(published(second).getFailureOrNull());
+        verify(processor, never()).processMessage(any(), any(), same(second));
+    }
+
+    @Test(timeout = 10000)
+    public void processWithoutHoldingStream() throws Exception {
+        final CountDownLatch processing = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            processing.countDown();
+            proceed.await();
+            return null;
+        }).when(processor).processMessage(any(), any(), same(first));
+        final CompletableFuture<StatusMessage> status = supplyAsync(() -> receive(1, 0, first));
+        processing.await();
+
+        // The next message is handed over to the processing thread instead of waiting for it
+        assertNull(receive(1, 1, second));
+        proceed.countDown();
+        assertNull(status.get(5, SECONDS).getFailureOrNull());
+        verify(responseTopic, timeout(5000)).publish(argThat(m -> second.getRequestId().equals(m.getRequestId())));
+        final InOrder order = inOrder(processor);
+        order.verify(processor).processMessage(argThat(IS_EQUAL_TO_EXPECTED_NODE_INFO), same(path), same(first));
+        order.verify(processor).processMessage(argThat(IS_EQUAL_TO_EXPECTED_NODE_INFO), same(path), same(second));
+    }
+
+    @Test
+    public void receiveLockLazily() throws IOException {
+        when(config.leaseLocks()).thenReturn(true);
+        receiver = factory.createReceiver(processor);
+        receive(1, 0, first);
+        final InOrder order = inOrder(targetLocks, processor);
+        order.verify(targetLocks).lock(argThat(IS_EQUAL_TO_EXPECTED_NODE_INFO), same(path));
+        order.verify(processor).processMessage(argThat(IS_EQUAL_TO_EXPECTED_NODE_INFO), same(path), same(first));
+    }
+
+    @Test
+    public void receiveWithoutLock() throws IOException {
+        receive(1, 0, first);
+        verify(targetLocks, never()).lock(any(), any());
+    }
+
+    @Test
+    public void callRegisteredReceiver() throws IOException {
+        final MessageListenerRegistration registration = MessageListenerRegistration.register(hci, EXPECTED_RECEIVER_NAME, receiver);
+        final DirectMessage message = new DirectMessage(EXPECTED_RECEIVER_NAME, EXPECTED_SENDER_NODE, 1, 0, first);
+        message.setHazelcastInstance(hci);
+        assertNull(message.call().getFailureOrNull());
+        verifyProcessed(first);
+
+        registration.close();
+        final StatusMessage status = message.call();
+        assertEquals(first.getRequestId(), status.getRequestId());
+        assertNotNull(status.getFailureOrNull());
+    }
+}
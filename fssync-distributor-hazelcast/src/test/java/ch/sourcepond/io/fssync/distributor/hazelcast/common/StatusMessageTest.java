@@ -40,4 +40,12 @@ public class StatusMessageTest {
         assertEquals(path, response.getPath());
         assertSame(expected, response.getFailureOrNull());
     }
+
+    @Test
+    public void requestId() {
+        final StatusMessage response = new StatusMessage("anyRequestId", path, null);
+        assertEquals(path, response.getPath());
+        assertEquals("anyRequestId", response.getRequestId());
+        assertNull(response.getFailureOrNull());
+    }
 }
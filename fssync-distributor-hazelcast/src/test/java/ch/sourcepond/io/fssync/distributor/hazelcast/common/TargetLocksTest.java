@@ -0,0 +1,86 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.common;
+
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.target.api.NodeInfo;
+import ch.sourcepond.io.fssync.target.api.SyncTarget;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class TargetLocksTest {
+    private final SyncTarget syncTarget = mock(SyncTarget.class);
+    private final SyncPath path = mock(SyncPath.class);
+    private final NodeInfo nodeInfo = new NodeInfo("sender", "local");
+    private final NodeInfo otherNodeInfo = new NodeInfo("otherSender", "local");
+    private final TargetLocks targetLocks = new TargetLocks(syncTarget);
+
+    @Test
+    public void lockOnce() throws IOException {
+        targetLocks.lock(nodeInfo, path);
+        targetLocks.lock(nodeInfo, path);
+        verify(syncTarget).lock(nodeInfo, path);
+    }
+
+    @Test
+    public void lockAgainAfterUnlock() throws IOException {
+        targetLocks.lock(nodeInfo, path);
+        targetLocks.unlocked(nodeInfo, path);
+        targetLocks.lock(nodeInfo, path);
+        verify(syncTarget, times(2)).lock(nodeInfo, path);
+    }
+
+    @Test
+    public void unlockedByOtherNode() throws IOException {
+        targetLocks.lock(nodeInfo, path);
+        targetLocks.unlocked(otherNodeInfo, path);
+        targetLocks.lock(nodeInfo, path);
+        verify(syncTarget).lock(nodeInfo, path);
+    }
+
+    @Test
+    public void lockForOtherNode() throws IOException {
+        targetLocks.lock(nodeInfo, path);
+        targetLocks.lock(otherNodeInfo, path);
+
+        // The lock of the first node has been replaced
+        targetLocks.lock(nodeInfo, path);
+        verify(syncTarget, times(2)).lock(nodeInfo, path);
+        verify(syncTarget).lock(otherNodeInfo, path);
+    }
+
+    @Test
+    public void lockFailed() throws IOException {
+        final IOException expected = new IOException();
+        doThrow(expected).doNothing().when(syncTarget).lock(nodeInfo, path);
+        try {
+            targetLocks.lock(nodeInfo, path);
+            fail("Exception expected");
+        } catch (final IOException e) {
+            assertSame(expected, e);
+        }
+
+        // A failed lock must not be recorded
+        targetLocks.lock(nodeInfo, path);
+        verify(syncTarget, times(2)).lock(nodeInfo, path);
+    }
+}
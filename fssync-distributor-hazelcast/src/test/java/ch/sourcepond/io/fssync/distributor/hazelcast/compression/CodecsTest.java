@@ -0,0 +1,60 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.compression;
+
+import ch.sourcepond.io.fssync.distributor.api.CompressionCodec;
+import ch.sourcepond.io.fssync.distributor.hazelcast.exception.TransferException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CodecsTest {
+    private static final String EXPECTED_NAME = "lz4";
+    private final CompressionCodec codec = mock(CompressionCodec.class);
+    private final Codecs codecs = new Codecs();
+
+    @Test
+    public void deflateBuiltIn() throws TransferException {
+        assertTrue(codecs.get("deflate") instanceof DeflateCodec);
+    }
+
+    @Test
+    public void addAndRemove() throws TransferException {
+        when(codec.getName()).thenReturn(EXPECTED_NAME);
+        codecs.add(codec);
+        assertSame(codec, codecs.get(EXPECTED_NAME));
+        codecs.remove(codec);
+        try {
+            codecs.get(EXPECTED_NAME);
+        } catch (final TransferException e) {
+            assertTrue(e.getMessage().contains(EXPECTED_NAME));
+            return;
+        }
+        throw new AssertionError("Exception expected");
+    }
+
+    @Test
+    public void removeReplacedCodec() throws TransferException {
+        final CompressionCodec replacement = mock(CompressionCodec.class);
+        when(codec.getName()).thenReturn(EXPECTED_NAME);
+        when(replacement.getName()).thenReturn(EXPECTED_NAME);
+        codecs.add(codec);
+        codecs.add(replacement);
+        codecs.remove(codec);
+        assertSame(replacement, codecs.get(EXPECTED_NAME));
+    }
+}
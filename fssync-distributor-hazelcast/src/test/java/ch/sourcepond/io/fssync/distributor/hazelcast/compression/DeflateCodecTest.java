@@ -0,0 +1,85 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.compression;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static java.nio.ByteBuffer.wrap;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeflateCodecTest {
+    private static final byte[] TEXT = ("{\"path\": \"/etc/fssync/config.json\", \"enabled\": true}\n" +
+            "{\"path\": \"/etc/fssync/config.json\", \"enabled\": false}\n").getBytes(UTF_8);
+    private final DeflateCodec codec = new DeflateCodec();
+
+    @Test
+    public void getName() {
+        assertEquals("deflate", codec.getName());
+    }
+
+    @Test
+    public void compressAndDecompress() throws IOException {
+        final ByteBuffer data = wrap(TEXT);
+        final ByteBuffer compressed = codec.compress(data);
+        assertFalse(data.hasRemaining());
+        assertTrue(compressed.remaining() < TEXT.length);
+        assertEquals(wrap(TEXT), codec.decompress(compressed));
+        assertFalse(compressed.hasRemaining());
+    }
+
+    @Test
+    public void compressIncompressible() throws IOException {
+        final byte[] random = new byte[100000];
+        new Random(42).nextBytes(random);
+        assertEquals(wrap(random), codec.decompress(codec.compress(wrap(random))));
+    }
+
+    @Test
+    public void compressEmpty() throws IOException {
+        assertEquals(0, codec.decompress(codec.compress(wrap(new byte[0]))).remaining());
+    }
+
+    @Test(expected = IOException.class)
+    public void decompressTruncated() throws IOException {
+        final ByteBuffer compressed = codec.compress(wrap(TEXT));
+        compressed.limit(compressed.limit() - 4);
+        codec.decompress(compressed);
+    }
+
+    @Test(expected = IOException.class)
+    public void decompressNegativeLength() throws IOException {
+        final ByteBuffer compressed = codec.compress(wrap(TEXT));
+        compressed.putInt(0, -1);
+        codec.decompress(compressed);
+    }
+
+    @Test(expected = IOException.class)
+    public void decompressExcessiveLength() throws IOException {
+        final ByteBuffer compressed = codec.compress(wrap(TEXT));
+        compressed.putInt(0, Integer.MAX_VALUE);
+        codec.decompress(compressed);
+    }
+
+    @Test(expected = IOException.class)
+    public void decompressWithoutHeader() throws IOException {
+        codec.decompress(wrap(new byte[2]));
+    }
+}
@@ -0,0 +1,44 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.config;
+
+import org.junit.Test;
+
+import static ch.sourcepond.io.fssync.distributor.hazelcast.config.CompletionPolicy.ALL;
+import static ch.sourcepond.io.fssync.distributor.hazelcast.config.CompletionPolicy.MAJORITY;
+import static ch.sourcepond.io.fssync.distributor.hazelcast.config.CompletionPolicy.QUORUM;
+import static org.junit.Assert.assertEquals;
+
+public class CompletionPolicyTest {
+
+    @Test
+    public void all() {
+        assertEquals(5, ALL.required(5, 2));
+        assertEquals(0, ALL.required(0, 2));
+    }
+
+    @Test
+    public void majority() {
+        assertEquals(3, MAJORITY.required(5, 2));
+        assertEquals(3, MAJORITY.required(4, 2));
+        assertEquals(1, MAJORITY.required(1, 2));
+    }
+
+    @Test
+    public void quorum() {
+        assertEquals(2, QUORUM.required(5, 2));
+        assertEquals(1, QUORUM.required(5, 0));
+        assertEquals(3, QUORUM.required(3, 7));
+    }
+}
@@ -22,6 +22,10 @@ import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Transfer;
 import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Unlock;
 import ch.sourcepond.osgi.cmpn.metatype.ConfigBuilder;
 import com.hazelcast.config.Config;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.ringbuffer.Ringbuffer;
+import com.hazelcast.topic.TopicOverloadPolicy;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InOrder;
@@ -31,6 +35,10 @@ import org.osgi.service.cm.ConfigurationException;
 import java.io.IOException;
 import java.util.Dictionary;
 
+import static com.hazelcast.core.Hazelcast.newHazelcastInstance;
+import static com.hazelcast.ringbuffer.impl.RingbufferService.TOPIC_RB_PREFIX;
+import static com.hazelcast.topic.TopicOverloadPolicy.DISCARD_OLDEST;
+import static com.hazelcast.topic.TopicOverloadPolicy.ERROR;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertSame;
@@ -75,6 +83,7 @@ public class CustomDistributorConfigManagerTest extends DistributorConfigManager
     private static final int EXPECTED_BACKUP_COUNT = 2;
     private static final int EXPECTED_CAPACITY = 4000;
     private static final int EXPECTED_TIME_TO_LIVE_SECONDS = 400;
+    private static final TopicOverloadPolicy EXPECTED_TOPIC_OVERLOAD_POLICY = ERROR;
     private final Configuration responseConfig = mock(Configuration.class);
     private final Configuration deleteConfig = mock(Configuration.class);
     private final Configuration transferConfig = mock(Configuration.class);
@@ -129,6 +138,7 @@ public class CustomDistributorConfigManagerTest extends DistributorConfigManager
         responseTopicValues.expectedCapacity = EXPECTED_CAPACITY;
         responseTopicValues.expectedName = Response.NAME;
         responseTopicValues.expectedTimeToLiveSeconds = EXPECTED_TIME_TO_LIVE_SECONDS;
+        responseTopicValues.expectedTopicOverloadPolicy = EXPECTED_TOPIC_OVERLOAD_POLICY;
 
         final ExpectedTopicValues deleteTopicValues = responseTopicValues.clone();
         deleteTopicValues.expectedName = Delete.NAME;
@@ -227,6 +237,69 @@ public class CustomDistributorConfigManagerTest extends DistributorConfigManager
         when(pTopicConfig.readBatchSize()).thenReturn(EXPECTED_READ_BATCH_SIZE);
         when(pTopicConfig.statisticsEnabled()).thenReturn(EXPECTED_STATISTICS_ENABLED);
         when(pTopicConfig.timeToLiveSeconds()).thenReturn(EXPECTED_TIME_TO_LIVE_SECONDS);
+        when(pTopicConfig.topicOverloadPolicy()).thenReturn(EXPECTED_TOPIC_OVERLOAD_POLICY);
+    }
+
+    @Test
+    public void sizeBoundedCapacity() throws Exception {
+        when(transferTopicConfig.capacityBytes()).thenReturn(1048576L);
+        when(transferTopicConfig.messageSize()).thenReturn(65536);
+        manager.updated(EXPECTED_PID, properties);
+        assertEquals(16, hazelcastConfig.get().getRingbufferConfigs().get(Transfer.NAME).getCapacity());
+        assertEquals(EXPECTED_CAPACITY, hazelcastConfig.get().getRingbufferConfigs().get(Response.NAME).getCapacity());
+    }
+
+    @Test(timeout = 60000)
+    public void sizeBoundedCapacityAppliedToReliableTopic() throws Exception {
+        when(transferTopicConfig.capacityBytes()).thenReturn(1048576L);
+        when(transferTopicConfig.messageSize()).thenReturn(65536);
+        manager.updated(EXPECTED_PID, properties);
+        final Config cfg = hazelcastConfig.get();
+        cfg.getNetworkConfig().setPortAutoIncrement(true);
+        cfg.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        cfg.getNetworkConfig().getJoin().getTcpIpConfig().setEnabled(false);
+        final HazelcastInstance hci = newHazelcastInstance(cfg);
+        try {
+            hci.getReliableTopic(Transfer.NAME);
+            assertEquals(16, hci.getRingbuffer(TOPIC_RB_PREFIX + Transfer.NAME).capacity());
+        } finally {
+            hci.shutdown();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void publishMoreThanCapacity() throws Exception {
+        when(transferTopicConfig.capacityBytes()).thenReturn(1048576L);
+        when(transferTopicConfig.messageSize()).thenReturn(65536);
+        when(transferTopicConfig.topicOverloadPolicy()).thenReturn(DISCARD_OLDEST);
+        manager.updated(EXPECTED_PID, properties);
+        final Config cfg = hazelcastConfig.get();
+        cfg.getNetworkConfig().setPortAutoIncrement(true);
+        cfg.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        cfg.getNetworkConfig().getJoin().getTcpIpConfig().setEnabled(false);
+        final HazelcastInstance hci = newHazelcastInstance(cfg);
+        try {
+            // None of the messages expires within the test, so a blocking topic would never return
+            final ITopic<Integer> topic = hci.getReliableTopic(Transfer.NAME);
+            for (int i = 0; i < 1000; i++) {
+                topic.publish(i);
+            }
+            final Ringbuffer<?> ringbuffer = hci.getRingbuffer(TOPIC_RB_PREFIX + Transfer.NAME);
+            assertEquals(999, ringbuffer.tailSequence());
+            assertEquals(16, ringbuffer.size());
+        } finally {
+            hci.shutdown();
+        }
+    }
+
+    @Test
+    public void sizeBoundedCapacityLimits() throws Exception {
+        when(transferTopicConfig.capacityBytes()).thenReturn(Long.MAX_VALUE);
+        when(transferTopicConfig.messageSize()).thenReturn(1);
+        assertEquals(EXPECTED_CAPACITY, ConfigManager.toCapacity(transferTopicConfig));
+        when(transferTopicConfig.capacityBytes()).thenReturn(1L);
+        when(transferTopicConfig.messageSize()).thenReturn(65536);
+        assertEquals(1, ConfigManager.toCapacity(transferTopicConfig));
     }
 
     @Test
@@ -21,6 +21,8 @@ import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Store;
 import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Transfer;
 import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.Unlock;
 
+import static com.hazelcast.topic.TopicOverloadPolicy.DISCARD_OLDEST;
+
 public class DefaultDistributorConfigManagerTest extends DistributorConfigManagerTest {
 
     @Override
@@ -47,6 +49,7 @@ public class DefaultDistributorConfigManagerTest extends DistributorConfigManage
         responseTopicValues.expectedCapacity = 2000;
         responseTopicValues.expectedName = Response.NAME;
         responseTopicValues.expectedTimeToLiveSeconds = 300;
+        responseTopicValues.expectedTopicOverloadPolicy = DISCARD_OLDEST;
 
         final ExpectedTopicValues deleteTopicValues = responseTopicValues.clone();
         deleteTopicValues.expectedName = Delete.NAME;
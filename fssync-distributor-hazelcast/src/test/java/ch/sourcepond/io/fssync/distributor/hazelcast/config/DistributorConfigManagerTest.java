@@ -28,6 +28,7 @@ import com.hazelcast.config.ReliableTopicConfig;
 import com.hazelcast.config.RingbufferConfig;
 import com.hazelcast.config.TcpIpConfig;
 import com.hazelcast.core.DuplicateInstanceNameException;
+import com.hazelcast.topic.TopicOverloadPolicy;
 import org.junit.Before;
 import org.junit.Test;
 import org.osgi.service.cm.Configuration;
@@ -40,6 +41,7 @@ import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static ch.sourcepond.io.fssync.distributor.hazelcast.config.ConfigManager.FACTORY_PID;
+import static ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig.TRANSFER_CREDITS_ATTRIBUTE;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -69,6 +71,8 @@ public abstract class DistributorConfigManagerTest {
 
         int expectedTimeToLiveSeconds;
 
+        TopicOverloadPolicy expectedTopicOverloadPolicy;
+
         public ExpectedTopicValues clone() {
             final ExpectedTopicValues clone = new ExpectedTopicValues();
             clone.expectedName = expectedName;
@@ -78,6 +82,7 @@ public abstract class DistributorConfigManagerTest {
             clone.expectedReadBatchSize = expectedReadBatchSize;
             clone.expectedStatisticsEnabled = expectedStatisticsEnabled;
             clone.expectedTimeToLiveSeconds = expectedTimeToLiveSeconds;
+            clone.expectedTopicOverloadPolicy = expectedTopicOverloadPolicy;
             return clone;
         }
     }
@@ -145,8 +150,10 @@ public abstract class DistributorConfigManagerTest {
         assertEquals(values.expectedName, topicConfig.getName());
         assertEquals(values.expectedReadBatchSize, topicConfig.getReadBatchSize());
         assertEquals(values.expectedStatisticsEnabled, topicConfig.isStatisticsEnabled());
+        assertEquals(values.expectedTopicOverloadPolicy, topicConfig.getTopicOverloadPolicy());
 
-        final RingbufferConfig ringbufferConfig = cfg.getRingbufferConfig(values.expectedName);
+        final RingbufferConfig ringbufferConfig = cfg.getRingbufferConfigs().get(values.expectedName);
+        assertNotNull(ringbufferConfig);
         assertEquals(values.expectedCapacity, ringbufferConfig.getCapacity());
         assertEquals(values.expectedBackupCount, ringbufferConfig.getBackupCount());
         assertEquals(values.expectedAsyncBackupCount, ringbufferConfig.getAsyncBackupCount());
@@ -172,6 +179,7 @@ public abstract class DistributorConfigManagerTest {
         assertNotNull(cfg);
         assertEquals(EXPECTED_INSTANCE_NAME, cfg.getInstanceName());
         assertEquals(EXPECTED_INSTANCE_NAME, cfg.getGroupConfig().getName());
+        assertEquals(distributorConfig.transferCredits(), cfg.getMemberAttributeConfig().getIntAttribute(TRANSFER_CREDITS_ATTRIBUTE).intValue());
 
         final NetworkConfig networkConfig = cfg.getNetworkConfig();
         assertEquals(expectedValues.expectedPort, networkConfig.getPort());
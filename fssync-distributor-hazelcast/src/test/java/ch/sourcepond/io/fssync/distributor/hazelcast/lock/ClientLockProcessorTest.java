@@ -13,6 +13,7 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast.lock;
 
+import ch.sourcepond.io.fssync.common.api.SyncPath;
 import ch.sourcepond.io.fssync.distributor.hazelcast.Constants;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.ClientMessageProcessorTest;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
@@ -20,15 +21,22 @@ import com.hazelcast.core.Cluster;
 import com.hazelcast.core.Member;
 import com.hazelcast.core.MembershipEvent;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 
 import java.io.IOException;
 
 import static ch.sourcepond.io.fssync.distributor.hazelcast.Constants.IS_EQUAL_TO_EXPECTED_NODE_INFO;
 import static com.hazelcast.core.MembershipEvent.MEMBER_REMOVED;
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptySet;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -67,6 +75,32 @@ public class ClientLockProcessorTest extends ClientMessageProcessorTest<Distribu
         Mockito.verifyZeroInteractions(syncTarget);
     }
 
+    @Test
+    public void processMultiPathRequest() throws IOException {
+        final SyncPath other = mock(SyncPath.class);
+        processor.processMessage(nodeInfo, syncPath, new MultiPathRequest(asList(syncPath, other)));
+        final InOrder order = inOrder(syncTarget);
+        order.verify(syncTarget).lock(nodeInfo, syncPath);
+        order.verify(syncTarget).lock(nodeInfo, other);
+    }
+
+    @Test
+    public void processMultiPathRequestFailed() throws IOException {
+        final SyncPath other = mock(SyncPath.class);
+        final IOException expected = new IOException();
+        doThrow(expected).when(syncTarget).lock(nodeInfo, other);
+        try {
+            processor.processMessage(nodeInfo, syncPath, new MultiPathRequest(asList(syncPath, other)));
+            fail("Exception expected");
+        } catch (final IOException e) {
+            assertSame(expected, e);
+        }
+
+        // Paths which have been locked must be released again
+        verify(syncTarget).unlock(nodeInfo, syncPath);
+        verify(syncTarget, never()).unlock(nodeInfo, other);
+    }
+
     @Test
     @Override
     public void processMessage() throws IOException {
@@ -13,21 +13,30 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast.lock;
 
+import ch.sourcepond.io.fssync.common.api.SyncPath;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.ClientMessageProcessorTest;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.TargetLocks;
 import org.junit.Test;
+import org.mockito.InOrder;
 
 import java.io.IOException;
 
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class ClientUnlockProcessorTest extends ClientMessageProcessorTest<DistributionMessage, ClientUnlockProcessor> {
+    private final TargetLocks targetLocks = mock(TargetLocks.class);
 
     @Override
     protected ClientUnlockProcessor createProcessor() {
-        return new ClientUnlockProcessor(syncTarget);
+        return new ClientUnlockProcessor(syncTarget, targetLocks);
     }
 
     @Override
@@ -37,10 +46,29 @@ public class ClientUnlockProcessorTest extends ClientMessageProcessorTest<Distri
         return message;
     }
 
+    @Test
+    public void processMultiPathRequest() throws IOException {
+        final SyncPath other = mock(SyncPath.class);
+        final IOException expected = new IOException();
+        doThrow(expected).when(syncTarget).unlock(nodeInfo, syncPath);
+        try {
+            processor.processMessage(nodeInfo, syncPath, new MultiPathRequest(asList(syncPath, other)));
+            fail("Exception expected");
+        } catch (final IOException e) {
+            assertSame(expected, e);
+        }
+
+        // A failed path must not prevent the remaining paths from being unlocked
+        verify(syncTarget).unlock(nodeInfo, other);
+        verify(targetLocks).unlocked(nodeInfo, other);
+    }
+
     @Test
     @Override
     public void processMessage() throws IOException {
         processor.processMessage(nodeInfo, syncPath, message);
-        verify(syncTarget).unlock(nodeInfo, syncPath);
+        final InOrder order = inOrder(syncTarget, targetLocks);
+        order.verify(syncTarget).unlock(nodeInfo, syncPath);
+        order.verify(targetLocks).unlocked(nodeInfo, syncPath);
     }
 }
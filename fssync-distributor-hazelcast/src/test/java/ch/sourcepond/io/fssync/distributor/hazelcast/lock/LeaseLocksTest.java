@@ -0,0 +1,89 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.lock;
+
+import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
+import com.hazelcast.core.Endpoint;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import static ch.sourcepond.io.fssync.distributor.hazelcast.Constants.EXPECTED_LEASE_TIME;
+import static ch.sourcepond.io.fssync.distributor.hazelcast.Constants.EXPECTED_LEASE_TIME_UNIT;
+import static ch.sourcepond.io.fssync.distributor.hazelcast.Constants.EXPECTED_LOCAL_NODE;
+import static ch.sourcepond.io.fssync.distributor.hazelcast.lock.LeaseLocks.LEASE_MAP_NAME;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class LeaseLocksTest {
+    private static final String EXPECTED_KEY = "expectedKey";
+    private final HazelcastInstance hci = mock(HazelcastInstance.class);
+    private final Endpoint endpoint = mock(Endpoint.class);
+    private final IMap<String, String> leases = mock(IMap.class);
+    private final DistributorConfig config = mock(DistributorConfig.class);
+    private LeaseLocks locks;
+
+    @Before
+    public void setup() {
+        when(config.lockTimeout()).thenReturn(200L);
+        when(config.lockTimeoutUnit()).thenReturn(MILLISECONDS);
+        when(config.leaseTime()).thenReturn(EXPECTED_LEASE_TIME);
+        when(config.leaseTimeUnit()).thenReturn(EXPECTED_LEASE_TIME_UNIT);
+        when(hci.getLocalEndpoint()).thenReturn(endpoint);
+        when(endpoint.getUuid()).thenReturn(EXPECTED_LOCAL_NODE);
+        when(hci.<String, String>getMap(LEASE_MAP_NAME)).thenReturn(leases);
+        locks = new LeaseLocks(hci, config);
+    }
+
+    @Test
+    public void tryLock() throws Exception {
+        assertTrue(locks.tryLock(EXPECTED_KEY));
+        verify(leases).putIfAbsent(EXPECTED_KEY, EXPECTED_LOCAL_NODE, EXPECTED_LEASE_TIME, EXPECTED_LEASE_TIME_UNIT);
+        verify(hci, never()).getLock(EXPECTED_KEY);
+    }
+
+    @Test(timeout = 1000)
+    public void tryLockAfterLeaseReleased() throws Exception {
+        when(leases.putIfAbsent(EXPECTED_KEY, EXPECTED_LOCAL_NODE, EXPECTED_LEASE_TIME, EXPECTED_LEASE_TIME_UNIT))
+                .thenReturn("otherNode", "otherNode", null);
+        assertTrue(locks.tryLock(EXPECTED_KEY));
+    }
+
+    @Test(timeout = 1000)
+    public void tryLockTimedOut() throws Exception {
+        when(leases.putIfAbsent(EXPECTED_KEY, EXPECTED_LOCAL_NODE, EXPECTED_LEASE_TIME, EXPECTED_LEASE_TIME_UNIT))
+                .thenReturn("otherNode");
+        assertFalse(locks.tryLock(EXPECTED_KEY));
+    }
+
+    @Test
+    public void unlock() throws Exception {
+        locks.tryLock(EXPECTED_KEY);
+        locks.unlock(EXPECTED_KEY);
+        verify(leases).remove(EXPECTED_KEY, EXPECTED_LOCAL_NODE);
+    }
+
+    @Test
+    public void unlockNoSuchLock() {
+        locks.unlock(EXPECTED_KEY);
+        verifyZeroInteractions(leases);
+    }
+}
@@ -22,27 +22,32 @@ import ch.sourcepond.io.fssync.distributor.hazelcast.response.ClusterResponseBar
 import ch.sourcepond.io.fssync.distributor.hazelcast.response.ClusterResponseBarrierFactory;
 import ch.sourcepond.io.fssync.distributor.hazelcast.response.ResponseException;
 import com.hazelcast.core.ITopic;
-import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentMatcher;
 import org.mockito.InOrder;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
-import static java.lang.Thread.currentThread;
-import static java.lang.Thread.interrupted;
+import static ch.sourcepond.io.fssync.distributor.hazelcast.common.Futures.failed;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
-import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -58,114 +63,235 @@ public class LockManagerTest {
     private final ClusterResponseBarrierFactory factory = mock(ClusterResponseBarrierFactory.class);
     private final ITopic<DistributionMessage> lockRequestTopic = mock(ITopic.class);
     private final ITopic<DistributionMessage> unlockRequestTopic = mock(ITopic.class);
-    private final ArgumentMatcher<DistributionMessage> isEqualToExpectedDistributionMessage = msg -> path.equals(msg.getPath());
-    private final LockManager manager = new LockManager(factory, locks, config, lockRequestTopic, unlockRequestTopic);
+    private final ExecutorService lockExecutor = mock(ExecutorService.class);
+    private final ArgumentMatcher<DistributionMessage> isEqualToExpectedDistributionMessage = msg -> msg != null && path.equals(msg.getPath());
+    private final LockManager manager = new LockManager(factory, locks, config, lockRequestTopic, unlockRequestTopic, asList(lockExecutor));
 
     @Before
     public void setup() throws Exception {
         when(path.toAbsolutePath()).thenReturn(EXPECTED_ABSOLUTE_PATH);
         when(config.lockTimeoutUnit()).thenReturn(EXPECTED_TIME_UNIT);
         when(config.lockTimeout()).thenReturn(EXPECTED_TIMEOUT);
-        when(factory.create(path, lockRequestTopic)).thenReturn(lockListener);
-        when(factory.create(path, unlockRequestTopic)).thenReturn(unlockListener);
+        when(factory.create(lockRequestTopic)).thenReturn(lockListener);
+        when(factory.create(unlockRequestTopic)).thenReturn(unlockListener);
+        when(lockListener.send(argThat(isEqualToExpectedDistributionMessage))).thenReturn(completedFuture(null));
+        when(unlockListener.send(argThat(isEqualToExpectedDistributionMessage))).thenReturn(completedFuture(null));
         when(locks.tryLock(EXPECTED_ABSOLUTE_PATH)).thenReturn(true);
+
+        // Run lock operations directly on the calling thread
+        doAnswer(inv -> {
+            ((Runnable) inv.getArgument(0)).run();
+            return null;
+        }).when(lockExecutor).execute(any());
     }
 
-    @After
-    public void tearDown() throws Exception {
-        interrupted();
+    private static Throwable failureOf(final CompletableFuture<?> pFuture) throws Exception {
+        try {
+            pFuture.get();
+            fail("Exception expected");
+            return null;
+        } catch (final ExecutionException e) {
+            return e.getCause();
+        }
     }
 
     @Test
     public void verifyUnlockWhenReleaseFileLockFails() throws Exception {
         when(locks.tryLock(EXPECTED_ABSOLUTE_PATH)).thenReturn(false);
-        final ResponseException expected = new ResponseException("any");
-        doThrow(expected).when(unlockListener).awaitResponse(argThat(isEqualToExpectedDistributionMessage));
-        try {
-            manager.tryLock(path);
-            fail("Exception expected");
-        } catch (final LockException e) {
-            assertNull(e.getCause());
-        }
+        when(unlockListener.send(argThat(isEqualToExpectedDistributionMessage))).thenReturn(failed(new ResponseException("any")));
+        final Throwable failure = failureOf(manager.tryLock(path));
+        assertTrue(failure instanceof LockException);
+        assertNull(failure.getCause());
         verify(locks).unlock(EXPECTED_ABSOLUTE_PATH);
     }
 
     private void verifyLockReleaseAfterFailure() throws Exception {
-        verify(unlockListener).awaitResponse(argThat(isEqualToExpectedDistributionMessage));
+        verify(unlockListener).send(argThat(isEqualToExpectedDistributionMessage));
         verify(locks).unlock(EXPECTED_ABSOLUTE_PATH);
     }
 
     @Test
     public void tryLockReturnedFalse() throws Exception {
         when(locks.tryLock(EXPECTED_ABSOLUTE_PATH)).thenReturn(false);
-        try {
-            manager.tryLock(path);
-            fail("Exception expected");
-        } catch (final LockException e) {
-            assertNull(e.getCause());
-        }
+        final Throwable failure = failureOf(manager.tryLock(path));
+        assertTrue(failure instanceof LockException);
+        assertNull(failure.getCause());
         verifyLockReleaseAfterFailure();
-        assertFalse(currentThread().isInterrupted());
     }
 
     @Test
     public void tryLockInterrupted() throws Exception {
         final InterruptedException expected = new InterruptedException();
         doThrow(expected).when(locks).tryLock(EXPECTED_ABSOLUTE_PATH);
-        try {
-            manager.tryLock(path);
-            fail("Exception expected");
-        } catch (final LockException e) {
-            assertSame(expected, e.getCause());
-        }
+        final Throwable failure = failureOf(manager.tryLock(path));
+        assertTrue(failure instanceof LockException);
+        assertSame(expected, failure.getCause());
         verifyLockReleaseAfterFailure();
-        assertTrue(currentThread().isInterrupted());
+    }
+
+    @Test
+    public void tryLockDuringShutdown() throws Exception {
+        final LockException expected = new LockException("any");
+        doThrow(expected).when(locks).tryLock(EXPECTED_ABSOLUTE_PATH);
+        assertSame(expected, failureOf(manager.tryLock(path)));
+        verify(unlockListener, never()).send(any());
     }
 
     @Test
     public void acquireGlobalFileLockFailed() throws Exception {
         final TimeoutException expected = new TimeoutException();
-        doThrow(expected).when(lockListener).awaitResponse(argThat(isEqualToExpectedDistributionMessage));
-
-        try {
-            manager.tryLock(path);
-            fail("Exception expected");
-        } catch (final LockException e) {
-            assertSame(expected, e.getCause());
-        }
+        when(lockListener.send(argThat(isEqualToExpectedDistributionMessage))).thenReturn(failed(expected));
+        final Throwable failure = failureOf(manager.tryLock(path));
+        assertTrue(failure instanceof LockException);
+        assertSame(expected, failure.getCause());
         verifyLockReleaseAfterFailure();
-        assertFalse(currentThread().isInterrupted());
     }
 
     @Test
     public void releaseGlobalFileLockFailed() throws Exception {
         final TimeoutException expected = new TimeoutException();
-        doThrow(expected).when(unlockListener).awaitResponse(argThat(isEqualToExpectedDistributionMessage));
-
-        try {
-            manager.unlock(path);
-            fail("Exception expected");
-        } catch (final UnlockException e) {
-            assertSame(expected, e.getCause());
-        }
+        when(unlockListener.send(argThat(isEqualToExpectedDistributionMessage))).thenReturn(failed(expected));
+        final Throwable failure = failureOf(manager.unlock(path));
+        assertTrue(failure instanceof UnlockException);
+        assertSame(expected, failure.getCause());
         verifyLockReleaseAfterFailure();
-        assertFalse(currentThread().isInterrupted());
     }
 
     @Test
     public void lockUnlock() throws Exception {
-        manager.tryLock(path);
-        manager.unlock(path);
+        assertTrue(manager.tryLock(path).get());
+        manager.unlock(path).get();
         final InOrder order = inOrder(locks, lockListener, unlockListener);
         order.verify(locks).tryLock(EXPECTED_ABSOLUTE_PATH);
-        order.verify(lockListener).awaitResponse(argThat(isEqualToExpectedDistributionMessage));
-        order.verify(unlockListener).awaitResponse(argThat(isEqualToExpectedDistributionMessage));
+        order.verify(lockListener).send(argThat(isEqualToExpectedDistributionMessage));
+        order.verify(unlockListener).send(argThat(isEqualToExpectedDistributionMessage));
         order.verify(locks).unlock(EXPECTED_ABSOLUTE_PATH);
     }
 
+    @Test
+    public void lockUnlockWithLeases() throws Exception {
+        when(config.leaseLocks()).thenReturn(true);
+        assertTrue(manager.tryLock(path).get());
+        verify(locks).tryLock(EXPECTED_ABSOLUTE_PATH);
+        verify(lockListener, never()).send(any());
+
+        // The nodes which locked the path lazily must still be told to release it
+        manager.unlock(path).get();
+        verify(unlockListener).send(argThat(isEqualToExpectedDistributionMessage));
+        verify(locks).unlock(EXPECTED_ABSOLUTE_PATH);
+    }
+
+    @Test
+    public void tryLockAllAndUnlockAll() throws Exception {
+        final SyncPath other = mock(SyncPath.class);
+        when(other.toAbsolutePath()).thenReturn("anotherPath");
+        when(locks.tryLock("anotherPath")).thenReturn(true);
+        when(lockListener.send(any())).thenReturn(completedFuture(null));
+        when(unlockListener.send(any())).thenReturn(completedFuture(null));
+        assertTrue(manager.tryLockAll(asList(path, other)).get());
+
+        // A single request locks all files in the order of their absolute paths
+        verify(lockListener).send(argThat(m -> asList(other, path).equals(((MultiPathRequest) m).getPaths())));
+
+        manager.unlockAll(asList(path, other)).get();
+        verify(unlockListener).send(argThat(m -> asList(other, path).equals(((MultiPathRequest) m).getPaths())));
+        verify(locks).unlock(EXPECTED_ABSOLUTE_PATH);
+        verify(locks).unlock("anotherPath");
+    }
+
+    @Test
+    public void tryLockAllWithLeases() throws Exception {
+        when(config.leaseLocks()).thenReturn(true);
+        assertTrue(manager.tryLockAll(asList(path)).get());
+        verify(lockListener, never()).send(any());
+    }
+
+    @Test
+    public void tryLockAllFileLocksFailed() throws Exception {
+        final TimeoutException expected = new TimeoutException();
+        when(lockListener.send(any())).thenReturn(failed(expected));
+        when(unlockListener.send(any())).thenReturn(completedFuture(null));
+        final Throwable failure = failureOf(manager.tryLockAll(asList(path)));
+        assertTrue(failure instanceof LockException);
+        assertSame(expected, failure.getCause());
+        verify(unlockListener).send(any());
+        verify(locks).unlock(EXPECTED_ABSOLUTE_PATH);
+    }
+
+    @Test
+    public void unlockAllFileLocksFailed() throws Exception {
+        final TimeoutException expected = new TimeoutException();
+        when(unlockListener.send(any())).thenReturn(failed(expected));
+        final Throwable failure = failureOf(manager.unlockAll(asList(path)));
+        assertTrue(failure instanceof UnlockException);
+        assertSame(expected, failure.getCause());
+        verify(locks).unlock(EXPECTED_ABSOLUTE_PATH);
+    }
+
+    @Test
+    public void acquireAndReleaseGlobalLocks() throws Exception {
+        final SyncPath other = mock(SyncPath.class);
+        when(other.toAbsolutePath()).thenReturn("anotherPath");
+        when(locks.tryLock("anotherPath")).thenReturn(true);
+        manager.acquireGlobalLocks(asList(path, other)).get();
+
+        // Locks are acquired in the order of the absolute paths
+        final InOrder order = inOrder(locks);
+        order.verify(locks).tryLock("anotherPath");
+        order.verify(locks).tryLock(EXPECTED_ABSOLUTE_PATH);
+        verify(lockListener, never()).send(any());
+
+        manager.releaseGlobalLocks(asList(path, other)).get();
+        verify(locks).unlock(EXPECTED_ABSOLUTE_PATH);
+        verify(locks).unlock("anotherPath");
+        verify(unlockListener, never()).send(any());
+    }
+
+    @Test
+    public void acquireGlobalLocksReleasesAcquiredLocks() throws Exception {
+        final SyncPath other = mock(SyncPath.class);
+        when(other.toAbsolutePath()).thenReturn("anotherPath");
+        when(locks.tryLock("anotherPath")).thenReturn(true);
+        when(locks.tryLock(EXPECTED_ABSOLUTE_PATH)).thenReturn(false);
+        final Throwable failure = failureOf(manager.acquireGlobalLocks(asList(path, other)));
+        assertTrue(failure instanceof LockException);
+        verify(locks).unlock("anotherPath");
+        verify(locks, never()).unlock(EXPECTED_ABSOLUTE_PATH);
+    }
+
+    @Test
+    public void acquireGlobalLocksInterrupted() throws Exception {
+        final InterruptedException expected = new InterruptedException();
+        doThrow(expected).when(locks).tryLock(EXPECTED_ABSOLUTE_PATH);
+        final Throwable failure = failureOf(manager.acquireGlobalLocks(asList(path)));
+        assertTrue(failure instanceof LockException);
+        assertSame(expected, failure.getCause());
+    }
+
+    @Test
+    public void keysAreAssignedToStripes() throws Exception {
+        final ExecutorService otherExecutor = mock(ExecutorService.class);
+        final LockManager striped = new LockManager(factory, locks, config, lockRequestTopic, unlockRequestTopic,
+                asList(lockExecutor, otherExecutor));
+        final SyncPath other = mock(SyncPath.class);
+        // "a".hashCode() is odd, "b".hashCode() is even
+        when(path.toAbsolutePath()).thenReturn("a");
+        when(other.toAbsolutePath()).thenReturn("b");
+        when(locks.tryLock("b")).thenReturn(true);
+        when(lockListener.send(any())).thenReturn(completedFuture(null));
+
+        // The executor of the first stripe runs its tasks directly, the other one never runs them
+        striped.tryLock(path);
+        assertTrue(striped.tryLock(other).get());
+        verify(otherExecutor).execute(any());
+        verify(lockExecutor).execute(any());
+        verify(locks, never()).tryLock("a");
+    }
+
     @Test
     public void close() {
         manager.close();
         verify(locks).close();
+        verify(lockExecutor).shutdown();
     }
 }
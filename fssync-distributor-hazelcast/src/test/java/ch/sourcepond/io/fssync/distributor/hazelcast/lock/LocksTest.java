@@ -34,6 +34,7 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -42,9 +43,12 @@ import static org.mockito.Mockito.when;
 
 public class LocksTest {
     private static final String EXPECTED_KEY = "expectedKey";
+    private static final String CONTENDED_KEY = "contendedKey";
     private final ScheduledExecutorService executor = newSingleThreadScheduledExecutor();
     private final HazelcastInstance hci = mock(HazelcastInstance.class);
     private final ILock globalLock = mock(ILock.class);
+    private final ILock contendedLock = mock(ILock.class);
+    private final CountDownLatch waiting = new CountDownLatch(1);
     private final DistributorConfig config = mock(DistributorConfig.class);
     private final CountDownLatch latch = new CountDownLatch(1);
     private final Locks locks = new Locks(hci, config);
@@ -58,6 +62,25 @@ public class LocksTest {
         when(config.leaseTimeUnit()).thenReturn(EXPECTED_LEASE_TIME_UNIT);
         when(hci.getLock(EXPECTED_KEY)).thenReturn(globalLock);
         when(globalLock.tryLock(EXPECTED_LOCK_TIMEOUT, EXPECTED_LOCK_TIMEOUT_UNIT, EXPECTED_LEASE_TIME, EXPECTED_LEASE_TIME_UNIT)).thenReturn(true);
+        when(hci.getLock(CONTENDED_KEY)).thenReturn(contendedLock);
+        when(contendedLock.tryLock(EXPECTED_LOCK_TIMEOUT, EXPECTED_LOCK_TIMEOUT_UNIT, EXPECTED_LEASE_TIME, EXPECTED_LEASE_TIME_UNIT)).thenAnswer(inv -> {
+            waiting.countDown();
+            latch.await();
+            return true;
+        });
+    }
+
+    private Thread lockContendedKey() throws InterruptedException {
+        final Thread thread = new Thread(() -> {
+            try {
+                locks.tryLock(CONTENDED_KEY);
+            } catch (final Exception e) {
+                expectedException = e;
+            }
+        });
+        thread.start();
+        waiting.await();
+        return thread;
     }
 
     @After
@@ -100,6 +123,26 @@ public class LocksTest {
         assertEquals(LockException.class, expectedException.getClass());
     }
 
+    @Test(timeout = 1000)
+    public void tryLockWhileOtherKeyIsContended() throws Exception {
+        final Thread thread = lockContendedKey();
+        assertTrue(locks.tryLock(EXPECTED_KEY));
+        latch.countDown();
+        thread.join();
+        assertNull(expectedException);
+    }
+
+    @Test(timeout = 1000)
+    public void closeWhileWaitingForLock() throws Exception {
+        final Thread thread = lockContendedKey();
+        executor.schedule(latch::countDown, 200, MILLISECONDS);
+        locks.close();
+        thread.join();
+        assertEquals(LockException.class, expectedException.getClass());
+        verify(contendedLock).unlock();
+        verify(hci).shutdown();
+    }
+
     @Test(timeout = 1000)
     public void closeInterrupted() throws Exception {
         when(config.leaseTimeUnit()).thenReturn(MILLISECONDS);
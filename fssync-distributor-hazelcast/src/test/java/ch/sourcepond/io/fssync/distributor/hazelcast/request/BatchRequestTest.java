@@ -0,0 +1,44 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.request;
+
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.api.BatchFile;
+import ch.sourcepond.io.fssync.distributor.hazelcast.DistributionMessageTest;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+public class BatchRequestTest extends DistributionMessageTest<BatchRequest> {
+    private static final byte[] FIRST_CONTENT = new byte[]{1, 2};
+    private static final byte[] SECOND_CONTENT = new byte[]{3};
+    private static final SyncPath OTHER_PATH = mock(SyncPath.class);
+
+    @Override
+    protected BatchRequest createMessage() {
+        return new BatchRequest(asList(new BatchFile(path, FIRST_CONTENT, new byte[0]),
+                new BatchFile(OTHER_PATH, SECOND_CONTENT, new byte[0])));
+    }
+
+    @Test
+    public void getPathsAndContents() {
+        assertEquals(asList(path, OTHER_PATH), message.getPaths());
+        assertEquals(2, message.getContents().size());
+        assertSame(FIRST_CONTENT, message.getContents().get(0));
+        assertSame(SECOND_CONTENT, message.getContents().get(1));
+    }
+}
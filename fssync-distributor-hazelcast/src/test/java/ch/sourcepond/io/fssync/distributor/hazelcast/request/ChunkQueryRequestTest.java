@@ -0,0 +1,36 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.request;
+
+import ch.sourcepond.io.fssync.common.api.Chunk;
+import ch.sourcepond.io.fssync.distributor.hazelcast.DistributionMessageTest;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+public class ChunkQueryRequestTest extends DistributionMessageTest<ChunkQueryRequest> {
+    private static final Chunk EXPECTED_CHUNK = new Chunk(3, new byte[]{1, 2, 3});
+
+    @Override
+    protected ChunkQueryRequest createMessage() {
+        return new ChunkQueryRequest(path, asList(EXPECTED_CHUNK));
+    }
+
+    @Test
+    public void getChunks() {
+        assertEquals(asList(EXPECTED_CHUNK), message.getChunks());
+        assertEquals(0, message.getData().remaining());
+    }
+}
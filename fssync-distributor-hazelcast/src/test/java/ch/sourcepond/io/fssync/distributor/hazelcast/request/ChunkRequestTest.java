@@ -0,0 +1,47 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.request;
+
+import ch.sourcepond.io.fssync.common.api.Chunk;
+import ch.sourcepond.io.fssync.distributor.hazelcast.DistributionMessageTest;
+import org.junit.Test;
+
+import static java.nio.ByteBuffer.wrap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkRequestTest extends DistributionMessageTest<ChunkRequest> {
+    private static final Chunk EXPECTED_CHUNK = new Chunk(3, new byte[]{1, 2, 3});
+
+    @Override
+    protected ChunkRequest createMessage() {
+        return new ChunkRequest(path, EXPECTED_CHUNK, wrap(new byte[]{4, 5, 6}));
+    }
+
+    @Test
+    public void getChunkAndData() {
+        assertSame(EXPECTED_CHUNK, message.getChunk());
+        assertEquals(3, message.getData().remaining());
+        assertFalse(message.isCopy());
+    }
+
+    @Test
+    public void copy() {
+        final ChunkRequest copy = new ChunkRequest(path, EXPECTED_CHUNK);
+        assertSame(EXPECTED_CHUNK, copy.getChunk());
+        assertTrue(copy.isCopy());
+    }
+}
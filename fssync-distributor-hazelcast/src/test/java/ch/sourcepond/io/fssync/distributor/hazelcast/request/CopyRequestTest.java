@@ -0,0 +1,36 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.request;
+
+import ch.sourcepond.io.fssync.distributor.hazelcast.DistributionMessageTest;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CopyRequestTest extends DistributionMessageTest<CopyRequest> {
+    private static final long EXPECTED_OFFSET = 1024;
+    private static final int EXPECTED_LENGTH = 512;
+
+    @Override
+    protected CopyRequest createMessage() {
+        return new CopyRequest(path, EXPECTED_OFFSET, EXPECTED_LENGTH);
+    }
+
+    @Test
+    public void getOffsetAndLength() {
+        assertEquals(EXPECTED_OFFSET, message.getOffset());
+        assertEquals(EXPECTED_LENGTH, message.getLength());
+        assertEquals(0, message.getData().remaining());
+    }
+}
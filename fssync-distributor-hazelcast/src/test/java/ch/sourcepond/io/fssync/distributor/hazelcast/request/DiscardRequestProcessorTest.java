@@ -14,6 +14,7 @@ limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast.request;
 
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.ClientMessageProcessorTest;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.DirectMessageReceiver;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.StatusMessage;
 import org.junit.Test;
 
@@ -24,10 +25,11 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class DiscardRequestProcessorTest extends ClientMessageProcessorTest<StatusMessage, DiscardRequestProcessor> {
+    private final DirectMessageReceiver<TransferRequest> directTransferReceiver = mock(DirectMessageReceiver.class);
 
     @Override
     protected DiscardRequestProcessor createProcessor() {
-        return new DiscardRequestProcessor(syncTarget);
+        return new DiscardRequestProcessor(syncTarget, directTransferReceiver);
     }
 
     @Override
@@ -44,5 +46,6 @@ public class DiscardRequestProcessorTest extends ClientMessageProcessorTest<Stat
         when(message.getFailureOrNull()).thenReturn(expected);
         processor.processMessage(nodeInfo, syncPath, message);
         verify(syncTarget).discard(nodeInfo, syncPath, expected);
+        verify(directTransferReceiver).finished(nodeInfo, syncPath);
     }
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.request;
+
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.hazelcast.DistributionMessageTest;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+public class DuplicateRequestTest extends DistributionMessageTest<DuplicateRequest> {
+    private static final byte[] EXPECTED_CHECKSUM = new byte[]{1, 2, 3};
+    private static final SyncPath SOURCE = mock(SyncPath.class);
+
+    @Override
+    protected DuplicateRequest createMessage() {
+        return new DuplicateRequest(path, SOURCE, EXPECTED_CHECKSUM);
+    }
+
+    @Test
+    public void getSourceAndChecksum() {
+        assertSame(SOURCE, message.getSource());
+        assertArrayEquals(EXPECTED_CHECKSUM, message.getChecksum());
+        assertEquals(0, message.getData().remaining());
+    }
+}
@@ -13,31 +13,55 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast.request;
 
+import ch.sourcepond.io.fssync.common.api.BlockSignature;
+import ch.sourcepond.io.fssync.common.api.Chunk;
 import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.api.BatchFile;
+import ch.sourcepond.io.fssync.distributor.hazelcast.annotations.DirectTransfer;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.StatusMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.compression.Codecs;
+import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
 import ch.sourcepond.io.fssync.distributor.hazelcast.exception.DeletionException;
 import ch.sourcepond.io.fssync.distributor.hazelcast.exception.DiscardException;
 import ch.sourcepond.io.fssync.distributor.hazelcast.exception.StoreException;
 import ch.sourcepond.io.fssync.distributor.hazelcast.exception.TransferException;
 import ch.sourcepond.io.fssync.distributor.hazelcast.response.ClusterResponseBarrier;
 import ch.sourcepond.io.fssync.distributor.hazelcast.response.ClusterResponseBarrierFactory;
+import ch.sourcepond.io.fssync.distributor.hazelcast.response.ClusterResponseWindow;
 import ch.sourcepond.io.fssync.distributor.hazelcast.response.ResponseException;
+import com.hazelcast.core.IExecutorService;
 import com.hazelcast.core.ITopic;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
+import static ch.sourcepond.io.fssync.distributor.hazelcast.common.Futures.failed;
 import static java.nio.ByteBuffer.wrap;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.argThat;
-import static org.mockito.Mockito.doThrow;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -45,99 +69,319 @@ public class RequestDistributorTest {
     private static final byte[] EXPECTED_DATA = new byte[]{1, 2, 3, 4, 5};
     private static final IOException EXPECTED_FAILURE = new IOException();
     private final SyncPath path = mock(SyncPath.class);
-    private final ArgumentMatcher<TransferRequest> transferRequestMatcher = message -> path.equals(message.getPath()) && Arrays.equals(EXPECTED_DATA, message.getData());
+    private final ArgumentMatcher<TransferRequest> transferRequestMatcher = message -> path.equals(message.getPath()) && wrap(EXPECTED_DATA).equals(message.getData());
     private final ArgumentMatcher<StatusMessage> discardRequestMatcher = message -> path.equals(message.getPath()) && message.getFailureOrNull() == EXPECTED_FAILURE;
     private final ClusterResponseBarrierFactory clusterResponseBarrierFactory = mock(ClusterResponseBarrierFactory.class);
     private final ITopic<DistributionMessage> deleteRequestTopic = mock(ITopic.class);
     private final ITopic<TransferRequest> transferRequestTopic = mock(ITopic.class);
+    private final IExecutorService directTransferExecutor = mock(IExecutorService.class);
     private final ITopic<StatusMessage> discardRequestTopic = mock(ITopic.class);
     private final ITopic<DistributionMessage> storeRequestTopic = mock(ITopic.class);
     private final ClusterResponseBarrier<DistributionMessage> deleteRequestBarrier = mock(ClusterResponseBarrier.class);
+    private final ClusterResponseWindow<TransferRequest> transferRequestWindow = mock(ClusterResponseWindow.class);
     private final ClusterResponseBarrier<TransferRequest> transferRequestBarrier = mock(ClusterResponseBarrier.class);
     private final ClusterResponseBarrier<StatusMessage> discardRequestBarrier = mock(ClusterResponseBarrier.class);
     private final ClusterResponseBarrier<DistributionMessage> storeRequestBarrier = mock(ClusterResponseBarrier.class);
     private final ArgumentMatcher<DistributionMessage> isEqualToExpectedDistributionMessage = msg -> path.equals(msg.getPath());
-    private final RequestDistributor distributor = new RequestDistributor(clusterResponseBarrierFactory,
-            deleteRequestTopic, transferRequestTopic, discardRequestTopic, storeRequestTopic);
+    private final DistributorConfig config = mock(DistributorConfig.class);
+    private final Codecs codecs = new Codecs();
+    private final RequestDistributor distributor = new RequestDistributor(config, codecs, clusterResponseBarrierFactory,
+            deleteRequestTopic, transferRequestTopic, directTransferExecutor, discardRequestTopic, storeRequestTopic);
 
     @Before
     public void setup() {
-        when(clusterResponseBarrierFactory.create(path, deleteRequestTopic)).thenReturn(deleteRequestBarrier);
-        when(clusterResponseBarrierFactory.create(path, transferRequestTopic)).thenReturn(transferRequestBarrier);
-        when(clusterResponseBarrierFactory.create(path, discardRequestTopic)).thenReturn(discardRequestBarrier);
-        when(clusterResponseBarrierFactory.create(path, storeRequestTopic)).thenReturn(storeRequestBarrier);
+        when(config.compressionCodec()).thenReturn("");
+        when(clusterResponseBarrierFactory.create(deleteRequestTopic)).thenReturn(deleteRequestBarrier);
+        when(clusterResponseBarrierFactory.createWindow(transferRequestTopic)).thenReturn(transferRequestWindow);
+        when(clusterResponseBarrierFactory.create(transferRequestTopic)).thenReturn(transferRequestBarrier);
+        when(clusterResponseBarrierFactory.create(discardRequestTopic)).thenReturn(discardRequestBarrier);
+        when(clusterResponseBarrierFactory.create(storeRequestTopic)).thenReturn(storeRequestBarrier);
+        when(deleteRequestBarrier.send(any())).thenReturn(completedFuture(null));
+        when(transferRequestWindow.publish(any(), anyInt())).thenReturn(completedFuture(null));
+        when(transferRequestWindow.hasCapacity(anyInt())).thenReturn(true);
+        when(transferRequestWindow.awaitResponses()).thenReturn(completedFuture(null));
+        when(discardRequestBarrier.send(any())).thenReturn(completedFuture(null));
+        when(storeRequestBarrier.send(any())).thenReturn(completedFuture(null));
+    }
+
+    private static Throwable failureOf(final CompletableFuture<?> pFuture) throws Exception {
+        try {
+            pFuture.get();
+            fail("Exception expected!");
+            return null;
+        } catch (final ExecutionException e) {
+            return e.getCause();
+        }
     }
 
     @Test
     public void transfer() throws Exception {
         final ByteBuffer data = wrap(EXPECTED_DATA);
         distributor.transfer(path, data);
-        verify(transferRequestBarrier).awaitResponse(argThat(transferRequestMatcher));
+        verify(transferRequestWindow).publish(argThat(transferRequestMatcher), eq(EXPECTED_DATA.length));
+        verify(transferRequestWindow, never()).awaitResponses();
+        assertFalse(data.hasRemaining());
+    }
+
+    @Test
+    public void transferSharesBufferWhenPublishedImmediately() throws Exception {
+        final ByteBuffer data = wrap(EXPECTED_DATA);
+        distributor.transfer(path, data);
+        data.put(0, (byte) 9);
+        verify(transferRequestWindow).publish(argThat(msg -> msg.getData().get(0) == 9), anyInt());
+    }
+
+    @Test
+    public void transferCopiesBufferWhenDeferred() throws Exception {
+        when(transferRequestWindow.hasCapacity(EXPECTED_DATA.length)).thenReturn(false);
+        final ByteBuffer data = wrap(EXPECTED_DATA.clone());
+        distributor.transfer(path, data);
+        assertFalse(data.hasRemaining());
+        data.put(0, (byte) 9);
+        verify(transferRequestWindow).publish(argThat(transferRequestMatcher), anyInt());
+    }
+
+    @Test
+    public void transferCompressed() throws Exception {
+        when(config.compressionCodec()).thenReturn("deflate");
+        final ByteBuffer data = wrap(new byte[4096]);
+        distributor.transfer(path, data);
+        assertFalse(data.hasRemaining());
+        verify(transferRequestWindow).publish(argThat(msg -> {
+            try {
+                return "deflate".equals(msg.getCodecOrNull()) && msg.getData().remaining() < 4096 &&
+                        wrap(new byte[4096]).equals(codecs.get("deflate").decompress(msg.getData()));
+            } catch (final IOException e) {
+                return false;
+            }
+        }), anyInt());
+    }
+
+    @Test
+    public void transferIncompressible() throws Exception {
+        when(config.compressionCodec()).thenReturn("deflate");
+        distributor.transfer(path, wrap(EXPECTED_DATA));
+        verify(transferRequestWindow).publish(argThat(msg -> msg.getCodecOrNull() == null &&
+                wrap(EXPECTED_DATA).equals(msg.getData())), anyInt());
+    }
+
+    @Test
+    public void transferUnknownCodec() throws Exception {
+        when(config.compressionCodec()).thenReturn("unknown");
+        assertTrue(failureOf(distributor.transfer(path, wrap(EXPECTED_DATA))) instanceof TransferException);
+        verify(transferRequestWindow, never()).publish(any(), anyInt());
+    }
+
+    @Test
+    public void batch() throws Exception {
+        distributor.batch(asList(new BatchFile(path, EXPECTED_DATA, EXPECTED_DATA))).get();
+        verify(storeRequestBarrier).send(argThat(msg -> msg instanceof BatchRequest && path.equals(msg.getPath())));
+    }
+
+    @Test
+    public void batchFailed() throws Exception {
+        when(storeRequestBarrier.send(any())).thenReturn(failed(new ResponseException("any")));
+        final Throwable failure = failureOf(distributor.batch(asList(new BatchFile(path, EXPECTED_DATA, EXPECTED_DATA))));
+        assertTrue(failure instanceof StoreException);
+    }
+
+    @Test
+    public void transferUsesSameWindowUntilStored() throws Exception {
+        distributor.transfer(path, wrap(EXPECTED_DATA)).get();
+        distributor.transfer(path, wrap(EXPECTED_DATA)).get();
+        distributor.store(path).get();
+        verify(clusterResponseBarrierFactory).createWindow(transferRequestTopic);
+        verify(transferRequestWindow, times(2)).publish(any(), anyInt());
+        final InOrder order = inOrder(transferRequestWindow, storeRequestBarrier);
+        order.verify(transferRequestWindow).awaitResponses();
+        order.verify(transferRequestWindow).close();
+        order.verify(storeRequestBarrier).send(argThat(isEqualToExpectedDistributionMessage));
+    }
+
+    @Test
+    public void transferDirect() throws Exception {
+        when(config.directTransfer()).thenReturn(true);
+        when(clusterResponseBarrierFactory.<TransferRequest>createDirectWindow(directTransferExecutor, DirectTransfer.NAME)).thenReturn(transferRequestWindow);
+        distributor.transfer(path, wrap(EXPECTED_DATA)).get();
+        distributor.store(path).get();
+        verify(clusterResponseBarrierFactory, never()).createWindow(transferRequestTopic);
+        verify(transferRequestWindow).publish(argThat(transferRequestMatcher), anyInt());
+        verify(transferRequestWindow).awaitResponses();
     }
 
     @Test
     public void transferFailed() throws Exception {
         final ResponseException expected = new ResponseException("any");
-        doThrow(expected).when(transferRequestBarrier).awaitResponse(argThat(transferRequestMatcher));
-        try {
-            distributor.transfer(path, wrap(EXPECTED_DATA));
-            fail("Exception expected!");
-        } catch (final TransferException e) {
-            assertSame(expected, e.getCause());
-        }
+        when(transferRequestWindow.publish(any(), anyInt())).thenReturn(failed(expected));
+        final Throwable failure = failureOf(distributor.transfer(path, wrap(EXPECTED_DATA)));
+        assertTrue(failure instanceof TransferException);
+        assertSame(expected, failure.getCause());
+        verify(transferRequestWindow).close();
+    }
+
+    @Test
+    public void copy() throws Exception {
+        distributor.copy(path, 10, 20).get();
+        verify(transferRequestWindow).publish(argThat(msg -> msg instanceof CopyRequest && path.equals(msg.getPath()) &&
+                ((CopyRequest) msg).getOffset() == 10 && ((CopyRequest) msg).getLength() == 20), eq(0));
+    }
+
+    @Test
+    public void getSignatures() throws Exception {
+        final BlockSignature first = new BlockSignature(0, 4, 1, new byte[]{1});
+        final BlockSignature second = new BlockSignature(4, 4, 2, new byte[]{2});
+        final BlockSignature third = new BlockSignature(8, 4, 3, new byte[]{3});
+        final Collection<StatusMessage> responses = asList(
+                new SignatureResponse("any", path, asList(first, second, third)),
+                new SignatureResponse("any", path, asList(third, second)),
+                new SignatureResponse("any", path, null));
+        when(transferRequestBarrier.collect(argThat(msg -> msg instanceof SignatureRequest &&
+                ((SignatureRequest) msg).getBlockSize() == 4))).thenReturn(completedFuture(responses));
+
+        assertEquals(new HashSet<>(asList(second, third)), new HashSet<>(distributor.getSignatures(path, 4).get()));
+    }
+
+    @Test
+    public void getSignaturesNoTargets() throws Exception {
+        when(transferRequestBarrier.collect(any())).thenReturn(completedFuture(asList(
+                new SignatureResponse("any", path, null))));
+        assertTrue(distributor.getSignatures(path, 4).get().isEmpty());
+    }
+
+    @Test
+    public void getSignaturesFailed() throws Exception {
+        final ResponseException expected = new ResponseException("any");
+        when(transferRequestBarrier.collect(any())).thenReturn(failed(expected));
+        final Throwable failure = failureOf(distributor.getSignatures(path, 4));
+        assertTrue(failure instanceof TransferException);
+        assertSame(expected, failure.getCause());
+    }
+
+    @Test
+    public void getKnownChunks() throws Exception {
+        final Chunk first = new Chunk(1, new byte[]{1});
+        final Chunk second = new Chunk(2, new byte[]{2});
+        final Collection<StatusMessage> responses = asList(
+                new ChunkQueryResponse("any", path, asList(first, second)),
+                new ChunkQueryResponse("any", path, asList(second)),
+                new ChunkQueryResponse("any", path, null));
+        when(transferRequestBarrier.collect(argThat(msg -> msg instanceof ChunkQueryRequest &&
+                ((ChunkQueryRequest) msg).getChunks().equals(asList(first, second))))).thenReturn(completedFuture(responses));
+
+        assertEquals(new HashSet<>(asList(second)), new HashSet<>(distributor.getKnownChunks(path, asList(first, second)).get()));
+    }
+
+    @Test
+    public void getKnownChunksFailed() throws Exception {
+        final ResponseException expected = new ResponseException("any");
+        when(transferRequestBarrier.collect(any())).thenReturn(failed(expected));
+        final Throwable failure = failureOf(distributor.getKnownChunks(path, asList(new Chunk(1, new byte[]{1}))));
+        assertTrue(failure instanceof TransferException);
+        assertSame(expected, failure.getCause());
+    }
+
+    @Test
+    public void transferChunk() throws Exception {
+        final Chunk chunk = new Chunk(3, new byte[]{1});
+        final ByteBuffer data = wrap(new byte[]{1, 2, 3});
+        distributor.transferChunk(path, chunk, data).get();
+        assertFalse(data.hasRemaining());
+        verify(transferRequestWindow).publish(argThat(msg -> msg instanceof ChunkRequest && path.equals(msg.getPath()) &&
+                chunk.equals(((ChunkRequest) msg).getChunk()) && msg.getData().remaining() == 3), anyInt());
+    }
+
+    @Test
+    public void copyChunk() throws Exception {
+        final Chunk chunk = new Chunk(3, new byte[]{1});
+        distributor.copyChunk(path, chunk).get();
+        verify(transferRequestWindow).publish(argThat(msg -> msg instanceof ChunkRequest && path.equals(msg.getPath()) &&
+                ((ChunkRequest) msg).isCopy()), anyInt());
+    }
+
+    @Test
+    public void duplicate() throws Exception {
+        final SyncPath source = mock(SyncPath.class);
+        final byte[] checksum = new byte[]{1, 2, 3};
+        when(transferRequestBarrier.send(any())).thenReturn(completedFuture(null));
+        distributor.duplicate(path, source, checksum).get();
+        verify(transferRequestBarrier).send(argThat(msg -> msg instanceof DuplicateRequest &&
+                path.equals(msg.getPath()) && source.equals(((DuplicateRequest) msg).getSource()) &&
+                checksum == ((DuplicateRequest) msg).getChecksum()));
+        verify(transferRequestWindow, never()).publish(any(), anyInt());
+    }
+
+    @Test
+    public void duplicateFailed() throws Exception {
+        final ResponseException expected = new ResponseException("any");
+        when(transferRequestBarrier.send(any())).thenReturn(failed(expected));
+        final Throwable failure = failureOf(distributor.duplicate(path, mock(SyncPath.class), new byte[0]));
+        assertTrue(failure instanceof TransferException);
+        assertSame(expected, failure.getCause());
+    }
+
+    @Test
+    public void storeTransferNotAcknowledged() throws Exception {
+        final ResponseException expected = new ResponseException("any");
+        when(transferRequestWindow.awaitResponses()).thenReturn(failed(expected));
+        distributor.transfer(path, wrap(EXPECTED_DATA)).get();
+        final Throwable failure = failureOf(distributor.store(path));
+        assertTrue(failure instanceof StoreException);
+        assertSame(expected, failure.getCause());
+        verify(transferRequestWindow).close();
+        verify(storeRequestBarrier, never()).send(any());
+    }
+
+    @Test
+    public void discardClosesTransferWindow() throws Exception {
+        distributor.transfer(path, wrap(EXPECTED_DATA)).get();
+        distributor.discard(path, EXPECTED_FAILURE).get();
+        verify(transferRequestWindow).close();
+        verify(transferRequestWindow, never()).awaitResponses();
+        verify(discardRequestBarrier).send(argThat(discardRequestMatcher));
     }
 
     @Test
     public void discard() throws Exception {
-        distributor.discard(path, EXPECTED_FAILURE);
-        verify(discardRequestBarrier).awaitResponse(argThat(discardRequestMatcher));
+        distributor.discard(path, EXPECTED_FAILURE).get();
+        verify(discardRequestBarrier).send(argThat(discardRequestMatcher));
     }
 
     @Test
     public void discardFailed() throws Exception {
         final ResponseException expected = new ResponseException("any");
-        doThrow(expected).when(discardRequestBarrier).awaitResponse(argThat(discardRequestMatcher));
-        try {
-            distributor.discard(path, EXPECTED_FAILURE);
-            fail("Exception expected!");
-        } catch (final DiscardException e) {
-            assertSame(expected, e.getCause());
-        }
+        when(discardRequestBarrier.send(argThat(discardRequestMatcher))).thenReturn(failed(expected));
+        final Throwable failure = failureOf(distributor.discard(path, EXPECTED_FAILURE));
+        assertTrue(failure instanceof DiscardException);
+        assertSame(expected, failure.getCause());
     }
 
     @Test
     public void store() throws Exception {
-        distributor.store(path);
-        verify(storeRequestBarrier).awaitResponse(argThat(isEqualToExpectedDistributionMessage));
+        distributor.store(path).get();
+        verify(storeRequestBarrier).send(argThat(isEqualToExpectedDistributionMessage));
     }
 
     @Test
     public void storeFailed() throws Exception {
         final ResponseException expected = new ResponseException("any");
-        doThrow(expected).when(storeRequestBarrier).awaitResponse(argThat(isEqualToExpectedDistributionMessage));
-        try {
-            distributor.store(path);
-            fail("Exception expected!");
-        } catch (final StoreException e) {
-            assertSame(expected, e.getCause());
-        }
+        when(storeRequestBarrier.send(argThat(isEqualToExpectedDistributionMessage))).thenReturn(failed(expected));
+        final Throwable failure = failureOf(distributor.store(path));
+        assertTrue(failure instanceof StoreException);
+        assertSame(expected, failure.getCause());
     }
 
     @Test
     public void delete() throws Exception {
-        distributor.delete(path);
-        verify(deleteRequestBarrier).awaitResponse(argThat(isEqualToExpectedDistributionMessage));
+        distributor.delete(path).get();
+        verify(deleteRequestBarrier).send(argThat(isEqualToExpectedDistributionMessage));
     }
 
     @Test
     public void deleteFailed() throws Exception {
         final ResponseException expected = new ResponseException("any");
-        doThrow(expected).when(deleteRequestBarrier).awaitResponse(argThat(isEqualToExpectedDistributionMessage));
-        try {
-            distributor.delete(path);
-            fail("Exception expected!");
-        } catch (final DeletionException e) {
-            assertSame(expected, e.getCause());
-        }
+        when(deleteRequestBarrier.send(argThat(isEqualToExpectedDistributionMessage))).thenReturn(failed(expected));
+        final Throwable failure = failureOf(distributor.delete(path));
+        assertTrue(failure instanceof DeletionException);
+        assertSame(expected, failure.getCause());
     }
 }
@@ -0,0 +1,33 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.request;
+
+import ch.sourcepond.io.fssync.distributor.hazelcast.DistributionMessageTest;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SignatureRequestTest extends DistributionMessageTest<SignatureRequest> {
+    private static final int EXPECTED_BLOCK_SIZE = 2048;
+
+    @Override
+    protected SignatureRequest createMessage() {
+        return new SignatureRequest(path, EXPECTED_BLOCK_SIZE);
+    }
+
+    @Test
+    public void getBlockSize() {
+        assertEquals(EXPECTED_BLOCK_SIZE, message.getBlockSize());
+    }
+}
@@ -13,21 +13,40 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast.request;
 
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.api.BatchFile;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.ClientMessageProcessorTest;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.DirectMessageReceiver;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.exception.TransferException;
 import org.junit.Test;
+import org.mockito.InOrder;
 
 import java.io.IOException;
 
+import static ch.sourcepond.io.fssync.distributor.hazelcast.Constants.EXPECTED_DATA;
+import static java.nio.ByteBuffer.wrap;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class StoreRequestProcessorTest extends ClientMessageProcessorTest<DistributionMessage, StoreRequestProcessor> {
+    private final DirectMessageReceiver<TransferRequest> directTransferReceiver = mock(DirectMessageReceiver.class);
 
     @Override
     protected StoreRequestProcessor createProcessor() {
-        return new StoreRequestProcessor(syncTarget);
+        return new StoreRequestProcessor(syncTarget, directTransferReceiver);
     }
 
     @Override
@@ -42,5 +61,47 @@ public class StoreRequestProcessorTest extends ClientMessageProcessorTest<Distri
     public void processMessage() throws IOException {
         processor.processMessage(nodeInfo, syncPath, message);
         verify(syncTarget).store(nodeInfo, syncPath);
+        verify(directTransferReceiver).finished(nodeInfo, syncPath);
+    }
+
+    @Test
+    public void requiresLock() {
+        assertTrue(processor.requiresLock(message));
+        assertFalse(processor.requiresLock(new BatchRequest(asList(new BatchFile(syncPath, EXPECTED_DATA, EXPECTED_DATA)))));
+    }
+
+    @Test
+    public void processBatch() throws IOException {
+        final SyncPath other = mock(SyncPath.class);
+        processor.processMessage(nodeInfo, syncPath, new BatchRequest(asList(
+                new BatchFile(syncPath, EXPECTED_DATA, EXPECTED_DATA), new BatchFile(other, EXPECTED_DATA, EXPECTED_DATA))));
+        final InOrder order = inOrder(syncTarget);
+        order.verify(syncTarget).lock(nodeInfo, syncPath);
+        order.verify(syncTarget).transfer(same(nodeInfo), same(syncPath), argThat(b -> wrap(EXPECTED_DATA).equals(b)));
+        order.verify(syncTarget).store(nodeInfo, syncPath);
+        order.verify(syncTarget).unlock(nodeInfo, syncPath);
+        order.verify(syncTarget).lock(nodeInfo, other);
+        order.verify(syncTarget).store(nodeInfo, other);
+        order.verify(syncTarget).unlock(nodeInfo, other);
+    }
+
+    @Test
+    public void processBatchFileFailed() throws IOException {
+        final SyncPath other = mock(SyncPath.class);
+        final IOException expected = new IOException();
+        doThrow(expected).when(syncTarget).store(nodeInfo, syncPath);
+        try {
+            processor.processMessage(nodeInfo, syncPath, new BatchRequest(asList(
+                    new BatchFile(syncPath, EXPECTED_DATA, EXPECTED_DATA), new BatchFile(other, EXPECTED_DATA, EXPECTED_DATA))));
+            fail("Exception expected");
+        } catch (final TransferException e) {
+            assertSame(expected, e.getCause());
+        }
+        verify(syncTarget).discard(nodeInfo, syncPath, expected);
+        verify(syncTarget).unlock(nodeInfo, syncPath);
+
+        // The remaining files are stored nevertheless
+        verify(syncTarget).store(nodeInfo, other);
+        verify(syncTarget, never()).discard(same(nodeInfo), same(other), any());
     }
 }
@@ -13,16 +13,34 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast.request;
 
+import ch.sourcepond.io.fssync.common.api.BlockSignature;
+import ch.sourcepond.io.fssync.common.api.Chunk;
+import ch.sourcepond.io.fssync.common.api.SyncPath;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.ClientMessageProcessorTest;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.StatusMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.compression.Codecs;
+import ch.sourcepond.io.fssync.distributor.hazelcast.exception.TransferException;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Consumer;
 
 import static ch.sourcepond.io.fssync.distributor.hazelcast.Constants.EXPECTED_DATA;
+import static java.nio.ByteBuffer.wrap;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -30,14 +48,14 @@ public class TransferRequestProcessorTest extends ClientMessageProcessorTest<Tra
 
     @Override
     protected TransferRequestProcessor createProcessor() {
-        return new TransferRequestProcessor(syncTarget);
+        return new TransferRequestProcessor(syncTarget, new Codecs());
     }
 
     @Override
     protected TransferRequest createMessage() {
         final TransferRequest message = mock(TransferRequest.class);
         when(message.getPath()).thenReturn(syncPath);
-        when(message.getData()).thenReturn(EXPECTED_DATA);
+        when(message.getData()).thenReturn(wrap(EXPECTED_DATA));
         return message;
     }
 
@@ -47,4 +65,100 @@ public class TransferRequestProcessorTest extends ClientMessageProcessorTest<Tra
         processor.processMessage(nodeInfo, syncPath, message);
         verify(syncTarget).transfer(same(nodeInfo), same(syncPath), argThat(data -> Arrays.equals(EXPECTED_DATA, data.array())));
     }
+
+    @Test
+    public void processCompressed() throws IOException {
+        final ByteBuffer compressed = new Codecs().get("deflate").compress(wrap(EXPECTED_DATA));
+        processor.processMessage(nodeInfo, syncPath, new TransferRequest(syncPath, compressed, "deflate"));
+        verify(syncTarget).transfer(same(nodeInfo), same(syncPath), argThat(data -> wrap(EXPECTED_DATA).equals(data)));
+    }
+
+    @Test(expected = TransferException.class)
+    public void processUnknownCodec() throws IOException {
+        processor.processMessage(nodeInfo, syncPath, new TransferRequest(syncPath, wrap(EXPECTED_DATA), "unknown"));
+    }
+
+    @Test
+    public void processCopy() throws IOException {
+        processor.processMessage(nodeInfo, syncPath, new CopyRequest(syncPath, 10, 20));
+        verify(syncTarget).copy(nodeInfo, syncPath, 10, 20);
+        verify(syncTarget, never()).transfer(any(), any(), any());
+    }
+
+    @Test
+    public void processDuplicate() throws IOException {
+        final SyncPath source = mock(SyncPath.class);
+        final byte[] checksum = new byte[]{1, 2, 3};
+        processor.processMessage(nodeInfo, syncPath, new DuplicateRequest(syncPath, source, checksum));
+        verify(syncTarget).duplicate(nodeInfo, syncPath, source, checksum);
+        verify(syncTarget, never()).transfer(any(), any(), any());
+    }
+
+    @Test
+    public void processSignatures() throws IOException {
+        final BlockSignature first = new BlockSignature(0, 4, 1, new byte[]{1});
+        final BlockSignature second = new BlockSignature(4, 4, 2, new byte[]{2});
+        doAnswer(inv -> {
+            final Consumer<Collection<BlockSignature>> collector = inv.getArgument(3);
+            // Two targets on the same node: only the common block remains
+            collector.accept(asList(first, second));
+            collector.accept(asList(second));
+            return null;
+        }).when(syncTarget).signatures(same(nodeInfo), same(syncPath), eq(4), any());
+
+        final SignatureRequest request = new SignatureRequest(syncPath, 4);
+        final StatusMessage response = processor.process(nodeInfo, syncPath, request);
+        assertTrue(response instanceof SignatureResponse);
+        assertEquals(request.getRequestId(), response.getRequestId());
+        assertEquals(asList(second), ((SignatureResponse) response).getSignaturesOrNull());
+        verify(syncTarget, never()).transfer(any(), any(), any());
+    }
+
+    @Test
+    public void processSignaturesNoTarget() throws IOException {
+        final StatusMessage response = processor.process(nodeInfo, syncPath, new SignatureRequest(syncPath, 4));
+        assertNull(((SignatureResponse) response).getSignaturesOrNull());
+    }
+
+    @Test
+    public void processChunkQuery() throws IOException {
+        final Chunk first = new Chunk(1, new byte[]{1});
+        final Chunk second = new Chunk(2, new byte[]{2});
+        doAnswer(inv -> {
+            final Consumer<Collection<Chunk>> collector = inv.getArgument(3);
+            // Two targets on the same node: only the common chunk remains
+            collector.accept(asList(first, second));
+            collector.accept(asList(second));
+            return null;
+        }).when(syncTarget).chunks(same(nodeInfo), same(syncPath), eq(asList(first, second)), any());
+
+        final ChunkQueryRequest request = new ChunkQueryRequest(syncPath, asList(first, second));
+        final StatusMessage response = processor.process(nodeInfo, syncPath, request);
+        assertTrue(response instanceof ChunkQueryResponse);
+        assertEquals(request.getRequestId(), response.getRequestId());
+        assertEquals(asList(second), ((ChunkQueryResponse) response).getChunksOrNull());
+    }
+
+    @Test
+    public void processChunkQueryNoTarget() throws IOException {
+        final StatusMessage response = processor.process(nodeInfo, syncPath,
+                new ChunkQueryRequest(syncPath, asList(new Chunk(1, new byte[]{1}))));
+        assertNull(((ChunkQueryResponse) response).getChunksOrNull());
+    }
+
+    @Test
+    public void processChunk() throws IOException {
+        final Chunk chunk = new Chunk(EXPECTED_DATA.length, new byte[]{1});
+        processor.processMessage(nodeInfo, syncPath, new ChunkRequest(syncPath, chunk, wrap(EXPECTED_DATA)));
+        verify(syncTarget).transferChunk(same(nodeInfo), same(syncPath), same(chunk), eq(wrap(EXPECTED_DATA)));
+        verify(syncTarget, never()).transfer(any(), any(), any());
+    }
+
+    @Test
+    public void processCopyChunk() throws IOException {
+        final Chunk chunk = new Chunk(4, new byte[]{1});
+        processor.processMessage(nodeInfo, syncPath, new ChunkRequest(syncPath, chunk));
+        verify(syncTarget).copyChunk(nodeInfo, syncPath, chunk);
+        verify(syncTarget, never()).transferChunk(any(), any(), any(), any());
+    }
 }
@@ -14,12 +14,57 @@ limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast.request;
 
 import ch.sourcepond.io.fssync.distributor.hazelcast.DistributionMessageTest;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+import static java.nio.ByteBuffer.allocateDirect;
+import static java.nio.ByteBuffer.wrap;
+import static org.junit.Assert.assertEquals;
 
 public class TransferRequestTest extends DistributionMessageTest<TransferRequest> {
     private static final byte[] EXPECTED_DATA = new byte[0];
+    private static final byte[] CONTENT = new byte[]{1, 2, 3, 4, 5, 6, 7, 8};
 
     @Override
     protected TransferRequest createMessage() {
         return new TransferRequest(path, EXPECTED_DATA);
     }
+
+    private static TransferRequest serializeAndDeserialize(final ByteBuffer pData) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new TransferRequest(null, pData));
+        }
+        try (final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (TransferRequest) in.readObject();
+        }
+    }
+
+    @Test
+    public void getDataIsIndependent() {
+        final TransferRequest request = new TransferRequest(path, CONTENT);
+        request.getData().position(4);
+        assertEquals(wrap(CONTENT), request.getData());
+    }
+
+    @Test
+    public void serializeHeapBufferSlice() throws Exception {
+        final ByteBuffer data = wrap(CONTENT);
+        data.position(2);
+        final TransferRequest received = serializeAndDeserialize(data.slice());
+        assertEquals(wrap(CONTENT, 2, 6), received.getData());
+    }
+
+    @Test
+    public void serializeDirectBuffer() throws Exception {
+        final ByteBuffer data = allocateDirect(CONTENT.length);
+        data.put(CONTENT).flip();
+        final TransferRequest received = serializeAndDeserialize(data);
+        assertEquals(wrap(CONTENT), received.getData());
+    }
 }
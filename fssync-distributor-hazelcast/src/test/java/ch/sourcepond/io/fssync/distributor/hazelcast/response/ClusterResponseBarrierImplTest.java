@@ -14,63 +14,60 @@ limitations under the License.*/
 package ch.sourcepond.io.fssync.distributor.hazelcast.response;
 
 import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
 import ch.sourcepond.io.fssync.distributor.hazelcast.common.StatusMessage;
 import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
 import com.hazelcast.core.Cluster;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.ITopic;
 import com.hazelcast.core.Member;
-import com.hazelcast.core.MemberAttributeEvent;
 import com.hazelcast.core.MembershipEvent;
 import com.hazelcast.core.Message;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
-import org.mockito.InOrder;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
-import static java.lang.Thread.currentThread;
-import static java.lang.Thread.interrupted;
 import static java.util.Arrays.asList;
 import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
-import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
-import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class ClusterResponseBarrierImplTest {
     private static final String EXPECTED_FAILURE_MESSAGE = "someMessage";
-    private static final String EXPECTED_MEMBERSHIP_ID = "someMembershipId";
-    private static final String EXPECTED_REGISTRATION_ID = "someRegistrationId";
     private static final long EXPECTED_TIMEOUT = 500;
     private static final TimeUnit EXPECTED_UNIT = MILLISECONDS;
-    private final ITopic<SyncPath> requestTopic = mock(ITopic.class);
-    private final ITopic<StatusMessage> responseTopic = mock(ITopic.class);
+    private final ITopic<DistributionMessage> requestTopic = mock(ITopic.class);
     private final DistributorConfig config = mock(DistributorConfig.class);
     private final HazelcastInstance hci = mock(HazelcastInstance.class);
     private final Member member = mock(Member.class);
     private final Cluster cluster = mock(Cluster.class);
     private final Set<Member> members = new HashSet<>(asList(member));
-    private final Message<StatusMessage> message = mock(Message.class);
     private final MembershipEvent event = mock(MembershipEvent.class);
-    private final ScheduledExecutorService executor = newSingleThreadScheduledExecutor();
+    private final ScheduledExecutorService timeoutExecutor = newSingleThreadScheduledExecutor();
     private final SyncPath path = mock(SyncPath.class);
-    private StatusMessage payload = new StatusMessage(path);
-    private final ClusterResponseBarrierFactory factory = new ClusterResponseBarrierFactory(hci, config, responseTopic);
-    private ClusterResponseBarrierImpl<SyncPath> listener;
-    private volatile boolean run;
+    private final DistributionMessage request = new DistributionMessage(path);
+    private final ResponseDispatcher dispatcher = new ResponseDispatcher(hci, config, timeoutExecutor);
+    private final ClusterResponseBarrierFactory factory = new ClusterResponseBarrierFactory(dispatcher, config, hci,
+            new TransferCredits(hci, config));
+    private ClusterResponseBarrier<DistributionMessage> barrier;
 
     @Before
     public void setup() {
@@ -78,93 +75,103 @@ public class ClusterResponseBarrierImplTest {
         when(cluster.getMembers()).thenReturn(members);
         when(config.responseTimeout()).thenReturn(EXPECTED_TIMEOUT);
         when(config.responseTimeoutUnit()).thenReturn(EXPECTED_UNIT);
-        when(message.getPublishingMember()).thenReturn(member);
-        when(message.getMessageObject()).thenReturn(payload);
         when(event.getMember()).thenReturn(member);
-        listener = (ClusterResponseBarrierImpl<SyncPath>) factory.create(path, requestTopic);
-        when(cluster.addMembershipListener(listener)).thenReturn(EXPECTED_MEMBERSHIP_ID);
-        when(responseTopic.addMessageListener(listener)).thenReturn(EXPECTED_REGISTRATION_ID);
+        barrier = factory.create(requestTopic);
     }
 
     @After
     public void tearDown() {
-        executor.shutdown();
-        interrupted();
-    }
-
-    @Test//(timeout = 2000)
-    public void memberRemoved() throws Exception {
-        executor.schedule(() -> {
-            listener.memberRemoved(event);
-            run = true;
-        }, 200, MILLISECONDS);
-        listener.awaitResponse(path);
-        assertTrue(run);
+        dispatcher.close();
     }
 
-    @Test
-    public void memberAdded() {
-        listener.memberAdded(event);
-        verifyZeroInteractions(event);
-    }
-
-    @Test
-    public void memberAttributeChanged() {
-        final MemberAttributeEvent event = mock(MemberAttributeEvent.class);
-        listener.memberAttributeChanged(event);
-        verifyZeroInteractions(event);
+    private Message<StatusMessage> response(final String pRequestId, final IOException pFailureOrNull) {
+        final Message<StatusMessage> message = mock(Message.class);
+        when(message.getPublishingMember()).thenReturn(member);
+        when(message.getMessageObject()).thenReturn(new StatusMessage(pRequestId, path, pFailureOrNull));
+        return message;
     }
 
-    @Test(timeout = 2000)
-    public void awaitNodeAnswersWaitInterrupted() throws Exception {
-        final Thread thread = currentThread();
-        executor.schedule(() -> thread.interrupt(), 200, MILLISECONDS);
+    private static Throwable failureOf(final CompletableFuture<Void> pFuture) throws Exception {
         try {
-            listener.awaitResponse(path);
+            pFuture.get();
             fail("Exception expected");
-        } catch (final ResponseException e) {
-            final Throwable cause = e.getCause();
-            assertNotNull(cause);
-            assertSame(InterruptedException.class, cause.getClass());
+            return null;
+        } catch (final ExecutionException e) {
+            return e.getCause();
         }
     }
 
+    @Test(timeout = 2000)
+    public void memberRemoved() throws Exception {
+        final CompletableFuture<Void> future = barrier.send(request);
+        assertFalse(future.isDone());
+        dispatcher.memberRemoved(event);
+        future.get();
+    }
+
     @Test(timeout = 2000)
     public void validateAnswers() throws Exception {
-        final IOException expected = new IOException(EXPECTED_FAILURE_MESSAGE);
-        payload = new StatusMessage(path, expected);
-        when(message.getMessageObject()).thenReturn(payload);
-        listener.onMessage(message);
-        try {
-            listener.awaitResponse(path);
-            fail("Exception expected");
-        } catch (final ResponseException e) {
-            assertTrue(expected.getMessage().contains(EXPECTED_FAILURE_MESSAGE));
-        }
+        final CompletableFuture<Void> future = barrier.send(request);
+        dispatcher.onMessage(response(request.getRequestId(), new IOException(EXPECTED_FAILURE_MESSAGE)));
+        final Throwable failure = failureOf(future);
+        assertTrue(failure instanceof ResponseException);
+        assertTrue(failure.getMessage().contains(EXPECTED_FAILURE_MESSAGE));
     }
 
-    @Test(timeout = 5000, expected = TimeoutException.class)
-    public void awaitNodeAnswersWaitTimedOut() throws Exception {
-        listener.awaitResponse(path);
+    @Test(timeout = 5000)
+    public void timedOut() throws Exception {
+        assertTrue(failureOf(barrier.send(request)) instanceof TimeoutException);
+    }
+
+    @Test(timeout = 5000)
+    public void ignoreResponseToOtherRequest() throws Exception {
+        final CompletableFuture<Void> future = barrier.send(request);
+        dispatcher.onMessage(response("otherRequestId", null));
+        assertTrue(failureOf(future) instanceof TimeoutException);
+    }
+
+    @Test(timeout = 2000)
+    public void publishFailed() throws Exception {
+        final RuntimeException expected = new RuntimeException();
+        doThrow(expected).when(requestTopic).publish(request);
+        assertSame(expected, failureOf(barrier.send(request)));
     }
 
     @Test(expected = NullPointerException.class)
-    public void awaitResponseMessageIsNull() throws Exception {
-        listener.awaitResponse(null);
+    public void sendMessageIsNull() {
+        barrier.send(null);
     }
 
-    @Test
+    @Test(timeout = 2000)
     public void onMessage() throws Exception {
-        executor.schedule(() -> {
-            listener.onMessage(message);
-            run = true;
-        }, 200, MILLISECONDS);
-        listener.awaitResponse(path);
-        assertTrue(run);
-        final InOrder order = inOrder(cluster, responseTopic);
-        verify(cluster).addMembershipListener(listener);
-        verify(responseTopic).addMessageListener(listener);
-        verify(responseTopic).removeMessageListener(EXPECTED_REGISTRATION_ID);
-        verify(cluster).removeMembershipListener(EXPECTED_MEMBERSHIP_ID);
+        final CompletableFuture<Void> future = barrier.send(request);
+        verify(requestTopic).publish(request);
+        dispatcher.onMessage(response(request.getRequestId(), null));
+        future.get();
+    }
+
+    @Test(timeout = 2000)
+    public void collect() throws Exception {
+        final CompletableFuture<Collection<StatusMessage>> future = barrier.collect(request);
+        verify(requestTopic).publish(request);
+        final Message<StatusMessage> response = response(request.getRequestId(), null);
+        dispatcher.onMessage(response);
+        final Collection<StatusMessage> responses = future.get();
+        assertEquals(1, responses.size());
+        assertSame(response.getMessageObject(), responses.iterator().next());
+    }
+
+    @Test(timeout = 2000)
+    public void collectMemberRemoved() throws Exception {
+        final CompletableFuture<Collection<StatusMessage>> future = barrier.collect(request);
+        dispatcher.memberRemoved(event);
+        assertTrue(future.get().isEmpty());
+    }
+
+    @Test(timeout = 2000)
+    public void noMembers() throws Exception {
+        members.clear();
+        barrier.send(request).get();
+        verify(requestTopic).publish(request);
     }
 }
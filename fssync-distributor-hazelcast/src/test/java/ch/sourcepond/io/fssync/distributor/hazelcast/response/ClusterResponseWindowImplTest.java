@@ -0,0 +1,310 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.response;
+
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.StatusMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
+import com.hazelcast.core.Cluster;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.MembershipEvent;
+import com.hazelcast.core.Message;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeoutException;
+
+import static ch.sourcepond.io.fssync.distributor.hazelcast.config.CompletionPolicy.ALL;
+import static ch.sourcepond.io.fssync.distributor.hazelcast.config.CompletionPolicy.MAJORITY;
+import static ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig.TRANSFER_CREDITS_ATTRIBUTE;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ClusterResponseWindowImplTest {
+    private static final long EXPECTED_TIMEOUT = 500;
+    private static final int EXPECTED_WINDOW_SIZE = 2;
+    private final ITopic<DistributionMessage> requestTopic = mock(ITopic.class);
+    private final DistributorConfig config = mock(DistributorConfig.class);
+    private final HazelcastInstance hci = mock(HazelcastInstance.class);
+    private final Member member = mock(Member.class);
+    private final Cluster cluster = mock(Cluster.class);
+    private final Set<Member> members = new HashSet<>(asList(member));
+    private final MembershipEvent event = mock(MembershipEvent.class);
+    private final ScheduledExecutorService timeoutExecutor = newSingleThreadScheduledExecutor();
+    private final SyncPath path = mock(SyncPath.class);
+    private final DistributionMessage first = new DistributionMessage(path);
+    private final DistributionMessage second = new DistributionMessage(path);
+    private final DistributionMessage third = new DistributionMessage(path);
+    private final MemberLatencies latencies = new MemberLatencies(config);
+    private final ResponseDispatcher dispatcher = new ResponseDispatcher(hci, config, timeoutExecutor, latencies);
+    private final ClusterResponseBarrierFactory factory = new ClusterResponseBarrierFactory(dispatcher, config, hci,
+            new TransferCredits(hci, config));
+    private ClusterResponseWindow<DistributionMessage> window;
+
+    @Before
+    public void setup() {
+        when(hci.getCluster()).thenReturn(cluster);
+        when(cluster.getMembers()).thenReturn(members);
+        when(config.responseTimeout()).thenReturn(EXPECTED_TIMEOUT);
+        when(config.responseTimeoutUnit()).thenReturn(MILLISECONDS);
+        when(config.transferCompletionPolicy()).thenReturn(ALL);
+        when(config.transferWindowSize()).thenReturn(EXPECTED_WINDOW_SIZE);
+        when(event.getMember()).thenReturn(member);
+        window = factory.createWindow(requestTopic);
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.close();
+    }
+
+    private void acknowledge(final DistributionMessage pRequest, final IOException pFailureOrNull) {
+        acknowledge(pRequest, member, pFailureOrNull);
+    }
+
+    private void acknowledge(final DistributionMessage pRequest, final Member pMember, final IOException pFailureOrNull) {
+        final Message<StatusMessage> message = mock(Message.class);
+        when(message.getPublishingMember()).thenReturn(pMember);
+        when(message.getMessageObject()).thenReturn(new StatusMessage(pRequest.getRequestId(), path, pFailureOrNull));
+        dispatcher.onMessage(message);
+    }
+
+    private static Throwable failureOf(final CompletableFuture<Void> pFuture) throws Exception {
+        try {
+            pFuture.get();
+            fail("Exception expected");
+            return null;
+        } catch (final ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    @Test(timeout = 2000)
+    public void publishWithoutWaitingUntilWindowIsFull() throws Exception {
+        assertTrue(window.publish(first).isDone());
+        assertTrue(window.publish(second).isDone());
+        verify(requestTopic).publish(first);
+        verify(requestTopic).publish(second);
+    }
+
+    @Test(timeout = 2000)
+    public void publishDeferredWhenWindowIsFull() throws Exception {
+        window.publish(first);
+        window.publish(second);
+        final CompletableFuture<Void> future = window.publish(third);
+        assertFalse(future.isDone());
+        verify(requestTopic, never()).publish(third);
+        acknowledge(first, null);
+        future.get();
+        verify(requestTopic).publish(third);
+    }
+
+    @Test(timeout = 2000)
+    public void hasCapacity() throws Exception {
+        window.publish(first);
+        assertTrue(window.hasCapacity(0));
+        window.publish(second);
+        assertFalse(window.hasCapacity(0));
+        acknowledge(first, null);
+        assertTrue(window.hasCapacity(0));
+    }
+
+    @Test(timeout = 2000)
+    public void publishDeferredWithoutCredits() throws Exception {
+        when(config.transferCredits()).thenReturn(10);
+        when(member.getIntAttribute(TRANSFER_CREDITS_ATTRIBUTE)).thenReturn(null);
+        assertTrue(window.publish(first, 6).isDone());
+        final CompletableFuture<Void> future = window.publish(second, 6);
+        assertFalse(future.isDone());
+        verify(requestTopic, never()).publish(second);
+        acknowledge(first, null);
+        future.get();
+        verify(requestTopic).publish(second);
+    }
+
+    @Test(timeout = 2000)
+    public void creditsAdvertisedByMember() throws Exception {
+        when(config.transferCredits()).thenReturn(10);
+        when(member.getIntAttribute(TRANSFER_CREDITS_ATTRIBUTE)).thenReturn(4);
+        assertTrue(window.publish(first, 3).isDone());
+        assertFalse(window.hasCapacity(3));
+        assertFalse(window.publish(second, 3).isDone());
+    }
+
+    @Test(timeout = 2000)
+    public void creditsSharedByWindows() throws Exception {
+        when(config.transferCredits()).thenReturn(10);
+        when(member.getIntAttribute(TRANSFER_CREDITS_ATTRIBUTE)).thenReturn(null);
+        final ClusterResponseWindow<DistributionMessage> other = factory.createWindow(requestTopic);
+        assertTrue(window.hasCapacity(6));
+        assertFalse(other.hasCapacity(6));
+
+        // The reserved credits are used by the next message
+        assertTrue(window.publish(first, 6).isDone());
+        window.close();
+        assertTrue(other.hasCapacity(6));
+    }
+
+    @Test(timeout = 2000)
+    public void singleMessageExceedsCredits() throws Exception {
+        when(config.transferCredits()).thenReturn(10);
+        when(member.getIntAttribute(TRANSFER_CREDITS_ATTRIBUTE)).thenReturn(null);
+        assertTrue(window.publish(first, 20).isDone());
+    }
+
+    @Test(timeout = 2000)
+    public void releasedByMajority() throws Exception {
+        final Member other = mock(Member.class);
+        final Member slow = mock(Member.class);
+        members.add(other);
+        members.add(slow);
+        when(config.transferCompletionPolicy()).thenReturn(MAJORITY);
+        window = factory.createWindow(requestTopic);
+        window.publish(first);
+        window.publish(second);
+        final CompletableFuture<Void> future = window.publish(third);
+        acknowledge(first, member, null);
+        assertFalse(future.isDone());
+        acknowledge(first, other, null);
+        future.get();
+        verify(requestTopic).publish(third);
+
+        // The slow member catches up asynchronously, but all members must have acknowledged in the end
+        final CompletableFuture<Void> responses = window.awaitResponses();
+        for (final DistributionMessage request : asList(second, third)) {
+            for (final Member m : members) {
+                acknowledge(request, m, null);
+            }
+        }
+        assertFalse(responses.isDone());
+        acknowledge(first, slow, null);
+        responses.get();
+    }
+
+    @Test(timeout = 2000)
+    public void failureOfCatchingUpMember() throws Exception {
+        final Member other = mock(Member.class);
+        final Member slow = mock(Member.class);
+        members.add(other);
+        members.add(slow);
+        when(config.transferCompletionPolicy()).thenReturn(MAJORITY);
+        window = factory.createWindow(requestTopic);
+        window.publish(first);
+        acknowledge(first, member, null);
+        acknowledge(first, other, null);
+        assertTrue(window.hasCapacity(0));
+        acknowledge(first, slow, new IOException());
+        assertTrue(failureOf(window.publish(second)) instanceof ResponseException);
+        verify(requestTopic, never()).publish(second);
+    }
+
+    @Test(timeout = 2000)
+    public void laggingMemberNotAwaited() throws Exception {
+        final Member other = mock(Member.class);
+        final Member slow = mock(Member.class);
+        members.add(other);
+        members.add(slow);
+        when(config.laggingFactor()).thenReturn(2.0);
+        latencies.record(member, MILLISECONDS.toNanos(1));
+        latencies.record(other, MILLISECONDS.toNanos(1));
+        latencies.record(slow, MILLISECONDS.toNanos(100));
+        window.publish(first);
+        window.publish(second);
+        final CompletableFuture<Void> future = window.publish(third);
+        acknowledge(first, member, null);
+        acknowledge(first, other, null);
+        future.get();
+        verify(requestTopic).publish(third);
+        assertFalse(window.awaitResponses().isDone());
+    }
+
+    @Test(timeout = 5000)
+    public void publishTimedOut() throws Exception {
+        window.publish(first);
+        window.publish(second);
+        assertTrue(failureOf(window.publish(third)) instanceof TimeoutException);
+    }
+
+    @Test(timeout = 2000)
+    public void ignoreUnknownResponse() throws Exception {
+        window.publish(first);
+        acknowledge(second, new IOException());
+        acknowledge(first, null);
+        window.awaitResponses().get();
+    }
+
+    @Test(timeout = 2000)
+    public void awaitResponses() throws Exception {
+        window.publish(first);
+        window.publish(second);
+        final CompletableFuture<Void> future = window.awaitResponses();
+        acknowledge(second, null);
+        assertFalse(future.isDone());
+        acknowledge(first, null);
+        future.get();
+    }
+
+    @Test(timeout = 2000)
+    public void awaitResponsesMemberRemoved() throws Exception {
+        window.publish(first);
+        final CompletableFuture<Void> future = window.awaitResponses();
+        dispatcher.memberRemoved(event);
+        future.get();
+    }
+
+    @Test(timeout = 2000)
+    public void failureReported() throws Exception {
+        window.publish(first);
+        window.publish(second);
+        acknowledge(second, new IOException("any"));
+        final Throwable failure = failureOf(window.publish(third));
+        assertTrue(failure instanceof ResponseException);
+        assertTrue(failure.getMessage().contains("any"));
+        verify(requestTopic, times(2)).publish(any());
+    }
+
+    @Test(timeout = 2000)
+    public void close() throws Exception {
+        window.publish(first);
+        window.publish(second);
+        final CompletableFuture<Void> deferred = window.publish(third);
+        window.close();
+        window.close();
+        assertTrue(failureOf(deferred) instanceof CancellationException);
+
+        // Nothing to await anymore after the window has been closed
+        window.awaitResponses().get();
+    }
+}
@@ -0,0 +1,166 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.response;
+
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.DirectMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.DistributionMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.StatusMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
+import com.hazelcast.core.Cluster;
+import com.hazelcast.core.Endpoint;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IExecutorService;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.Message;
+import com.hazelcast.core.MemberLeftException;
+import com.hazelcast.core.MultiExecutionCallback;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static ch.sourcepond.io.fssync.distributor.hazelcast.config.CompletionPolicy.ALL;
+import static ch.sourcepond.io.fssync.distributor.hazelcast.Constants.EXPECTED_LOCAL_NODE;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentCaptor.forClass;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DirectSenderTest {
+    private static final String EXPECTED_RECEIVER_NAME = "anyReceiver";
+    private static final long EXPECTED_TIMEOUT = 500;
+    private final DistributorConfig config = mock(DistributorConfig.class);
+    private final HazelcastInstance hci = mock(HazelcastInstance.class);
+    private final Endpoint endpoint = mock(Endpoint.class);
+    private final Member member = mock(Member.class);
+    private final Cluster cluster = mock(Cluster.class);
+    private final Set<Member> members = new HashSet<>(asList(member));
+    private final IExecutorService executor = mock(IExecutorService.class);
+    private final ScheduledExecutorService timeoutExecutor = newSingleThreadScheduledExecutor();
+    private final SyncPath path = mock(SyncPath.class);
+    private final DistributionMessage first = new DistributionMessage(path);
+    private final DistributionMessage second = new DistributionMessage(path);
+    private final ResponseDispatcher dispatcher = new ResponseDispatcher(hci, config, timeoutExecutor);
+    private final ClusterResponseBarrierFactory factory = new ClusterResponseBarrierFactory(dispatcher, config, hci,
+            new TransferCredits(hci, config));
+    private final List<DirectMessage> sent = new ArrayList<>();
+    private ClusterResponseWindow<DistributionMessage> window;
+
+    @Before
+    public void setup() {
+        when(hci.getCluster()).thenReturn(cluster);
+        when(hci.getLocalEndpoint()).thenReturn(endpoint);
+        when(endpoint.getUuid()).thenReturn(EXPECTED_LOCAL_NODE);
+        when(cluster.getMembers()).thenReturn(members);
+        when(config.responseTimeout()).thenReturn(EXPECTED_TIMEOUT);
+        when(config.responseTimeoutUnit()).thenReturn(MILLISECONDS);
+        when(config.transferCompletionPolicy()).thenReturn(ALL);
+        when(config.transferWindowSize()).thenReturn(2);
+        window = factory.createDirectWindow(executor, EXPECTED_RECEIVER_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.close();
+    }
+
+    private MultiExecutionCallback publish(final DistributionMessage pMessage) {
+        final ArgumentCaptor<DirectMessage> message = forClass(DirectMessage.class);
+        final ArgumentCaptor<MultiExecutionCallback> callback = forClass(MultiExecutionCallback.class);
+        window.publish(pMessage);
+        verify(executor).submitToAllMembers(argThat((DirectMessage m) -> m.getMessage() == pMessage), any(MultiExecutionCallback.class));
+        verify(executor, atLeastOnce()).submitToAllMembers(message.capture(), callback.capture());
+        sent.add(message.getValue());
+        return callback.getValue();
+    }
+
+    @Test(timeout = 2000)
+    public void sendStream() throws Exception {
+        publish(first).onResponse(member, new StatusMessage(first.getRequestId(), path, null));
+        publish(second).onResponse(member, new StatusMessage(second.getRequestId(), path, null));
+        window.awaitResponses().get();
+
+        assertEquals(EXPECTED_LOCAL_NODE, sent.get(0).getSender());
+        assertSame(first, sent.get(0).getMessage());
+        assertEquals(0, sent.get(0).getSequence());
+        assertSame(second, sent.get(1).getMessage());
+        assertEquals(1, sent.get(1).getSequence());
+        assertEquals(sent.get(0).getStream(), sent.get(1).getStream());
+    }
+
+    @Test(timeout = 2000)
+    public void everyWindowIsNewStream() throws Exception {
+        publish(first);
+        window = factory.createDirectWindow(executor, EXPECTED_RECEIVER_NAME);
+        publish(second);
+        assertTrue(sent.get(0).getStream() < sent.get(1).getStream());
+        assertEquals(0, sent.get(1).getSequence());
+    }
+
+    @Test(timeout = 2000)
+    public void bufferedMessageAnsweredThroughTopic() throws Exception {
+        publish(first).onResponse(member, null);
+        assertFalse(window.awaitResponses().isDone());
+
+        final Message<StatusMessage> answer = mock(Message.class);
+        when(answer.getPublishingMember()).thenReturn(member);
+        when(answer.getMessageObject()).thenReturn(new StatusMessage(first.getRequestId(), path, null));
+        dispatcher.onMessage(answer);
+        window.awaitResponses().get();
+    }
+
+    @Test(timeout = 2000)
+    public void memberLeft() throws Exception {
+        publish(first).onResponse(member, new MemberLeftException(member));
+        window.awaitResponses().get();
+    }
+
+    @Test(timeout = 2000)
+    public void executionFailed() throws Exception {
+        publish(first).onResponse(member, new IllegalStateException());
+        try {
+            window.awaitResponses().get();
+            fail("Exception expected");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof ResponseException);
+        }
+    }
+
+    @Test(timeout = 2000)
+    public void submitFailed() throws Exception {
+        doThrow(IllegalStateException.class).when(executor).submitToAllMembers(any(DirectMessage.class), any(MultiExecutionCallback.class));
+        window.publish(first);
+        assertTrue(window.awaitResponses().isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,81 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.response;
+
+import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
+import com.hazelcast.core.Member;
+import org.junit.Before;
+import org.junit.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MemberLatenciesTest {
+    private final DistributorConfig config = mock(DistributorConfig.class);
+    private final Member first = mock(Member.class);
+    private final Member second = mock(Member.class);
+    private final Member slow = mock(Member.class);
+    private final MemberLatencies latencies = new MemberLatencies(config);
+
+    @Before
+    public void setup() {
+        when(config.laggingFactor()).thenReturn(2.0);
+        when(config.laggingThresholdMillis()).thenReturn(10L);
+        latencies.record(first, MILLISECONDS.toNanos(20));
+        latencies.record(second, MILLISECONDS.toNanos(30));
+        latencies.record(slow, MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void lagging() {
+        assertTrue(latencies.isLagging(slow));
+        assertFalse(latencies.isLagging(first));
+        assertFalse(latencies.isLagging(second));
+    }
+
+    @Test
+    public void disabled() {
+        when(config.laggingFactor()).thenReturn(0.0);
+        assertFalse(latencies.isLagging(slow));
+    }
+
+    @Test
+    public void belowThreshold() {
+        when(config.laggingThresholdMillis()).thenReturn(200L);
+        assertFalse(latencies.isLagging(slow));
+    }
+
+    @Test
+    public void unknownMember() {
+        assertFalse(latencies.isLagging(mock(Member.class)));
+    }
+
+    @Test
+    public void catchUp() {
+        // Every fast response moves the average towards the latest latency
+        for (int i = 0; i < 20; i++) {
+            latencies.record(slow, MILLISECONDS.toNanos(20));
+        }
+        assertFalse(latencies.isLagging(slow));
+    }
+
+    @Test
+    public void remove() {
+        latencies.remove(slow);
+        assertFalse(latencies.isLagging(slow));
+    }
+}
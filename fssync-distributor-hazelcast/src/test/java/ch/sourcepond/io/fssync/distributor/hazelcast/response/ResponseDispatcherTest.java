@@ -0,0 +1,218 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.distributor.hazelcast.response;
+
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.hazelcast.common.StatusMessage;
+import ch.sourcepond.io.fssync.distributor.hazelcast.config.DistributorConfig;
+import com.hazelcast.core.Cluster;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.MemberAttributeEvent;
+import com.hazelcast.core.MembershipEvent;
+import com.hazelcast.core.Message;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeoutException;
+
+import static java.lang.Thread.sleep;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class ResponseDispatcherTest {
+    private static final String EXPECTED_REQUEST_ID = "someRequestId";
+    private final HazelcastInstance hci = mock(HazelcastInstance.class);
+    private final Cluster cluster = mock(Cluster.class);
+    private final Member firstMember = mock(Member.class);
+    private final Member secondMember = mock(Member.class);
+    private final Set<Member> members = new HashSet<>(asList(firstMember, secondMember));
+    private final MembershipEvent event = mock(MembershipEvent.class);
+    private final SyncPath path = mock(SyncPath.class);
+    private final DistributorConfig config = mock(DistributorConfig.class);
+    private final ScheduledExecutorService timeoutExecutor = newSingleThreadScheduledExecutor();
+    private final MemberLatencies latencies = new MemberLatencies(config);
+    private final ResponseDispatcher dispatcher = new ResponseDispatcher(hci, config, timeoutExecutor, latencies);
+
+    @Before
+    public void setup() {
+        when(hci.getCluster()).thenReturn(cluster);
+        when(cluster.getMembers()).thenReturn(members);
+        when(config.responseTimeout()).thenReturn(500L);
+        when(config.responseTimeoutUnit()).thenReturn(MILLISECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.close();
+    }
+
+    private void answer(final String pRequestId, final Member pMember, final IOException pFailureOrNull) {
+        final Message<StatusMessage> message = mock(Message.class);
+        when(message.getPublishingMember()).thenReturn(pMember);
+        when(message.getMessageObject()).thenReturn(new StatusMessage(pRequestId, path, pFailureOrNull));
+        dispatcher.onMessage(message);
+    }
+
+    @Test
+    public void completeWhenAllMembersAnswered() {
+        final ResponseFuture future = dispatcher.register(EXPECTED_REQUEST_ID);
+        answer(EXPECTED_REQUEST_ID, firstMember, null);
+        assertFalse(future.isDone());
+        answer(EXPECTED_REQUEST_ID, secondMember, null);
+        assertTrue(future.isDone());
+        assertFalse(future.isCompletedExceptionally());
+    }
+
+    @Test
+    public void duplicateAnswerIgnored() {
+        final ResponseFuture future = dispatcher.register(EXPECTED_REQUEST_ID);
+        answer(EXPECTED_REQUEST_ID, firstMember, null);
+        answer(EXPECTED_REQUEST_ID, firstMember, new IOException());
+        answer(EXPECTED_REQUEST_ID, secondMember, null);
+        assertFalse(future.isCompletedExceptionally());
+    }
+
+    @Test
+    public void completeExceptionally() throws Exception {
+        final ResponseFuture future = dispatcher.register(EXPECTED_REQUEST_ID);
+        answer(EXPECTED_REQUEST_ID, firstMember, new IOException("someFailure"));
+        answer(EXPECTED_REQUEST_ID, secondMember, null);
+        try {
+            future.get();
+            fail("Exception expected");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof ResponseException);
+            assertTrue(e.getCause().getMessage().contains("someFailure"));
+        }
+    }
+
+    @Test
+    public void memberRemoved() {
+        final ResponseFuture future = dispatcher.register(EXPECTED_REQUEST_ID);
+        answer(EXPECTED_REQUEST_ID, firstMember, null);
+        when(event.getMember()).thenReturn(secondMember);
+        dispatcher.memberRemoved(event);
+        assertTrue(future.isDone());
+    }
+
+    @Test
+    public void unregister() {
+        final ResponseFuture future = dispatcher.register(EXPECTED_REQUEST_ID);
+        dispatcher.unregister(EXPECTED_REQUEST_ID);
+        answer(EXPECTED_REQUEST_ID, firstMember, null);
+        answer(EXPECTED_REQUEST_ID, secondMember, null);
+        assertFalse(future.isDone());
+    }
+
+    @Test
+    public void ignoreUnknownRequestId() {
+        final ResponseFuture future = dispatcher.register(EXPECTED_REQUEST_ID);
+        answer("unknownRequestId", firstMember, null);
+        answer("unknownRequestId", secondMember, null);
+        assertFalse(future.isDone());
+    }
+
+    @Test(timeout = 2000)
+    public void timedOut() throws Exception {
+        final ResponseFuture future = dispatcher.register(EXPECTED_REQUEST_ID);
+        try {
+            future.get();
+            fail("Exception expected");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test(timeout = 2000)
+    public void timedOutMemberIsLagging() throws Exception {
+        when(config.laggingFactor()).thenReturn(2.0);
+        final ResponseFuture future = dispatcher.register(EXPECTED_REQUEST_ID);
+        answer(EXPECTED_REQUEST_ID, firstMember, null);
+        try {
+            future.get();
+            fail("Exception expected");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause().getMessage().contains(secondMember.toString()));
+        }
+        assertTrue(latencies.isLagging(secondMember));
+        assertFalse(latencies.isLagging(firstMember));
+    }
+
+    @Test(timeout = 5000)
+    public void laggingMemberGetsExtendedTimeout() throws Exception {
+        when(config.laggingFactor()).thenReturn(4.0);
+        latencies.record(firstMember, MILLISECONDS.toNanos(1));
+        latencies.record(secondMember, MILLISECONDS.toNanos(100));
+        final ResponseFuture future = dispatcher.register(EXPECTED_REQUEST_ID);
+        answer(EXPECTED_REQUEST_ID, firstMember, null);
+
+        // The regular timeout has elapsed, but the lagging member has 2000 ms to answer
+        sleep(800);
+        assertFalse(future.isDone());
+        answer(EXPECTED_REQUEST_ID, secondMember, null);
+        future.get();
+    }
+
+    @Test(timeout = 5000)
+    public void laggingMemberTimedOut() throws Exception {
+        when(config.laggingFactor()).thenReturn(2.0);
+        latencies.record(firstMember, MILLISECONDS.toNanos(1));
+        latencies.record(secondMember, MILLISECONDS.toNanos(100));
+        final ResponseFuture future = dispatcher.register(EXPECTED_REQUEST_ID);
+        answer(EXPECTED_REQUEST_ID, firstMember, null);
+        try {
+            future.get();
+            fail("Exception expected");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+            assertTrue(e.getCause().getMessage().contains("1000 MILLISECONDS"));
+            assertTrue(e.getCause().getMessage().contains(secondMember.toString()));
+        }
+    }
+
+    @Test
+    public void close() throws Exception {
+        final ResponseFuture future = dispatcher.register(EXPECTED_REQUEST_ID);
+        dispatcher.close();
+        assertTrue(future.isCompletedExceptionally());
+        assertTrue(timeoutExecutor.isShutdown());
+    }
+
+    @Test
+    public void memberAdded() {
+        dispatcher.memberAdded(event);
+        verifyZeroInteractions(event);
+    }
+
+    @Test
+    public void memberAttributeChanged() {
+        final MemberAttributeEvent event = mock(MemberAttributeEvent.class);
+        dispatcher.memberAttributeChanged(event);
+        verifyZeroInteractions(event);
+    }
+}
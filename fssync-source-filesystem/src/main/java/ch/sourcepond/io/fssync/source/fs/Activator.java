@@ -26,6 +26,7 @@ import org.osgi.service.cm.ConfigurationException;
 import org.osgi.service.cm.ManagedServiceFactory;
 import org.slf4j.Logger;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.FileSystem;
 import java.nio.file.Path;
@@ -54,6 +55,7 @@ public class Activator implements ManagedServiceFactory, BundleActivator {
     private final Map<String, Config> configs = new HashMap<>();
     private final Map<String, WatchServiceInstaller> installers = new HashMap<>();
     private volatile Distributor distributor;
+    private volatile Path dataArea;
     private ResourceProducerFactory resourceProducerFactory;
 
     public Activator() {
@@ -82,6 +84,8 @@ public class Activator implements ManagedServiceFactory, BundleActivator {
     @Override
     public void start(final BundleContext bundleContext) {
         distributor = compoundServiceFactory.create(bundleContext, distributionExecutor, Distributor.class);
+        final File data = bundleContext.getDataFile("");
+        dataArea = data == null ? null : data.toPath();
         registrar.registerListener(bundleContext, this::setResourceProducerFactory, this::unsetResourceProducerFactory, ResourceProducerFactory.class);
         final Dictionary<String, Object> props = new Hashtable<>();
         props.put(SERVICE_PID, FACTORY_PID);
@@ -109,7 +113,7 @@ public class Activator implements ManagedServiceFactory, BundleActivator {
             configs.entrySet().forEach(entry -> {
                 if (!installers.containsKey(entry.getKey())) {
                     try {
-                        installers.put(entry.getKey(), startInstaller(entry.getValue()));
+                        installers.put(entry.getKey(), startInstaller(entry.getKey(), entry.getValue()));
                     } catch (final IOException | ConfigurationException e) {
                         LOG.error(e.getMessage(), e);
                     }
@@ -118,15 +122,17 @@ public class Activator implements ManagedServiceFactory, BundleActivator {
         }
     }
 
-    private WatchServiceInstaller startInstaller(final Config pConfig) throws IOException, ConfigurationException {
+    private WatchServiceInstaller startInstaller(final String pPid, final Config pConfig) throws IOException, ConfigurationException {
         final Path watchedDirectory = fs.getPath(pConfig.watchedDirectory());
 
         if (!isDirectory(watchedDirectory)) {
             throw new ConfigurationException("watchedDirectory", format("%s is not a directory!", watchedDirectory));
         }
 
+        // Without a bundle data area (no file-system support by the framework) the checksum index is not persisted
+        final Path checksumIndexFile = dataArea == null ? null : dataArea.resolve(format("%s.checksums", pPid));
         final Injector injector = injectorFactory.create(pConfig, fs.newWatchService(), watchedDirectory,
-                distributor, resourceProducerFactory);
+                distributor, resourceProducerFactory, checksumIndexFile);
         final WatchServiceInstaller installer = injector.getInstance(WatchServiceInstaller.class);
         installer.start();
         return installer;
@@ -31,7 +31,8 @@ import static java.util.concurrent.TimeUnit.SECONDS;
         factoryPid = {FACTORY_PID})
 public @interface Config {
 
-    @AttributeDefinition(description = "You can specify how many threads shall be used when checksum are calculated.",
+    @AttributeDefinition(description = "You can specify how many threads shall be used when checksum are calculated " +
+            "and when the watched directory is scanned initially.",
             min = "1")
     int checksumConcurrency() default 3;
 
@@ -47,8 +48,71 @@ public @interface Config {
     @AttributeDefinition
     String watchedDirectory();
 
+    @AttributeDefinition(min = "0", description = "Events of a path are collapsed into one final action which is " +
+            "performed when no further event has been received for this time. Set to 0 to process every event " +
+            "immediately.")
+    long eventQuietPeriod() default 200;
+
+    @AttributeDefinition(min = "0", description = "Maximum time an event is delayed when further events for the " +
+            "same path are received continuously.")
+    long eventMaxDelay() default 2000;
+
+    @AttributeDefinition
+    TimeUnit eventDelayUnit() default MILLISECONDS;
+
+    @AttributeDefinition(description = "A modified file is only read when its size or modification time has " +
+            "changed. Enable this to read the file on every modification event.")
+    boolean alwaysDigest() default false;
+
+    @AttributeDefinition(description = "Replicate a file as soon as its size or modification time has changed, " +
+            "and compute its checksum while it is transferred. This reads a modified file only once, but a file " +
+            "which has been rewritten with the same content is transferred again. Ignored when alwaysDigest is set.")
+    boolean digestOnTransfer() default false;
+
+    @AttributeDefinition(description = "Ask the targets to copy the content of another file they already store " +
+            "instead of transferring a modified file, when the cluster knows a file with the same checksum. " +
+            "Only applies to files whose checksum is known before the transfer and which are not batched.")
+    boolean deduplicate() default false;
+
+    @AttributeDefinition(min = "1", description = "Minimum size in bytes of the buffer used to read a file. " +
+            "This is the smallest chunk which is sent to the distributor.")
+    int minReadBufferSize() default 1024;
+
+    @AttributeDefinition(min = "1", description = "Maximum size in bytes of the buffer used to read a file. Files " +
+            "which are not bigger than this are sent as a single chunk.")
+    int maxReadBufferSize() default 262144;
+
+    @AttributeDefinition(min = "0", description = "When the distributor needs longer than this to accept a chunk, " +
+            "the read buffer of the file is halved. Otherwise, it is doubled up to its maximum size.")
+    long targetTransferLatency() default 250;
+
+    @AttributeDefinition
+    TimeUnit targetTransferLatencyUnit() default MILLISECONDS;
+
+    @AttributeDefinition(min = "0", description = "Block-size in bytes used to find unchanged data when an existing " +
+            "file has been modified. Only changed blocks are transferred to the targets. Set to 0 to always " +
+            "transfer the whole file.")
+    int deltaBlockSize() default 8192;
+
+    @AttributeDefinition(min = "0", description = "Average size in bytes of the content-defined chunks a modified " +
+            "file is split into. Chunks which are already stored on the targets, for instance because they occur in " +
+            "a previous version or in another file, are not transferred again. Replaces the block-based delta " +
+            "transfer when set; requires a chunk store on the targets. Set to 0 to disable.")
+    int chunkAverageSize() default 0;
+
+    @AttributeDefinition(min = "0", description = "Modified files which are not bigger than this (in bytes) are " +
+            "collected and replicated together with a single request. Set to 0 to replicate every file on its own.")
+    int batchFileSize() default 65536;
+
+    @AttributeDefinition(min = "1", description = "A batch of small files is replicated as soon as the sum of " +
+            "their sizes (in bytes) reaches this value.")
+    long batchMaxSize() default 1048576;
+
+    @AttributeDefinition(min = "0", description = "Maximum time to collect small files before the batch is replicated.")
+    long batchDelay() default 100;
+
     @AttributeDefinition
-    int readBufferSize() default 1024;
+    TimeUnit batchDelayUnit() default MILLISECONDS;
 
     @AttributeDefinition(min = "1")
     int triggerConcurrency() default 3;
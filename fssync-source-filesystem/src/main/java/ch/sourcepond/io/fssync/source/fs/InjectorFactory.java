@@ -15,6 +15,7 @@ package ch.sourcepond.io.fssync.source.fs;
 
 import ch.sourcepond.io.checksum.api.ResourceProducerFactory;
 import ch.sourcepond.io.fssync.distributor.api.Distributor;
+import ch.sourcepond.io.fssync.source.fs.fswatch.ChecksumIndex;
 import com.google.inject.Injector;
 
 import java.nio.file.Path;
@@ -29,9 +30,11 @@ class InjectorFactory {
                            final WatchService pWatchService,
                            final Path pWatchedDirectory,
                            final Distributor pDistributor,
-                           final ResourceProducerFactory pResourceProducerFactory) {
+                           final ResourceProducerFactory pResourceProducerFactory,
+                           final Path pChecksumIndexFile) {
         return createInjector(new SourceFsModule(pDistributor,
                 pResourceProducerFactory.create(pConfig.checksumConcurrency()),
-                pWatchService, pWatchedDirectory, newScheduledThreadPool(pConfig.triggerConcurrency()), pConfig));
+                pWatchService, pWatchedDirectory, newScheduledThreadPool(pConfig.triggerConcurrency()), pConfig,
+                new ChecksumIndex(pChecksumIndexFile)));
     }
 }
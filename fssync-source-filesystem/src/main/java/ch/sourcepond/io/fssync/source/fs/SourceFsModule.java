@@ -15,6 +15,7 @@ package ch.sourcepond.io.fssync.source.fs;
 
 import ch.sourcepond.io.checksum.api.ResourceProducer;
 import ch.sourcepond.io.fssync.distributor.api.Distributor;
+import ch.sourcepond.io.fssync.source.fs.fswatch.ChecksumIndex;
 import ch.sourcepond.io.fssync.source.fs.fswatch.FswatchModule;
 import ch.sourcepond.io.fssync.source.fs.trigger.TriggerModule;
 import com.google.inject.AbstractModule;
@@ -31,19 +32,22 @@ public class SourceFsModule extends AbstractModule {
     private final Path watchedPath;
     private final ScheduledExecutorService watchServiceExecutor;
     private final Config config;
+    private final ChecksumIndex checksumIndex;
 
     public SourceFsModule(final Distributor pDistributor,
                           final ResourceProducer pResourceProducer,
                           final WatchService pWatchService,
                           final Path pWatchedDirectory,
                           final ScheduledExecutorService pWatchServiceExecutor,
-                          final Config pConfig) {
+                          final Config pConfig,
+                          final ChecksumIndex pChecksumIndex) {
         distributor = pDistributor;
         resourceProducer = pResourceProducer;
         watchService = pWatchService;
         watchedPath = pWatchedDirectory;
         watchServiceExecutor = pWatchServiceExecutor;
         config = pConfig;
+        checksumIndex = pChecksumIndex;
     }
 
     @Override
@@ -55,6 +59,7 @@ public class SourceFsModule extends AbstractModule {
         bind(FileSystem.class).toInstance(watchedPath.getFileSystem());
         bind(ScheduledExecutorService.class).toInstance(watchServiceExecutor);
         bind(Config.class).toInstance(config);
+        bind(ChecksumIndex.class).toInstance(checksumIndex);
         install(new FswatchModule());
         install(new TriggerModule());
     }
@@ -0,0 +1,166 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.source.fs.fswatch;
+
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.newInputStream;
+import static java.nio.file.Files.newOutputStream;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Persistent index which maps the path of a regular file to its size, modification time, file-key and checksum. The
+ * index is loaded on startup and stored on shutdown; a file whose metadata has not changed since it has been stored is
+ * recognized without reading its content. Restored entries are only used once, i.e. when a file is seen the first
+ * time after a restart. This class is thread-safe.
+ */
+public class ChecksumIndex implements Closeable {
+    private static final Logger LOG = getLogger(ChecksumIndex.class);
+    private static final int MAGIC = 0x46534349;
+    private static final int VERSION = 1;
+    private final Map<String, Entry> restored = new ConcurrentHashMap<>();
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+    private final Path indexFile;
+
+    private static final class Entry {
+        private final long size;
+        private final long modified;
+        private final String fileKey;
+        private final byte[] checksum;
+
+        Entry(final long pSize, final long pModified, final String pFileKey, final byte[] pChecksum) {
+            size = pSize;
+            modified = pModified;
+            fileKey = pFileKey;
+            checksum = pChecksum;
+        }
+
+        Entry(final BasicFileAttributes pAttributes, final byte[] pChecksum) {
+            this(pAttributes.size(), pAttributes.lastModifiedTime().to(NANOSECONDS),
+                    Objects.toString(pAttributes.fileKey(), ""), pChecksum);
+        }
+
+        boolean matches(final BasicFileAttributes pAttributes) {
+            return size == pAttributes.size() && modified == pAttributes.lastModifiedTime().to(NANOSECONDS) &&
+                    fileKey.equals(Objects.toString(pAttributes.fileKey(), ""));
+        }
+    }
+
+    /**
+     * @param pIndexFile File where the index is persisted, or {@code null} if the index shall not be persisted.
+     */
+    public ChecksumIndex(final Path pIndexFile) {
+        indexFile = pIndexFile;
+    }
+
+    public void load() throws IOException {
+        if (indexFile == null) {
+            return;
+        }
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOG.warn("{} is not a checksum index or has an unsupported version, ignoring it", indexFile);
+                return;
+            }
+            for (int count = in.readInt(); count > 0; count--) {
+                final String path = in.readUTF();
+                final long size = in.readLong();
+                final long modified = in.readLong();
+                final String fileKey = in.readUTF();
+                final byte[] checksum = new byte[in.readUnsignedShort()];
+                in.readFully(checksum);
+                restored.put(path, new Entry(size, modified, fileKey, checksum));
+            }
+        } catch (final NoSuchFileException e) {
+            LOG.debug("No checksum index found at {}", indexFile);
+        } catch (final EOFException e) {
+            LOG.warn("{} is truncated, ignoring it", indexFile);
+            restored.clear();
+        }
+    }
+
+    /**
+     * Returns the restored checksum of the file specified if its metadata has not been changed since the index has
+     * been stored, otherwise {@code null}.
+     */
+    byte[] lookup(final Path pFile, final BasicFileAttributes pAttributes) {
+        final String path = pFile.toString();
+        final Entry entry = restored.remove(path);
+        if (entry != null && entry.matches(pAttributes)) {
+            current.putIfAbsent(path, entry);
+            return entry.checksum;
+        }
+        return null;
+    }
+
+    void put(final Path pFile, final BasicFileAttributes pAttributes, final byte[] pChecksum) {
+        current.put(pFile.toString(), new Entry(pAttributes, pChecksum));
+    }
+
+    void remove(final Path pFile) {
+        final String path = pFile.toString();
+        restored.remove(path);
+        current.remove(path);
+    }
+
+    /**
+     * Stores the index. Restored entries which have not been used are not stored again.
+     */
+    @Override
+    public void close() throws IOException {
+        if (indexFile == null) {
+            return;
+        }
+        final Path parent = indexFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            createDirectories(parent);
+        }
+        final Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        final Map<String, Entry> snapshot = new ConcurrentHashMap<>(current);
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(snapshot.size());
+            for (final Map.Entry<String, Entry> mapping : snapshot.entrySet()) {
+                final Entry entry = mapping.getValue();
+                out.writeUTF(mapping.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.modified);
+                out.writeUTF(entry.fileKey);
+                out.writeShort(entry.checksum.length);
+                out.write(entry.checksum);
+            }
+        }
+        move(tmp, indexFile, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+}
@@ -5,24 +5,20 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import static ch.sourcepond.io.checksum.api.Algorithm.SHA256;
 import static java.security.MessageDigest.getInstance;
 
+/**
+ * Channel which calculates the SHA-256 checksum of the data read from the underlying channel. Every reader of a file
+ * gets its own instance, so a file can be read by several readers at the same time.
+ */
 public class DigestingChannel implements ReadableByteChannel {
-    private final Lock lock;
     private final MessageDigest digest;
-    private ReadableByteChannel channel;
+    private final ReadableByteChannel channel;
 
-    DigestingChannel() {
-        this(new ReentrantLock());
-    }
-
-    // Constructor for testing
-    DigestingChannel(final Lock pLock) {
-        lock = pLock;
+    DigestingChannel(final ReadableByteChannel pChannel) {
+        channel = pChannel;
         try {
             digest = getInstance(SHA256.toString());
         } catch (final NoSuchAlgorithmException e) {
@@ -31,19 +27,9 @@ public class DigestingChannel implements ReadableByteChannel {
         }
     }
 
-    DigestingChannel lock(final ReadableByteChannel pChannel) {
-        lock.lock();
-        channel = pChannel;
-        return this;
-    }
-
     @Override
     public void close() throws IOException {
-        try {
-            channel.close();
-        } finally {
-            lock.unlock();
-        }
+        channel.close();
     }
 
     public byte[] digest() {
@@ -13,9 +13,11 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.source.fs.fswatch;
 
+import java.nio.channels.ReadableByteChannel;
+
 class DigestingChannelFactory {
 
-    DigestingChannel create() {
-        return new DigestingChannel();
+    DigestingChannel create(final ReadableByteChannel pChannel) {
+        return new DigestingChannel(pChannel);
     }
 }
@@ -0,0 +1,71 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.source.fs.fswatch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import static java.nio.file.Files.newDirectoryStream;
+import static java.nio.file.Files.readAttributes;
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+
+/**
+ * Registers a directory and visits the regular files it contains. Sub-directories are scanned by forked tasks, so the
+ * initial scan of a large tree is spread over all threads of the fork-join pool the task is invoked on. I/O failures
+ * are thrown as {@link UncheckedIOException}.
+ */
+class DirectoryScan extends RecursiveAction {
+    private final WatchEventDistributor distributor;
+    private final Path directory;
+    private final BasicFileAttributes attributes;
+
+    DirectoryScan(final WatchEventDistributor pDistributor,
+                  final Path pDirectory,
+                  final BasicFileAttributes pAttributes) {
+        distributor = pDistributor;
+        directory = pDirectory;
+        attributes = pAttributes;
+    }
+
+    private void scan() throws IOException {
+        distributor.preVisitDirectory(directory, attributes);
+        final List<DirectoryScan> subDirectories = new ArrayList<>();
+        try (final DirectoryStream<Path> entries = newDirectoryStream(directory)) {
+            for (final Path entry : entries) {
+                final BasicFileAttributes attrs = readAttributes(entry, BasicFileAttributes.class, NOFOLLOW_LINKS);
+                if (attrs.isDirectory()) {
+                    subDirectories.add(new DirectoryScan(distributor, entry, attrs));
+                } else if (attrs.isRegularFile()) {
+                    distributor.visitFile(entry, attrs);
+                }
+            }
+        }
+        invokeAll(subDirectories);
+    }
+
+    @Override
+    protected void compute() {
+        try {
+            scan();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
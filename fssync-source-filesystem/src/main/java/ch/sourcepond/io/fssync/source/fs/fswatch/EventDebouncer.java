@@ -0,0 +1,158 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.source.fs.fswatch;
+
+import ch.sourcepond.io.fssync.source.fs.Config;
+import org.slf4j.Logger;
+
+import javax.inject.Inject;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.lang.Math.min;
+import static java.lang.System.nanoTime;
+import static java.nio.file.Files.isDirectory;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Collapses the watch events of a path into one final action. The action is passed to the
+ * {@link WatchEventDistributor} as soon as no further event for the path has been received during the configured
+ * quiet period, but not later than the configured maximum delay after the first event. The creation of a directory is
+ * never delayed, because files created in the new directory would be missed until the directory is registered.
+ */
+class EventDebouncer implements Closeable {
+    private static final Logger LOG = getLogger(EventDebouncer.class);
+    private final Map<Path, PendingEvent> pending = new HashMap<>();
+    private final WatchEventDistributor distributor;
+    private final ScheduledExecutorService executor;
+    private final Config config;
+
+    private static class PendingEvent {
+        private final long first;
+        private WatchEvent.Kind<?> kind;
+        private long last;
+
+        PendingEvent(final WatchEvent.Kind<?> pKind, final long pNow) {
+            kind = pKind;
+            first = pNow;
+            last = pNow;
+        }
+
+        void merge(final WatchEvent.Kind<?> pKind, final long pNow) {
+            // A file which has been created must still be created when it has been modified afterwards
+            if (ENTRY_CREATE != kind || ENTRY_MODIFY != pKind) {
+                kind = pKind;
+            }
+            last = pNow;
+        }
+    }
+
+    @Inject
+    EventDebouncer(final WatchEventDistributor pDistributor,
+                   final ScheduledExecutorService pExecutor,
+                   final Config pConfig) {
+        distributor = pDistributor;
+        executor = pExecutor;
+        config = pConfig;
+    }
+
+    @Override
+    public void close() {
+        synchronized (pending) {
+            pending.clear();
+        }
+    }
+
+    private void dispatch(final WatchEvent.Kind<?> pKind, final Path pPath) {
+        try {
+            if (ENTRY_DELETE == pKind) {
+                distributor.delete(pPath);
+            } else if (ENTRY_CREATE == pKind) {
+                distributor.create(pPath);
+            } else { // ENTRY_MODIFY
+                distributor.modify(pPath);
+            }
+        } catch (final IOException e) {
+            LOG.error(e.getMessage(), e);
+        }
+    }
+
+    private void schedule(final Path pPath, final long pDelayNanos) {
+        executor.schedule(() -> fire(pPath), pDelayNanos, NANOSECONDS);
+    }
+
+    private void fire(final Path pPath) {
+        final WatchEvent.Kind<?> kind;
+        synchronized (pending) {
+            final PendingEvent event = pending.get(pPath);
+            if (event == null) {
+                // Debouncer has been closed in the meantime
+                return;
+            }
+            final long now = nanoTime();
+            final long deadline = min(event.last + quietPeriod(), event.first + maxDelay());
+            if (now - deadline < 0) {
+                schedule(pPath, deadline - now);
+                return;
+            }
+            pending.remove(pPath);
+            kind = event.kind;
+        }
+        dispatch(kind, pPath);
+    }
+
+    private long quietPeriod() {
+        return config.eventDelayUnit().toNanos(config.eventQuietPeriod());
+    }
+
+    private long maxDelay() {
+        return config.eventDelayUnit().toNanos(config.eventMaxDelay());
+    }
+
+    public void event(final WatchEvent.Kind<?> pKind, final Path pPath) {
+        final long quietPeriod = quietPeriod();
+        if (quietPeriod == 0 || (ENTRY_CREATE == pKind && isDirectory(pPath))) {
+            final PendingEvent event;
+            synchronized (pending) {
+                event = pending.remove(pPath);
+            }
+            // A pending deletion must be performed before the path is created again
+            if (event != null && ENTRY_DELETE == event.kind) {
+                dispatch(ENTRY_DELETE, pPath);
+            }
+            dispatch(pKind, pPath);
+            return;
+        }
+
+        final long now = nanoTime();
+        synchronized (pending) {
+            final PendingEvent event = pending.get(pPath);
+            if (event == null) {
+                pending.put(pPath, new PendingEvent(pKind, now));
+                schedule(pPath, quietPeriod);
+            } else {
+                event.merge(pKind, now);
+            }
+        }
+    }
+}
@@ -15,11 +15,14 @@ package ch.sourcepond.io.fssync.source.fs.fswatch;
 
 import com.google.inject.AbstractModule;
 
+import javax.inject.Singleton;
+
 public class FswatchModule extends AbstractModule {
 
     @Override
     protected void configure() {
         bind(WatchServiceInstaller.class);
-        bind(WatchEventDistributor.class);
+        bind(WatchEventDistributor.class).in(Singleton.class);
+        bind(EventDebouncer.class).in(Singleton.class);
     }
 }
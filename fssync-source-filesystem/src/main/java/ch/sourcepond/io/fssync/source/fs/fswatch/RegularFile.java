@@ -18,35 +18,92 @@ import ch.sourcepond.io.checksum.api.UpdateObserver;
 import ch.sourcepond.io.fssync.common.api.SyncPath;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.nio.channels.FileChannel.open;
 import static java.nio.file.StandardOpenOption.READ;
 
 public class RegularFile {
-    private final DigestingChannel channel;
+    private static final int IDLE = 0;
+    private static final int REPLICATING = 1;
+    private static final int DIRTY = 2;
+    private final DigestingChannelFactory digestingChannelFactory;
     private final Resource resource;
     private final SyncPath syncPath;
     private final Path absolutePath;
 
-    RegularFile(final DigestingChannel pChannel,
+    // Metadata of the file when it has been seen last time, guarded by this
+    private long lastSize = -1;
+    private FileTime lastModified;
+
+    // Replication state, see startReplication and finishReplication
+    private final AtomicInteger replication = new AtomicInteger(IDLE);
+
+    RegularFile(final DigestingChannelFactory pDigestingChannelFactory,
                 final Resource pResource,
                 final SyncPath pSyncPath,
                 final Path pAbsolutePath) {
-        channel = pChannel;
+        digestingChannelFactory = pDigestingChannelFactory;
         resource = pResource;
         syncPath = pSyncPath;
         absolutePath = pAbsolutePath;
     }
 
     public DigestingChannel startDigest() throws IOException {
-        return channel.lock(open(absolutePath, READ));
+        return digestingChannelFactory.create(open(absolutePath, READ));
+    }
+
+    public long size() throws IOException {
+        return Files.size(absolutePath);
+    }
+
+    /**
+     * Marks this file as being replicated. Returns {@code false} if a replication is already running; in this case
+     * the file is marked as modified during the replication, see {@link #finishReplication()}.
+     */
+    public boolean startReplication() {
+        while (true) {
+            final int state = replication.get();
+            if (state == IDLE) {
+                if (replication.compareAndSet(IDLE, REPLICATING)) {
+                    return true;
+                }
+            } else if (state == DIRTY || replication.compareAndSet(REPLICATING, DIRTY)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Marks the running replication of this file as finished. Returns {@code true} if the file has been modified in
+     * the meantime; in this case the file stays marked as being replicated and the caller must replicate it once more.
+     */
+    public boolean finishReplication() {
+        return !replication.compareAndSet(REPLICATING, IDLE) && replication.compareAndSet(DIRTY, REPLICATING);
     }
 
     public SyncPath getSyncPath() {
         return syncPath;
     }
 
+    /**
+     * Records the size and modification time of the file and returns whether they differ from the values recorded
+     * before.
+     */
+    synchronized boolean metadataChanged(final BasicFileAttributes pAttributes) {
+        final long size = pAttributes.size();
+        final FileTime modified = pAttributes.lastModifiedTime();
+        final boolean changed = size != lastSize || !Objects.equals(modified, lastModified);
+        lastSize = size;
+        lastModified = modified;
+        return changed;
+    }
+
     void update(final UpdateObserver pObserver) throws IOException {
         resource.update(pObserver);
     }
@@ -36,7 +36,7 @@ class RegularFileFactory {
     }
 
     public RegularFile create(final Path pSyncDir, final Path pAbsolutePath) {
-        return new RegularFile(digestingChannelFactory.create(),
+        return new RegularFile(digestingChannelFactory,
                 resourceProducer.create(SHA256, pAbsolutePath),
                 syncPathFactory.create(pSyncDir, pAbsolutePath),
                 pAbsolutePath);
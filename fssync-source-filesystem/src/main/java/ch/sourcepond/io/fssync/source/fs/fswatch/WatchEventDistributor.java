@@ -14,6 +14,7 @@ limitations under the License.*/
 package ch.sourcepond.io.fssync.source.fs.fswatch;
 
 import ch.sourcepond.io.checksum.api.Update;
+import ch.sourcepond.io.fssync.source.fs.Config;
 import ch.sourcepond.io.fssync.source.fs.trigger.ReplicationTrigger;
 import org.slf4j.Logger;
 
@@ -21,18 +22,24 @@ import javax.inject.Inject;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import static java.nio.file.FileVisitResult.CONTINUE;
 import static java.nio.file.Files.isDirectory;
-import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.newDirectoryStream;
+import static java.nio.file.Files.readAttributes;
+import static java.nio.file.Files.walkFileTree;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
@@ -44,16 +51,22 @@ class WatchEventDistributor extends SimpleFileVisitor<Path> implements Closeable
     private final RegularFileFactory regularFileFactory;
     private final WatchService watchService;
     private final ReplicationTrigger trigger;
+    private final ChecksumIndex checksumIndex;
+    private final Config config;
     private final Path syncDir;
 
     @Inject
     WatchEventDistributor(final RegularFileFactory pRegularFileFactory,
                           final WatchService pWatchService,
                           final ReplicationTrigger pTrigger,
+                          final ChecksumIndex pChecksumIndex,
+                          final Config pConfig,
                           final Path pSyncDir) {
         regularFileFactory = pRegularFileFactory;
         watchService = pWatchService;
         trigger = pTrigger;
+        checksumIndex = pChecksumIndex;
+        config = pConfig;
         syncDir = pSyncDir;
     }
 
@@ -78,11 +91,25 @@ class WatchEventDistributor extends SimpleFileVisitor<Path> implements Closeable
 
     @Override
     public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
-        getRegularFile(file).update(update -> updateResource(update, file));
+        final RegularFile regularFile = getRegularFile(file);
+        if (attrs != null) {
+            regularFile.metadataChanged(attrs);
+
+            // Unchanged since the last run; the content does not need to be read
+            final byte[] checksum = checksumIndex.lookup(file, attrs);
+            if (checksum != null) {
+                trigger.modify(regularFile, checksum);
+                return CONTINUE;
+            }
+        }
+        regularFile.update(update -> updateResource(update, file, attrs));
         return CONTINUE;
     }
 
-    private void updateResource(final Update pUpdate, final Path pFile) {
+    private void updateResource(final Update pUpdate, final Path pFile, final BasicFileAttributes pAttributes) {
+        if (pAttributes != null) {
+            checksumIndex.put(pFile, pAttributes, pUpdate.getCurrent().toByteArray());
+        }
         if (pUpdate.hasChanged()) {
             final Object regularFile = tree.get(pFile);
             if (regularFile instanceof RegularFile) {
@@ -112,6 +139,7 @@ class WatchEventDistributor extends SimpleFileVisitor<Path> implements Closeable
     }
 
     public void delete(final Path pPath) {
+        checksumIndex.remove(pPath);
         final Object obj = tree.remove(pPath);
         if (obj instanceof WatchKey) {  // Was a directory
             ((WatchKey) obj).cancel();
@@ -131,8 +159,67 @@ class WatchEventDistributor extends SimpleFileVisitor<Path> implements Closeable
     }
 
     public void modify(final Path pPath) throws IOException {
-        if (isRegularFile(pPath)) {
-            getRegularFile(pPath).update(update -> updateResource(update, pPath));
+        final BasicFileAttributes attrs;
+        try {
+            attrs = readAttributes(pPath, BasicFileAttributes.class);
+        } catch (final NoSuchFileException e) {
+            return;
+        }
+        if (attrs.isRegularFile()) {
+            final RegularFile regularFile = getRegularFile(pPath);
+
+            // Skip spurious events (touch, permission changes) without reading the content
+            final boolean metadataChanged = regularFile.metadataChanged(attrs);
+            if (config.alwaysDigest() || (metadataChanged && !config.digestOnTransfer())) {
+                regularFile.update(update -> updateResource(update, pPath, attrs));
+            } else if (metadataChanged) {
+                // The checksum is computed while the file is transferred
+                trigger.modify(regularFile);
+            } else {
+                LOG.debug("Size and modification time of {} unchanged, skipping update", pPath);
+            }
+        }
+    }
+
+    /**
+     * Re-synchronizes the known state of the directory specified with the file-system after the watch-service has
+     * lost events. Files whose size or modification time has changed are updated, new sub-directories are walked and
+     * registered, and known entries which do not exist anymore are deleted.
+     */
+    public void rescan(final Path pDirectory) throws IOException {
+        final Set<Path> found = new HashSet<>();
+        try (final DirectoryStream<Path> entries = newDirectoryStream(pDirectory)) {
+            for (final Path entry : entries) {
+                final BasicFileAttributes attrs;
+                try {
+                    attrs = readAttributes(entry, BasicFileAttributes.class);
+                } catch (final NoSuchFileException e) {
+                    continue;
+                }
+                found.add(entry);
+                final Object known = tree.get(entry);
+                if (attrs.isDirectory()) {
+                    if (known instanceof RegularFile) {
+                        delete(entry);
+                    }
+                    if (!(known instanceof WatchKey)) {
+                        walkFileTree(entry, this);
+                    }
+                } else if (attrs.isRegularFile()) {
+                    if (known instanceof WatchKey) {
+                        delete(entry);
+                    }
+                    if (!(known instanceof RegularFile) || ((RegularFile) known).metadataChanged(attrs)) {
+                        visitFile(entry, attrs);
+                    }
+                }
+            }
+        }
+
+        for (final Path known : tree.keySet()) {
+            if (pDirectory.equals(known.getParent()) && !found.contains(known)) {
+                delete(known);
+            }
         }
     }
 }
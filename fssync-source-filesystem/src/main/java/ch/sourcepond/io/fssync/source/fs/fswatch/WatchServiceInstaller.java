@@ -13,22 +13,22 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.source.fs.fswatch;
 
+import ch.sourcepond.io.fssync.source.fs.Config;
 import org.slf4j.Logger;
 
 import javax.inject.Inject;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.util.concurrent.ForkJoinPool;
 
 import static java.lang.String.format;
 import static java.lang.Thread.currentThread;
-import static java.nio.file.Files.walkFileTree;
-import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
-import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
 import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -36,54 +36,75 @@ public class WatchServiceInstaller extends SimpleFileVisitor<Path> implements Ru
     private static final Logger LOG = getLogger(WatchServiceInstaller.class);
     private final Thread thread;
     private final WatchEventDistributor watchEventDistributor;
+    private final EventDebouncer eventDebouncer;
+    private final ChecksumIndex checksumIndex;
     private final WatchService watchService;
     private final Path watchedDirectory;
+    private final Config config;
 
     @Inject
     WatchServiceInstaller(final WatchEventDistributor pWatchEventDistributor,
+                          final EventDebouncer pEventDebouncer,
+                          final ChecksumIndex pChecksumIndex,
                           final WatchService pWatchService,
-                          final Path pWatchDirectory) {
+                          final Path pWatchDirectory,
+                          final Config pConfig) {
         watchEventDistributor = pWatchEventDistributor;
+        eventDebouncer = pEventDebouncer;
+        checksumIndex = pChecksumIndex;
         watchService = pWatchService;
         watchedDirectory = pWatchDirectory;
+        config = pConfig;
         thread = new Thread(this, format("%s: %s", getClass().getSimpleName(), pWatchDirectory));
     }
 
     @Override
     public void close() throws IOException {
         thread.interrupt();
+        eventDebouncer.close();
         watchEventDistributor.close();
-        watchService.close();
+        try {
+            checksumIndex.close();
+        } finally {
+            watchService.close();
+        }
     }
 
     public void start() {
         try {
-            walkFileTree(watchedDirectory, watchEventDistributor);
-            thread.start();
+            checksumIndex.load();
         } catch (final IOException e) {
+            LOG.warn("Checksum index could not be loaded, all files will be read", e);
+        }
+
+        // Events can be processed as soon as the first directories have been registered by the scan
+        thread.start();
+        final ForkJoinPool pool = new ForkJoinPool(config.checksumConcurrency());
+        try {
+            pool.invoke(new DirectoryScan(watchEventDistributor, watchedDirectory, null));
+        } catch (final UncheckedIOException e) {
+            thread.interrupt();
             // TODO: Use translated message
-            LOG.error("Watcher thread could not be started!", e);
+            LOG.error("Watcher thread could not be started!", e.getCause());
+        } finally {
+            pool.shutdown();
         }
     }
 
     private void processEvents(final WatchKey pWatchKey, final Path pDir) {
+        boolean overflow = false;
         for (final WatchEvent<?> event : pWatchKey.pollEvents()) {
-
-            // Ignore overflow
             if (OVERFLOW == event.kind()) {
-                continue;
+                overflow = true;
+            } else {
+                eventDebouncer.event(event.kind(), pDir.resolve((Path) event.context()));
             }
+        }
 
-            final Path path = pDir.resolve((Path) event.context());
-
+        // Events have been lost; compare the directory with the known state to catch up
+        if (overflow) {
             try {
-                if (ENTRY_DELETE == event.kind()) {
-                    watchEventDistributor.delete(path);
-                } else if (ENTRY_CREATE == event.kind()) {
-                    watchEventDistributor.create(path);
-                } else { // ENTRY_MODIFY
-                    watchEventDistributor.modify(path);
-                }
+                watchEventDistributor.rescan(pDir);
             } catch (final IOException e) {
                 LOG.error(e.getMessage(), e);
             }
@@ -0,0 +1,135 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.source.fs.trigger;
+
+import ch.sourcepond.io.fssync.common.api.Chunk;
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.api.Distributor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static ch.sourcepond.io.fssync.common.api.BlockSignature.newStrongDigest;
+import static java.lang.Integer.highestOneBit;
+import static java.lang.Integer.numberOfTrailingZeros;
+import static java.lang.Math.max;
+import static java.lang.System.arraycopy;
+import static java.nio.ByteBuffer.wrap;
+
+/**
+ * Splits the new content of a file into content-defined chunks (gear hash, see FastCDC) and only transfers chunks
+ * which are not stored on the targets yet. Because the chunk boundaries depend on the content only, data which has
+ * been inserted or removed does not affect the chunks after it, and identical data in different files results in
+ * identical chunks. Chunks are looked up in groups, so the targets are asked once per group instead of once per
+ * chunk. Instances of this class are not thread-safe.
+ */
+final class ChunkEncoder implements ContentEncoder {
+    private static final int[] GEAR = new int[256];
+    private final List<Chunk> pending = new ArrayList<>();
+    private final MessageDigest digest = newStrongDigest();
+    private final Distributor distributor;
+    private final SyncPath syncPath;
+    private final int minSize;
+    private final int maxSize;
+    private final int mask;
+    private final int groupSize;
+
+    // Contains the data of the pending chunks, followed by the current chunk
+    private final byte[] data;
+    private int chunkStart;
+    private int end;
+    private int hash;
+
+    static {
+        // The table must never change, otherwise the chunks of a file differ from the chunks stored on the targets
+        final Random random = new Random(0x6673796e63L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextInt();
+        }
+    }
+
+    ChunkEncoder(final Distributor pDistributor,
+                 final SyncPath pSyncPath,
+                 final int pAverageSize,
+                 final int pGroupSize) {
+        distributor = pDistributor;
+        syncPath = pSyncPath;
+        minSize = max(1, pAverageSize / 4);
+        maxSize = max(1, pAverageSize * 4);
+
+        // The high bits of the gear hash depend on the last 32 bytes, the low bits only on the last few bytes
+        final int bits = numberOfTrailingZeros(highestOneBit(max(1, pAverageSize)));
+        mask = bits == 0 ? 0 : -1 << (Integer.SIZE - bits);
+        groupSize = max(pGroupSize, maxSize);
+        data = new byte[groupSize + maxSize];
+    }
+
+    private void cut() throws IOException {
+        final int length = end - chunkStart;
+        digest.update(data, chunkStart, length);
+        pending.add(new Chunk(length, digest.digest()));
+        chunkStart = end;
+        hash = 0;
+    }
+
+    private void flush() throws IOException {
+        if (!pending.isEmpty()) {
+            final Collection<Chunk> known = new HashSet<>(distributor.getKnownChunks(syncPath, pending));
+            int offset = 0;
+            for (final Chunk chunk : pending) {
+                if (known.contains(chunk)) {
+                    distributor.copyChunk(syncPath, chunk);
+                } else {
+                    distributor.transferChunk(syncPath, chunk, wrap(data, offset, chunk.getLength()));
+                }
+                offset += chunk.getLength();
+            }
+            pending.clear();
+        }
+        arraycopy(data, chunkStart, data, 0, end - chunkStart);
+        end -= chunkStart;
+        chunkStart = 0;
+    }
+
+    @Override
+    public void encode(final ByteBuffer pBuffer) throws IOException {
+        while (pBuffer.hasRemaining()) {
+            final byte in = pBuffer.get();
+            data[end++] = in;
+            hash = (hash << 1) + GEAR[in & 0xff];
+
+            final int length = end - chunkStart;
+            if (length >= maxSize || (length >= minSize && (hash & mask) == 0)) {
+                cut();
+                if (chunkStart >= groupSize) {
+                    flush();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (end > chunkStart) {
+            cut();
+        }
+        flush();
+    }
+}
@@ -0,0 +1,28 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.source.fs.trigger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Distributes the new content of a file in a form which avoids transferring data the targets already have. The new
+ * content must be passed in order, and {@link #finish()} must be called after the last chunk.
+ */
+interface ContentEncoder {
+
+    void encode(ByteBuffer pBuffer) throws IOException;
+
+    void finish() throws IOException;
+}
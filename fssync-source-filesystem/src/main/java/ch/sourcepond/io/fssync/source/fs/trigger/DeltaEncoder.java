@@ -0,0 +1,136 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.source.fs.trigger;
+
+import ch.sourcepond.io.fssync.common.api.BlockSignature;
+import ch.sourcepond.io.fssync.common.api.RollingChecksum;
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.api.Distributor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static ch.sourcepond.io.fssync.common.api.BlockSignature.newStrongDigest;
+import static java.lang.System.arraycopy;
+import static java.nio.ByteBuffer.wrap;
+
+/**
+ * Searches the new content of a file for blocks which already exist on the targets (rsync algorithm). Found blocks
+ * are distributed as copy instructions, all other data is distributed as literal data. The new content must be
+ * passed in order, and {@link #finish()} must be called after the last chunk. Instances of this class are not
+ * thread-safe.
+ */
+final class DeltaEncoder implements ContentEncoder {
+    private final Map<Integer, List<BlockSignature>> blocks = new HashMap<>();
+    private final RollingChecksum weak = new RollingChecksum();
+    private final MessageDigest strong = newStrongDigest();
+    private final Distributor distributor;
+    private final SyncPath syncPath;
+    private final int blockSize;
+
+    // Contains the literal data which has not been transferred yet, followed by the current window
+    private final byte[] data;
+    private int windowStart;
+    private int end;
+
+    DeltaEncoder(final Distributor pDistributor,
+                 final SyncPath pSyncPath,
+                 final Collection<BlockSignature> pSignatures,
+                 final int pBlockSize,
+                 final int pLiteralSize) {
+        distributor = pDistributor;
+        syncPath = pSyncPath;
+        blockSize = pBlockSize;
+        data = new byte[pLiteralSize + pBlockSize];
+        for (final BlockSignature signature : pSignatures) {
+            blocks.computeIfAbsent(signature.getWeak(), k -> new ArrayList<>()).add(signature);
+        }
+    }
+
+    private BlockSignature findBlock() {
+        final List<BlockSignature> candidates = blocks.get(weak.getValue());
+        if (candidates != null) {
+            final int length = end - windowStart;
+            strong.update(data, windowStart, length);
+            final byte[] digest = strong.digest();
+            for (final BlockSignature candidate : candidates) {
+                if (candidate.getLength() == length && Arrays.equals(candidate.getStrong(), digest)) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void transferLiteral() throws IOException {
+        if (windowStart > 0) {
+            distributor.transfer(syncPath, wrap(data, 0, windowStart));
+            arraycopy(data, windowStart, data, 0, end - windowStart);
+            end -= windowStart;
+            windowStart = 0;
+        }
+    }
+
+    private void copy(final BlockSignature pBlock) throws IOException {
+        transferLiteral();
+        distributor.copy(syncPath, pBlock.getOffset(), pBlock.getLength());
+        end = 0;
+        weak.reset();
+    }
+
+    @Override
+    public void encode(final ByteBuffer pBuffer) throws IOException {
+        while (pBuffer.hasRemaining()) {
+            if (end == data.length) {
+                transferLiteral();
+            }
+
+            final byte in = pBuffer.get();
+            data[end++] = in;
+            if (end - windowStart > blockSize) {
+                weak.roll(data[windowStart++], in);
+            } else {
+                weak.update(in);
+            }
+
+            if (end - windowStart == blockSize) {
+                final BlockSignature block = findBlock();
+                if (block != null) {
+                    copy(block);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        // The last block of the current file is usually shorter than the block-size
+        if (end > windowStart && end - windowStart < blockSize) {
+            final BlockSignature block = findBlock();
+            if (block != null) {
+                copy(block);
+                return;
+            }
+        }
+        windowStart = end;
+        transferLiteral();
+    }
+}
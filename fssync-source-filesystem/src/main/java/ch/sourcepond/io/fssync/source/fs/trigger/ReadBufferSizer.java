@@ -0,0 +1,67 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.source.fs.trigger;
+
+import ch.sourcepond.io.fssync.source.fs.Config;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Chooses the size of the read buffer, and therefore the size of the chunks sent to the distributor, for a single
+ * file. A file which fits into the largest buffer allowed is read at once. For bigger files, the size is halved
+ * whenever transferring a chunk took longer than the configured latency target, and doubled again when it was
+ * faster. This keeps the number of messages low on a fast network without stalling a congested one. Instances of
+ * this class are not thread-safe.
+ */
+final class ReadBufferSizer {
+    private final int minSize;
+    private final int limit;
+    private final long targetLatencyNanos;
+    private int size;
+
+    ReadBufferSizer(final Config pConfig, final long pFileSize) {
+        minSize = pConfig.minReadBufferSize();
+        limit = (int) max(minSize, min(pConfig.maxReadBufferSize(), pFileSize));
+        targetLatencyNanos = pConfig.targetTransferLatencyUnit().toNanos(pConfig.targetTransferLatency());
+        size = limit;
+    }
+
+    /**
+     * Returns the largest size this sizer will ever return for the file, i.e. the file size bounded by the
+     * configured minimum and maximum.
+     *
+     * @return Upper bound of the buffer size
+     */
+    int getLimit() {
+        return limit;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * Adjusts the buffer size according to the time needed to transfer the last chunk.
+     *
+     * @param pNanos Time in nanoseconds the distributor needed to accept the last chunk.
+     */
+    void transferred(final long pNanos) {
+        if (pNanos > targetLatencyNanos) {
+            size = max(minSize, size / 2);
+        } else if (size < limit) {
+            size = (int) min(limit, 2L * size);
+        }
+    }
+}
@@ -13,6 +13,7 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.source.fs.trigger;
 
+import ch.sourcepond.io.fssync.common.api.BlockSignature;
 import ch.sourcepond.io.fssync.common.api.SyncPath;
 import ch.sourcepond.io.fssync.distributor.api.Distributor;
 import ch.sourcepond.io.fssync.source.fs.Config;
@@ -24,8 +25,10 @@ import javax.inject.Inject;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.concurrent.ScheduledExecutorService;
 
+import static java.lang.System.nanoTime;
 import static java.nio.ByteBuffer.allocate;
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -35,6 +38,7 @@ public class ReplicationTrigger {
     private final SyncTriggerFactory syncTriggerFactory;
     private final ScheduledExecutorService executor;
     private final Config config;
+    private final SmallFileBatcher batcher;
 
     @Inject
     public ReplicationTrigger(final Distributor pDistributor,
@@ -45,17 +49,59 @@ public class ReplicationTrigger {
         syncTriggerFactory = pSyncTriggerFactory;
         executor = pExecutor;
         config = pConfig;
+        batcher = new SmallFileBatcher(pDistributor, pExecutor, pConfig, f -> replicate(f, false, null));
     }
 
-    private void transfer(final RegularFile pPath) throws IOException {
+    private boolean duplicate(final SyncPath pSyncPath, final byte[] pChecksum) throws IOException {
+        try {
+            return distributor.duplicate(pSyncPath, pChecksum);
+        } catch (final IOException e) {
+            // Some target could not copy the content it was expected to have; the data is transferred instead
+            distributor.discard(pSyncPath, e);
+            LOG.warn(e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private ContentEncoder createEncoderOrNull(final SyncPath pSyncPath, final boolean pDelta, final int pLimit) throws IOException {
+        if (config.chunkAverageSize() > 0) {
+            return new ChunkEncoder(distributor, pSyncPath, config.chunkAverageSize(), pLimit);
+        }
+        final Collection<BlockSignature> signatures = pDelta ?
+                distributor.getSignatures(pSyncPath, config.deltaBlockSize()) : null;
+        return signatures == null || signatures.isEmpty() ? null :
+                new DeltaEncoder(distributor, pSyncPath, signatures, config.deltaBlockSize(), pLimit);
+    }
+
+    private void transfer(final RegularFile pPath, final boolean pDelta, final byte[] pChecksumOrNull) throws IOException {
         try (final DigestingChannel source = pPath.startDigest()) {
             final SyncPath syncPath = pPath.getSyncPath();
-            final ByteBuffer buffer = allocate(config.readBufferSize());
+            if (pChecksumOrNull != null && duplicate(syncPath, pChecksumOrNull)) {
+                distributor.store(syncPath, pChecksumOrNull);
+                return;
+            }
+            final ReadBufferSizer sizer = new ReadBufferSizer(config, pPath.size());
+            ByteBuffer buffer = allocate(sizer.getSize());
             try {
+                final ContentEncoder encoderOrNull = createEncoderOrNull(syncPath, pDelta, sizer.getLimit());
                 while (source.read(buffer) != -1) {
                     buffer.flip();
-                    distributor.transfer(syncPath, buffer);
-                    buffer.flip();
+                    final long start = nanoTime();
+                    if (encoderOrNull == null) {
+                        distributor.transfer(syncPath, buffer);
+                    } else {
+                        encoderOrNull.encode(buffer);
+                    }
+                    sizer.transferred(nanoTime() - start);
+
+                    if (sizer.getSize() == buffer.capacity()) {
+                        buffer.flip();
+                    } else {
+                        buffer = allocate(sizer.getSize());
+                    }
+                }
+                if (encoderOrNull != null) {
+                    encoderOrNull.finish();
                 }
                 distributor.store(syncPath, source.digest());
             } catch (final IOException e) {
@@ -69,10 +115,58 @@ public class ReplicationTrigger {
         executor.execute(syncTriggerFactory.create(pFile, p -> distributor.delete(p.getSyncPath())));
     }
 
+    private void schedule(final RegularFile pFile, final boolean pDelta, final byte[] pChecksumOrNull) {
+        executor.execute(syncTriggerFactory.create(pFile, p -> transfer(p, pDelta, pChecksumOrNull),
+                () -> replicated(pFile)));
+    }
+
+    private void replicated(final RegularFile pFile) {
+        if (pFile.finishReplication()) {
+            // Modified while it was being replicated; the targets have a previous version now
+            schedule(pFile, config.deltaBlockSize() > 0, null);
+        }
+    }
+
+    private void replicate(final RegularFile pFile, final boolean pDelta, final byte[] pChecksumOrNull) {
+        if (pFile.startReplication()) {
+            schedule(pFile, pDelta, pChecksumOrNull);
+        } else {
+            LOG.debug("{} is being replicated, it will be replicated once more afterwards", pFile.getSyncPath());
+        }
+    }
+
+    private long sizeOrMinusOne(final RegularFile pFile) {
+        try {
+            return pFile.size();
+        } catch (final IOException e) {
+            LOG.warn(e.getMessage(), e);
+            return -1;
+        }
+    }
+
+    private void modified(final RegularFile pFile, final byte[] pPreviousChecksum, final byte[] pChecksumOrNull) {
+        final long size = config.batchFileSize() > 0 ? sizeOrMinusOne(pFile) : -1;
+        if (size >= 0 && size <= config.batchFileSize()) {
+            batcher.add(pFile, size);
+        } else {
+            // Only a file which has been replicated before can be patched on the targets
+            replicate(pFile, config.deltaBlockSize() > 0 && pPreviousChecksum.length > 0,
+                    config.deduplicate() ? pChecksumOrNull : null);
+        }
+    }
+
     public void modify(final RegularFile pFile, final byte[] pChecksum) {
-        final SyncPath syncPath = pFile.getSyncPath();
-        if (!Arrays.equals(distributor.getChecksum(syncPath), pChecksum)) {
-            executor.execute(syncTriggerFactory.create(pFile, this::transfer));
+        final byte[] previousChecksum = distributor.getChecksum(pFile.getSyncPath());
+        if (!Arrays.equals(previousChecksum, pChecksum)) {
+            modified(pFile, previousChecksum, pChecksum);
         }
     }
+
+    /**
+     * Replicates a modified file whose checksum is not known yet. The checksum is computed while the file is read
+     * for the transfer, so the file is read only once.
+     */
+    public void modify(final RegularFile pFile) {
+        modified(pFile, distributor.getChecksum(pFile.getSyncPath()), null);
+    }
 }
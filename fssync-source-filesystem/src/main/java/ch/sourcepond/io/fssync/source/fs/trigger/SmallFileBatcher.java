@@ -0,0 +1,125 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.source.fs.trigger;
+
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.api.BatchFile;
+import ch.sourcepond.io.fssync.distributor.api.Distributor;
+import ch.sourcepond.io.fssync.source.fs.Config;
+import ch.sourcepond.io.fssync.source.fs.fswatch.DigestingChannel;
+import ch.sourcepond.io.fssync.source.fs.fswatch.RegularFile;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+
+import static java.nio.ByteBuffer.allocate;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Collects modified small files for a short time and replicates them with a single request (see
+ * {@link Distributor#batch(java.util.Collection)}). A batch is sent when the configured delay has elapsed since the
+ * first file has been added, or earlier when the batch has reached its maximum size. If a file cannot be read or the
+ * batch fails, the affected files are handed over to the fallback, which replicates them one by one.
+ */
+final class SmallFileBatcher {
+    private static final Logger LOG = getLogger(SmallFileBatcher.class);
+    private final Map<SyncPath, RegularFile> pending = new LinkedHashMap<>();
+    private final Distributor distributor;
+    private final ScheduledExecutorService executor;
+    private final Config config;
+    private final Consumer<RegularFile> fallback;
+    private long pendingSize;
+    private boolean flushScheduled;
+
+    SmallFileBatcher(final Distributor pDistributor,
+                     final ScheduledExecutorService pExecutor,
+                     final Config pConfig,
+                     final Consumer<RegularFile> pFallback) {
+        distributor = pDistributor;
+        executor = pExecutor;
+        config = pConfig;
+        fallback = pFallback;
+    }
+
+    /**
+     * Adds the file specified to the current batch. If the file is already part of the current batch, it is only
+     * replicated once.
+     *
+     * @param pFile Modified file, must not be {@code null}
+     * @param pSize Current size of the file in bytes
+     */
+    synchronized void add(final RegularFile pFile, final long pSize) {
+        if (pending.put(pFile.getSyncPath(), pFile) == null) {
+            pendingSize += pSize;
+        }
+        if (pendingSize >= config.batchMaxSize()) {
+            executor.execute(this::flush);
+            flushScheduled = true;
+        } else if (!flushScheduled) {
+            executor.schedule(this::flush, config.batchDelay(), config.batchDelayUnit());
+            flushScheduled = true;
+        }
+    }
+
+    private static byte[] readFully(final DigestingChannel pChannel) throws IOException {
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        final ByteBuffer buffer = allocate(8192);
+        while (pChannel.read(buffer) != -1) {
+            // The channel leaves the buffer consumed by the digest
+            buffer.flip();
+            content.write(buffer.array(), 0, buffer.limit());
+            buffer.clear();
+        }
+        return content.toByteArray();
+    }
+
+    void flush() {
+        final List<RegularFile> files;
+        synchronized (this) {
+            files = new ArrayList<>(pending.values());
+            pending.clear();
+            pendingSize = 0;
+            flushScheduled = false;
+        }
+
+        final List<BatchFile> batch = new ArrayList<>(files.size());
+        final List<RegularFile> batchedFiles = new ArrayList<>(files.size());
+        for (final RegularFile file : files) {
+            try (final DigestingChannel channel = file.startDigest()) {
+                batch.add(new BatchFile(file.getSyncPath(), readFully(channel), channel.digest()));
+                batchedFiles.add(file);
+            } catch (final IOException e) {
+                LOG.warn(e.getMessage(), e);
+                fallback.accept(file);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            try {
+                distributor.batch(batch);
+            } catch (final IOException e) {
+                LOG.warn(e.getMessage(), e);
+                batchedFiles.forEach(fallback);
+            }
+        }
+    }
+}
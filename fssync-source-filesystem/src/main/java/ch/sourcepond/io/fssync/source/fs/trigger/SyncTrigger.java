@@ -31,22 +31,26 @@ class SyncTrigger implements Runnable {
     private final Config config;
     private final SyncTriggerFunction trigger;
     private final RegularFile path;
+    private final Runnable onDone;
     private volatile int retries;
 
     public SyncTrigger(final ScheduledExecutorService pExecutor,
                        final Distributor pDistributor,
                        final Config pConfig,
                        final RegularFile pPath,
-                       final SyncTriggerFunction pTrigger) {
+                       final SyncTriggerFunction pTrigger,
+                       final Runnable pOnDone) {
         executor = pExecutor;
         distributor = pDistributor;
         config = pConfig;
         path = pPath;
         trigger = pTrigger;
+        onDone = pOnDone;
     }
 
     @Override
     public void run() {
+        boolean done = true;
         try {
             final SyncPath syncPath = path.getSyncPath();
             if (distributor.tryLock(syncPath)) {
@@ -57,11 +61,16 @@ class SyncTrigger implements Runnable {
                 }
             } else if (config.retryAttempts() > retries++) {
                 executor.schedule(this, config.retryDelay(), config.retryDelayUnit());
+                done = false;
             } else {
                 LOG.warn("Gave up syncing after {} trials", config.retryAttempts());
             }
         } catch (final IOException e) {
             LOG.error(e.getMessage(), e);
+        } finally {
+            if (done) {
+                onDone.run();
+            }
         }
     }
 }
@@ -37,6 +37,17 @@ class SyncTriggerFactory {
 
     public SyncTrigger create(final RegularFile pPath,
                               final SyncTriggerFunction pTrigger) {
-        return new SyncTrigger(executor, distributor, config, pPath, pTrigger);
+        return create(pPath, pTrigger, () -> {
+        });
+    }
+
+    /**
+     * Creates a trigger which runs the callback specified when it has finished, i.e. when the function has been
+     * processed or when the trigger has given up.
+     */
+    public SyncTrigger create(final RegularFile pPath,
+                              final SyncTriggerFunction pTrigger,
+                              final Runnable pOnDone) {
+        return new SyncTrigger(executor, distributor, config, pPath, pTrigger, pOnDone);
     }
 }
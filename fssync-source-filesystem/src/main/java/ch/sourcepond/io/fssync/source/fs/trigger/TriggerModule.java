@@ -16,11 +16,13 @@ package ch.sourcepond.io.fssync.source.fs.trigger;
 import ch.sourcepond.io.fssync.common.api.SyncPathFactory;
 import com.google.inject.AbstractModule;
 
+import javax.inject.Singleton;
+
 public class TriggerModule extends AbstractModule {
 
     @Override
     protected void configure() {
-        bind(ReplicationTrigger.class);
+        bind(ReplicationTrigger.class).in(Singleton.class);
         bind(SyncTriggerFactory.class);
         bind(SyncPathFactory.class);
     }
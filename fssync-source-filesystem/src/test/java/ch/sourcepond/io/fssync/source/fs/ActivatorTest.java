@@ -86,7 +86,7 @@ public class ActivatorTest {
         when(watchedDirectory.getFileSystem()).thenReturn(fs);
         when(provider.readAttributes(watchedDirectory, BasicFileAttributes.class)).thenReturn(attributes);
         when(attributes.isDirectory()).thenReturn(true);
-        when(injectorFactory.create(config, watchService, watchedDirectory, distributor, resourceProducerFactory)).thenReturn(injector);
+        when(injectorFactory.create(config, watchService, watchedDirectory, distributor, resourceProducerFactory, null)).thenReturn(injector);
         when(injector.getInstance(WatchServiceInstaller.class)).thenReturn(installer);
         when(fs.newWatchService()).thenReturn(watchService);
         when(config.watchedDirectory()).thenReturn(EXPECTED_WATCHED_DIRECTORY);
@@ -63,6 +63,6 @@ public class InjectorFactoryTest {
 
     @Test
     public void createInjector() {
-        final Injector injector = injectorFactory.create(config, watchService, watchedDirectory, distributor, resourceProducerFactory);
+        final Injector injector = injectorFactory.create(config, watchService, watchedDirectory, distributor, resourceProducerFactory, null);
     }
 }
@@ -0,0 +1,130 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.source.fs.fswatch;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import static java.nio.file.Files.createTempDirectory;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.Files.write;
+import static java.nio.file.attribute.FileTime.fromMillis;
+import static java.util.Arrays.copyOf;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ChecksumIndexTest {
+    private static final byte[] CHECKSUM = new byte[]{1, 2, 3, 4};
+    private final BasicFileAttributes attributes = mock(BasicFileAttributes.class);
+    private Path dir;
+    private Path indexFile;
+    private Path file;
+
+    @Before
+    public void setup() throws Exception {
+        dir = createTempDirectory(getClass().getSimpleName());
+        indexFile = dir.resolve("data").resolve("index");
+        file = dir.resolve("file");
+        when(attributes.size()).thenReturn(42L);
+        when(attributes.lastModifiedTime()).thenReturn(fromMillis(1000));
+        when(attributes.fileKey()).thenReturn("inode");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    private ChecksumIndex restart(final ChecksumIndex pIndex) throws Exception {
+        pIndex.close();
+        final ChecksumIndex index = new ChecksumIndex(indexFile);
+        index.load();
+        return index;
+    }
+
+    @Test
+    public void loadNoIndex() throws Exception {
+        final ChecksumIndex index = new ChecksumIndex(indexFile);
+        index.load();
+        assertNull(index.lookup(file, attributes));
+    }
+
+    @Test
+    public void notPersisted() throws Exception {
+        final ChecksumIndex index = new ChecksumIndex(null);
+        index.load();
+        index.put(file, attributes, CHECKSUM);
+        index.close();
+        assertNull(index.lookup(file, attributes));
+    }
+
+    @Test
+    public void restoreUnchanged() throws Exception {
+        final ChecksumIndex index = new ChecksumIndex(indexFile);
+        index.put(file, attributes, CHECKSUM);
+        final ChecksumIndex restored = restart(index);
+        assertArrayEquals(CHECKSUM, restored.lookup(file, attributes));
+
+        // Restored entries are only used once
+        assertNull(restored.lookup(file, attributes));
+
+        // But they are stored again
+        assertArrayEquals(CHECKSUM, restart(restored).lookup(file, attributes));
+    }
+
+    @Test
+    public void restoreModified() throws Exception {
+        final ChecksumIndex index = new ChecksumIndex(indexFile);
+        index.put(file, attributes, CHECKSUM);
+        final ChecksumIndex restored = restart(index);
+        when(attributes.lastModifiedTime()).thenReturn(fromMillis(2000));
+        assertNull(restored.lookup(file, attributes));
+    }
+
+    @Test
+    public void restoreReplaced() throws Exception {
+        final ChecksumIndex index = new ChecksumIndex(indexFile);
+        index.put(file, attributes, CHECKSUM);
+        final ChecksumIndex restored = restart(index);
+        when(attributes.fileKey()).thenReturn("otherInode");
+        assertNull(restored.lookup(file, attributes));
+    }
+
+    @Test
+    public void removedNotStored() throws Exception {
+        final ChecksumIndex index = new ChecksumIndex(indexFile);
+        index.put(file, attributes, CHECKSUM);
+        index.remove(file);
+        assertNull(restart(index).lookup(file, attributes));
+    }
+
+    @Test
+    public void ignoreCorruptIndex() throws Exception {
+        final ChecksumIndex index = new ChecksumIndex(indexFile);
+        index.put(file, attributes, CHECKSUM);
+        index.close();
+        final byte[] content = readAllBytes(indexFile);
+        write(indexFile, copyOf(content, content.length - 2));
+        final ChecksumIndex restored = new ChecksumIndex(indexFile);
+        restored.load();
+        assertNull(restored.lookup(file, attributes));
+    }
+}
@@ -0,0 +1,79 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.source.fs.fswatch;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import static java.nio.file.Files.createDirectory;
+import static java.nio.file.Files.createTempDirectory;
+import static java.nio.file.Files.write;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.notNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+public class DirectoryScanTest {
+    private final WatchEventDistributor distributor = mock(WatchEventDistributor.class);
+    private final ForkJoinPool pool = new ForkJoinPool(2);
+    private Path root;
+
+    @Before
+    public void setup() throws Exception {
+        root = createTempDirectory(getClass().getSimpleName());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.shutdown();
+        FileUtils.deleteDirectory(root.toFile());
+    }
+
+    @Test
+    public void scan() throws Exception {
+        final Path file = write(root.resolve("file"), new byte[]{1});
+        final Path dir1 = createDirectory(root.resolve("dir1"));
+        final Path file1 = write(dir1.resolve("file1"), new byte[]{1});
+        final Path dir2 = createDirectory(dir1.resolve("dir2"));
+        final Path file2 = write(dir2.resolve("file2"), new byte[]{1});
+
+        pool.invoke(new DirectoryScan(distributor, root, null));
+
+        verify(distributor).preVisitDirectory(root, null);
+        verify(distributor).preVisitDirectory(eq(dir1), notNull());
+        verify(distributor).preVisitDirectory(eq(dir2), notNull());
+        verify(distributor).visitFile(eq(file), notNull());
+        verify(distributor).visitFile(eq(file1), notNull());
+        verify(distributor).visitFile(eq(file2), notNull());
+        verifyNoMoreInteractions(distributor);
+    }
+
+    @Test
+    public void scanFailed() {
+        try {
+            pool.invoke(new DirectoryScan(distributor, root.resolve("missing"), null));
+            fail("Exception expected");
+        } catch (final UncheckedIOException e) {
+            // expected
+        }
+    }
+}
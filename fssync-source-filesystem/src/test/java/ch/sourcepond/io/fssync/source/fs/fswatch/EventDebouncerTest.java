@@ -0,0 +1,143 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.source.fs.fswatch;
+
+import ch.sourcepond.io.fssync.source.fs.Config;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.nio.file.Path;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.lang.System.getProperty;
+import static java.lang.Thread.sleep;
+import static java.nio.file.FileSystems.getDefault;
+import static java.nio.file.Files.createTempDirectory;
+import static java.nio.file.Files.delete;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.util.UUID.randomUUID;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+public class EventDebouncerTest {
+    private final WatchEventDistributor distributor = mock(WatchEventDistributor.class);
+    private final Config config = mock(Config.class);
+    private final Path path = getDefault().getPath(getProperty("java.io.tmpdir"), randomUUID().toString());
+    private final ScheduledExecutorService executor = newSingleThreadScheduledExecutor();
+    private final EventDebouncer debouncer = new EventDebouncer(distributor, executor, config);
+
+    @Before
+    public void setup() {
+        when(config.eventQuietPeriod()).thenReturn(200L);
+        when(config.eventMaxDelay()).thenReturn(2000L);
+        when(config.eventDelayUnit()).thenReturn(MILLISECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void dispatchImmediatelyWhenDisabled() throws Exception {
+        when(config.eventQuietPeriod()).thenReturn(0L);
+        debouncer.event(ENTRY_MODIFY, path);
+        verify(distributor).modify(path);
+    }
+
+    @Test
+    public void collapseModifications() throws Exception {
+        debouncer.event(ENTRY_MODIFY, path);
+        debouncer.event(ENTRY_MODIFY, path);
+        debouncer.event(ENTRY_MODIFY, path);
+        verify(distributor, never()).modify(path);
+        verify(distributor, timeout(2000)).modify(path);
+        sleep(500);
+        verifyNoMoreInteractions(distributor);
+    }
+
+    @Test
+    public void createFollowedByModify() throws Exception {
+        debouncer.event(ENTRY_CREATE, path);
+        debouncer.event(ENTRY_MODIFY, path);
+        verify(distributor, timeout(2000)).create(path);
+        sleep(500);
+        verifyNoMoreInteractions(distributor);
+    }
+
+    @Test
+    public void lastEventWins() throws Exception {
+        debouncer.event(ENTRY_MODIFY, path);
+        debouncer.event(ENTRY_DELETE, path);
+        verify(distributor, timeout(2000)).delete(path);
+        sleep(500);
+        verifyNoMoreInteractions(distributor);
+    }
+
+    @Test
+    public void quietPeriodRestartsOnEvent() throws Exception {
+        debouncer.event(ENTRY_MODIFY, path);
+        sleep(120);
+        debouncer.event(ENTRY_MODIFY, path);
+        sleep(120);
+        verify(distributor, never()).modify(path);
+        verify(distributor, timeout(2000)).modify(path);
+    }
+
+    @Test
+    public void maxDelayLimitsContinuousEvents() throws Exception {
+        when(config.eventMaxDelay()).thenReturn(300L);
+        final long end = System.currentTimeMillis() + 1000;
+        while (System.currentTimeMillis() < end) {
+            debouncer.event(ENTRY_MODIFY, path);
+            sleep(20);
+        }
+        verify(distributor, timeout(100).atLeast(2)).modify(path);
+    }
+
+    @Test
+    public void createDirectoryImmediately() throws Exception {
+        final Path dir = createTempDirectory(getClass().getSimpleName());
+        try {
+            debouncer.event(ENTRY_DELETE, dir);
+            debouncer.event(ENTRY_CREATE, dir);
+            final InOrder order = inOrder(distributor);
+            order.verify(distributor).delete(dir);
+            order.verify(distributor).create(dir);
+            sleep(500);
+            verifyNoMoreInteractions(distributor);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void close() throws Exception {
+        debouncer.event(ENTRY_MODIFY, path);
+        debouncer.close();
+        sleep(500);
+        verify(distributor, never()).modify(path);
+    }
+}
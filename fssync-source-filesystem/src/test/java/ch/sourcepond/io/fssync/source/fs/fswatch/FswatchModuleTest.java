@@ -0,0 +1,61 @@
+/*Copyright (C) 2018 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.source.fs.fswatch;
+
+import ch.sourcepond.io.checksum.api.ResourceProducer;
+import ch.sourcepond.io.fssync.distributor.api.Distributor;
+import ch.sourcepond.io.fssync.source.fs.Config;
+import ch.sourcepond.io.fssync.source.fs.SourceFsModule;
+import ch.sourcepond.io.fssync.source.fs.trigger.ReplicationTrigger;
+import com.google.inject.Injector;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.WatchService;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.google.inject.Guice.createInjector;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class FswatchModuleTest {
+    private final Distributor distributor = mock(Distributor.class);
+    private final ResourceProducer resourceProducer = mock(ResourceProducer.class);
+    private final WatchService watchService = mock(WatchService.class);
+    private final FileSystem fs = mock(FileSystem.class);
+    private final Path watchedDirectory = mock(Path.class);
+    private final ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+    private final Config config = mock(Config.class, withSettings().defaultAnswer(inv -> inv.getMethod().getDefaultValue()));
+    private Injector injector;
+
+    @Before
+    public void setup() {
+        when(watchedDirectory.getFileSystem()).thenReturn(fs);
+        injector = createInjector(new SourceFsModule(distributor, resourceProducer, watchService, watchedDirectory,
+                executor, config, new ChecksumIndex(null)));
+    }
+
+    @Test
+    public void sharedInstances() {
+        // The installer and the debouncer must pass their events to the same distributor and trigger
+        injector.getInstance(WatchServiceInstaller.class);
+        assertSame(injector.getInstance(WatchEventDistributor.class), injector.getInstance(WatchEventDistributor.class));
+        assertSame(injector.getInstance(EventDebouncer.class), injector.getInstance(EventDebouncer.class));
+        assertSame(injector.getInstance(ReplicationTrigger.class), injector.getInstance(ReplicationTrigger.class));
+    }
+}
@@ -25,11 +25,16 @@ import java.nio.channels.FileChannel;
 import java.nio.file.FileSystem;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.spi.FileSystemProvider;
 
 import static ch.sourcepond.io.checksum.api.Algorithm.SHA256;
 import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.attribute.FileTime.fromMillis;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.mock;
@@ -53,13 +58,12 @@ public class RegularFileTest {
 
     @Before
     public void setup() throws Exception {
-        when(digestingChannelFactory.create()).thenReturn(channel);
         when(resourceProducer.create(SHA256, absolutePath)).thenReturn(resource);
         when(syncPathFactory.create(syncDir, absolutePath)).thenReturn(syncPath);
         when(absolutePath.getFileSystem()).thenReturn(fs);
         when(fs.provider()).thenReturn(provider);
         when(provider.newFileChannel(same(absolutePath), argThat(s -> s.size() == 1 && s.contains(READ)))).thenReturn(fileChannel);
-        when(channel.lock(fileChannel)).thenReturn(channel);
+        when(digestingChannelFactory.create(fileChannel)).thenReturn(channel);
         regularFile = new RegularFileFactory(digestingChannelFactory,
                 syncPathFactory, resourceProducer).create(syncDir, absolutePath);
     }
@@ -69,6 +73,42 @@ public class RegularFileTest {
         assertSame(channel, regularFile.startDigest());
     }
 
+    @Test
+    public void size() throws Exception {
+        final BasicFileAttributes attributes = mock(BasicFileAttributes.class);
+        when(attributes.size()).thenReturn(42L);
+        when(provider.readAttributes(absolutePath, BasicFileAttributes.class)).thenReturn(attributes);
+        assertEquals(42L, regularFile.size());
+    }
+
+    @Test
+    public void metadataChanged() {
+        final BasicFileAttributes attributes = mock(BasicFileAttributes.class);
+        when(attributes.size()).thenReturn(42L);
+        when(attributes.lastModifiedTime()).thenReturn(fromMillis(1000));
+        assertTrue(regularFile.metadataChanged(attributes));
+        assertFalse(regularFile.metadataChanged(attributes));
+        when(attributes.lastModifiedTime()).thenReturn(fromMillis(2000));
+        assertTrue(regularFile.metadataChanged(attributes));
+        when(attributes.size()).thenReturn(43L);
+        assertTrue(regularFile.metadataChanged(attributes));
+        assertFalse(regularFile.metadataChanged(attributes));
+    }
+
+    @Test
+    public void replication() {
+        assertTrue(regularFile.startReplication());
+        assertFalse(regularFile.finishReplication());
+
+        // Modified twice while being replicated: exactly one follow-up
+        assertTrue(regularFile.startReplication());
+        assertFalse(regularFile.startReplication());
+        assertFalse(regularFile.startReplication());
+        assertTrue(regularFile.finishReplication());
+        assertFalse(regularFile.finishReplication());
+        assertTrue(regularFile.startReplication());
+    }
+
     @Test
     public void getSyncPath() {
         assertSame(syncPath, regularFile.getSyncPath());
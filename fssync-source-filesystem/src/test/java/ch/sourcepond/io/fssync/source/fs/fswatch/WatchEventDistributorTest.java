@@ -16,18 +16,25 @@ package ch.sourcepond.io.fssync.source.fs.fswatch;
 import ch.sourcepond.io.checksum.api.Checksum;
 import ch.sourcepond.io.checksum.api.Update;
 import ch.sourcepond.io.checksum.api.UpdateObserver;
+import ch.sourcepond.io.fssync.source.fs.Config;
 import ch.sourcepond.io.fssync.source.fs.trigger.ReplicationTrigger;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.nio.file.FileSystem;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.spi.FileSystemProvider;
 
+import static java.nio.file.FileSystems.getDefault;
+import static java.nio.file.Files.createTempDirectory;
+import static java.nio.file.Files.walkFileTree;
+import static java.nio.file.Files.write;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
@@ -37,6 +44,7 @@ import static org.mockito.ArgumentMatchers.notNull;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
@@ -57,8 +65,10 @@ public class WatchEventDistributorTest {
     private final BasicFileAttributes fileAttributes = mock(BasicFileAttributes.class);
     private final FileSystem fs = mock(FileSystem.class);
     private final FileSystemProvider provider = mock(FileSystemProvider.class);
+    private final ChecksumIndex checksumIndex = mock(ChecksumIndex.class);
+    private final Config config = mock(Config.class);
     private final WatchEventDistributor distributor = new WatchEventDistributor(regularFileFactory, watchService,
-            replicationTrigger, syncDir);
+            replicationTrigger, checksumIndex, config, syncDir);
 
     @Before
     public void setup() throws Exception {
@@ -70,6 +80,7 @@ public class WatchEventDistributorTest {
         when(update.hasChanged()).thenReturn(true);
         when(update.getCurrent()).thenReturn(checksum);
         when(checksum.toByteArray()).thenReturn(EXPECTECTED_CHECKSUM);
+        when(regularFile.metadataChanged(notNull())).thenReturn(true);
         when(regularFileFactory.create(syncDir, file)).thenReturn(regularFile);
         when(syncDirAttributes.isDirectory()).thenReturn(true);
         when(syncDir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY)).thenReturn(watchKey);
@@ -106,6 +117,21 @@ public class WatchEventDistributorTest {
         verify(replicationTrigger).modify(regularFile, EXPECTECTED_CHECKSUM);
     }
 
+    @Test
+    public void visitFileUnchangedSinceLastRun() throws Exception {
+        final byte[] indexedChecksum = new byte[]{1, 2, 3};
+        when(checksumIndex.lookup(file, fileAttributes)).thenReturn(indexedChecksum);
+        distributor.visitFile(file, fileAttributes);
+        verify(replicationTrigger).modify(regularFile, indexedChecksum);
+        verify(regularFile, never()).update(notNull());
+    }
+
+    @Test
+    public void visitFileUpdatesIndex() throws Exception {
+        distributor.visitFile(file, fileAttributes);
+        verify(checksumIndex).put(file, fileAttributes, EXPECTECTED_CHECKSUM);
+    }
+
     @Test
     public void visitAndModifyFile() throws Exception {
         distributor.visitFile(file, null);
@@ -119,6 +145,39 @@ public class WatchEventDistributorTest {
         verify(replicationTrigger).modify(regularFile, EXPECTECTED_CHECKSUM);
     }
 
+    @Test
+    public void modifyMetadataUnchanged() throws Exception {
+        when(regularFile.metadataChanged(fileAttributes)).thenReturn(false);
+        distributor.modify(file);
+        verify(regularFile, never()).update(notNull());
+        verifyZeroInteractions(replicationTrigger);
+    }
+
+    @Test
+    public void modifyMetadataUnchangedAlwaysDigest() throws Exception {
+        when(config.alwaysDigest()).thenReturn(true);
+        when(regularFile.metadataChanged(fileAttributes)).thenReturn(false);
+        distributor.modify(file);
+        verify(replicationTrigger).modify(regularFile, EXPECTECTED_CHECKSUM);
+    }
+
+    @Test
+    public void modifyDigestOnTransfer() throws Exception {
+        when(config.digestOnTransfer()).thenReturn(true);
+        distributor.modify(file);
+        verify(replicationTrigger).modify(regularFile);
+        verify(regularFile, never()).update(notNull());
+    }
+
+    @Test
+    public void modifyDigestOnTransferMetadataUnchanged() throws Exception {
+        when(config.digestOnTransfer()).thenReturn(true);
+        when(regularFile.metadataChanged(fileAttributes)).thenReturn(false);
+        distributor.modify(file);
+        verifyZeroInteractions(replicationTrigger);
+        verify(regularFile, never()).update(notNull());
+    }
+
     @Test
     public void modifyNothingChanged() throws Exception {
         when(update.hasChanged()).thenReturn(false);
@@ -156,6 +215,41 @@ public class WatchEventDistributorTest {
         verifyZeroInteractions(replicationTrigger);
     }
 
+    @Test
+    public void rescan() throws Exception {
+        final Path dir = createTempDirectory(getClass().getSimpleName());
+        try (final WatchService realWatchService = getDefault().newWatchService()) {
+            final RegularFile known = mock(RegularFile.class);
+            final RegularFile unchanged = mock(RegularFile.class);
+            final RegularFile deleted = mock(RegularFile.class);
+            final RegularFile created = mock(RegularFile.class);
+            final Path knownPath = write(dir.resolve("known"), new byte[]{1});
+            final Path unchangedPath = write(dir.resolve("unchanged"), new byte[]{1});
+            final Path deletedPath = write(dir.resolve("deleted"), new byte[]{1});
+            when(regularFileFactory.create(dir, knownPath)).thenReturn(known);
+            when(regularFileFactory.create(dir, unchangedPath)).thenReturn(unchanged);
+            when(regularFileFactory.create(dir, deletedPath)).thenReturn(deleted);
+            final WatchEventDistributor realDistributor = new WatchEventDistributor(regularFileFactory,
+                    realWatchService, replicationTrigger, checksumIndex, config, dir);
+            walkFileTree(dir, realDistributor);
+
+            when(known.metadataChanged(notNull())).thenReturn(true);
+            Files.delete(deletedPath);
+            final Path subDir = Files.createDirectory(dir.resolve("subdir"));
+            final Path createdPath = write(subDir.resolve("created"), new byte[]{1});
+            when(regularFileFactory.create(dir, createdPath)).thenReturn(created);
+
+            realDistributor.rescan(dir);
+            verify(known, times(2)).update(notNull());
+            verify(unchanged).update(notNull());
+            verify(created).update(notNull());
+            verify(replicationTrigger).delete(deleted);
+            realDistributor.close();
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
     @Test
     public void deleteFile() throws Exception {
         distributor.create(file);
@@ -164,5 +258,6 @@ public class WatchEventDistributorTest {
         // Nothing should happen
         distributor.delete(file);
         verify(replicationTrigger).delete(regularFile);
+        verify(checksumIndex, times(2)).remove(file);
     }
 }
@@ -16,6 +16,7 @@ package ch.sourcepond.io.fssync.source.fs.fswatch;
 import ch.sourcepond.io.checksum.api.Checksum;
 import ch.sourcepond.io.checksum.api.Update;
 import ch.sourcepond.io.checksum.api.UpdateObserver;
+import ch.sourcepond.io.fssync.source.fs.Config;
 import ch.sourcepond.io.fssync.source.fs.trigger.ReplicationTrigger;
 import org.junit.After;
 import org.junit.Before;
@@ -27,6 +28,7 @@ import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.FileSystem;
 import java.nio.file.Path;
 import java.nio.file.WatchService;
+import java.util.concurrent.ScheduledExecutorService;
 
 import static java.lang.System.getProperty;
 import static java.lang.Thread.sleep;
@@ -36,10 +38,14 @@ import static java.nio.file.Files.exists;
 import static java.nio.file.Files.isDirectory;
 import static java.nio.file.Files.newBufferedWriter;
 import static java.util.UUID.randomUUID;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.apache.commons.io.FileUtils.copyDirectory;
 import static org.apache.commons.io.FileUtils.deleteDirectory;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.timeout;
@@ -60,11 +66,17 @@ public class WatchServiceInstallerTest {
     private final RegularFileFactory regularFileFactory = mock(RegularFileFactory.class);
     private final RegularFile regularFile = mock(RegularFile.class, withSettings().defaultAnswer(inv -> {
         final Object[] args = inv.getArguments();
-        ((UpdateObserver) args[args.length - 1]).done(update);
+        if (args.length > 0 && args[args.length - 1] instanceof UpdateObserver) {
+            ((UpdateObserver) args[args.length - 1]).done(update);
+        }
         return null;
     }));
     private final ReplicationTrigger replicationTrigger = mock(ReplicationTrigger.class);
+    private final Config config = mock(Config.class);
+    private final ChecksumIndex checksumIndex = new ChecksumIndex(null);
+    private final ScheduledExecutorService executor = newSingleThreadScheduledExecutor();
     private WatchEventDistributor watchEventDistributor;
+    private EventDebouncer eventDebouncer;
     private WatchService watchService;
     private WatchServiceInstaller installer;
 
@@ -76,11 +88,19 @@ public class WatchServiceInstallerTest {
         assertTrue(exists(expectedPath));
         when(regularFileFactory.create(watchedDirectory, expectedPath)).thenReturn(regularFile);
         when(update.getCurrent()).thenReturn(checksum);
+        doReturn(true).when(regularFile).metadataChanged(any());
         when(update.hasChanged()).thenReturn(true);
         when(checksum.toByteArray()).thenReturn(EXPECTED_CHECKSUM);
+        when(config.checksumConcurrency()).thenReturn(2);
+        when(config.eventQuietPeriod()).thenReturn(100L);
+        when(config.eventMaxDelay()).thenReturn(1000L);
+        when(config.eventDelayUnit()).thenReturn(MILLISECONDS);
         watchService = getDefault().newWatchService();
-        watchEventDistributor = new WatchEventDistributor(regularFileFactory, watchService, replicationTrigger, watchedDirectory);
-        installer = new WatchServiceInstaller(watchEventDistributor, watchService, watchedDirectory);
+        watchEventDistributor = new WatchEventDistributor(regularFileFactory, watchService, replicationTrigger,
+                checksumIndex, config, watchedDirectory);
+        eventDebouncer = new EventDebouncer(watchEventDistributor, executor, config);
+        installer = new WatchServiceInstaller(watchEventDistributor, eventDebouncer, checksumIndex, watchService,
+                watchedDirectory, config);
         installer.start();
         sleep(1000);
     }
@@ -89,13 +109,15 @@ public class WatchServiceInstallerTest {
     public void tearDown() throws Exception {
         deleteDirectory(targetPath.toFile());
         installer.close();
+        executor.shutdown();
     }
 
     @Test
     public void startFailed() throws IOException {
         installer.close();
         deleteDirectory(targetPath.toFile());
-        installer = new WatchServiceInstaller(watchEventDistributor, watchService, watchedDirectory);
+        installer = new WatchServiceInstaller(watchEventDistributor, eventDebouncer, checksumIndex, watchService,
+                watchedDirectory, config);
 
         // This should not throw an exception
         installer.start();
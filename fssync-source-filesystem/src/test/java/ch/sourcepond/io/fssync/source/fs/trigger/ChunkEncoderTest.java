@@ -0,0 +1,122 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.source.fs.trigger;
+
+import ch.sourcepond.io.fssync.common.api.Chunk;
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.api.Distributor;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static java.lang.Math.min;
+import static java.lang.System.arraycopy;
+import static java.nio.ByteBuffer.wrap;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.notNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ChunkEncoderTest {
+    private static final int AVERAGE_SIZE = 256;
+    private static final int GROUP_SIZE = 4096;
+    private static final int READ_SIZE = 1000;
+    private final Distributor distributor = mock(Distributor.class);
+    private final SyncPath syncPath = mock(SyncPath.class);
+    private final Map<Chunk, byte[]> chunkStore = new HashMap<>();
+    private ByteArrayOutputStream received;
+    private byte[] content;
+    private int transferredBytes;
+
+    @Before
+    public void setup() throws Exception {
+        content = new byte[32768];
+        new Random(42).nextBytes(content);
+
+        // Simulate the target: transferred chunks are stored, copied chunks are taken from the store
+        when(distributor.getKnownChunks(eq(syncPath), notNull())).thenAnswer(inv ->
+                ((Collection<Chunk>) inv.getArgument(1)).stream().filter(chunkStore::containsKey).collect(toList()));
+        doAnswer(inv -> {
+            final Chunk chunk = inv.getArgument(1);
+            final ByteBuffer buffer = inv.getArgument(2);
+            final byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            assertEquals(chunk.getLength(), data.length);
+            chunkStore.put(chunk, data);
+            transferredBytes += data.length;
+            received.write(data);
+            return null;
+        }).when(distributor).transferChunk(eq(syncPath), notNull(), notNull());
+        doAnswer(inv -> {
+            final Chunk chunk = inv.getArgument(1);
+            received.write(chunkStore.get(chunk));
+            return null;
+        }).when(distributor).copyChunk(eq(syncPath), notNull());
+    }
+
+    private byte[] encode(final byte[] pContent) throws Exception {
+        received = new ByteArrayOutputStream();
+        transferredBytes = 0;
+        final ChunkEncoder encoder = new ChunkEncoder(distributor, syncPath, AVERAGE_SIZE, GROUP_SIZE);
+        for (int offset = 0; offset < pContent.length; offset += READ_SIZE) {
+            encoder.encode(wrap(pContent, offset, min(READ_SIZE, pContent.length - offset)));
+        }
+        encoder.finish();
+        return received.toByteArray();
+    }
+
+    @Test
+    public void newContent() throws Exception {
+        assertArrayEquals(content, encode(content));
+        assertEquals(content.length, transferredBytes);
+        assertTrue(chunkStore.size() > 1);
+        assertTrue(chunkStore.keySet().stream().allMatch(c -> c.getLength() <= AVERAGE_SIZE * 4));
+    }
+
+    @Test
+    public void identicalContent() throws Exception {
+        encode(content);
+        assertArrayEquals(content, encode(content));
+        assertEquals(0, transferredBytes);
+    }
+
+    @Test
+    public void insertedData() throws Exception {
+        encode(content);
+
+        // Insert some bytes in the middle: only the chunks around the insertion must be transferred again
+        final byte[] inserted = new byte[content.length + 10];
+        arraycopy(content, 0, inserted, 0, 10000);
+        arraycopy(content, 10000, inserted, 10010, content.length - 10000);
+        assertArrayEquals(inserted, encode(inserted));
+        assertTrue(transferredBytes > 0);
+        assertTrue(transferredBytes <= AVERAGE_SIZE * 4 * 3);
+    }
+
+    @Test
+    public void emptyContent() throws Exception {
+        assertEquals(0, encode(new byte[0]).length);
+    }
+}
@@ -0,0 +1,146 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.source.fs.trigger;
+
+import ch.sourcepond.io.fssync.common.api.BlockSignature;
+import ch.sourcepond.io.fssync.common.api.RollingChecksum;
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.api.Distributor;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static ch.sourcepond.io.fssync.common.api.BlockSignature.newStrongDigest;
+import static java.lang.Math.min;
+import static java.nio.ByteBuffer.wrap;
+import static java.util.Arrays.copyOfRange;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.notNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class DeltaEncoderTest {
+    private static final int BLOCK_SIZE = 16;
+    private static final int LITERAL_SIZE = 32;
+    private static final int CHUNK_SIZE = 7;
+    private final Distributor distributor = mock(Distributor.class);
+    private final SyncPath syncPath = mock(SyncPath.class);
+    private final ByteArrayOutputStream patched = new ByteArrayOutputStream();
+    private byte[] current;
+    private int literalBytes;
+    private int copiedBlocks;
+
+    @Before
+    public void setup() throws Exception {
+        current = new byte[200];
+        new Random(42).nextBytes(current);
+
+        // Simulate the target: literal data is appended, copied blocks are taken from the current file
+        doAnswer(inv -> {
+            final ByteBuffer buffer = inv.getArgument(1);
+            literalBytes += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                patched.write(buffer.get());
+            }
+            return null;
+        }).when(distributor).transfer(eq(syncPath), notNull());
+        doAnswer(inv -> {
+            final long offset = inv.getArgument(1);
+            final int length = inv.getArgument(2);
+            copiedBlocks++;
+            patched.write(current, (int) offset, length);
+            return null;
+        }).when(distributor).copy(eq(syncPath), anyLong(), anyInt());
+    }
+
+    private List<BlockSignature> signatures() {
+        final List<BlockSignature> signatures = new ArrayList<>();
+        final MessageDigest strong = newStrongDigest();
+        for (int offset = 0; offset < current.length; offset += BLOCK_SIZE) {
+            final int length = min(BLOCK_SIZE, current.length - offset);
+            final RollingChecksum weak = new RollingChecksum();
+            weak.update(current, offset, length);
+            strong.update(current, offset, length);
+            signatures.add(new BlockSignature(offset, length, weak.getValue(), strong.digest()));
+        }
+        return signatures;
+    }
+
+    private void encode(final byte[] pModified) throws Exception {
+        final DeltaEncoder encoder = new DeltaEncoder(distributor, syncPath, signatures(), BLOCK_SIZE, LITERAL_SIZE);
+        for (int offset = 0; offset < pModified.length; offset += CHUNK_SIZE) {
+            encoder.encode(wrap(pModified, offset, min(CHUNK_SIZE, pModified.length - offset)));
+        }
+        encoder.finish();
+        assertArrayEquals(pModified, patched.toByteArray());
+    }
+
+    private static byte[] concat(final byte[]... pParts) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (final byte[] part : pParts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void unchanged() throws Exception {
+        encode(current);
+        assertEquals(0, literalBytes);
+        assertEquals(13, copiedBlocks);
+    }
+
+    @Test
+    public void append() throws Exception {
+        encode(concat(current, "appended".getBytes()));
+
+        // The short last block of the current file can only be matched at the end of the new content
+        assertEquals(12, copiedBlocks);
+        assertEquals(8 + 8, literalBytes);
+    }
+
+    @Test
+    public void insertInTheMiddle() throws Exception {
+        encode(concat(copyOfRange(current, 0, 100), "inserted data".getBytes(), copyOfRange(current, 100, 200)));
+
+        // The blocks containing the insertion point cannot be reused
+        assertEquals(13 + BLOCK_SIZE, literalBytes);
+    }
+
+    @Test
+    public void completelyDifferent() throws Exception {
+        final byte[] modified = new byte[150];
+        new Random(7).nextBytes(modified);
+        encode(modified);
+        assertEquals(0, copiedBlocks);
+        assertEquals(150, literalBytes);
+    }
+
+    @Test
+    public void truncated() throws Exception {
+        encode(copyOfRange(current, 0, 50));
+        assertEquals(3, copiedBlocks);
+        assertEquals(2, literalBytes);
+    }
+}
@@ -0,0 +1,79 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.source.fs.trigger;
+
+import ch.sourcepond.io.fssync.source.fs.Config;
+import org.junit.Before;
+import org.junit.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReadBufferSizerTest {
+    private static final int MIN_SIZE = 1024;
+    private static final int MAX_SIZE = 16384;
+    private static final long FAST = MILLISECONDS.toNanos(10);
+    private static final long SLOW = MILLISECONDS.toNanos(500);
+    private final Config config = mock(Config.class);
+
+    @Before
+    public void setup() {
+        when(config.minReadBufferSize()).thenReturn(MIN_SIZE);
+        when(config.maxReadBufferSize()).thenReturn(MAX_SIZE);
+        when(config.targetTransferLatency()).thenReturn(250L);
+        when(config.targetTransferLatencyUnit()).thenReturn(MILLISECONDS);
+    }
+
+    @Test
+    public void smallFileReadAtOnce() {
+        final ReadBufferSizer sizer = new ReadBufferSizer(config, 5000);
+        assertEquals(5000, sizer.getSize());
+        assertEquals(5000, sizer.getLimit());
+    }
+
+    @Test
+    public void tinyFileUsesMinimum() {
+        assertEquals(MIN_SIZE, new ReadBufferSizer(config, 10).getSize());
+    }
+
+    @Test
+    public void bigFileUsesMaximum() {
+        assertEquals(MAX_SIZE, new ReadBufferSizer(config, Long.MAX_VALUE).getSize());
+    }
+
+    @Test
+    public void shrinkWhenSlowAndGrowWhenFast() {
+        final ReadBufferSizer sizer = new ReadBufferSizer(config, Long.MAX_VALUE);
+        sizer.transferred(SLOW);
+        assertEquals(MAX_SIZE / 2, sizer.getSize());
+        for (int i = 0; i < 10; i++) {
+            sizer.transferred(SLOW);
+        }
+        assertEquals(MIN_SIZE, sizer.getSize());
+        sizer.transferred(FAST);
+        assertEquals(2 * MIN_SIZE, sizer.getSize());
+        for (int i = 0; i < 10; i++) {
+            sizer.transferred(FAST);
+        }
+        assertEquals(MAX_SIZE, sizer.getSize());
+    }
+
+    @Test
+    public void maximumBelowMinimum() {
+        when(config.maxReadBufferSize()).thenReturn(10);
+        assertEquals(MIN_SIZE, new ReadBufferSizer(config, Long.MAX_VALUE).getSize());
+    }
+}
@@ -13,6 +13,7 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.source.fs.trigger;
 
+import ch.sourcepond.io.fssync.common.api.BlockSignature;
 import ch.sourcepond.io.fssync.common.api.SyncPath;
 import ch.sourcepond.io.fssync.distributor.api.Distributor;
 import ch.sourcepond.io.fssync.source.fs.Config;
@@ -34,10 +35,17 @@ import static ch.sourcepond.io.fssync.source.fs.Constants.EXPECTED_CHECKSUM;
 import static ch.sourcepond.io.fssync.source.fs.Constants.TEST_DATA_FILE;
 import static java.lang.Thread.sleep;
 import static java.nio.channels.FileChannel.open;
+import static java.nio.file.Files.size;
 import static java.nio.file.StandardOpenOption.READ;
 import static java.security.MessageDigest.getInstance;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
 import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MINUTES;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.notNull;
 import static org.mockito.Mockito.doAnswer;
@@ -71,7 +79,11 @@ public class ReplicationTriggerTest {
         when(distributor.getChecksum(syncPath)).thenReturn(DISTRIBUTOR_CHECKSUM);
         when(regularFile.startDigest()).thenReturn(channel);
         when(regularFile.getSyncPath()).thenReturn(syncPath);
-        when(config.readBufferSize()).thenReturn(BUFFER_SIZE);
+        when(regularFile.startReplication()).thenReturn(true);
+        when(config.minReadBufferSize()).thenReturn(BUFFER_SIZE);
+        when(config.maxReadBufferSize()).thenReturn(BUFFER_SIZE);
+        when(config.targetTransferLatency()).thenReturn(1L);
+        when(config.targetTransferLatencyUnit()).thenReturn(MINUTES);
         doAnswer(inv -> {
             final ByteBuffer buffer = inv.getArgument(1);
             digest.update(buffer);
@@ -99,6 +111,139 @@ public class ReplicationTriggerTest {
         assertEquals(EXPECTED_CHECKSUM, toHexString(checksum));
     }
 
+    @Test
+    public void modifySmallFileAtOnce() throws Exception {
+        when(config.maxReadBufferSize()).thenReturn(1 << 20);
+        when(regularFile.size()).thenReturn(size(TEST_DATA_FILE));
+        trigger.modify(regularFile, DIFFERENT_CHECKSUM);
+        verify(distributor, timeout(5000)).store(eq(syncPath), notNull());
+        verify(distributor).transfer(eq(syncPath), notNull());
+        assertEquals(EXPECTED_CHECKSUM, toHexString(checksum));
+    }
+
+    @Test
+    public void modifySmallFileBatched() throws Exception {
+        when(config.batchFileSize()).thenReturn(1 << 20);
+        when(config.batchMaxSize()).thenReturn(1L);
+        when(config.batchDelayUnit()).thenReturn(MINUTES);
+        when(regularFile.size()).thenReturn(size(TEST_DATA_FILE));
+        trigger.modify(regularFile, DIFFERENT_CHECKSUM);
+        verify(distributor, timeout(5000)).batch(argThat(files -> files.size() == 1 &&
+                files.iterator().next().getPath() == syncPath));
+        verify(distributor, never()).tryLock(syncPath);
+    }
+
+    @Test
+    public void modifyDeltaNoSignatures() throws Exception {
+        when(config.deltaBlockSize()).thenReturn(BUFFER_SIZE);
+        when(distributor.getSignatures(syncPath, BUFFER_SIZE)).thenReturn(emptyList());
+        trigger.modify(regularFile, DIFFERENT_CHECKSUM);
+        verify(distributor, timeout(5000)).store(eq(syncPath), notNull());
+        assertEquals(EXPECTED_CHECKSUM, toHexString(checksum));
+    }
+
+    @Test
+    public void modifyDelta() throws Exception {
+        // A block which does not occur in the test data: all data is transferred as literal data
+        when(config.deltaBlockSize()).thenReturn(BUFFER_SIZE);
+        when(distributor.getSignatures(syncPath, BUFFER_SIZE)).thenReturn(asList(
+                new BlockSignature(0, BUFFER_SIZE, 0, new byte[0])));
+        trigger.modify(regularFile, DIFFERENT_CHECKSUM);
+        verify(distributor, timeout(5000)).store(eq(syncPath), notNull());
+        verify(distributor, never()).copy(eq(syncPath), anyLong(), anyInt());
+        assertEquals(EXPECTED_CHECKSUM, toHexString(checksum));
+    }
+
+    @Test
+    public void modifyChunked() throws Exception {
+        when(config.deltaBlockSize()).thenReturn(BUFFER_SIZE);
+        when(config.chunkAverageSize()).thenReturn(BUFFER_SIZE);
+        when(distributor.getKnownChunks(eq(syncPath), notNull())).thenReturn(emptyList());
+        doAnswer(inv -> {
+            final ByteBuffer buffer = inv.getArgument(2);
+            digest.update(buffer);
+            return null;
+        }).when(distributor).transferChunk(eq(syncPath), notNull(), notNull());
+        trigger.modify(regularFile, DIFFERENT_CHECKSUM);
+        verify(distributor, timeout(5000)).store(eq(syncPath), notNull());
+        verify(distributor, never()).getSignatures(syncPath, BUFFER_SIZE);
+        verify(distributor, never()).transfer(eq(syncPath), notNull());
+        verify(channel, timeout(5000)).close();
+        assertEquals(EXPECTED_CHECKSUM, toHexString(checksum));
+    }
+
+    @Test
+    public void modifyNewFile() throws Exception {
+        when(config.deltaBlockSize()).thenReturn(BUFFER_SIZE);
+        when(distributor.getChecksum(syncPath)).thenReturn(new byte[0]);
+        trigger.modify(regularFile, DIFFERENT_CHECKSUM);
+        verify(distributor, timeout(5000)).store(eq(syncPath), notNull());
+        verify(distributor, never()).getSignatures(syncPath, BUFFER_SIZE);
+    }
+
+    @Test
+    public void modifyChecksumUnknown() throws Exception {
+        trigger.modify(regularFile);
+        verify(distributor, timeout(5000)).store(eq(syncPath), notNull());
+        assertEquals(EXPECTED_CHECKSUM, toHexString(checksum));
+    }
+
+    @Test
+    public void modifyWhileReplicating() throws Exception {
+        when(regularFile.startReplication()).thenReturn(false);
+        trigger.modify(regularFile, DIFFERENT_CHECKSUM);
+        sleep(1000);
+        verify(distributor, never()).tryLock(syncPath);
+    }
+
+    @Test
+    public void modifiedDuringReplication() throws Exception {
+        when(regularFile.finishReplication()).thenReturn(true, false);
+        when(channel.read(notNull())).thenReturn(-1);
+        trigger.modify(regularFile, DIFFERENT_CHECKSUM);
+        verify(distributor, timeout(5000).times(2)).store(eq(syncPath), notNull());
+        verify(regularFile, timeout(5000).times(2)).finishReplication();
+        verify(regularFile).startReplication();
+    }
+
+    @Test
+    public void modifyDuplicate() throws Exception {
+        when(config.deduplicate()).thenReturn(true);
+        when(distributor.duplicate(syncPath, DIFFERENT_CHECKSUM)).thenReturn(true);
+        trigger.modify(regularFile, DIFFERENT_CHECKSUM);
+        verify(distributor, timeout(5000)).store(syncPath, DIFFERENT_CHECKSUM);
+        verify(distributor, never()).transfer(eq(syncPath), notNull());
+    }
+
+    @Test
+    public void modifyDuplicateUnknownContent() throws Exception {
+        when(config.deduplicate()).thenReturn(true);
+        trigger.modify(regularFile, DIFFERENT_CHECKSUM);
+        verify(distributor, timeout(5000)).store(eq(syncPath), notNull());
+        verify(distributor).duplicate(syncPath, DIFFERENT_CHECKSUM);
+        verify(channel, timeout(5000)).close();
+        assertEquals(EXPECTED_CHECKSUM, toHexString(checksum));
+    }
+
+    @Test
+    public void modifyDuplicateFailed() throws Exception {
+        final IOException expected = new IOException();
+        when(config.deduplicate()).thenReturn(true);
+        when(distributor.duplicate(syncPath, DIFFERENT_CHECKSUM)).thenThrow(expected);
+        trigger.modify(regularFile, DIFFERENT_CHECKSUM);
+        verify(distributor, timeout(5000)).store(eq(syncPath), notNull());
+        verify(distributor).discard(syncPath, expected);
+        verify(channel, timeout(5000)).close();
+        assertEquals(EXPECTED_CHECKSUM, toHexString(checksum));
+    }
+
+    @Test
+    public void modifyDeduplicationDisabled() throws Exception {
+        trigger.modify(regularFile, DIFFERENT_CHECKSUM);
+        verify(distributor, timeout(5000)).store(eq(syncPath), notNull());
+        verify(distributor, never()).duplicate(eq(syncPath), notNull());
+    }
+
     @Test
     public void modifyNothingChanged() throws Exception {
         trigger.modify(regularFile, DISTRIBUTOR_CHECKSUM);
@@ -0,0 +1,159 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.source.fs.trigger;
+
+import ch.sourcepond.io.fssync.common.api.SyncPath;
+import ch.sourcepond.io.fssync.distributor.api.BatchFile;
+import ch.sourcepond.io.fssync.distributor.api.Distributor;
+import ch.sourcepond.io.fssync.source.fs.Config;
+import ch.sourcepond.io.fssync.source.fs.fswatch.DigestingChannel;
+import ch.sourcepond.io.fssync.source.fs.fswatch.RegularFile;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.notNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SmallFileBatcherTest {
+    private static final byte[] FIRST_CONTENT = new byte[]{1, 2, 3};
+    private static final byte[] SECOND_CONTENT = new byte[]{4, 5};
+    private static final byte[] EXPECTED_CHECKSUM = new byte[]{9};
+    private final Distributor distributor = mock(Distributor.class);
+    private final ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+    private final Config config = mock(Config.class);
+    private final Consumer<RegularFile> fallback = mock(Consumer.class);
+    private final RegularFile first = mock(RegularFile.class);
+    private final RegularFile second = mock(RegularFile.class);
+    private final SyncPath firstPath = mock(SyncPath.class);
+    private final SyncPath secondPath = mock(SyncPath.class);
+    private final SmallFileBatcher batcher = new SmallFileBatcher(distributor, executor, config, fallback);
+
+    @Before
+    public void setup() throws IOException {
+        when(config.batchMaxSize()).thenReturn(100L);
+        when(config.batchDelay()).thenReturn(50L);
+        when(config.batchDelayUnit()).thenReturn(MILLISECONDS);
+        setupFile(first, firstPath, FIRST_CONTENT);
+        setupFile(second, secondPath, SECOND_CONTENT);
+    }
+
+    private static void setupFile(final RegularFile pFile, final SyncPath pPath, final byte[] pContent) throws IOException {
+        final DigestingChannel channel = mock(DigestingChannel.class);
+        when(pFile.getSyncPath()).thenReturn(pPath);
+        when(pFile.startDigest()).thenReturn(channel);
+        when(channel.digest()).thenReturn(EXPECTED_CHECKSUM);
+
+        // Behave like DigestingChannel: the buffer is consumed after reading
+        final boolean[] read = new boolean[1];
+        when(channel.read(notNull())).thenAnswer(inv -> {
+            if (read[0]) {
+                return -1;
+            }
+            read[0] = true;
+            final ByteBuffer buffer = inv.getArgument(0);
+            buffer.put(pContent).flip();
+            buffer.position(buffer.limit());
+            return pContent.length;
+        });
+    }
+
+    @Test
+    public void addSchedulesFlushOnce() {
+        batcher.add(first, FIRST_CONTENT.length);
+        batcher.add(second, SECOND_CONTENT.length);
+        verify(executor).schedule(any(Runnable.class), eq(50L), eq(MILLISECONDS));
+        verify(executor, never()).execute(any());
+    }
+
+    @Test
+    public void addFlushesWhenFull() {
+        batcher.add(first, 100);
+        verify(executor).execute(any());
+    }
+
+    @Test
+    public void flush() throws IOException {
+        batcher.add(first, FIRST_CONTENT.length);
+        batcher.add(second, SECOND_CONTENT.length);
+        batcher.add(first, FIRST_CONTENT.length);
+        batcher.flush();
+        verify(distributor).batch(argThat(files -> {
+            final Collection<BatchFile> batch = files;
+            if (batch.size() != 2) {
+                return false;
+            }
+            final Iterator<BatchFile> it = batch.iterator();
+            final BatchFile firstFile = it.next();
+            final BatchFile secondFile = it.next();
+            assertSame(firstPath, firstFile.getPath());
+            assertArrayEquals(FIRST_CONTENT, firstFile.getData());
+            assertArrayEquals(EXPECTED_CHECKSUM, firstFile.getChecksum());
+            assertSame(secondPath, secondFile.getPath());
+            assertArrayEquals(SECOND_CONTENT, secondFile.getData());
+            return true;
+        }));
+        verify(fallback, never()).accept(any());
+
+        // Nothing left to flush
+        batcher.flush();
+        verify(distributor).batch(any());
+    }
+
+    @Test
+    public void flushUnreadableFile() throws IOException {
+        final IOException expected = new IOException();
+        doThrow(expected).when(first).startDigest();
+        batcher.add(first, FIRST_CONTENT.length);
+        batcher.add(second, SECOND_CONTENT.length);
+        batcher.flush();
+        verify(fallback).accept(first);
+        verify(distributor).batch(argThat(files -> files.size() == 1));
+    }
+
+    @Test
+    public void flushBatchFailed() throws IOException {
+        doThrow(IOException.class).when(distributor).batch(any());
+        batcher.add(first, FIRST_CONTENT.length);
+        batcher.add(second, SECOND_CONTENT.length);
+        batcher.flush();
+        verify(fallback).accept(first);
+        verify(fallback).accept(second);
+    }
+
+    @Test
+    public void addAfterFlushSchedulesAgain() {
+        batcher.add(first, FIRST_CONTENT.length);
+        batcher.flush();
+        batcher.add(second, SECOND_CONTENT.length);
+        verify(executor, times(2)).schedule(any(Runnable.class), eq(50L), eq(MILLISECONDS));
+    }
+}
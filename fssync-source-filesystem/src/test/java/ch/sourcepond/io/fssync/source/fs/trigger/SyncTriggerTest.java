@@ -44,7 +44,9 @@ public class SyncTriggerTest {
     private final SyncPath syncPath = mock(SyncPath.class);
     private final RegularFile regularFile = mock(RegularFile.class);
     private final SyncTriggerFunction syncTriggerFunction = mock(SyncTriggerFunction.class);
-    private final SyncTrigger trigger = new SyncTrigger(executor, distributor, config, regularFile, syncTriggerFunction);
+    private final Runnable onDone = mock(Runnable.class);
+    private final SyncTrigger trigger = new SyncTrigger(executor, distributor, config, regularFile, syncTriggerFunction,
+            onDone);
 
     @Before
     public void setup() throws Exception {
@@ -59,6 +61,7 @@ public class SyncTriggerTest {
         order.verify(distributor).tryLock(syncPath);
         order.verify(syncTriggerFunction).process(regularFile);
         order.verify(distributor).unlock(syncPath);
+        verify(onDone).run();
     }
 
     @Test
@@ -68,8 +71,10 @@ public class SyncTriggerTest {
         when(config.retryDelayUnit()).thenReturn(EXPECTED_UNIT);
         trigger.run();
         verify(executor).schedule(trigger, EXPECTED_DELAY, EXPECTED_UNIT);
+        verifyZeroInteractions(onDone);
         trigger.run();
         verifyNoMoreInteractions(executor);
+        verify(onDone).run();
     }
 
     @Test
@@ -77,5 +82,15 @@ public class SyncTriggerTest {
         doThrow(IOException.class).when(distributor).tryLock(syncPath);
         trigger.run();
         verifyZeroInteractions(syncTriggerFunction, executor);
+        verify(onDone).run();
+    }
+
+    @Test
+    public void runProcessingFailed() throws Exception {
+        when(distributor.tryLock(syncPath)).thenReturn(true);
+        doThrow(IOException.class).when(syncTriggerFunction).process(regularFile);
+        trigger.run();
+        verify(distributor).unlock(syncPath);
+        verify(onDone).run();
     }
 }
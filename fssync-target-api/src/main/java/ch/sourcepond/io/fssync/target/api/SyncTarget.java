@@ -13,10 +13,14 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.target.api;
 
+import ch.sourcepond.io.fssync.common.api.BlockSignature;
+import ch.sourcepond.io.fssync.common.api.Chunk;
 import ch.sourcepond.io.fssync.common.api.SyncPath;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.function.Consumer;
 
 public interface SyncTarget {
 
@@ -42,6 +46,77 @@ public interface SyncTarget {
      */
     void transfer(NodeInfo pNodeInfo, SyncPath pPath, ByteBuffer pBuffer) throws IOException;
 
+    /**
+     * Calculates the signatures of all blocks of the file currently stored at the path specified and passes them
+     * to the collector specified. If the file does not exist, an empty collection is passed. After this method has
+     * been called, the data received through {@link #transfer(NodeInfo, SyncPath, ByteBuffer)} and
+     * {@link #copy(NodeInfo, SyncPath, long, int)} replaces the current file when it is stored. This method must be
+     * called before any data has been transferred.
+     *
+     * @param pNodeInfo  Node which sent the request
+     * @param pPath      Locked path
+     * @param pBlockSize Size of a block in bytes
+     * @param pCollector Collector which receives the signatures
+     */
+    void signatures(NodeInfo pNodeInfo, SyncPath pPath, int pBlockSize, Consumer<Collection<BlockSignature>> pCollector) throws IOException;
+
+    /**
+     * Appends the region specified of the file currently stored at the path specified to the data received. This
+     * is only allowed after {@link #signatures(NodeInfo, SyncPath, int, Consumer)} has been called.
+     *
+     * @param pNodeInfo Node which sent the request
+     * @param pPath     Locked path
+     * @param pOffset   Start position of the region in the current file
+     * @param pLength   Length of the region
+     */
+    void copy(NodeInfo pNodeInfo, SyncPath pPath, long pOffset, int pLength) throws IOException;
+
+    /**
+     * Uses the content of the file currently stored at the source path specified as the data received for the locked
+     * path. The content must match the SHA-256 checksum specified, otherwise an {@link IOException} is thrown and
+     * nothing has been received. After the content has been received, it replaces the file at the locked path when
+     * {@link #store(NodeInfo, SyncPath)} is called. This method must be called before any data has been received.
+     *
+     * @param pNodeInfo Node which sent the request
+     * @param pPath     Locked path
+     * @param pSource   Path of the file to copy, not locked
+     * @param pChecksum Expected SHA-256 checksum of the file to copy
+     */
+    void duplicate(NodeInfo pNodeInfo, SyncPath pPath, SyncPath pSource, byte[] pChecksum) throws IOException;
+
+    /**
+     * Passes the chunks specified which are stored in the chunk store of this target to the collector specified. A
+     * target without a chunk store passes an empty collection. Chunks passed to the collector must stay available
+     * until the locked path is stored or unlocked.
+     *
+     * @param pNodeInfo  Node which sent the request
+     * @param pPath      Locked path
+     * @param pChunks    Chunks to look up
+     * @param pCollector Collector which receives the known chunks
+     */
+    void chunks(NodeInfo pNodeInfo, SyncPath pPath, Collection<Chunk> pChunks, Consumer<Collection<Chunk>> pCollector) throws IOException;
+
+    /**
+     * Receives the data of the chunk specified like {@link #transfer(NodeInfo, SyncPath, ByteBuffer)}, and adds it to
+     * the chunk store of this target.
+     *
+     * @param pNodeInfo Node which sent the request
+     * @param pPath     Locked path
+     * @param pChunk    Chunk which identifies the data
+     * @param pBuffer   Data of the chunk
+     */
+    void transferChunk(NodeInfo pNodeInfo, SyncPath pPath, Chunk pChunk, ByteBuffer pBuffer) throws IOException;
+
+    /**
+     * Appends the chunk specified from the chunk store of this target to the data received. Only chunks which have
+     * been passed to the collector of {@link #chunks(NodeInfo, SyncPath, Collection, Consumer)} can be copied.
+     *
+     * @param pNodeInfo Node which sent the request
+     * @param pPath     Locked path
+     * @param pChunk    Chunk to append
+     */
+    void copyChunk(NodeInfo pNodeInfo, SyncPath pPath, Chunk pChunk) throws IOException;
+
     void discard(NodeInfo pNodeInfo, SyncPath pPath, IOException pFailure) throws IOException;
 
     void store(NodeInfo pNodeInfo, SyncPath pPath) throws IOException;
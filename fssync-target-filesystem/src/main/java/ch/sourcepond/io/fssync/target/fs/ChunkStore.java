@@ -0,0 +1,252 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.target.fs;
+
+import ch.sourcepond.io.fssync.common.api.Chunk;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static ch.sourcepond.io.fssync.common.api.BlockSignature.newStrongDigest;
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.getLastModifiedTime;
+import static java.nio.file.Files.isDirectory;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.newDirectoryStream;
+import static java.nio.file.Files.setLastModifiedTime;
+import static java.nio.file.Files.size;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.nio.file.attribute.FileTime.fromMillis;
+import static java.security.MessageDigest.isEqual;
+import static java.util.Comparator.comparing;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Local store of content-defined chunks (see {@link Chunk}). Every chunk is stored in its own file which is named
+ * after the digest of the chunk. The modification time of a chunk file is updated whenever the chunk is looked up, and
+ * the least recently used chunks are evicted when the store exceeds its maximum size. Chunks which have been looked
+ * up within the retention period are never evicted, because a source which is transferring a file may still copy
+ * them.
+ */
+class ChunkStore {
+    private static final Logger LOG = getLogger(ChunkStore.class);
+    private static final String TMP_SUFFIX = ".tmp";
+    private final Path directoryOrNull;
+    private final long maxSize;
+    private final long retentionMillis;
+    private final AtomicLong size = new AtomicLong();
+
+    ChunkStore(final Path pDirectoryOrNull, final long pMaxSize, final long pRetentionMillis) {
+        directoryOrNull = pDirectoryOrNull;
+        maxSize = pMaxSize;
+        retentionMillis = pRetentionMillis;
+    }
+
+    private interface ChunkFileVisitor {
+        void visit(Path pChunkFile) throws IOException;
+    }
+
+    private void visitChunkFiles(final ChunkFileVisitor pVisitor) throws IOException {
+        try (final DirectoryStream<Path> prefixes = newDirectoryStream(directoryOrNull)) {
+            for (final Path prefix : prefixes) {
+                if (isDirectory(prefix)) {
+                    try (final DirectoryStream<Path> chunkFiles = newDirectoryStream(prefix)) {
+                        for (final Path chunkFile : chunkFiles) {
+                            pVisitor.visit(chunkFile);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the store directory if necessary and determines the current size of the store. Left-over temporary
+     * files of an interrupted store operation are deleted.
+     */
+    void open() throws IOException {
+        if (directoryOrNull != null) {
+            createDirectories(directoryOrNull);
+            visitChunkFiles(chunkFile -> {
+                if (chunkFile.getFileName().toString().endsWith(TMP_SUFFIX)) {
+                    deleteIfExists(chunkFile);
+                } else {
+                    size.addAndGet(size(chunkFile));
+                }
+            });
+        }
+    }
+
+    boolean isEnabled() {
+        return directoryOrNull != null;
+    }
+
+    long getSize() {
+        return size.get();
+    }
+
+    private Path resolve(final Chunk pChunk) {
+        final String name = pChunk.toHexString();
+        return directoryOrNull.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    /**
+     * Returns the chunks specified which are stored in this store, and protects them from being evicted during the
+     * retention period.
+     */
+    Collection<Chunk> retain(final Collection<Chunk> pChunks) throws IOException {
+        final List<Chunk> known = new ArrayList<>();
+        if (isEnabled()) {
+            final FileTime now = fromMillis(currentTimeMillis());
+            for (final Chunk chunk : pChunks) {
+                final Path chunkFile = resolve(chunk);
+                try {
+                    if (size(chunkFile) == chunk.getLength()) {
+                        setLastModifiedTime(chunkFile, now);
+                        known.add(chunk);
+                    }
+                } catch (final NoSuchFileException e) {
+                    // Unknown chunk, must be transferred
+                }
+            }
+        }
+        return known;
+    }
+
+    /**
+     * Adds the data specified to this store. The data must match the length and the digest of the chunk specified.
+     * The position of the buffer specified is not changed.
+     */
+    void store(final Chunk pChunk, final ByteBuffer pData) throws IOException {
+        if (pData.remaining() != pChunk.getLength()) {
+            throw new IOException(format("Length of the data received does not match chunk %s", pChunk));
+        }
+        final MessageDigest digest = newStrongDigest();
+        digest.update(pData.duplicate());
+        if (!isEqual(pChunk.getDigest(), digest.digest())) {
+            throw new IOException(format("Digest of the data received does not match chunk %s", pChunk));
+        }
+
+        if (isEnabled()) {
+            final Path chunkFile = resolve(pChunk);
+            if (exists(chunkFile)) {
+                setLastModifiedTime(chunkFile, fromMillis(currentTimeMillis()));
+                return;
+            }
+            createDirectories(chunkFile.getParent());
+            final Path tmpFile = chunkFile.resolveSibling(chunkFile.getFileName() + TMP_SUFFIX);
+            try (final FileChannel out = FileChannel.open(tmpFile, CREATE, TRUNCATE_EXISTING, WRITE)) {
+                final ByteBuffer data = pData.duplicate();
+                while (data.hasRemaining()) {
+                    out.write(data);
+                }
+            }
+            move(tmpFile, chunkFile, REPLACE_EXISTING, ATOMIC_MOVE);
+            if (size.addAndGet(pChunk.getLength()) > maxSize) {
+                trim();
+            }
+        }
+    }
+
+    /**
+     * Writes the data of the chunk specified to the channel specified.
+     */
+    void copy(final Chunk pChunk, final WritableByteChannel pTarget) throws IOException {
+        if (!isEnabled()) {
+            throw new IOException(format("Chunk %s cannot be copied because no chunk store is configured", pChunk));
+        }
+        try (final FileChannel in = FileChannel.open(resolve(pChunk), READ)) {
+            long copied = 0;
+            while (copied < pChunk.getLength()) {
+                final long count = in.transferTo(copied, pChunk.getLength() - copied, pTarget);
+                if (count <= 0) {
+                    throw new IOException(format("Chunk %s is incomplete", pChunk));
+                }
+                copied += count;
+            }
+        } catch (final NoSuchFileException e) {
+            throw new IOException(format("Chunk %s is not stored", pChunk), e);
+        }
+    }
+
+    private static final class ChunkFile {
+        private final Path path;
+        private final long size;
+        private final long lastModified;
+
+        private ChunkFile(final Path pPath) throws IOException {
+            path = pPath;
+            size = size(pPath);
+            lastModified = getLastModifiedTime(pPath).toMillis();
+        }
+    }
+
+    /**
+     * Evicts the least recently used chunks until the store does not exceed its maximum size anymore.
+     */
+    synchronized void trim() {
+        if (size.get() <= maxSize) {
+            return;
+        }
+        final List<ChunkFile> chunkFiles = new ArrayList<>();
+        try {
+            visitChunkFiles(chunkFile -> {
+                try {
+                    chunkFiles.add(new ChunkFile(chunkFile));
+                } catch (final NoSuchFileException e) {
+                    // Temporary file which has been moved in the meantime
+                }
+            });
+        } catch (final IOException e) {
+            LOG.warn(e.getMessage(), e);
+            return;
+        }
+        chunkFiles.sort(comparing(f -> f.lastModified));
+
+        final long protectedSince = currentTimeMillis() - retentionMillis;
+        for (final ChunkFile chunkFile : chunkFiles) {
+            if (size.get() <= maxSize || chunkFile.lastModified >= protectedSince) {
+                break;
+            }
+            try {
+                if (!chunkFile.path.getFileName().toString().endsWith(TMP_SUFFIX) && deleteIfExists(chunkFile.path)) {
+                    size.addAndGet(-chunkFile.size);
+                }
+            } catch (final IOException e) {
+                LOG.warn(e.getMessage(), e);
+            }
+        }
+    }
+}
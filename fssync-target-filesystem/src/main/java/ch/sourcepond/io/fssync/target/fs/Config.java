@@ -41,4 +41,12 @@ public @interface Config {
 
     @AttributeDefinition
     TimeUnit forceUnlockSchedulePeriodUnit() default SECONDS;
+
+    @AttributeDefinition(description = "Directory where received content-defined chunks are stored, so they do not " +
+            "need to be transferred again. Empty to disable the chunk store.")
+    String chunkStoreDir() default "";
+
+    @AttributeDefinition(min = "0", description = "Size in bytes the chunk store may grow to before the least " +
+            "recently used chunks are evicted")
+    long chunkStoreMaxSize() default 1L << 30;
 }
@@ -13,6 +13,9 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.target.fs;
 
+import ch.sourcepond.io.fssync.common.api.BlockSignature;
+import ch.sourcepond.io.fssync.common.api.Chunk;
+import ch.sourcepond.io.fssync.common.api.RollingChecksum;
 import ch.sourcepond.io.fssync.target.api.NodeInfo;
 import ch.sourcepond.io.fssync.common.api.SyncPath;
 import org.slf4j.Logger;
@@ -23,20 +26,39 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 
+import static ch.sourcepond.io.fssync.common.api.BlockSignature.newStrongDigest;
 import static java.lang.String.format;
+import static java.nio.ByteBuffer.allocate;
+import static java.nio.channels.FileChannel.open;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.move;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.security.MessageDigest.isEqual;
 import static java.time.Instant.now;
 import static org.slf4j.LoggerFactory.getLogger;
 
 class FileHandle implements Closeable {
     private static final Logger LOG = getLogger(FileHandle.class);
+    private static final int DUPLICATE_BUFFER_SIZE = 65536;
     private final TargetDirectory syncTarget;
     private final NodeInfo nodeInfo;
     private final SyncPath syncPath;
     private final Path targetFile;
     private final FileChannel channel;
     private final Instant openSince;
+    private Path patchFile;
+    private FileChannel patchChannel;
+    private boolean transferred;
     private boolean closed;
 
     public FileHandle(final TargetDirectory pSyncTarget,
@@ -77,15 +99,166 @@ class FileHandle implements Closeable {
         }
     }
 
+    private int readBlock(final ByteBuffer pBuffer, final long pOffset) throws IOException {
+        pBuffer.clear();
+        while (pBuffer.hasRemaining() && channel.read(pBuffer, pOffset + pBuffer.position()) != -1) {
+            // Read until the block is complete or the end of the file has been reached
+        }
+        return pBuffer.position();
+    }
+
+    /**
+     * Calculates the block signatures of the current file and switches this handle into patch mode: all data
+     * received afterwards is written into a hidden sibling file which replaces the current file on
+     * {@link #store()}. This way, blocks of the current file can be copied (see {@link #copy(long, int)}) while
+     * the new content is being received.
+     */
+    public synchronized List<BlockSignature> signatures(final int pBlockSize) throws IOException {
+        checkOpen();
+        if (transferred || patchChannel != null) {
+            throw new IOException(format("Signatures of %s must be calculated before any data is received", targetFile));
+        }
+
+        final List<BlockSignature> signatures = new ArrayList<>();
+        final RollingChecksum weak = new RollingChecksum();
+        final MessageDigest strong = newStrongDigest();
+        final ByteBuffer block = allocate(pBlockSize);
+        long offset = 0;
+        int length;
+        while ((length = readBlock(block, offset)) > 0) {
+            weak.reset();
+            weak.update(block.array(), 0, length);
+            strong.update(block.array(), 0, length);
+            signatures.add(new BlockSignature(offset, length, weak.getValue(), strong.digest()));
+            offset += length;
+        }
+
+        openPatch();
+        return signatures;
+    }
+
+    private void openPatch() throws IOException {
+        patchFile = targetFile.resolveSibling(format(".%s.fssync", targetFile.getFileName()));
+        patchChannel = open(patchFile, CREATE, TRUNCATE_EXISTING, WRITE);
+    }
+
+    /**
+     * Switches this handle into patch mode (see {@link #signatures(int)}) and receives the content of the source file
+     * specified. If the content does not match the checksum specified, the patch is discarded and an exception is
+     * thrown; the handle can receive data afterwards as if this method had not been called.
+     */
+    public synchronized void duplicate(final Path pSource, final byte[] pChecksum) throws IOException {
+        checkOpen();
+        if (transferred || patchChannel != null) {
+            throw new IOException(format("%s must be duplicated before any data is received", targetFile));
+        }
+
+        openPatch();
+        boolean duplicated = false;
+        try (final FileChannel source = open(pSource, READ)) {
+            final MessageDigest digest = newStrongDigest();
+            final ByteBuffer buffer = allocate(DUPLICATE_BUFFER_SIZE);
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    patchChannel.write(buffer);
+                }
+                buffer.clear();
+            }
+            if (!isEqual(pChecksum, digest.digest())) {
+                throw new IOException(format("Content of %s does not match the expected checksum", pSource));
+            }
+            transferred = true;
+            duplicated = true;
+        } finally {
+            if (!duplicated) {
+                resetPatch();
+            }
+        }
+    }
+
+    /**
+     * Drops the data received in patch mode (see {@link #signatures(int)} and {@link #duplicate(Path, byte[])}); the
+     * handle can receive data afterwards as if nothing had been received. Data which has been written into the current
+     * file directly cannot be dropped.
+     */
+    public synchronized void discard() throws IOException {
+        checkOpen();
+        if (patchChannel != null) {
+            resetPatch();
+            transferred = false;
+        }
+    }
+
+    public synchronized void copy(final long pOffset, final int pLength) throws IOException {
+        checkOpen();
+        if (patchChannel == null) {
+            throw new IOException(format("Blocks of %s cannot be copied because no signatures have been calculated", targetFile));
+        }
+        long copied = 0;
+        while (copied < pLength) {
+            final long count = channel.transferTo(pOffset + copied, pLength - copied, patchChannel);
+            if (count <= 0) {
+                throw new IOException(format("Region [offset: %d, length: %d] exceeds the size of %s", pOffset, pLength, targetFile));
+            }
+            copied += count;
+        }
+    }
+
+    /**
+     * Appends the chunk specified from the chunk store specified to the data received.
+     */
+    public synchronized void copyChunk(final ChunkStore pChunkStore, final Chunk pChunk) throws IOException {
+        checkOpen();
+        transferred = true;
+        pChunkStore.copy(pChunk, patchChannel == null ? channel : patchChannel);
+    }
+
     public synchronized void transfer(final ByteBuffer pBuffer) throws IOException {
         checkOpen();
-        channel.write(pBuffer);
+        transferred = true;
+        (patchChannel == null ? channel : patchChannel).write(pBuffer);
+    }
+
+    /**
+     * Makes the received data visible and closes this handle.
+     */
+    public synchronized void store() throws IOException {
+        checkOpen();
+        try {
+            if (patchChannel != null) {
+                patchChannel.close();
+                move(patchFile, targetFile, REPLACE_EXISTING, ATOMIC_MOVE);
+            }
+        } finally {
+            close();
+        }
     }
 
     public NodeInfo getNodeInfo() {
         return nodeInfo;
     }
 
+    private void discardPatch() {
+        if (patchFile != null) {
+            try {
+                patchChannel.close();
+
+                // The patch file does not exist anymore if it has been stored
+                deleteIfExists(patchFile);
+            } catch (final IOException e) {
+                LOG.warn(e.getMessage(), e);
+            }
+        }
+    }
+
+    private void resetPatch() {
+        discardPatch();
+        patchFile = null;
+        patchChannel = null;
+    }
+
     @Override
     public synchronized void close() {
         if (!closed) {
@@ -95,6 +268,7 @@ class FileHandle implements Closeable {
             } catch (final IOException e) {
                 LOG.warn(e.getMessage(), e);
             } finally {
+                discardPatch();
                 syncTarget.remove(syncPath);
             }
         }
@@ -13,6 +13,8 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.target.fs;
 
+import ch.sourcepond.io.fssync.common.api.BlockSignature;
+import ch.sourcepond.io.fssync.common.api.Chunk;
 import ch.sourcepond.io.fssync.common.api.SyncPath;
 import ch.sourcepond.io.fssync.target.api.NodeInfo;
 import ch.sourcepond.io.fssync.target.api.SyncTarget;
@@ -27,11 +29,13 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.FileSystem;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
 
 import static java.lang.String.format;
 import static java.nio.channels.FileChannel.open;
@@ -40,6 +44,7 @@ import static java.nio.file.Files.createDirectories;
 import static java.nio.file.Files.isDirectory;
 import static java.nio.file.Files.isSameFile;
 import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
 import static java.nio.file.StandardOpenOption.WRITE;
 import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -55,6 +60,7 @@ public class TargetDirectory implements SyncTarget {
     private final FileSystem fs;
     private final ScheduledExecutorService watchDogExecutor;
     private volatile Config config;
+    private volatile ChunkStore chunkStore;
     private Path syncDir;
 
     public TargetDirectory() {
@@ -62,7 +68,7 @@ public class TargetDirectory implements SyncTarget {
         watchDogExecutor = newSingleThreadScheduledExecutor();
     }
 
-    private FileHandle createHandle(final NodeInfo pNodeInfo, final SyncPath pPath) throws IOException {
+    private Path resolve(final NodeInfo pNodeInfo, final SyncPath pPath) throws IOException {
         final Path syncDir = fs.getPath(pPath.getSyncDir());
         final Path targetFile = syncDir.resolve(pPath.getRelativePath());
 
@@ -70,12 +76,17 @@ public class TargetDirectory implements SyncTarget {
             throw new IOException(format("%s is not relative! File-handle could not be created for node-info %s and sync-path %s",
                     pPath.getRelativePath(), pNodeInfo, pPath));
         }
+        return targetFile;
+    }
+
+    private FileHandle createHandle(final NodeInfo pNodeInfo, final SyncPath pPath) throws IOException {
+        final Path targetFile = resolve(pNodeInfo, pPath);
 
         if (!isDirectory(targetFile.getParent())) {
             createDirectories(targetFile.getParent());
         }
 
-        final FileChannel channel = open(targetFile, CREATE, WRITE);
+        final FileChannel channel = open(targetFile, CREATE, READ, WRITE);
         try {
             channel.lock();
         } catch (final Exception e) {
@@ -133,15 +144,54 @@ public class TargetDirectory implements SyncTarget {
         process(pNodeInfo, pPath, () -> getHandle(pNodeInfo, pPath).transfer(pBuffer));
     }
 
+    @Override
+    public void signatures(final NodeInfo pNodeInfo, final SyncPath pPath, final int pBlockSize,
+                           final Consumer<Collection<BlockSignature>> pCollector) throws IOException {
+        process(pNodeInfo, pPath, () -> pCollector.accept(getHandle(pNodeInfo, pPath).signatures(pBlockSize)));
+    }
+
+    @Override
+    public void copy(final NodeInfo pNodeInfo, final SyncPath pPath, final long pOffset, final int pLength) throws IOException {
+        process(pNodeInfo, pPath, () -> getHandle(pNodeInfo, pPath).copy(pOffset, pLength));
+    }
+
+    @Override
+    public void duplicate(final NodeInfo pNodeInfo, final SyncPath pPath, final SyncPath pSource, final byte[] pChecksum) throws IOException {
+        process(pNodeInfo, pPath, () -> getHandle(pNodeInfo, pPath).duplicate(resolve(pNodeInfo, pSource), pChecksum));
+    }
+
+    @Override
+    public void chunks(final NodeInfo pNodeInfo, final SyncPath pPath, final Collection<Chunk> pChunks,
+                       final Consumer<Collection<Chunk>> pCollector) throws IOException {
+        process(pNodeInfo, pPath, () -> pCollector.accept(chunkStore.retain(pChunks)));
+    }
+
+    @Override
+    public void transferChunk(final NodeInfo pNodeInfo, final SyncPath pPath, final Chunk pChunk, final ByteBuffer pBuffer) throws IOException {
+        process(pNodeInfo, pPath, () -> {
+            chunkStore.store(pChunk, pBuffer);
+            getHandle(pNodeInfo, pPath).transfer(pBuffer);
+        });
+    }
+
+    @Override
+    public void copyChunk(final NodeInfo pNodeInfo, final SyncPath pPath, final Chunk pChunk) throws IOException {
+        process(pNodeInfo, pPath, () -> getHandle(pNodeInfo, pPath).copyChunk(chunkStore, pChunk));
+    }
+
     @Override
     public void discard(final NodeInfo pNodeInfo, final SyncPath pPath, final IOException pFailure) throws IOException {
-        process(pNodeInfo, pPath, () -> LOG.warn(format("Discard %s because fswatch-node %s transmitted a failure",
-                getHandle(pNodeInfo, pPath), pNodeInfo.getSender()), pFailure));
+        process(pNodeInfo, pPath, () -> {
+            final FileHandle handle = getHandle(pNodeInfo, pPath);
+            LOG.warn(format("Discard %s because fswatch-node %s transmitted a failure", handle,
+                    pNodeInfo.getSender()), pFailure);
+            handle.discard();
+        });
     }
 
     @Override
     public void store(final NodeInfo pNodeInfo, final SyncPath pPath) throws IOException {
-        process(pNodeInfo, pPath, () -> getHandle(pNodeInfo, pPath).close());
+        process(pNodeInfo, pPath, () -> getHandle(pNodeInfo, pPath).store());
     }
 
     @Override
@@ -160,13 +210,18 @@ public class TargetDirectory implements SyncTarget {
     }
 
     @Activate
-    public void activate(final Config pConfig) {
+    public void activate(final Config pConfig) throws IOException {
+        // Chunks which have been reported as known must not be evicted while the source may still copy them
+        final ChunkStore store = new ChunkStore(pConfig.chunkStoreDir().isEmpty() ? null : fs.getPath(pConfig.chunkStoreDir()),
+                pConfig.chunkStoreMaxSize(), pConfig.forceUnlockTimoutUnit().toMillis(pConfig.forceUnlockTimeout()));
+        store.open();
         synchronized (SYNC_DIRS) {
             if (!SYNC_DIRS.add(pConfig.syncDir())) {
                 throw new IllegalArgumentException(format("Sync-dir %s is already used by another component!", pConfig.syncDir()));
             }
         }
         config = pConfig;
+        chunkStore = store;
         watchDogExecutor.scheduleAtFixedRate(() -> handles.values().removeIf(value -> value.closeExpired(config)),
                 pConfig.forceUnlockTimeout(),
                 pConfig.forceUnlockSchedulePeriod(),
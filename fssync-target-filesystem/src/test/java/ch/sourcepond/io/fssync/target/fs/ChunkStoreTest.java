@@ -0,0 +1,149 @@
+/*Copyright (C) 2017 Roland Hauser, <sourcepond@gmail.com>
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.*/
+package ch.sourcepond.io.fssync.target.fs;
+
+import ch.sourcepond.io.fssync.common.api.Chunk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+
+import static ch.sourcepond.io.fssync.common.api.BlockSignature.newStrongDigest;
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.lang.System.getProperty;
+import static java.nio.ByteBuffer.wrap;
+import static java.nio.channels.Channels.newChannel;
+import static java.nio.file.FileSystems.getDefault;
+import static java.nio.file.FileVisitResult.CONTINUE;
+import static java.nio.file.Files.delete;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.setLastModifiedTime;
+import static java.nio.file.Files.walkFileTree;
+import static java.nio.file.Files.write;
+import static java.nio.file.attribute.FileTime.fromMillis;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChunkStoreTest {
+    private static final byte[] FIRST_DATA = "first chunk".getBytes();
+    private static final byte[] SECOND_DATA = "second chunk".getBytes();
+    private final Chunk first = new Chunk(FIRST_DATA.length, newStrongDigest().digest(FIRST_DATA));
+    private final Chunk second = new Chunk(SECOND_DATA.length, newStrongDigest().digest(SECOND_DATA));
+    private final Path directory = getDefault().getPath(format("%s/build/testchunks", getProperty("user.dir")));
+    private ChunkStore store = new ChunkStore(directory, 1024, 0);
+
+    @Before
+    public void setup() throws IOException {
+        store.open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        walkFileTree(directory, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                delete(file);
+                return CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException exc) throws IOException {
+                delete(dir);
+                return CONTINUE;
+            }
+        });
+    }
+
+    private Path chunkFile(final Chunk pChunk) {
+        return directory.resolve(pChunk.toHexString().substring(0, 2)).resolve(pChunk.toHexString());
+    }
+
+    @Test
+    public void storeAndCopy() throws IOException {
+        store.store(first, wrap(FIRST_DATA));
+        assertEquals(FIRST_DATA.length, store.getSize());
+        assertEquals(asList(first), store.retain(asList(first, second)));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        store.copy(first, newChannel(out));
+        assertArrayEquals(FIRST_DATA, out.toByteArray());
+    }
+
+    @Test
+    public void storeDigestMismatch() throws IOException {
+        try {
+            store.store(first, wrap("other chunk".getBytes()));
+            fail("Exception expected");
+        } catch (final IOException expected) {
+            assertTrue(expected.getMessage().contains(first.toHexString()));
+        }
+        assertFalse(exists(chunkFile(first)));
+    }
+
+    @Test(expected = IOException.class)
+    public void copyUnknownChunk() throws IOException {
+        store.copy(first, newChannel(new ByteArrayOutputStream()));
+    }
+
+    @Test
+    public void open() throws IOException {
+        store.store(first, wrap(FIRST_DATA));
+        write(chunkFile(first).resolveSibling("left-over.tmp"), SECOND_DATA);
+        store = new ChunkStore(directory, 1024, 0);
+        store.open();
+        assertEquals(FIRST_DATA.length, store.getSize());
+        assertFalse(exists(chunkFile(first).resolveSibling("left-over.tmp")));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() throws IOException {
+        store = new ChunkStore(directory, FIRST_DATA.length + 1, 0);
+        store.store(first, wrap(FIRST_DATA));
+        setLastModifiedTime(chunkFile(first), fromMillis(currentTimeMillis() - 10000));
+        store.store(second, wrap(SECOND_DATA));
+        assertFalse(exists(chunkFile(first)));
+        assertTrue(exists(chunkFile(second)));
+        assertEquals(SECOND_DATA.length, store.getSize());
+    }
+
+    @Test
+    public void retainedChunksAreNotEvicted() throws IOException {
+        store = new ChunkStore(directory, 1, 60000);
+        store.store(first, wrap(FIRST_DATA));
+        store.store(second, wrap(SECOND_DATA));
+        final Collection<Chunk> known = store.retain(asList(first, second));
+        assertEquals(asList(first, second), known);
+    }
+
+    @Test
+    public void disabled() throws IOException {
+        store = new ChunkStore(null, 0, 0);
+        store.open();
+        store.store(first, wrap(FIRST_DATA));
+        assertTrue(store.retain(asList(first)).isEmpty());
+    }
+}
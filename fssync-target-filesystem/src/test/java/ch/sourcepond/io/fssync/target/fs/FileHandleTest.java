@@ -13,6 +13,8 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.target.fs;
 
+import ch.sourcepond.io.fssync.common.api.BlockSignature;
+import ch.sourcepond.io.fssync.common.api.RollingChecksum;
 import ch.sourcepond.io.fssync.target.api.NodeInfo;
 import ch.sourcepond.io.fssync.common.api.SyncPath;
 import org.junit.After;
@@ -24,7 +26,9 @@ import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.List;
 
+import static ch.sourcepond.io.fssync.common.api.BlockSignature.newStrongDigest;
 import static java.lang.String.format;
 import static java.lang.System.getProperty;
 import static java.lang.Thread.sleep;
@@ -32,8 +36,11 @@ import static java.nio.ByteBuffer.wrap;
 import static java.nio.file.FileSystems.getDefault;
 import static java.nio.file.Files.createDirectories;
 import static java.nio.file.Files.createFile;
+import static java.nio.file.Files.readAllBytes;
 import static java.nio.file.Files.readAllLines;
+import static java.nio.file.Files.write;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
@@ -57,10 +64,12 @@ public class FileHandleTest {
     }
 
     private static final String EXPECTED_CONTENT = "some content";
+    private static final String ORIGINAL_CONTENT = "0123456789";
     private final TargetDirectory syncTarget = mock(TargetDirectory.class);
     private final NodeInfo nodeInfo = mock(NodeInfo.class);
     private final SyncPath syncPath = mock(SyncPath.class);
     private final Path path = getDefault().getPath(format("%s/target/test.txt", getProperty("user.dir")));
+    private final Path patchPath = path.resolveSibling(".test.txt.fssync");
     private final Config config = mock(Config.class);
     private FileChannel channel;
     private FileHandle handle;
@@ -71,7 +80,7 @@ public class FileHandleTest {
         createFile(path);
         when(config.forceUnlockTimeout()).thenReturn(200L);
         when(config.forceUnlockTimoutUnit()).thenReturn(MILLISECONDS);
-        channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
         handle = new FileHandle(syncTarget, nodeInfo, syncPath, channel, path);
     }
 
@@ -81,6 +90,7 @@ public class FileHandleTest {
             channel.close();
         } finally {
             Files.deleteIfExists(path);
+            Files.deleteIfExists(patchPath);
         }
     }
 
@@ -133,6 +143,165 @@ public class FileHandleTest {
         }
     }
 
+    private static void assertSignature(final BlockSignature pSignature, final long pOffset, final String pBlock) {
+        final RollingChecksum weak = new RollingChecksum();
+        weak.update(pBlock.getBytes(), 0, pBlock.length());
+        assertEquals(pOffset, pSignature.getOffset());
+        assertEquals(pBlock.length(), pSignature.getLength());
+        assertEquals(weak.getValue(), pSignature.getWeak());
+        assertArrayEquals(newStrongDigest().digest(pBlock.getBytes()), pSignature.getStrong());
+    }
+
+    @Test
+    public void signatures() throws Exception {
+        write(path, ORIGINAL_CONTENT.getBytes());
+        final List<BlockSignature> signatures = handle.signatures(4);
+        assertEquals(3, signatures.size());
+        assertSignature(signatures.get(0), 0, "0123");
+        assertSignature(signatures.get(1), 4, "4567");
+        assertSignature(signatures.get(2), 8, "89");
+        assertTrue(Files.exists(patchPath));
+    }
+
+    @Test
+    public void signaturesAfterTransfer() throws Exception {
+        handle.transfer(wrap(EXPECTED_CONTENT.getBytes()));
+        try {
+            handle.signatures(4);
+            fail("Exception expected");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage().contains(path.toString()));
+        }
+    }
+
+    @Test
+    public void copyAndStore() throws Exception {
+        write(path, ORIGINAL_CONTENT.getBytes());
+        handle.signatures(4);
+        handle.copy(4, 4);
+        handle.transfer(wrap("ab".getBytes()));
+        handle.copy(0, 4);
+        handle.store();
+
+        assertEquals("4567ab0123", new String(readAllBytes(path)));
+        assertFalse(Files.exists(patchPath));
+        assertFalse(channel.isOpen());
+        verify(syncTarget).remove(syncPath);
+    }
+
+    @Test
+    public void copyWithoutSignatures() throws Exception {
+        try {
+            handle.copy(0, 4);
+            fail("Exception expected");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage().contains(path.toString()));
+        }
+    }
+
+    @Test
+    public void copyExceedsFile() throws Exception {
+        write(path, ORIGINAL_CONTENT.getBytes());
+        handle.signatures(4);
+        try {
+            handle.copy(8, 4);
+            fail("Exception expected");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage().contains(path.toString()));
+        }
+    }
+
+    @Test
+    public void duplicateAndStore() throws Exception {
+        final Path source = path.resolveSibling("source.txt");
+        try {
+            write(source, EXPECTED_CONTENT.getBytes());
+            write(path, ORIGINAL_CONTENT.getBytes());
+            handle.duplicate(source, newStrongDigest().digest(EXPECTED_CONTENT.getBytes()));
+            handle.store();
+            assertEquals(EXPECTED_CONTENT, new String(readAllBytes(path)));
+            assertEquals(EXPECTED_CONTENT, new String(readAllBytes(source)));
+            assertFalse(Files.exists(patchPath));
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    @Test
+    public void duplicateChecksumMismatch() throws Exception {
+        final Path source = path.resolveSibling("source.txt");
+        try {
+            write(source, ORIGINAL_CONTENT.getBytes());
+            try {
+                handle.duplicate(source, newStrongDigest().digest(EXPECTED_CONTENT.getBytes()));
+                fail("Exception expected");
+            } catch (final IOException e) {
+                assertTrue(e.getMessage().contains(source.toString()));
+            }
+            assertFalse(Files.exists(patchPath));
+
+            // The handle can still receive the content
+            handle.transfer(wrap(EXPECTED_CONTENT.getBytes()));
+            handle.store();
+            assertEquals(EXPECTED_CONTENT, new String(readAllBytes(path)));
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    @Test
+    public void discardDuplicate() throws Exception {
+        final Path source = path.resolveSibling("source.txt");
+        try {
+            write(source, EXPECTED_CONTENT.getBytes());
+            write(path, ORIGINAL_CONTENT.getBytes());
+            handle.duplicate(source, newStrongDigest().digest(EXPECTED_CONTENT.getBytes()));
+            handle.discard();
+            assertFalse(Files.exists(patchPath));
+
+            // The handle can calculate signatures and receive the content again
+            assertEquals(3, handle.signatures(4).size());
+            handle.copy(0, 4);
+            handle.transfer(wrap(EXPECTED_CONTENT.getBytes()));
+            handle.store();
+            assertEquals("0123" + EXPECTED_CONTENT, new String(readAllBytes(path)));
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    @Test
+    public void discardWithoutPatch() throws Exception {
+        handle.transfer(wrap(EXPECTED_CONTENT.getBytes()));
+        handle.discard();
+
+        // Data written into the file directly is kept
+        handle.close();
+        assertEquals(EXPECTED_CONTENT, new String(readAllBytes(path)));
+    }
+
+    @Test
+    public void duplicateAfterTransfer() throws Exception {
+        handle.transfer(wrap(EXPECTED_CONTENT.getBytes()));
+        try {
+            handle.duplicate(path, new byte[0]);
+            fail("Exception expected");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage().contains(path.toString()));
+        }
+    }
+
+    @Test
+    public void closeDiscardsPatch() throws Exception {
+        write(path, ORIGINAL_CONTENT.getBytes());
+        handle.signatures(4);
+        handle.transfer(wrap(EXPECTED_CONTENT.getBytes()));
+        handle.close();
+
+        assertEquals(ORIGINAL_CONTENT, new String(readAllBytes(path)));
+        assertFalse(Files.exists(patchPath));
+    }
+
     @Test
     public void getNodeInfo() {
         assertSame(nodeInfo, handle.getNodeInfo());
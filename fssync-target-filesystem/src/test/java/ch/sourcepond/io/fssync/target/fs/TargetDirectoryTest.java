@@ -13,6 +13,8 @@ See the License for the specific language governing permissions and
 limitations under the License.*/
 package ch.sourcepond.io.fssync.target.fs;
 
+import ch.sourcepond.io.fssync.common.api.BlockSignature;
+import ch.sourcepond.io.fssync.common.api.Chunk;
 import ch.sourcepond.io.fssync.common.api.SyncPath;
 import ch.sourcepond.io.fssync.target.api.NodeInfo;
 import org.junit.After;
@@ -27,8 +29,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
+import static ch.sourcepond.io.fssync.common.api.BlockSignature.newStrongDigest;
 import static java.lang.String.format;
 import static java.lang.System.getProperty;
 import static java.lang.Thread.sleep;
@@ -39,6 +44,7 @@ import static java.nio.file.Files.deleteIfExists;
 import static java.nio.file.Files.exists;
 import static java.nio.file.Files.isRegularFile;
 import static java.nio.file.Files.walkFileTree;
+import static java.util.Arrays.asList;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.Assert.assertEquals;
@@ -54,6 +60,7 @@ public class TargetDirectoryTest {
     private final SyncPath syncPath = new SyncPath(File.separator, format("%s/build/testsync", getProperty("user.dir")), "org/foo/bar.txt");
     private final Config config = mock(Config.class);
     private final Path expectedPath = getDefault().getPath(syncPath.getSyncDir(), syncPath.getRelativePath());
+    private final Path chunkStoreDir = getDefault().getPath(syncPath.getSyncDir(), ".chunks");
     private TargetDirectory syncTarget;
 
     @Before
@@ -61,6 +68,10 @@ public class TargetDirectoryTest {
         when(config.syncDir()).thenReturn(syncPath.toAbsolutePath());
         when(config.forceUnlockSchedulePeriod()).thenReturn(100L);
         when(config.forceUnlockSchedulePeriodUnit()).thenReturn(MILLISECONDS);
+        when(config.forceUnlockTimeout()).thenReturn(60L);
+        when(config.forceUnlockTimoutUnit()).thenReturn(SECONDS);
+        when(config.chunkStoreDir()).thenReturn(chunkStoreDir.toString());
+        when(config.chunkStoreMaxSize()).thenReturn(1L << 20);
         syncTarget = new TargetDirectory();
         syncTarget.activate(config);
         syncTarget.lock(nodeInfo, syncPath);
@@ -129,6 +140,96 @@ public class TargetDirectoryTest {
         assertEquals(EXPECTED_CONTEXT, lines.get(1));
     }
 
+    @Test
+    public void deltaTransfer() throws IOException {
+        syncTarget.transfer(nodeInfo, syncPath, ByteBuffer.wrap(EXPECTED_CONTEXT.getBytes()));
+        syncTarget.store(nodeInfo, syncPath);
+        syncTarget.lock(nodeInfo, syncPath);
+
+        final AtomicReference<Collection<BlockSignature>> signatures = new AtomicReference<>();
+        syncTarget.signatures(nodeInfo, syncPath, 5, signatures::set);
+        assertEquals(5, signatures.get().size());
+
+        // "Some expected content" -> "content: Some expected"
+        syncTarget.copy(nodeInfo, syncPath, 14, 7);
+        syncTarget.transfer(nodeInfo, syncPath, ByteBuffer.wrap(": ".getBytes()));
+        syncTarget.copy(nodeInfo, syncPath, 0, 13);
+        syncTarget.store(nodeInfo, syncPath);
+        assertEquals("content: Some expected", new String(Files.readAllBytes(expectedPath)));
+    }
+
+    @Test
+    public void duplicate() throws IOException {
+        syncTarget.transfer(nodeInfo, syncPath, ByteBuffer.wrap(EXPECTED_CONTEXT.getBytes()));
+        syncTarget.store(nodeInfo, syncPath);
+
+        final SyncPath copy = new SyncPath(File.separator, syncPath.getSyncDir(), "org/foo/copy.txt");
+        syncTarget.lock(nodeInfo, copy);
+        syncTarget.duplicate(nodeInfo, copy, syncPath, newStrongDigest().digest(EXPECTED_CONTEXT.getBytes()));
+        syncTarget.store(nodeInfo, copy);
+        assertEquals(EXPECTED_CONTEXT, new String(Files.readAllBytes(
+                getDefault().getPath(copy.getSyncDir(), copy.getRelativePath()))));
+    }
+
+    @Test
+    public void discardAfterDuplicate() throws IOException {
+        syncTarget.transfer(nodeInfo, syncPath, ByteBuffer.wrap(EXPECTED_CONTEXT.getBytes()));
+        syncTarget.store(nodeInfo, syncPath);
+
+        // The content could be duplicated on one target but not on the other
+        final byte[] checksum = newStrongDigest().digest(EXPECTED_CONTEXT.getBytes());
+        final SyncPath duplicated = new SyncPath(File.separator, syncPath.getSyncDir(), "org/foo/duplicated.txt");
+        final SyncPath failed = new SyncPath(File.separator, syncPath.getSyncDir(), "org/foo/failed.txt");
+        final SyncPath missing = new SyncPath(File.separator, syncPath.getSyncDir(), "org/foo/missing.txt");
+        syncTarget.lock(nodeInfo, duplicated);
+        syncTarget.lock(nodeInfo, failed);
+        syncTarget.duplicate(nodeInfo, duplicated, syncPath, checksum);
+        try {
+            syncTarget.duplicate(nodeInfo, failed, missing, checksum);
+            fail("Exception expected");
+        } catch (final IOException expected) {
+            // noop
+        }
+
+        // The source discards the duplication and transfers the content to all targets instead
+        for (final SyncPath path : asList(duplicated, failed)) {
+            syncTarget.discard(nodeInfo, path, new IOException());
+            syncTarget.signatures(nodeInfo, path, 5, s -> assertTrue(s.isEmpty()));
+            syncTarget.transfer(nodeInfo, path, ByteBuffer.wrap(EXPECTED_CONTEXT.getBytes()));
+            syncTarget.store(nodeInfo, path);
+            assertEquals(EXPECTED_CONTEXT, new String(Files.readAllBytes(
+                    getDefault().getPath(path.getSyncDir(), path.getRelativePath()))));
+        }
+    }
+
+    @Test
+    public void chunks() throws IOException {
+        final byte[] data = EXPECTED_CONTEXT.getBytes();
+        final Chunk chunk = new Chunk(data.length, newStrongDigest().digest(data));
+        final AtomicReference<Collection<Chunk>> known = new AtomicReference<>();
+        syncTarget.chunks(nodeInfo, syncPath, asList(chunk), known::set);
+        assertTrue(known.get().isEmpty());
+
+        syncTarget.transferChunk(nodeInfo, syncPath, chunk, ByteBuffer.wrap(data));
+        syncTarget.store(nodeInfo, syncPath);
+
+        final SyncPath copy = new SyncPath(File.separator, syncPath.getSyncDir(), "org/foo/copy.txt");
+        syncTarget.lock(nodeInfo, copy);
+        syncTarget.chunks(nodeInfo, copy, asList(chunk), known::set);
+        assertEquals(asList(chunk), known.get());
+        syncTarget.copyChunk(nodeInfo, copy, chunk);
+        syncTarget.copyChunk(nodeInfo, copy, chunk);
+        syncTarget.store(nodeInfo, copy);
+        assertEquals(EXPECTED_CONTEXT + EXPECTED_CONTEXT, new String(Files.readAllBytes(
+                getDefault().getPath(copy.getSyncDir(), copy.getRelativePath()))));
+    }
+
+    @Test
+    public void ignoreSignaturesOnLocalNodeAndSameTarget() throws Exception {
+        when(nodeInfo.isLocalNode()).thenReturn(true);
+        syncTarget.signatures(nodeInfo, syncPath, 5, s -> fail("No signatures expected"));
+    }
+
     @Test
     public void store() throws IOException {
         syncTarget.store(nodeInfo, syncPath);